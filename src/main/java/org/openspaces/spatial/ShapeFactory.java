@@ -21,31 +21,106 @@ import com.gigaspaces.internal.utils.Assert;
 import com.spatial4j.core.shape.jts.JtsGeometry;
 import org.openspaces.spatial.shapes.*;
 import com.spatial4j.core.context.jts.JtsSpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContextFactory;
 import com.spatial4j.core.context.SpatialContext;
 import org.openspaces.spatial.shapes.Circle;
 import org.openspaces.spatial.shapes.Point;
 import org.openspaces.spatial.shapes.Rectangle;
 import org.openspaces.spatial.shapes.Shape;
 import org.openspaces.spatial.shapes.impl.*;
+import org.openspaces.spatial.spatial4j.Spatial4jShapeProvider;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.text.ParseException;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Factory class for creating spatial shapes.
+ * Text formats are parsed using the default spatial context (geo JTS) unless a spatial context, or the name of a
+ * registered spatial context profile, is specified - in which case the spatial4j shape is also built against that
+ * context, so it is not built again when the shape is indexed or queried with the same context.
+ * Built-in profiles are <code>geo</code> (geo JTS) and <code>cartesian</code> (non-geo JTS).
  *
  * @author Niv Ingberg
  * @since 11.0
  */
 public class ShapeFactory {
+    private static volatile ShapeValidationPolicy validationPolicy = ShapeValidationPolicy.valueOf(
+            System.getProperty("org.openspaces.spatial.validation", ShapeValidationPolicy.DEFERRED.name()).toUpperCase());
+    private static final Map<String, SpatialContext> spatialContextProfiles = new ConcurrentHashMap<String, SpatialContext>();
+    static {
+        spatialContextProfiles.put("geo", JtsSpatialContext.GEO);
+        JtsSpatialContextFactory cartesianFactory = new JtsSpatialContextFactory();
+        cartesianFactory.geo = false;
+        spatialContextProfiles.put("cartesian", new JtsSpatialContext(cartesianFactory));
+    }
+
     /**
      * Private ctor to prevent instantiating this factory class.
      */
     private ShapeFactory() {
     }
 
+    /**
+     * Gets the policy used to validate polygons created by this factory.
+     */
+    public static ShapeValidationPolicy getValidationPolicy() {
+        return validationPolicy;
+    }
+
+    /**
+     * Sets the policy used to validate polygons created by this factory.
+     * The default is read from the <code>org.openspaces.spatial.validation</code> system property (DEFERRED if not set).
+     */
+    public static void setValidationPolicy(ShapeValidationPolicy validationPolicy) {
+        ShapeFactory.validationPolicy = Assert.argumentNotNull(validationPolicy, "validationPolicy");
+    }
+
+    /**
+     * Registers a spatial context under the specified profile name, replacing the existing one (if any).
+     */
+    public static void registerSpatialContext(String profile, SpatialContext spatialContext) {
+        spatialContextProfiles.put(Assert.argumentNotNull(profile, "profile"), Assert.argumentNotNull(spatialContext, "spatialContext"));
+    }
+
+    /**
+     * Gets the spatial context registered under the specified profile name.
+     * @throws IllegalArgumentException If no spatial context is registered under that name
+     */
+    public static SpatialContext getSpatialContext(String profile) {
+        SpatialContext result = spatialContextProfiles.get(Assert.argumentNotNull(profile, "profile"));
+        if (result == null)
+            throw new IllegalArgumentException("Unknown spatial context profile: " + profile + " - registered profiles: " + spatialContextProfiles.keySet());
+        return result;
+    }
+
+    /**
+     * Builds the spatial4j shape of the specified shape against the specified spatial context, so that it is not
+     * built again when the shape is indexed or queried with that context (subject to the spatial4j shape cache policy).
+     * @param shape The shape to build
+     * @param spatialContext The spatial context the shape will be used with
+     * @return The specified shape
+     */
+    public static <T extends Shape> T build(T shape, SpatialContext spatialContext) {
+        if (!(shape instanceof Spatial4jShapeProvider))
+            throw new IllegalArgumentException("Unsupported shape [" + shape.getClass().getName() + "]");
+        ((Spatial4jShapeProvider) shape).getSpatial4jShape(Assert.argumentNotNull(spatialContext, "spatialContext"));
+        return shape;
+    }
+
+    /**
+     * Builds the spatial4j shape of the specified shape against the spatial context of the specified profile.
+     * @see #build(Shape, SpatialContext)
+     */
+    public static <T extends Shape> T build(T shape, String profile) {
+        return build(shape, getSpatialContext(profile));
+    }
+
     /**
      * Creates a Point instance.
      * @param x The X coordinate, or Longitude in geospatial contexts
@@ -107,6 +182,15 @@ public class ShapeFactory {
         return new LineStringImpl(points);
     }
 
+    /**
+     * Creates a LineString instance from the specified coordinates
+     * @param coordinates The X and Y of each point, interleaved: [x0, y0, x1, y1, ...]
+     * @return A new LineString instance
+     */
+    public static LineString lineString(double[] coordinates) {
+        return new LineStringImpl(Assert.argumentNotNull(coordinates, "coordinates").clone());
+    }
+
     /**
      * Creates a Polygon instance from the specified points
      * @param first The first point
@@ -136,7 +220,107 @@ public class ShapeFactory {
     }
 
     private static Polygon polygon(Point[] points) {
-        return new PolygonImpl(points);
+        return new PolygonImpl(points).applyValidationPolicy(validationPolicy);
+    }
+
+    /**
+     * Creates a Polygon instance from the specified coordinates
+     * @param coordinates The X and Y of each point, interleaved: [x0, y0, x1, y1, ...]
+     * @return A new Polygon instance
+     */
+    public static Polygon polygon(double[] coordinates) {
+        return new PolygonImpl(Assert.argumentNotNull(coordinates, "coordinates").clone()).applyValidationPolicy(validationPolicy);
+    }
+
+    /**
+     * Creates a Polygon instance with holes from the specified coordinates
+     * @param coordinates The X and Y of each point of the exterior ring, interleaved: [x0, y0, x1, y1, ...]
+     * @param holes The X and Y of each point of each hole (interior ring), interleaved
+     * @return A new Polygon instance
+     */
+    public static Polygon polygon(double[] coordinates, double[][] holes) {
+        Assert.argumentNotNull(holes, "holes");
+        double[][] holesCopy = new double[holes.length][];
+        for (int i=0 ; i < holes.length ; i++)
+            holesCopy[i] = Assert.argumentNotNull(holes[i], "hole").clone();
+        return new PolygonImpl(Assert.argumentNotNull(coordinates, "coordinates").clone(), holesCopy)
+                .applyValidationPolicy(validationPolicy);
+    }
+
+    /**
+     * Creates a MultiPoint instance from the specified points
+     * @param points The points
+     * @return A new MultiPoint instance
+     */
+    public static MultiPoint multiPoint(Point... points) {
+        double[] coordinates = new double[points.length * 2];
+        for (int i=0 ; i < points.length ; i++) {
+            coordinates[i*2] = points[i].getX();
+            coordinates[i*2+1] = points[i].getY();
+        }
+        return new MultiPointImpl(coordinates);
+    }
+
+    /**
+     * Creates a MultiPoint instance from the specified coordinates
+     * @param coordinates The X and Y of each point, interleaved: [x0, y0, x1, y1, ...]
+     * @return A new MultiPoint instance
+     */
+    public static MultiPoint multiPoint(double[] coordinates) {
+        return new MultiPointImpl(Assert.argumentNotNull(coordinates, "coordinates").clone());
+    }
+
+    /**
+     * Creates a MultiLineString instance from the specified line strings
+     * @param lineStrings The line strings
+     * @return A new MultiLineString instance
+     */
+    public static MultiLineString multiLineString(LineString... lineStrings) {
+        LineStringImpl[] impls = new LineStringImpl[lineStrings.length];
+        for (int i=0 ; i < lineStrings.length ; i++)
+            impls[i] = toImpl(Assert.argumentNotNull(lineStrings[i], "lineString"));
+        return new MultiLineStringImpl(impls);
+    }
+
+    /**
+     * Creates a MultiPolygon instance from the specified polygons
+     * @param polygons The polygons
+     * @return A new MultiPolygon instance
+     */
+    public static MultiPolygon multiPolygon(Polygon... polygons) {
+        PolygonImpl[] impls = new PolygonImpl[polygons.length];
+        for (int i=0 ; i < polygons.length ; i++)
+            impls[i] = toImpl(Assert.argumentNotNull(polygons[i], "polygon"));
+        return new MultiPolygonImpl(impls);
+    }
+
+    private static LineStringImpl toImpl(LineString lineString) {
+        if (lineString instanceof LineStringImpl)
+            return (LineStringImpl) lineString;
+        return new LineStringImpl(getCoordinates(lineString));
+    }
+
+    private static PolygonImpl toImpl(Polygon polygon) {
+        if (polygon instanceof PolygonImpl)
+            return (PolygonImpl) polygon;
+        double[] coordinates = new double[polygon.getNumOfPoints() * 2];
+        for (int i=0 ; i < polygon.getNumOfPoints() ; i++) {
+            coordinates[i*2] = polygon.getX(i);
+            coordinates[i*2+1] = polygon.getY(i);
+        }
+        double[][] holes = new double[polygon.getNumOfHoles()][];
+        for (int i=0 ; i < holes.length ; i++)
+            holes[i] = getCoordinates(polygon.getHole(i));
+        return new PolygonImpl(coordinates, holes).applyValidationPolicy(validationPolicy);
+    }
+
+    private static double[] getCoordinates(LineString lineString) {
+        double[] coordinates = new double[lineString.getNumOfPoints() * 2];
+        for (int i=0 ; i < lineString.getNumOfPoints() ; i++) {
+            coordinates[i*2] = lineString.getX(i);
+            coordinates[i*2+1] = lineString.getY(i);
+        }
+        return coordinates;
     }
 
     /**
@@ -146,8 +330,34 @@ public class ShapeFactory {
      * @return The created shape instance
      */
     public static Shape parse(String s, ShapeFormat shapeFormat) {
+        return read(s, shapeFormat, getDefaultSpatialContext());
+    }
+
+    /**
+     * Parses the specified string using the specified shape format and spatial context, and builds its spatial4j
+     * shape against that context.
+     * @param s String to parse
+     * @param shapeFormat Shape format to use for parsing
+     * @param spatialContext Spatial context to parse with, and build the spatial4j shape against
+     * @return The created shape instance
+     */
+    public static Shape parse(String s, ShapeFormat shapeFormat, SpatialContext spatialContext) {
+        return build(read(s, shapeFormat, Assert.argumentNotNull(spatialContext, "spatialContext")), spatialContext);
+    }
+
+    /**
+     * Parses the specified string using the specified shape format and the spatial context of the specified profile.
+     * @see #parse(String, ShapeFormat, SpatialContext)
+     */
+    public static Shape parse(String s, ShapeFormat shapeFormat, String profile) {
+        return parse(s, shapeFormat, getSpatialContext(profile));
+    }
+
+    private static Shape read(String s, ShapeFormat shapeFormat, SpatialContext spatialContext) {
+        if (shapeFormat == ShapeFormat.WKB)
+            return parse(WkbCodec.fromHex(s), shapeFormat);
         try {
-            return fromSpatial4JShape(getReader(shapeFormat).read(s));
+            return fromSpatial4JShape(getReader(shapeFormat, spatialContext).read(s));
         } catch (IOException e) {
             throw new IllegalStateException("Failed to parse shape using " + shapeFormat, e);
         } catch (ParseException e) {
@@ -155,14 +365,38 @@ public class ShapeFactory {
         }
     }
 
-    private static com.spatial4j.core.io.ShapeReader getReader(ShapeFormat shapeFormat) {
+    /**
+     * Parses the specified bytes using the specified shape format. Binary formats (e.g. WKB) are parsed directly
+     * into shape instances, text formats are decoded as UTF-8.
+     * @param bytes Bytes to parse
+     * @param shapeFormat Shape format to use for parsing
+     * @return The created shape instance
+     */
+    public static Shape parse(byte[] bytes, ShapeFormat shapeFormat) {
+        return parse(ByteBuffer.wrap(bytes), shapeFormat);
+    }
+
+    /**
+     * Parses the specified buffer using the specified shape format, starting at its current position.
+     * Binary formats (e.g. WKB) are parsed directly into shape instances, text formats are decoded as UTF-8.
+     * @param buffer Buffer to parse
+     * @param shapeFormat Shape format to use for parsing
+     * @return The created shape instance
+     */
+    public static Shape parse(ByteBuffer buffer, ShapeFormat shapeFormat) {
+        if (shapeFormat == ShapeFormat.WKB)
+            return WkbCodec.read(buffer);
+        return parse(Charset.forName("UTF-8").decode(buffer).toString(), shapeFormat);
+    }
+
+    private static com.spatial4j.core.io.ShapeReader getReader(ShapeFormat shapeFormat, SpatialContext spatialContext) {
         com.spatial4j.core.io.ShapeReader result;
         switch (shapeFormat) {
             case WKT:
-                result = getDefaultSpatialContext().getFormats().getWktReader();
+                result = spatialContext.getFormats().getWktReader();
                 break;
             case GEOJSON:
-                result = getDefaultSpatialContext().getFormats().getGeoJsonReader();
+                result = spatialContext.getFormats().getGeoJsonReader();
                 break;
             default:
                 throw new IllegalArgumentException("Unsupported Shape Format: " + shapeFormat);
@@ -192,26 +426,117 @@ public class ShapeFactory {
         if (shape instanceof com.spatial4j.core.shape.impl.BufferedLineString) {
             com.spatial4j.core.shape.impl.BufferedLineString spatialLineString = (com.spatial4j.core.shape.impl.BufferedLineString) shape;
             List<com.spatial4j.core.shape.Point> spatialPoints = spatialLineString.getPoints();
-            Point[] points = new Point[spatialPoints.size()];
-            for (int i=0 ; i < points.length ; i++)
-                points[i] = point(spatialPoints.get(i).getX(), spatialPoints.get(i).getY());
-            return lineString(points);
+            double[] coordinates = new double[spatialPoints.size() * 2];
+            for (int i=0 ; i < spatialPoints.size() ; i++) {
+                coordinates[i*2] = spatialPoints.get(i).getX();
+                coordinates[i*2+1] = spatialPoints.get(i).getY();
+            }
+            return new LineStringImpl(coordinates);
         }
         if (shape instanceof com.spatial4j.core.shape.jts.JtsGeometry)
             return fromJtsGeometry((JtsGeometry) shape);
+        if (shape instanceof com.spatial4j.core.shape.ShapeCollection)
+            return fromShapeCollection((com.spatial4j.core.shape.ShapeCollection<?>) shape);
         throw new IllegalArgumentException("Unsupported shape type: " + shape.getClass().getName());
     }
 
     private static Shape fromJtsGeometry(com.spatial4j.core.shape.jts.JtsGeometry shape) {
-        com.vividsolutions.jts.geom.Coordinate[] coordinates = shape.getGeom().getCoordinates();
-        Point[] points = new Point[coordinates.length];
-        for (int i=0 ; i < coordinates.length ; i++)
-            points[i] = point(coordinates[i].getOrdinate(0), coordinates[i].getOrdinate(1));
-        String shapeType = shape.getGeom().getGeometryType();
-        if (shapeType.equals("LineString"))
-            return lineString(points);
-        if (shapeType.equals("Polygon"))
-            return polygon(points);
-        throw new IllegalArgumentException("Unsupported shape type: " + shapeType);
+        com.vividsolutions.jts.geom.Geometry geometry = shape.getGeom();
+        if (geometry instanceof com.vividsolutions.jts.geom.LineString)
+            return new LineStringImpl(toCoordinates(((com.vividsolutions.jts.geom.LineString) geometry).getCoordinateSequence()));
+        if (geometry instanceof com.vividsolutions.jts.geom.Polygon)
+            return fromJtsPolygon((com.vividsolutions.jts.geom.Polygon) geometry);
+        if (geometry instanceof com.vividsolutions.jts.geom.MultiPoint) {
+            double[] coordinates = new double[geometry.getNumGeometries() * 2];
+            for (int i=0 ; i < geometry.getNumGeometries() ; i++) {
+                com.vividsolutions.jts.geom.Point point = (com.vividsolutions.jts.geom.Point) geometry.getGeometryN(i);
+                coordinates[i*2] = point.getX();
+                coordinates[i*2+1] = point.getY();
+            }
+            return new MultiPointImpl(coordinates);
+        }
+        if (geometry instanceof com.vividsolutions.jts.geom.MultiLineString) {
+            LineStringImpl[] lineStrings = new LineStringImpl[geometry.getNumGeometries()];
+            for (int i=0 ; i < lineStrings.length ; i++)
+                lineStrings[i] = new LineStringImpl(toCoordinates(((com.vividsolutions.jts.geom.LineString) geometry.getGeometryN(i)).getCoordinateSequence()));
+            return new MultiLineStringImpl(lineStrings);
+        }
+        if (geometry instanceof com.vividsolutions.jts.geom.MultiPolygon) {
+            PolygonImpl[] polygons = new PolygonImpl[geometry.getNumGeometries()];
+            for (int i=0 ; i < polygons.length ; i++)
+                polygons[i] = fromJtsPolygon((com.vividsolutions.jts.geom.Polygon) geometry.getGeometryN(i));
+            return new MultiPolygonImpl(polygons);
+        }
+        throw new IllegalArgumentException("Unsupported shape type: " + geometry.getGeometryType());
+    }
+
+    private static PolygonImpl fromJtsPolygon(com.vividsolutions.jts.geom.Polygon polygon) {
+        double[][] holes = new double[polygon.getNumInteriorRing()][];
+        for (int i=0 ; i < holes.length ; i++)
+            holes[i] = toCoordinates(polygon.getInteriorRingN(i).getCoordinateSequence());
+        // Already validated by the spatial4j reader:
+        return new PolygonImpl(toCoordinates(polygon.getExteriorRing().getCoordinateSequence()), holes)
+                .applyValidationPolicy(ShapeValidationPolicy.TRUST);
+    }
+
+    /**
+     * Converts a collection of points, line strings or polygons (as created by the WKT/GeoJSON readers for
+     * multi geometries) to the matching multi shape.
+     */
+    private static Shape fromShapeCollection(com.spatial4j.core.shape.ShapeCollection<?> collection) {
+        final int size = collection.size();
+        if (size == 0)
+            throw new IllegalArgumentException("Unsupported shape type: empty collection");
+        Shape[] shapes = new Shape[size];
+        for (int i=0 ; i < size ; i++)
+            shapes[i] = fromSpatial4JShape(collection.get(i));
+        if (allInstancesOf(shapes, Point.class)) {
+            Point[] points = new Point[size];
+            System.arraycopy(shapes, 0, points, 0, size);
+            return multiPoint(points);
+        }
+        if (allInstancesOf(shapes, LineString.class)) {
+            LineString[] lineStrings = new LineString[size];
+            System.arraycopy(shapes, 0, lineStrings, 0, size);
+            return multiLineString(lineStrings);
+        }
+        if (allInstancesOf(shapes, Polygon.class, Rectangle.class)) {
+            // Rectangular polygons are read as rectangles:
+            Polygon[] polygons = new Polygon[size];
+            for (int i=0 ; i < size ; i++)
+                polygons[i] = shapes[i] instanceof Rectangle ? toPolygon((Rectangle) shapes[i]) : (Polygon) shapes[i];
+            return multiPolygon(polygons);
+        }
+        throw new IllegalArgumentException("Unsupported shape type: heterogeneous collection");
+    }
+
+    private static boolean allInstancesOf(Shape[] shapes, Class<?> type) {
+        return allInstancesOf(shapes, type, type);
+    }
+
+    private static boolean allInstancesOf(Shape[] shapes, Class<?> type, Class<?> alternativeType) {
+        for (Shape shape : shapes) {
+            if (!type.isInstance(shape) && !alternativeType.isInstance(shape))
+                return false;
+        }
+        return true;
+    }
+
+    private static Polygon toPolygon(Rectangle rectangle) {
+        return new PolygonImpl(new double[] {
+                rectangle.getMinX(), rectangle.getMinY(),
+                rectangle.getMaxX(), rectangle.getMinY(),
+                rectangle.getMaxX(), rectangle.getMaxY(),
+                rectangle.getMinX(), rectangle.getMaxY()}).applyValidationPolicy(ShapeValidationPolicy.TRUST);
+    }
+
+    private static double[] toCoordinates(com.vividsolutions.jts.geom.CoordinateSequence sequence) {
+        // Read the coordinate sequence directly rather than via Geometry.getCoordinates(), which copies it:
+        double[] coordinates = new double[sequence.size() * 2];
+        for (int i=0 ; i < sequence.size() ; i++) {
+            coordinates[i*2] = sequence.getX(i);
+            coordinates[i*2+1] = sequence.getY(i);
+        }
+        return coordinates;
     }
 }
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial;
+
+import org.openspaces.spatial.shapes.Shape;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A shape read from a stream, along with its feature id and properties (if any).
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class ShapeFeature {
+    private final Object id;
+    private final Shape shape;
+    private final Map<String, Object> properties;
+
+    public ShapeFeature(Object id, Shape shape, Map<String, Object> properties) {
+        this.id = id;
+        this.shape = shape;
+        this.properties = properties != null ? properties : Collections.<String, Object>emptyMap();
+    }
+
+    /**
+     * Gets the id of the feature, or null if it has none.
+     */
+    public Object getId() {
+        return id;
+    }
+
+    /**
+     * Gets the shape of the feature, or null if the feature has no geometry.
+     */
+    public Shape getShape() {
+        return shape;
+    }
+
+    /**
+     * Gets the properties of the feature (empty if it has none).
+     */
+    public Map<String, Object> getProperties() {
+        return properties;
+    }
+
+    @Override
+    public String toString() {
+        return "ShapeFeature [id=" + id + ", shape=" + shape + ", properties=" + properties + "]";
+    }
+}
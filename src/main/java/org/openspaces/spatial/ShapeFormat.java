@@ -33,5 +33,10 @@ public enum ShapeFormat {
      * GeoJson.
      * @see <a href="http://geojson.org/">GeoJson</a>
      */
-    GEOJSON
+    GEOJSON,
+    /**
+     * Well-Known binary. As a string, it is represented in hex (as in PostGIS).
+     * @see <a href="https://en.wikipedia.org/wiki/Well-known_text#Well-known_binary">WKB</a>
+     */
+    WKB
 }
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import org.openspaces.spatial.shapes.Shape;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded LRU cache of parsed shapes, keyed by shape format and text, for literals which are parsed over and over
+ * (e.g. query parameters). Repeated strings return the same shared shape instance, with its spatial4j shape already
+ * built (subject to the spatial4j shape cache policy). Shapes are immutable, so they can be safely shared.
+ * Strings longer than the key length threshold are keyed by their SHA-256 digest rather than by the string itself,
+ * so large literals do not hold their text in memory.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class ShapeParseCache {
+    public static final int DEFAULT_MAX_KEY_LENGTH = 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final SpatialContext spatialContext;
+    private final int maxKeyLength;
+    private final Map<Key, Shape> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ShapeParseCache(int maxSize) {
+        this(maxSize, DEFAULT_MAX_KEY_LENGTH, JtsSpatialContext.GEO);
+    }
+
+    public ShapeParseCache(final int maxSize, int maxKeyLength, SpatialContext spatialContext) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Parse cache size must be positive: " + maxSize);
+        if (maxKeyLength < 0)
+            throw new IllegalArgumentException("Max key length must not be negative: " + maxKeyLength);
+        this.spatialContext = spatialContext;
+        this.maxKeyLength = maxKeyLength;
+        this.cache = new LinkedHashMap<Key, Shape>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Shape> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Parses the specified string using the specified shape format, or returns the shape previously parsed from an
+     * equal string.
+     * @param s String to parse
+     * @param shapeFormat Shape format to use for parsing
+     * @return The shared shape instance
+     */
+    public Shape parse(String s, ShapeFormat shapeFormat) {
+        final Key key = s.length() > maxKeyLength ? new Key(shapeFormat, null, digest(s)) : new Key(shapeFormat, s, null);
+        Shape result;
+        synchronized (cache) {
+            result = cache.get(key);
+        }
+        if (result != null) {
+            hits.incrementAndGet();
+            return result;
+        }
+        misses.incrementAndGet();
+        // Parsed outside the lock - concurrent misses on the same string may parse it twice, the first one put wins:
+        Shape newShape = ShapeFactory.parse(s, shapeFormat, spatialContext);
+        synchronized (cache) {
+            result = cache.get(key);
+            if (result == null) {
+                cache.put(key, newShape);
+                result = newShape;
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static byte[] digest(String s) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(s.getBytes(UTF8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    private static class Key {
+        private final ShapeFormat shapeFormat;
+        private final String text;
+        private final byte[] digest;
+        private final int hashcode;
+
+        private Key(ShapeFormat shapeFormat, String text, byte[] digest) {
+            this.shapeFormat = shapeFormat;
+            this.text = text;
+            this.digest = digest;
+            this.hashcode = 31 * shapeFormat.hashCode() + (text != null ? text.hashCode() : Arrays.hashCode(digest));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key other = (Key) o;
+            if (this.hashcode != other.hashcode) return false;
+            if (this.shapeFormat != other.shapeFormat) return false;
+            if (this.text != null ? !this.text.equals(other.text) : other.text != null) return false;
+            return Arrays.equals(this.digest, other.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashcode;
+        }
+    }
+}
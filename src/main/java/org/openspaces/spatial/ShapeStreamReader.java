@@ -0,0 +1,330 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial;
+
+import org.noggit.JSONParser;
+import org.noggit.ObjectBuilder;
+import org.openspaces.spatial.shapes.LineString;
+import org.openspaces.spatial.shapes.Polygon;
+import org.openspaces.spatial.shapes.Shape;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads shapes lazily from a stream, one at a time, so that arbitrarily large inputs can be loaded with constant memory.
+ * Supported inputs:
+ * <ul>
+ *     <li>GeoJSON - a FeatureCollection (features are streamed one by one), newline-delimited (or concatenated)
+ *     Features/geometries, or a JSON array of them.</li>
+ *     <li>WKT - one shape per line (blank lines are skipped).</li>
+ * </ul>
+ * Parsing can optionally be offloaded to an executor (see {@link #parallel(ExecutorService, int)}), in which case
+ * the stream is tokenized by the calling thread and up to a batch of shapes is built concurrently, preserving order.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public abstract class ShapeStreamReader implements Iterator<ShapeFeature>, Closeable {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Reader reader;
+    private final Deque<Future<ShapeFeature>> pending = new ArrayDeque<Future<ShapeFeature>>();
+    private ExecutorService executor;
+    private int batchSize;
+    private ShapeFeature next;
+    private boolean eof;
+
+    protected ShapeStreamReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Creates a reader for the specified stream (decoded as UTF-8) using the specified format.
+     */
+    public static ShapeStreamReader create(InputStream inputStream, ShapeFormat shapeFormat) {
+        return create(new BufferedReader(new InputStreamReader(inputStream, UTF8)), shapeFormat);
+    }
+
+    /**
+     * Creates a reader for the specified character stream using the specified format.
+     */
+    public static ShapeStreamReader create(Reader reader, ShapeFormat shapeFormat) {
+        switch (shapeFormat) {
+            case GEOJSON:   return new GeoJsonStreamReader(reader);
+            case WKT:       return new WktStreamReader(reader);
+            default:        throw new IllegalArgumentException("Unsupported shape format for streaming: " + shapeFormat);
+        }
+    }
+
+    /**
+     * Builds shapes concurrently using the specified executor, keeping up to batchSize shapes in flight.
+     * @return This reader
+     */
+    public ShapeStreamReader parallel(ExecutorService executor, int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        this.executor = executor;
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Reads the next raw (unparsed) item from the stream.
+     * @return The next raw item, or null if the stream has ended.
+     */
+    protected abstract Object readRaw() throws IOException;
+
+    /**
+     * Converts a raw item (as read by {@link #readRaw()}) to a shape feature. Might be called concurrently.
+     */
+    protected abstract ShapeFeature convert(Object raw);
+
+    @Override
+    public boolean hasNext() {
+        if (next == null)
+            next = fetch();
+        return next != null;
+    }
+
+    @Override
+    public ShapeFeature next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        ShapeFeature result = next;
+        next = null;
+        return result;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<ShapeFeature> future : pending)
+            future.cancel(true);
+        pending.clear();
+        reader.close();
+    }
+
+    private ShapeFeature fetch() {
+        if (executor == null) {
+            Object raw = read();
+            return raw != null ? convert(raw) : null;
+        }
+        while (pending.size() < batchSize) {
+            final Object raw = read();
+            if (raw == null)
+                break;
+            pending.add(executor.submit(new Callable<ShapeFeature>() {
+                @Override
+                public ShapeFeature call() {
+                    return convert(raw);
+                }
+            }));
+        }
+        Future<ShapeFeature> future = pending.poll();
+        if (future == null)
+            return null;
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while parsing shapes", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("Failed to parse shape", e.getCause());
+        }
+    }
+
+    private Object read() {
+        if (eof)
+            return null;
+        try {
+            Object result = readRaw();
+            if (result == null)
+                eof = true;
+            return result;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read shapes from stream", e);
+        }
+    }
+
+    private static class WktStreamReader extends ShapeStreamReader {
+        private final BufferedReader lineReader;
+
+        private WktStreamReader(Reader reader) {
+            this(reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader));
+        }
+
+        private WktStreamReader(BufferedReader reader) {
+            super(reader);
+            this.lineReader = reader;
+        }
+
+        @Override
+        protected Object readRaw() throws IOException {
+            String line;
+            do {
+                line = lineReader.readLine();
+            } while (line != null && line.trim().length() == 0);
+            return line;
+        }
+
+        @Override
+        protected ShapeFeature convert(Object raw) {
+            return new ShapeFeature(null, ShapeFactory.parse((String) raw, ShapeFormat.WKT), null);
+        }
+    }
+
+    private static class GeoJsonStreamReader extends ShapeStreamReader {
+        private final JSONParser parser;
+        private int featuresArrayDepth;
+        private Map<String, Object> topObject;
+        private boolean streamedFeatures;
+
+        private GeoJsonStreamReader(Reader reader) {
+            super(reader);
+            this.parser = new JSONParser(reader);
+        }
+
+        @Override
+        protected Object readRaw() throws IOException {
+            while (true) {
+                if (featuresArrayDepth != 0) {
+                    // Inside a features array - read one feature at a time:
+                    int event = parser.nextEvent();
+                    if (event == JSONParser.ARRAY_END) {
+                        featuresArrayDepth = 0;
+                        continue;
+                    }
+                    if (event == JSONParser.OBJECT_START)
+                        return ObjectBuilder.getVal(parser);
+                    throw new IllegalArgumentException("Unexpected GeoJSON content in features array: " + JSONParser.getEventString(event));
+                }
+                if (topObject != null) {
+                    // Inside a top level object - stream its features, collect anything else:
+                    int event = parser.nextEvent();
+                    if (event == JSONParser.OBJECT_END) {
+                        Map<String, Object> result = topObject;
+                        topObject = null;
+                        if (!streamedFeatures)
+                            return result;
+                        continue;
+                    }
+                    String key = parser.getString();
+                    event = parser.nextEvent();
+                    if (key.equals("features") && event == JSONParser.ARRAY_START) {
+                        featuresArrayDepth = 1;
+                        streamedFeatures = true;
+                    } else {
+                        topObject.put(key, ObjectBuilder.getVal(parser));
+                    }
+                    continue;
+                }
+                int event = parser.nextEvent();
+                switch (event) {
+                    case JSONParser.EOF:
+                        return null;
+                    case JSONParser.OBJECT_START:
+                        topObject = new LinkedHashMap<String, Object>();
+                        streamedFeatures = false;
+                        break;
+                    case JSONParser.ARRAY_START:
+                        featuresArrayDepth = 1;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unexpected GeoJSON content: " + JSONParser.getEventString(event));
+                }
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected ShapeFeature convert(Object raw) {
+            Map<String, Object> object = (Map<String, Object>) raw;
+            if ("Feature".equals(object.get("type"))) {
+                Map<String, Object> geometry = (Map<String, Object>) object.get("geometry");
+                return new ShapeFeature(object.get("id"),
+                        geometry != null ? toShape(geometry) : null,
+                        (Map<String, Object>) object.get("properties"));
+            }
+            return new ShapeFeature(null, toShape(object), null);
+        }
+
+        private static Shape toShape(Map<String, Object> geometry) {
+            final Object type = geometry.get("type");
+            final List<?> coordinates = (List<?>) geometry.get("coordinates");
+            if ("Point".equals(type))
+                return ShapeFactory.point(toDouble(coordinates.get(0)), toDouble(coordinates.get(1)));
+            if ("LineString".equals(type))
+                return ShapeFactory.lineString(toCoordinates(coordinates));
+            if ("Polygon".equals(type))
+                return toPolygon(coordinates);
+            if ("MultiPoint".equals(type))
+                return ShapeFactory.multiPoint(toCoordinates(coordinates));
+            if ("MultiLineString".equals(type)) {
+                LineString[] lineStrings = new LineString[coordinates.size()];
+                for (int i = 0; i < lineStrings.length; i++)
+                    lineStrings[i] = ShapeFactory.lineString(toCoordinates((List<?>) coordinates.get(i)));
+                return ShapeFactory.multiLineString(lineStrings);
+            }
+            if ("MultiPolygon".equals(type)) {
+                Polygon[] polygons = new Polygon[coordinates.size()];
+                for (int i = 0; i < polygons.length; i++)
+                    polygons[i] = toPolygon((List<?>) coordinates.get(i));
+                return ShapeFactory.multiPolygon(polygons);
+            }
+            if ("Circle".equals(type))
+                return ShapeFactory.circle(ShapeFactory.point(toDouble(coordinates.get(0)), toDouble(coordinates.get(1))),
+                        toDouble(geometry.get("radius")));
+            throw new IllegalArgumentException("Unsupported GeoJSON geometry type: " + type);
+        }
+
+        private static Polygon toPolygon(List<?> rings) {
+            if (rings.isEmpty())
+                throw new IllegalArgumentException("Unsupported GeoJSON polygon without rings");
+            double[][] holes = new double[rings.size() - 1][];
+            for (int i = 0; i < holes.length; i++)
+                holes[i] = toCoordinates((List<?>) rings.get(i + 1));
+            return ShapeFactory.polygon(toCoordinates((List<?>) rings.get(0)), holes);
+        }
+
+        private static double[] toCoordinates(List<?> positions) {
+            double[] result = new double[positions.size() * 2];
+            for (int i = 0; i < positions.size(); i++) {
+                List<?> position = (List<?>) positions.get(i);
+                result[i * 2] = toDouble(position.get(0));
+                result[i * 2 + 1] = toDouble(position.get(1));
+            }
+            return result;
+        }
+
+        private static double toDouble(Object value) {
+            return ((Number) value).doubleValue();
+        }
+    }
+}
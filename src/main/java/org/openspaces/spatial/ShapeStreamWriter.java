@@ -0,0 +1,213 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial;
+
+import org.openspaces.spatial.shapes.Shape;
+import org.openspaces.spatial.shapes.impl.ShapeTextFormatter;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes shapes directly to an {@link Appendable} (or an {@link OutputStream}) without building intermediate strings.
+ * Coordinates can be rounded to a fixed number of decimal places, which are formatted without allocating (at full
+ * precision, each coordinate is formatted to a string first - see {@link ShapeTextFormatter}).
+ * <ul>
+ *     <li>GeoJSON - shapes and features are written one per line (newline-delimited GeoJSON), or, between
+ *     {@link #beginFeatureCollection()} and {@link #endFeatureCollection()}, as the features of a FeatureCollection.</li>
+ *     <li>WKT - shapes are written one per line. Feature ids and properties are not written.</li>
+ * </ul>
+ * This class is not thread safe.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class ShapeStreamWriter implements Closeable, Flushable {
+    /**
+     * Decimal places value which writes coordinates at full precision.
+     */
+    public static final int FULL_PRECISION = ShapeTextFormatter.FULL_PRECISION;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Appendable out;
+    private final ShapeFormat shapeFormat;
+    private final ShapeTextFormatter formatter;
+    private boolean inFeatureCollection;
+    private boolean firstFeature;
+
+    public ShapeStreamWriter(Appendable out, ShapeFormat shapeFormat) {
+        this(out, shapeFormat, FULL_PRECISION);
+    }
+
+    /**
+     * Creates a writer which rounds coordinates to the specified number of decimal places (up to 15),
+     * or writes them at full precision if {@link #FULL_PRECISION} is specified.
+     */
+    public ShapeStreamWriter(Appendable out, ShapeFormat shapeFormat, int decimalPlaces) {
+        if (shapeFormat != ShapeFormat.GEOJSON && shapeFormat != ShapeFormat.WKT)
+            throw new IllegalArgumentException("Unsupported shape format for streaming: " + shapeFormat);
+        this.formatter = decimalPlaces == FULL_PRECISION ? ShapeTextFormatter.FULL_PRECISION_FORMATTER : new ShapeTextFormatter(decimalPlaces);
+        this.out = out;
+        this.shapeFormat = shapeFormat;
+    }
+
+    /**
+     * Creates a writer to the specified stream (encoded as UTF-8, buffered).
+     */
+    public static ShapeStreamWriter create(OutputStream outputStream, ShapeFormat shapeFormat, int decimalPlaces) {
+        return new ShapeStreamWriter(new BufferedWriter(new OutputStreamWriter(outputStream, UTF8)), shapeFormat, decimalPlaces);
+    }
+
+    /**
+     * Starts a GeoJSON FeatureCollection. Shapes and features written until {@link #endFeatureCollection()}
+     * are written as its features.
+     */
+    public ShapeStreamWriter beginFeatureCollection() throws IOException {
+        if (shapeFormat != ShapeFormat.GEOJSON)
+            throw new IllegalStateException("Feature collections are not supported in " + shapeFormat);
+        if (inFeatureCollection)
+            throw new IllegalStateException("Feature collection already started");
+        out.append("{\"type\":\"FeatureCollection\",\"features\":[");
+        inFeatureCollection = true;
+        firstFeature = true;
+        return this;
+    }
+
+    public ShapeStreamWriter endFeatureCollection() throws IOException {
+        if (!inFeatureCollection)
+            throw new IllegalStateException("Feature collection was not started");
+        out.append("]}\n");
+        inFeatureCollection = false;
+        return this;
+    }
+
+    /**
+     * Writes the specified shape. Within a feature collection, the shape is written as a feature without id and properties.
+     */
+    public ShapeStreamWriter write(Shape shape) throws IOException {
+        if (inFeatureCollection)
+            return writeFeature(null, shape, null);
+        appendShape(shape);
+        out.append('\n');
+        return this;
+    }
+
+    /**
+     * Writes the specified shape as a GeoJSON feature. In WKT, only the shape is written.
+     * @param id The feature id, or null if it has none.
+     * @param shape The feature shape, or null if it has no geometry.
+     * @param properties The feature properties, or null if it has none.
+     */
+    public ShapeStreamWriter writeFeature(Object id, Shape shape, Map<String, ?> properties) throws IOException {
+        if (shapeFormat == ShapeFormat.WKT) {
+            if (shape == null)
+                throw new IllegalArgumentException("WKT cannot represent a feature without a shape");
+            return write(shape);
+        }
+        if (inFeatureCollection) {
+            if (!firstFeature)
+                out.append(',');
+            firstFeature = false;
+        }
+        out.append("{\"type\":\"Feature\"");
+        if (id != null) {
+            out.append(",\"id\":");
+            appendValue(id);
+        }
+        out.append(",\"geometry\":");
+        if (shape != null)
+            appendShape(shape);
+        else
+            out.append("null");
+        out.append(",\"properties\":");
+        appendValue(properties);
+        out.append('}');
+        if (!inFeatureCollection)
+            out.append('\n');
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out instanceof Flushable)
+            ((Flushable) out).flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inFeatureCollection)
+            endFeatureCollection();
+        if (out instanceof Closeable)
+            ((Closeable) out).close();
+    }
+
+    private void appendShape(Shape shape) throws IOException {
+        formatter.append(out, shape, shapeFormat);
+    }
+
+    private void appendValue(Object value) throws IOException {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value.toString());
+        } else if (value instanceof Map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first)
+                    out.append(',');
+                first = false;
+                appendString(String.valueOf(entry.getKey()));
+                out.append(':');
+                appendValue(entry.getValue());
+            }
+            out.append('}');
+        } else if (value instanceof Collection) {
+            out.append('[');
+            boolean first = true;
+            for (Object item : (Collection<?>) value) {
+                if (!first)
+                    out.append(',');
+                first = false;
+                appendValue(item);
+            }
+            out.append(']');
+        } else {
+            appendString(value.toString());
+        }
+    }
+
+    private void appendString(String s) throws IOException {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
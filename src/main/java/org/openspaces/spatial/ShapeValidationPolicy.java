@@ -0,0 +1,48 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial;
+
+/**
+ * Determines how polygons created by {@link ShapeFactory} are validated. Except for {@link #DEFERRED} (the default),
+ * validation is applied once, when the polygon is created, and its result is kept with the polygon, so it is not
+ * repeated when the polygon is converted to a spatial4j shape. The result is serialized with the polygon only if
+ * enabled via the <code>org.openspaces.spatial.serialization.validity</code> system property (which requires all
+ * nodes to support it) - otherwise deserialized polygons are validated when converted, as in previous versions.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public enum ShapeValidationPolicy {
+    /**
+     * Polygons are validated when converted to a spatial4j shape (i.e. when indexed or queried), and invalid polygons
+     * are rejected at that point, as in previous versions.
+     */
+    DEFERRED,
+    /**
+     * Invalid polygons (e.g. self-intersecting) are rejected with an exception.
+     */
+    STRICT,
+    /**
+     * Invalid polygons are accepted, and repaired by buffering (by zero) when converted to a spatial4j shape.
+     */
+    REPAIR,
+    /**
+     * Polygons are assumed to be valid and are never validated.
+     */
+    TRUST
+}
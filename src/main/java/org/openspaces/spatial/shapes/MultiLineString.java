@@ -0,0 +1,37 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.shapes;
+
+/**
+ * A collection of line strings, treated as a single shape.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public interface MultiLineString extends Shape {
+    /**
+     * Returns the number of line strings within the collection
+     * @return The number of line strings within the collection
+     */
+    int getNumOfLineStrings();
+
+    /**
+     * Gets the line string in the specified index.
+     */
+    LineString getLineString(int index);
+}
@@ -18,7 +18,7 @@
 package org.openspaces.spatial.shapes;
 
 /**
- * A polygon, denoted by 3 or more points
+ * A polygon, denoted by 3 or more points (the exterior ring), and optionally one or more holes (interior rings).
  *
  * @author Yohana Khoury
  * @since 11.0
@@ -40,4 +40,15 @@ public interface Polygon extends Shape {
      * Gets the Y coordinate of the point in the specified index.
      */
     double getY(int index);
+
+    /**
+     * Returns the number of holes (interior rings) within the polygon
+     * @return The number of holes within the polygon
+     */
+    int getNumOfHoles();
+
+    /**
+     * Gets the hole (interior ring) in the specified index, as a closed line string.
+     */
+    LineString getHole(int index);
 }
@@ -42,4 +42,19 @@ public interface Shape extends Serializable {
      * @return The string builder
      */
     StringBuilder appendTo(StringBuilder stringBuilder, ShapeFormat shapeFormat);
+
+    /**
+     * Returns a binary representation of the shape using the specified format.
+     * Binary formats (e.g. WKB) are encoded as is, text formats are encoded in UTF-8.
+     * @param shapeFormat The format which will be used to format the shape.
+     * @return A binary representation of the shape.
+     */
+    byte[] toByteArray(ShapeFormat shapeFormat);
+
+    /**
+     * Returns the bounding box of the shape, computed from its coordinates (a circle's bounding box is its center +/- its radius).
+     * Note that in geospatial contexts, circles, and shapes which are interpreted as crossing the dateline, may extend beyond it.
+     * @return The bounding box of the shape.
+     */
+    Rectangle getBoundingBox();
 }
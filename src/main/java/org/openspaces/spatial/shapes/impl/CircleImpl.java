@@ -18,6 +18,7 @@
 package org.openspaces.spatial.shapes.impl;
 
 import org.openspaces.spatial.shapes.Circle;
+import org.openspaces.spatial.shapes.Rectangle;
 import org.openspaces.spatial.ShapeFormat;
 import com.spatial4j.core.context.SpatialContext;
 import com.spatial4j.core.shape.Shape;
@@ -39,7 +40,7 @@ public class CircleImpl implements Circle, Spatial4jShapeProvider, Externalizabl
     private double centerX;
     private double centerY;
     private double radius;
-    private volatile transient com.spatial4j.core.shape.Shape spatial4jShape;
+    private volatile transient Object spatial4jShape;
 
     public CircleImpl() {
     }
@@ -65,6 +66,11 @@ public class CircleImpl implements Circle, Spatial4jShapeProvider, Externalizabl
         return radius;
     }
 
+    @Override
+    public Rectangle getBoundingBox() {
+        return new RectangleImpl(centerX - radius, centerX + radius, centerY - radius, centerY + radius);
+    }
+
     @Override
     public String toString() {
         return toString(ShapeFormat.WKT);
@@ -75,43 +81,27 @@ public class CircleImpl implements Circle, Spatial4jShapeProvider, Externalizabl
         return appendTo(new StringBuilder(), shapeFormat).toString();
     }
 
+    @Override
+    public byte[] toByteArray(ShapeFormat shapeFormat) {
+        return WkbCodec.toByteArray(this, shapeFormat);
+    }
+
     @Override
     public StringBuilder appendTo(StringBuilder stringBuilder, ShapeFormat shapeFormat) {
         switch (shapeFormat) {
-            case WKT:       return appendWkt(stringBuilder);
-            case GEOJSON:   return appendGeoJson(stringBuilder);
+            case WKT:
+            case GEOJSON:   return ShapeTextFormatter.appendTo(stringBuilder, this, shapeFormat);
+            case WKB:       throw new IllegalArgumentException("Circle cannot be represented in WKB");
             default:        throw new IllegalArgumentException("Unsupported shape type: " + shapeFormat);
         }
     }
 
-    private StringBuilder appendGeoJson(StringBuilder stringBuilder) {
-        stringBuilder.append("{\"type\":\"Circle\",\"coordinates\":[");
-        stringBuilder.append(centerX);
-        stringBuilder.append(',');
-        stringBuilder.append(centerY);
-        stringBuilder.append("],\"radius\":");
-        stringBuilder.append(radius);
-        stringBuilder.append('}');
-        return stringBuilder;
-    }
-
-    private StringBuilder appendWkt(StringBuilder stringBuilder) {
-        stringBuilder.append("BUFFER (POINT (");
-        stringBuilder.append(centerX);
-        stringBuilder.append(' ');
-        stringBuilder.append(centerY);
-        stringBuilder.append("), ");
-        stringBuilder.append(radius);
-        stringBuilder.append(')');
-        return stringBuilder;
-    }
-
     @Override
     public Shape getSpatial4jShape(SpatialContext spatialContext) {
-        com.spatial4j.core.shape.Shape result = this.spatial4jShape;
+        com.spatial4j.core.shape.Shape result = Spatial4jShapeCache.get(this, this.spatial4jShape, spatialContext);
         if (result == null) {
             result = spatialContext.makeCircle(centerX, centerY, radius);
-            this.spatial4jShape = result;
+            this.spatial4jShape = Spatial4jShapeCache.put(this, result);
         }
         return result;
     }
@@ -0,0 +1,310 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.shapes.impl;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import org.openspaces.spatial.shapes.Point;
+import org.openspaces.spatial.shapes.Rectangle;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * Helper methods for packed coordinate arrays, which hold the X and Y of each point interleaved: [x0, y0, x1, y1, ...].
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+class CoordinateArrays {
+    /**
+     * System property which enables the compact (lossy) serialization of coordinates. Off by default.
+     */
+    static final String COMPACT_SERIALIZATION_PROPERTY = "org.openspaces.spatial.serialization.compact";
+    /**
+     * System property which sets the number of decimal places retained by the compact serialization. Defaults to 7 (~1cm in degrees).
+     */
+    static final String COMPACT_SERIALIZATION_PRECISION_PROPERTY = "org.openspaces.spatial.serialization.compact.precision";
+    /**
+     * System property which includes the bounding box when serializing shapes, so it need not be recomputed. Off by default.
+     */
+    static final String BOUNDING_BOX_SERIALIZATION_PROPERTY = "org.openspaces.spatial.serialization.bounding-box";
+    /**
+     * System property which includes the validity of validated polygons when serializing them, so they need not be
+     * validated again. Off by default.
+     */
+    static final String VALIDITY_SERIALIZATION_PROPERTY = "org.openspaces.spatial.serialization.validity";
+    /**
+     * Header which precedes a serialized bounding box.
+     */
+    static final int BOUNDING_BOX_MARKER = -3;
+
+    private static final int COMPACT_FORMAT_MARKER = -1;
+    private static final byte COMPACT_FORMAT_VERSION = 1;
+    private static final boolean COMPACT_SERIALIZATION = Boolean.getBoolean(COMPACT_SERIALIZATION_PROPERTY);
+    private static final int COMPACT_SERIALIZATION_PRECISION = Integer.getInteger(COMPACT_SERIALIZATION_PRECISION_PROPERTY, 7);
+    private static final boolean BOUNDING_BOX_SERIALIZATION = Boolean.getBoolean(BOUNDING_BOX_SERIALIZATION_PROPERTY);
+    static final boolean VALIDITY_SERIALIZATION = Boolean.getBoolean(VALIDITY_SERIALIZATION_PROPERTY);
+
+    /**
+     * Private ctor to prevent instantiating this helper class.
+     */
+    private CoordinateArrays() {
+    }
+
+    static final double[][] NO_RINGS = new double[0][];
+
+    static double[] fromPoints(Point[] points) {
+        double[] result = new double[points.length * 2];
+        for (int i = 0; i < points.length; i++) {
+            result[i * 2] = points[i].getX();
+            result[i * 2 + 1] = points[i].getY();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the coordinates of a closed ring - the specified array if its last point equals its first,
+     * otherwise a copy with the first point appended at the end.
+     */
+    static double[] close(double[] coordinates) {
+        final int length = numOfPoints(coordinates);
+        if (samePoint(coordinates, 0, length - 1))
+            return coordinates;
+        double[] result = new double[coordinates.length + 2];
+        System.arraycopy(coordinates, 0, result, 0, coordinates.length);
+        result[coordinates.length] = coordinates[0];
+        result[coordinates.length + 1] = coordinates[1];
+        return result;
+    }
+
+    /**
+     * Compares coordinates using the same semantics as comparing points' X and Y with ==.
+     */
+    static boolean equals(double[] coordinates1, double[] coordinates2) {
+        if (coordinates1.length != coordinates2.length)
+            return false;
+        for (int i = 0; i < coordinates1.length; i++) {
+            if (coordinates1[i] != coordinates2[i])
+                return false;
+        }
+        return true;
+    }
+
+    static int numOfPoints(double[] coordinates) {
+        return coordinates.length / 2;
+    }
+
+    static boolean samePoint(double[] coordinates, int i, int j) {
+        return Double.compare(coordinates[i * 2], coordinates[j * 2]) == 0 &&
+               Double.compare(coordinates[i * 2 + 1], coordinates[j * 2 + 1]) == 0;
+    }
+
+    static void validate(double[] coordinates, int minPoints, String shapeName) {
+        if (coordinates.length % 2 != 0)
+            throw new IllegalArgumentException(shapeName + " coordinates must contain an X and a Y for each point");
+        if (coordinates.length < minPoints * 2)
+            throw new IllegalArgumentException(shapeName + " requires at least " + minPoints + " points");
+    }
+
+    /**
+     * Computes the same hash code as {@link java.util.Arrays#hashCode(Object[])} of the equivalent {@link PointImpl} array.
+     */
+    static int hashCode(double[] coordinates) {
+        int result = 1;
+        for (int i = 0; i < coordinates.length; i += 2) {
+            long temp = Double.doubleToLongBits(coordinates[i]);
+            int pointHash = (int) (temp ^ (temp >>> 32));
+            temp = Double.doubleToLongBits(coordinates[i + 1]);
+            pointHash = 31 * pointHash + (int) (temp ^ (temp >>> 32));
+            result = 31 * result + pointHash;
+        }
+        return result;
+    }
+
+    static RectangleImpl boundingBox(double[] coordinates) {
+        double minX = coordinates[0], maxX = coordinates[0];
+        double minY = coordinates[1], maxY = coordinates[1];
+        for (int i = 2; i < coordinates.length; i += 2) {
+            final double x = coordinates[i];
+            final double y = coordinates[i + 1];
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            if (y > maxY) maxY = y;
+        }
+        return new RectangleImpl(minX, maxX, minY, maxY);
+    }
+
+    static RectangleImpl union(Rectangle r1, Rectangle r2) {
+        if (r1 == null)
+            return new RectangleImpl(r2.getMinX(), r2.getMaxX(), r2.getMinY(), r2.getMaxY());
+        return new RectangleImpl(Math.min(r1.getMinX(), r2.getMinX()), Math.max(r1.getMaxX(), r2.getMaxX()),
+                Math.min(r1.getMinY(), r2.getMinY()), Math.max(r1.getMaxY(), r2.getMaxY()));
+    }
+
+    /**
+     * Writes the bounding box of the shape (preceded by {@link #BOUNDING_BOX_MARKER}) if enabled via
+     * {@link #BOUNDING_BOX_SERIALIZATION_PROPERTY}.
+     */
+    static void writeBoundingBox(ObjectOutput out, org.openspaces.spatial.shapes.Shape shape) throws IOException {
+        if (!BOUNDING_BOX_SERIALIZATION)
+            return;
+        Rectangle boundingBox = shape.getBoundingBox();
+        out.writeInt(BOUNDING_BOX_MARKER);
+        out.writeDouble(boundingBox.getMinX());
+        out.writeDouble(boundingBox.getMaxX());
+        out.writeDouble(boundingBox.getMinY());
+        out.writeDouble(boundingBox.getMaxY());
+    }
+
+    /**
+     * Reads a bounding box whose {@link #BOUNDING_BOX_MARKER} was already read.
+     */
+    static RectangleImpl readBoundingBox(ObjectInput in) throws IOException {
+        return new RectangleImpl(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+    }
+
+    static Coordinate[] toJtsCoordinates(double[] coordinates) {
+        Coordinate[] result = new Coordinate[coordinates.length / 2];
+        for (int i = 0; i < result.length; i++)
+            result[i] = new Coordinate(coordinates[i * 2], coordinates[i * 2 + 1]);
+        return result;
+    }
+
+    /**
+     * Writes the coordinates in the legacy format (point count followed by raw doubles), or in the compact format
+     * if enabled via {@link #COMPACT_SERIALIZATION_PROPERTY}.
+     */
+    static void writeExternal(ObjectOutput out, double[] coordinates) throws IOException {
+        if (COMPACT_SERIALIZATION)
+            writeCompact(out, coordinates, COMPACT_SERIALIZATION_PRECISION);
+        else
+            writeLegacy(out, coordinates);
+    }
+
+    /**
+     * Reads coordinates written in either the legacy or the compact format.
+     */
+    static double[] readExternal(ObjectInput in) throws IOException {
+        return readExternal(in, in.readInt());
+    }
+
+    /**
+     * Reads coordinates written in either the legacy or the compact format, whose header was already read.
+     */
+    static double[] readExternal(ObjectInput in, int header) throws IOException {
+        if (header >= 0)
+            return readLegacy(in, header);
+        if (header != COMPACT_FORMAT_MARKER)
+            throw new StreamCorruptedException("Unexpected coordinates header: " + header);
+        return readCompact(in);
+    }
+
+    static void writeLegacy(ObjectOutput out, double[] coordinates) throws IOException {
+        out.writeInt(numOfPoints(coordinates));
+        // Equivalent to writeDouble() per coordinate (big endian), written in bulk:
+        ByteBuffer buffer = ByteBuffer.allocate(coordinates.length * 8);
+        buffer.asDoubleBuffer().put(coordinates);
+        out.write(buffer.array());
+    }
+
+    private static double[] readLegacy(ObjectInput in, int numOfPoints) throws IOException {
+        byte[] bytes = new byte[numOfPoints * 16];
+        in.readFully(bytes);
+        double[] coordinates = new double[numOfPoints * 2];
+        ByteBuffer.wrap(bytes).asDoubleBuffer().get(coordinates);
+        return coordinates;
+    }
+
+    /**
+     * Writes the coordinates quantized to the specified number of decimal places, as zig-zag varint deltas
+     * between consecutive points.
+     */
+    static void writeCompact(ObjectOutput out, double[] coordinates, int precision) throws IOException {
+        final double scale = Math.pow(10, precision);
+        // Each varint takes at most 10 bytes:
+        byte[] buffer = new byte[coordinates.length * 10 + 10];
+        int pos = writeVarLong(buffer, 0, numOfPoints(coordinates));
+        long prevX = 0, prevY = 0;
+        for (int i = 0; i < coordinates.length; i += 2) {
+            long x = Math.round(coordinates[i] * scale);
+            long y = Math.round(coordinates[i + 1] * scale);
+            pos = writeVarLong(buffer, pos, zigZag(x - prevX));
+            pos = writeVarLong(buffer, pos, zigZag(y - prevY));
+            prevX = x;
+            prevY = y;
+        }
+        out.writeInt(COMPACT_FORMAT_MARKER);
+        out.writeByte(COMPACT_FORMAT_VERSION);
+        out.writeByte(precision);
+        out.writeInt(pos);
+        out.write(buffer, 0, pos);
+    }
+
+    private static double[] readCompact(ObjectInput in) throws IOException {
+        byte version = in.readByte();
+        if (version != COMPACT_FORMAT_VERSION)
+            throw new StreamCorruptedException("Unsupported compact coordinates format version: " + version);
+        final double scale = Math.pow(10, in.readByte());
+        byte[] buffer = new byte[in.readInt()];
+        in.readFully(buffer);
+        int[] pos = new int[] {0};
+        double[] coordinates = new double[(int) readVarLong(buffer, pos) * 2];
+        long x = 0, y = 0;
+        for (int i = 0; i < coordinates.length; i += 2) {
+            x += unZigZag(readVarLong(buffer, pos));
+            y += unZigZag(readVarLong(buffer, pos));
+            coordinates[i] = x / scale;
+            coordinates[i + 1] = y / scale;
+        }
+        return coordinates;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int writeVarLong(byte[] buffer, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static long readVarLong(byte[] buffer, int[] pos) {
+        long result = 0;
+        int p = pos[0];
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer[p++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                break;
+        }
+        pos[0] = p;
+        return result;
+    }
+}
@@ -18,10 +18,11 @@
 package org.openspaces.spatial.shapes.impl;
 
 import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
 import com.spatial4j.core.shape.Shape;
-import com.spatial4j.core.shape.impl.BufferedLineString;
 import org.openspaces.spatial.shapes.LineString;
 import org.openspaces.spatial.shapes.Point;
+import org.openspaces.spatial.shapes.Rectangle;
 import org.openspaces.spatial.ShapeFormat;
 import org.openspaces.spatial.spatial4j.Spatial4jShapeProvider;
 
@@ -30,8 +31,6 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 
 /**
  * @author Niv Ingberg
@@ -41,49 +40,55 @@ public class LineStringImpl implements LineString, Spatial4jShapeProvider, Exter
 
     private static final long serialVersionUID = 1L;
 
-    private Point[] points;
+    private double[] coordinates;
     private transient int hashcode;
-    private volatile transient com.spatial4j.core.shape.Shape spatial4jShape;
+    private volatile transient Object spatial4jShape;
+    private volatile transient RectangleImpl boundingBox;
 
     public LineStringImpl() {
     }
 
     public LineStringImpl(Point[] points) {
-        if (points.length < 2)
-            throw new IllegalArgumentException("LineString requires at least two points");
-        this.points = points;
+        this(CoordinateArrays.fromPoints(points));
+    }
+
+    /**
+     * Creates a line string from packed coordinates.
+     * @param coordinates The X and Y of each point, interleaved: [x0, y0, x1, y1, ...]. The array is used as is, not copied.
+     */
+    public LineStringImpl(double[] coordinates) {
+        CoordinateArrays.validate(coordinates, 2, "LineString");
+        this.coordinates = coordinates;
         initialize();
     }
 
     private void initialize() {
-        this.hashcode = Arrays.hashCode(points);
+        this.hashcode = CoordinateArrays.hashCode(coordinates);
     }
 
     @Override
     public int getNumOfPoints() {
-        if (points != null)
-            return points.length;
-        if (isJts())
-            return getJtsCoordinates().length;
-        return getSpatialPoints().size();
+        return CoordinateArrays.numOfPoints(coordinates);
     }
 
     @Override
     public double getX(int index) {
-        if (points != null)
-            return points[index].getX();
-        if (isJts())
-            return getJtsCoordinates()[index].getOrdinate(0);
-        return getSpatialPoints().get(index).getX();
+        return coordinates[index * 2];
     }
 
     @Override
     public double getY(int index) {
-        if (points != null)
-            return points[index].getY();
-        if (isJts())
-            return getJtsCoordinates()[index].getOrdinate(1);
-        return getSpatialPoints().get(index).getY();
+        return coordinates[index * 2 + 1];
+    }
+
+    @Override
+    public Rectangle getBoundingBox() {
+        RectangleImpl result = this.boundingBox;
+        if (result == null) {
+            result = CoordinateArrays.boundingBox(coordinates);
+            this.boundingBox = result;
+        }
+        return result;
     }
 
     @Override
@@ -117,94 +122,68 @@ public class LineStringImpl implements LineString, Spatial4jShapeProvider, Exter
         return appendTo(new StringBuilder(), shapeFormat).toString();
     }
 
+    @Override
+    public byte[] toByteArray(ShapeFormat shapeFormat) {
+        return WkbCodec.toByteArray(this, shapeFormat);
+    }
+
     @Override
     public StringBuilder appendTo(StringBuilder stringBuilder, ShapeFormat shapeFormat) {
         switch (shapeFormat) {
-            case WKT:       return appendWkt(stringBuilder);
-            case GEOJSON:   return appendGeoJson(stringBuilder);
+            case WKT:
+            case GEOJSON:   return ShapeTextFormatter.appendTo(stringBuilder, this, shapeFormat);
+            case WKB:       return WkbCodec.appendHex(stringBuilder, this);
             default:        throw new IllegalArgumentException("Unsupported shape type: " + shapeFormat);
         }
     }
 
-    private StringBuilder appendWkt(StringBuilder stringBuilder) {
-        final int length = getNumOfPoints();
-        stringBuilder.append("LINESTRING (");
-
-        for (int i = 0; i < length; i++) {
-            if (i != 0)
-                stringBuilder.append(", ");
-            stringBuilder.append(getX(i));
-            stringBuilder.append(' ');
-            stringBuilder.append(getY(i));
-        }
-        stringBuilder.append(")");
-        return stringBuilder;
-    }
-
-    private StringBuilder appendGeoJson(StringBuilder stringBuilder) {
-        stringBuilder.append("{\"type\":\"LineString\",\"coordinates\":[");
-        appendTuple(stringBuilder, getX(0), getY(0));
-        int length = getNumOfPoints();
-        for (int i=1 ; i < length ; i++) {
-            stringBuilder.append(',');
-            appendTuple(stringBuilder, getX(i), getY(i));}
-        stringBuilder.append("]}");
-        return stringBuilder;
-    }
-
-    private static void appendTuple(StringBuilder stringBuilder, double x, double y) {
-        stringBuilder.append('[');
-        stringBuilder.append(x);
-        stringBuilder.append(',');
-        stringBuilder.append(y);
-        stringBuilder.append(']');
+    double[] getCoordinates() {
+        return coordinates;
     }
 
     @Override
     public Shape getSpatial4jShape(SpatialContext spatialContext) {
-        com.spatial4j.core.shape.Shape result = this.spatial4jShape;
+        com.spatial4j.core.shape.Shape result = Spatial4jShapeCache.get(this, this.spatial4jShape, spatialContext);
         if (result == null) {
-            ArrayList<com.spatial4j.core.shape.Point> spatialPoints = new ArrayList<com.spatial4j.core.shape.Point>(points.length);
-            for (Point p : points)
-                spatialPoints.add(spatialContext.makePoint(p.getX(), p.getY()));
-            result = spatialContext.makeLineString(spatialPoints);
-            this.spatial4jShape = result;
-            this.points = null;
+            if (spatialContext instanceof JtsSpatialContext && ((JtsSpatialContext) spatialContext).useJtsLineString())
+                result = createJtsShape((JtsSpatialContext) spatialContext);
+            else
+                result = createBufferedLineString(spatialContext);
+            this.spatial4jShape = Spatial4jShapeCache.put(this, result);
         }
         return result;
     }
 
-    private boolean isJts() {
-        return spatial4jShape instanceof com.spatial4j.core.shape.jts.JtsGeometry;
-    }
-    private com.vividsolutions.jts.geom.Coordinate[] getJtsCoordinates() {
-        return ((com.spatial4j.core.shape.jts.JtsGeometry) spatial4jShape).getGeom().getCoordinates();
+    /**
+     * Builds the JTS geometry directly from the coordinates, without creating intermediate spatial4j points.
+     */
+    private Shape createJtsShape(JtsSpatialContext spatialContext) {
+        return spatialContext.makeShape(spatialContext.getGeometryFactory().createLineString(CoordinateArrays.toJtsCoordinates(coordinates)),
+                true, spatialContext.isAllowMultiOverlap());
     }
 
-    private List<com.spatial4j.core.shape.Point> getSpatialPoints() {
-        return ((BufferedLineString) spatial4jShape).getPoints();
+    private Shape createBufferedLineString(SpatialContext spatialContext) {
+        final int length = getNumOfPoints();
+        ArrayList<com.spatial4j.core.shape.Point> spatialPoints = new ArrayList<com.spatial4j.core.shape.Point>(length);
+        for (int i = 0; i < length; i++)
+            spatialPoints.add(spatialContext.makePoint(getX(i), getY(i)));
+        return spatialContext.makeLineString(spatialPoints);
     }
 
-
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
-        final int length = getNumOfPoints();
-        out.writeInt(length);
-        for (int i = 0; i < length; i++) {
-            out.writeDouble(getX(i));
-            out.writeDouble(getY(i));
-        }
+        CoordinateArrays.writeBoundingBox(out, this);
+        CoordinateArrays.writeExternal(out, coordinates);
     }
 
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-        int length = in.readInt();
-        points = new Point[length];
-        for (int i=0 ; i < length ; i++) {
-            double x = in.readDouble();
-            double y = in.readDouble();
-            points[i] = new PointImpl(x, y);
+        int header = in.readInt();
+        if (header == CoordinateArrays.BOUNDING_BOX_MARKER) {
+            boundingBox = CoordinateArrays.readBoundingBox(in);
+            header = in.readInt();
         }
+        coordinates = CoordinateArrays.readExternal(in, header);
         initialize();
     }
 }
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.shapes.impl;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import com.spatial4j.core.shape.Shape;
+import com.spatial4j.core.shape.ShapeCollection;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.openspaces.spatial.ShapeFormat;
+import org.openspaces.spatial.shapes.LineString;
+import org.openspaces.spatial.shapes.MultiLineString;
+import org.openspaces.spatial.shapes.Rectangle;
+import org.openspaces.spatial.spatial4j.Spatial4jShapeProvider;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class MultiLineStringImpl implements MultiLineString, Spatial4jShapeProvider, Externalizable {
+
+    private static final long serialVersionUID = 1L;
+
+    private LineStringImpl[] lineStrings;
+    private transient int hashcode;
+    private volatile transient Object spatial4jShape;
+    private volatile transient RectangleImpl boundingBox;
+
+    public MultiLineStringImpl() {
+    }
+
+    /**
+     * Creates a multi line string from the specified line strings. The array is used as is, not copied.
+     */
+    public MultiLineStringImpl(LineStringImpl[] lineStrings) {
+        if (lineStrings.length == 0)
+            throw new IllegalArgumentException("MultiLineString requires at least one line string");
+        this.lineStrings = lineStrings;
+        initialize();
+    }
+
+    private void initialize() {
+        this.hashcode = Arrays.hashCode(lineStrings);
+    }
+
+    @Override
+    public int getNumOfLineStrings() {
+        return lineStrings.length;
+    }
+
+    @Override
+    public LineString getLineString(int index) {
+        return lineStrings[index];
+    }
+
+    @Override
+    public Rectangle getBoundingBox() {
+        RectangleImpl result = this.boundingBox;
+        if (result == null) {
+            for (LineStringImpl lineString : lineStrings)
+                result = CoordinateArrays.union(result, lineString.getBoundingBox());
+            this.boundingBox = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        MultiLineStringImpl other = (MultiLineStringImpl) o;
+        return Arrays.equals(this.lineStrings, other.lineStrings);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashcode;
+    }
+
+    @Override
+    public String toString() {
+        return toString(ShapeFormat.WKT);
+    }
+
+    @Override
+    public String toString(ShapeFormat shapeFormat) {
+        return appendTo(new StringBuilder(), shapeFormat).toString();
+    }
+
+    @Override
+    public byte[] toByteArray(ShapeFormat shapeFormat) {
+        return WkbCodec.toByteArray(this, shapeFormat);
+    }
+
+    @Override
+    public StringBuilder appendTo(StringBuilder stringBuilder, ShapeFormat shapeFormat) {
+        switch (shapeFormat) {
+            case WKT:
+            case GEOJSON:   return ShapeTextFormatter.appendTo(stringBuilder, this, shapeFormat);
+            case WKB:       return WkbCodec.appendHex(stringBuilder, this);
+            default:        throw new IllegalArgumentException("Unsupported shape type: " + shapeFormat);
+        }
+    }
+
+    @Override
+    public Shape getSpatial4jShape(SpatialContext spatialContext) {
+        com.spatial4j.core.shape.Shape result = Spatial4jShapeCache.get(this, this.spatial4jShape, spatialContext);
+        if (result == null) {
+            if (spatialContext instanceof JtsSpatialContext && ((JtsSpatialContext) spatialContext).useJtsLineString())
+                result = createJtsShape((JtsSpatialContext) spatialContext);
+            else
+                result = createShapeCollection(spatialContext);
+            this.spatial4jShape = Spatial4jShapeCache.put(this, result);
+        }
+        return result;
+    }
+
+    /**
+     * Builds a single JTS geometry for all the line strings, so the shape is indexed and queried as one.
+     */
+    private Shape createJtsShape(JtsSpatialContext spatialContext) {
+        final GeometryFactory geometryFactory = spatialContext.getGeometryFactory();
+        com.vividsolutions.jts.geom.LineString[] jtsLineStrings = new com.vividsolutions.jts.geom.LineString[lineStrings.length];
+        for (int i = 0; i < lineStrings.length; i++)
+            jtsLineStrings[i] = geometryFactory.createLineString(CoordinateArrays.toJtsCoordinates(lineStrings[i].getCoordinates()));
+        return spatialContext.makeShape(geometryFactory.createMultiLineString(jtsLineStrings), true, spatialContext.isAllowMultiOverlap());
+    }
+
+    private Shape createShapeCollection(SpatialContext spatialContext) {
+        List<Shape> shapes = new ArrayList<Shape>(lineStrings.length);
+        for (LineStringImpl lineString : lineStrings)
+            shapes.add(lineString.getSpatial4jShape(spatialContext));
+        return new ShapeCollection<Shape>(shapes, spatialContext);
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        CoordinateArrays.writeBoundingBox(out, this);
+        out.writeInt(lineStrings.length);
+        for (LineStringImpl lineString : lineStrings)
+            lineString.writeExternal(out);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        int header = in.readInt();
+        if (header == CoordinateArrays.BOUNDING_BOX_MARKER) {
+            boundingBox = CoordinateArrays.readBoundingBox(in);
+            header = in.readInt();
+        }
+        lineStrings = new LineStringImpl[header];
+        for (int i = 0; i < lineStrings.length; i++) {
+            lineStrings[i] = new LineStringImpl();
+            lineStrings[i].readExternal(in);
+        }
+        initialize();
+    }
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.shapes.impl;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.shape.Shape;
+import com.spatial4j.core.shape.ShapeCollection;
+import org.openspaces.spatial.ShapeFormat;
+import org.openspaces.spatial.shapes.MultiPoint;
+import org.openspaces.spatial.shapes.Rectangle;
+import org.openspaces.spatial.spatial4j.Spatial4jShapeProvider;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class MultiPointImpl implements MultiPoint, Spatial4jShapeProvider, Externalizable {
+
+    private static final long serialVersionUID = 1L;
+
+    private double[] coordinates;
+    private transient int hashcode;
+    private volatile transient Object spatial4jShape;
+    private volatile transient RectangleImpl boundingBox;
+
+    public MultiPointImpl() {
+    }
+
+    /**
+     * Creates a multi point from packed coordinates.
+     * @param coordinates The X and Y of each point, interleaved: [x0, y0, x1, y1, ...]. The array is used as is, not copied.
+     */
+    public MultiPointImpl(double[] coordinates) {
+        CoordinateArrays.validate(coordinates, 1, "MultiPoint");
+        this.coordinates = coordinates;
+        initialize();
+    }
+
+    private void initialize() {
+        this.hashcode = CoordinateArrays.hashCode(coordinates);
+    }
+
+    @Override
+    public int getNumOfPoints() {
+        return CoordinateArrays.numOfPoints(coordinates);
+    }
+
+    @Override
+    public double getX(int index) {
+        return coordinates[index * 2];
+    }
+
+    @Override
+    public double getY(int index) {
+        return coordinates[index * 2 + 1];
+    }
+
+    @Override
+    public Rectangle getBoundingBox() {
+        RectangleImpl result = this.boundingBox;
+        if (result == null) {
+            result = CoordinateArrays.boundingBox(coordinates);
+            this.boundingBox = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        MultiPointImpl other = (MultiPointImpl) o;
+        return CoordinateArrays.equals(this.coordinates, other.coordinates);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashcode;
+    }
+
+    @Override
+    public String toString() {
+        return toString(ShapeFormat.WKT);
+    }
+
+    @Override
+    public String toString(ShapeFormat shapeFormat) {
+        return appendTo(new StringBuilder(), shapeFormat).toString();
+    }
+
+    @Override
+    public byte[] toByteArray(ShapeFormat shapeFormat) {
+        return WkbCodec.toByteArray(this, shapeFormat);
+    }
+
+    @Override
+    public StringBuilder appendTo(StringBuilder stringBuilder, ShapeFormat shapeFormat) {
+        switch (shapeFormat) {
+            case WKT:
+            case GEOJSON:   return ShapeTextFormatter.appendTo(stringBuilder, this, shapeFormat);
+            case WKB:       return WkbCodec.appendHex(stringBuilder, this);
+            default:        throw new IllegalArgumentException("Unsupported shape type: " + shapeFormat);
+        }
+    }
+
+    @Override
+    public Shape getSpatial4jShape(SpatialContext spatialContext) {
+        com.spatial4j.core.shape.Shape result = Spatial4jShapeCache.get(this, this.spatial4jShape, spatialContext);
+        if (result == null) {
+            final int length = getNumOfPoints();
+            List<com.spatial4j.core.shape.Point> points = new ArrayList<com.spatial4j.core.shape.Point>(length);
+            for (int i = 0; i < length; i++)
+                points.add(spatialContext.makePoint(getX(i), getY(i)));
+            result = new ShapeCollection<com.spatial4j.core.shape.Point>(points, spatialContext);
+            this.spatial4jShape = Spatial4jShapeCache.put(this, result);
+        }
+        return result;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        CoordinateArrays.writeBoundingBox(out, this);
+        CoordinateArrays.writeExternal(out, coordinates);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        int header = in.readInt();
+        if (header == CoordinateArrays.BOUNDING_BOX_MARKER) {
+            boundingBox = CoordinateArrays.readBoundingBox(in);
+            header = in.readInt();
+        }
+        coordinates = CoordinateArrays.readExternal(in, header);
+        initialize();
+    }
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.shapes.impl;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import com.spatial4j.core.shape.Shape;
+import com.spatial4j.core.shape.ShapeCollection;
+import com.spatial4j.core.shape.jts.JtsGeometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.openspaces.spatial.ShapeFormat;
+import org.openspaces.spatial.shapes.MultiPolygon;
+import org.openspaces.spatial.shapes.Polygon;
+import org.openspaces.spatial.shapes.Rectangle;
+import org.openspaces.spatial.spatial4j.Spatial4jShapeProvider;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class MultiPolygonImpl implements MultiPolygon, Spatial4jShapeProvider, Externalizable {
+
+    private static final long serialVersionUID = 1L;
+
+    private PolygonImpl[] polygons;
+    private transient int hashcode;
+    private volatile transient Object spatial4jShape;
+    private volatile transient RectangleImpl boundingBox;
+
+    public MultiPolygonImpl() {
+    }
+
+    /**
+     * Creates a multi polygon from the specified polygons. The array is used as is, not copied.
+     */
+    public MultiPolygonImpl(PolygonImpl[] polygons) {
+        if (polygons.length == 0)
+            throw new IllegalArgumentException("MultiPolygon requires at least one polygon");
+        this.polygons = polygons;
+        initialize();
+    }
+
+    private void initialize() {
+        this.hashcode = Arrays.hashCode(polygons);
+    }
+
+    @Override
+    public int getNumOfPolygons() {
+        return polygons.length;
+    }
+
+    @Override
+    public Polygon getPolygon(int index) {
+        return polygons[index];
+    }
+
+    @Override
+    public Rectangle getBoundingBox() {
+        RectangleImpl result = this.boundingBox;
+        if (result == null) {
+            for (PolygonImpl polygon : polygons)
+                result = CoordinateArrays.union(result, polygon.getBoundingBox());
+            this.boundingBox = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        MultiPolygonImpl other = (MultiPolygonImpl) o;
+        return Arrays.equals(this.polygons, other.polygons);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashcode;
+    }
+
+    @Override
+    public String toString() {
+        return toString(ShapeFormat.WKT);
+    }
+
+    @Override
+    public String toString(ShapeFormat shapeFormat) {
+        return appendTo(new StringBuilder(), shapeFormat).toString();
+    }
+
+    @Override
+    public byte[] toByteArray(ShapeFormat shapeFormat) {
+        return WkbCodec.toByteArray(this, shapeFormat);
+    }
+
+    @Override
+    public StringBuilder appendTo(StringBuilder stringBuilder, ShapeFormat shapeFormat) {
+        switch (shapeFormat) {
+            case WKT:
+            case GEOJSON:   return ShapeTextFormatter.appendTo(stringBuilder, this, shapeFormat);
+            case WKB:       return WkbCodec.appendHex(stringBuilder, this);
+            default:        throw new IllegalArgumentException("Unsupported shape type: " + shapeFormat);
+        }
+    }
+
+    @Override
+    public Shape getSpatial4jShape(SpatialContext spatialContext) {
+        com.spatial4j.core.shape.Shape result = Spatial4jShapeCache.get(this, this.spatial4jShape, spatialContext);
+        if (result == null) {
+            if (spatialContext instanceof JtsSpatialContext)
+                result = createJtsShape((JtsSpatialContext) spatialContext);
+            else
+                result = createShapeCollection(spatialContext);
+            this.spatial4jShape = Spatial4jShapeCache.put(this, result);
+        }
+        return result;
+    }
+
+    /**
+     * Builds a single JTS geometry for all the polygons, so the shape is indexed and queried as one (and prepared for
+     * queries only if the context's WKT reader auto-indexes geometries, as for polygons).
+     */
+    private Shape createJtsShape(JtsSpatialContext spatialContext) {
+        final GeometryFactory geometryFactory = spatialContext.getGeometryFactory();
+        com.vividsolutions.jts.geom.Polygon[] jtsPolygons = new com.vividsolutions.jts.geom.Polygon[polygons.length];
+        for (int i = 0; i < polygons.length; i++)
+            jtsPolygons[i] = polygons[i].toJtsPolygon(geometryFactory);
+        JtsGeometry result = spatialContext.makeShape(geometryFactory.createMultiPolygon(jtsPolygons), true, spatialContext.isAllowMultiOverlap());
+        result.validate();
+        if (PolygonImpl.isAutoIndex(spatialContext))
+            result.index();
+        return result;
+    }
+
+    private Shape createShapeCollection(SpatialContext spatialContext) {
+        List<Shape> shapes = new ArrayList<Shape>(polygons.length);
+        for (PolygonImpl polygon : polygons)
+            shapes.add(polygon.getSpatial4jShape(spatialContext));
+        return new ShapeCollection<Shape>(shapes, spatialContext);
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        CoordinateArrays.writeBoundingBox(out, this);
+        out.writeInt(polygons.length);
+        for (PolygonImpl polygon : polygons)
+            polygon.writeExternal(out);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        int header = in.readInt();
+        if (header == CoordinateArrays.BOUNDING_BOX_MARKER) {
+            boundingBox = CoordinateArrays.readBoundingBox(in);
+            header = in.readInt();
+        }
+        polygons = new PolygonImpl[header];
+        for (int i = 0; i < polygons.length; i++) {
+            polygons[i] = new PolygonImpl();
+            polygons[i].readExternal(in);
+        }
+        initialize();
+    }
+}
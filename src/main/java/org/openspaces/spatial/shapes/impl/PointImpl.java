@@ -18,6 +18,7 @@
 package org.openspaces.spatial.shapes.impl;
 
 import org.openspaces.spatial.shapes.Point;
+import org.openspaces.spatial.shapes.Rectangle;
 import org.openspaces.spatial.ShapeFormat;
 import com.spatial4j.core.context.SpatialContext;
 import com.spatial4j.core.shape.Shape;
@@ -37,7 +38,7 @@ public class PointImpl implements Point, Spatial4jShapeProvider, Externalizable
 
     private double x;
     private double y;
-    private volatile transient com.spatial4j.core.shape.Shape spatial4jShape;
+    private volatile transient Object spatial4jShape;
 
     public PointImpl() {
     }
@@ -57,44 +58,37 @@ public class PointImpl implements Point, Spatial4jShapeProvider, Externalizable
         return y;
     }
 
+    @Override
+    public Rectangle getBoundingBox() {
+        return new RectangleImpl(x, x, y, y);
+    }
+
     @Override
     public String toString(ShapeFormat shapeFormat) {
         return appendTo(new StringBuilder(), shapeFormat).toString();
     }
 
+    @Override
+    public byte[] toByteArray(ShapeFormat shapeFormat) {
+        return WkbCodec.toByteArray(this, shapeFormat);
+    }
+
     @Override
     public StringBuilder appendTo(StringBuilder stringBuilder, ShapeFormat shapeFormat) {
         switch (shapeFormat) {
-            case WKT:       return appendWkt(stringBuilder);
-            case GEOJSON:   return appendGeoJson(stringBuilder);
+            case WKT:
+            case GEOJSON:   return ShapeTextFormatter.appendTo(stringBuilder, this, shapeFormat);
+            case WKB:       return WkbCodec.appendHex(stringBuilder, this);
             default:        throw new IllegalArgumentException("Unsupported shape type: " + shapeFormat);
         }
     }
 
-    private StringBuilder appendWkt(StringBuilder stringBuilder) {
-        stringBuilder.append("POINT (");
-        stringBuilder.append(x);
-        stringBuilder.append(' ');
-        stringBuilder.append(y);
-        stringBuilder.append(')');
-        return stringBuilder;
-    }
-
-    private StringBuilder appendGeoJson(StringBuilder stringBuilder) {
-        stringBuilder.append("{\"type\":\"Point\",\"coordinates\":[");
-        stringBuilder.append(x);
-        stringBuilder.append(',');
-        stringBuilder.append(y);
-        stringBuilder.append("]}");
-        return stringBuilder;
-    }
-
     @Override
     public Shape getSpatial4jShape(SpatialContext spatialContext) {
-        com.spatial4j.core.shape.Shape result = this.spatial4jShape;
+        com.spatial4j.core.shape.Shape result = Spatial4jShapeCache.get(this, this.spatial4jShape, spatialContext);
         if (result == null) {
             result = spatialContext.makePoint(x, y);
-            this.spatial4jShape = result;
+            this.spatial4jShape = Spatial4jShapeCache.put(this, result);
         }
         return result;
     }
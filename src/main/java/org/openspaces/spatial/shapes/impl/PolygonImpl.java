@@ -17,12 +17,23 @@
  ******************************************************************************/
 package org.openspaces.spatial.shapes.impl;
 
+import org.openspaces.spatial.shapes.LineString;
 import org.openspaces.spatial.shapes.Point;
 import org.openspaces.spatial.shapes.Polygon;
+import org.openspaces.spatial.shapes.Rectangle;
 import org.openspaces.spatial.ShapeFormat;
+import org.openspaces.spatial.ShapeValidationPolicy;
 import com.spatial4j.core.context.SpatialContext;
-import com.spatial4j.core.shape.Rectangle;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import com.spatial4j.core.io.ShapeReader;
+import com.spatial4j.core.io.jts.JtsWktShapeParser;
+import com.spatial4j.core.exception.InvalidShapeException;
 import com.spatial4j.core.shape.Shape;
+import com.spatial4j.core.shape.jts.JtsGeometry;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.operation.valid.IsValidOp;
 import org.openspaces.spatial.spatial4j.Spatial4jShapeProvider;
 
 import java.io.Externalizable;
@@ -39,59 +50,127 @@ import java.util.Arrays;
 public class PolygonImpl implements Polygon, Spatial4jShapeProvider, Externalizable {
 
     private static final long serialVersionUID = 1L;
+    // Header which precedes the rings of a polygon with holes (polygons without holes are written as before):
+    private static final int RINGS_MARKER = -2;
+    // Header which precedes the validity of a validated polygon (written only if enabled via
+    // CoordinateArrays.VALIDITY_SERIALIZATION_PROPERTY, since previous versions cannot read it):
+    private static final int VALIDITY_MARKER = -4;
+    private static final byte VALIDITY_UNKNOWN = 0;
+    private static final byte VALIDITY_VALID = 1;
+    private static final byte VALIDITY_REPAIR = 2;
+    private static final GeometryFactory VALIDATION_GEOMETRY_FACTORY = new GeometryFactory();
 
-    private Point[] points;
+    private double[] coordinates;
+    private double[][] holes = CoordinateArrays.NO_RINGS;
+    private byte validity = VALIDITY_UNKNOWN;
     private transient int hashcode;
-    private volatile transient com.spatial4j.core.shape.Shape spatial4jShape;
+    private volatile transient Object spatial4jShape;
+    private volatile transient RectangleImpl boundingBox;
 
     public PolygonImpl() {
     }
 
     public PolygonImpl(Point[] points) {
-        if (points.length < 3)
-            throw new IllegalArgumentException("Polygon requires at least three points");
-        if (points.length == 3 && points[0].equals(points[2]))
-            throw new IllegalArgumentException("Polygon requires at least three distinct points " + Arrays.asList(points));
-        this.points = points;
+        this(CoordinateArrays.fromPoints(points));
+    }
+
+    /**
+     * Creates a polygon from packed coordinates.
+     * @param coordinates The X and Y of each point, interleaved: [x0, y0, x1, y1, ...]. The array is used as is, not copied.
+     */
+    public PolygonImpl(double[] coordinates) {
+        this(coordinates, CoordinateArrays.NO_RINGS);
+    }
+
+    /**
+     * Creates a polygon with holes from packed coordinates.
+     * @param coordinates The X and Y of each point of the exterior ring, interleaved. The array is used as is, not copied.
+     * @param holes The X and Y of each point of each hole, interleaved. The arrays are used as is, not copied.
+     */
+    public PolygonImpl(double[] coordinates, double[][] holes) {
+        validateRing(coordinates, "Polygon");
+        for (double[] hole : holes)
+            validateRing(hole, "Polygon hole");
+        this.coordinates = coordinates;
+        this.holes = holes;
         initialize();
     }
 
+    /**
+     * Validates the polygon according to the specified policy. The result is kept with the polygon, so the polygon is
+     * not validated again when converted to a spatial4j shape. Deferred validation leaves the polygon unvalidated.
+     * @return This polygon
+     * @throws InvalidShapeException If the polygon is invalid and the policy is strict.
+     */
+    public PolygonImpl applyValidationPolicy(ShapeValidationPolicy policy) {
+        if (policy == ShapeValidationPolicy.DEFERRED) {
+            validity = VALIDITY_UNKNOWN;
+        } else if (policy == ShapeValidationPolicy.TRUST) {
+            validity = VALIDITY_VALID;
+        } else {
+            IsValidOp isValidOp = new IsValidOp(toJtsPolygon(VALIDATION_GEOMETRY_FACTORY));
+            if (isValidOp.isValid())
+                validity = VALIDITY_VALID;
+            else if (policy == ShapeValidationPolicy.REPAIR)
+                validity = VALIDITY_REPAIR;
+            else
+                throw new InvalidShapeException(isValidOp.getValidationError().toString());
+        }
+        return this;
+    }
+
+    private static void validateRing(double[] coordinates, String name) {
+        CoordinateArrays.validate(coordinates, 3, name);
+        if (coordinates.length == 6 && CoordinateArrays.samePoint(coordinates, 0, 2))
+            throw new IllegalArgumentException(name + " requires at least three distinct points " + Arrays.toString(coordinates));
+    }
+
     private void initialize() {
-        if (!points[0].equals(points[points.length-1])) {
-            // Create a copy of points and append the first point at the end:
-            Point[] temp = new Point[points.length + 1];
-            System.arraycopy(points,0, temp, 0, points.length);
-            temp[points.length] = temp[0];
-            points = temp;
+        coordinates = CoordinateArrays.close(coordinates);
+        int hash = CoordinateArrays.hashCode(coordinates);
+        for (int i = 0; i < holes.length; i++) {
+            holes[i] = CoordinateArrays.close(holes[i]);
+            hash = 31 * hash + CoordinateArrays.hashCode(holes[i]);
         }
-        this.hashcode = Arrays.hashCode(points);
+        this.hashcode = hash;
     }
 
     @Override
     public int getNumOfPoints() {
-        if (points != null)
-            return points.length;
-        if (isRectangle(spatial4jShape))
-            return 5;
-        return getCoordinates(spatial4jShape).length;
+        return CoordinateArrays.numOfPoints(coordinates);
     }
 
     @Override
     public double getX(int index) {
-        if (points != null)
-            return points[index].getX();
-        if (isRectangle(spatial4jShape))
-            return getRectangleCoordinate(spatial4jShape, index, 0);
-        return getCoordinates(spatial4jShape)[index].getOrdinate(0);
+        return coordinates[index * 2];
     }
 
     @Override
     public double getY(int index) {
-        if (points != null)
-            return points[index].getY();
-        if (isRectangle(spatial4jShape))
-            return getRectangleCoordinate(spatial4jShape, index, 1);
-        return getCoordinates(spatial4jShape)[index].getOrdinate(1);
+        return coordinates[index * 2 + 1];
+    }
+
+    /**
+     * Gets the bounding box of the exterior ring (holes are within it).
+     */
+    @Override
+    public Rectangle getBoundingBox() {
+        RectangleImpl result = this.boundingBox;
+        if (result == null) {
+            result = CoordinateArrays.boundingBox(coordinates);
+            this.boundingBox = result;
+        }
+        return result;
+    }
+
+    @Override
+    public int getNumOfHoles() {
+        return holes.length;
+    }
+
+    @Override
+    public LineString getHole(int index) {
+        return new LineStringImpl(holes[index]);
     }
 
     @Override
@@ -100,11 +179,12 @@ public class PolygonImpl implements Polygon, Spatial4jShapeProvider, Externaliza
         if (o == null || getClass() != o.getClass()) return false;
 
         PolygonImpl other = (PolygonImpl) o;
-        final int length = this.getNumOfPoints();
-        if (length != other.getNumOfPoints())
+        if (!CoordinateArrays.equals(this.coordinates, other.coordinates))
             return false;
-        for (int i=0 ; i < length ; i++) {
-            if (this.getX(i) != other.getX(i) || this.getY(i) != other.getY(i))
+        if (this.holes.length != other.holes.length)
+            return false;
+        for (int i=0 ; i < holes.length ; i++) {
+            if (!CoordinateArrays.equals(this.holes[i], other.holes[i]))
                 return false;
         }
         return true;
@@ -127,105 +207,138 @@ public class PolygonImpl implements Polygon, Spatial4jShapeProvider, Externaliza
         return appendTo(new StringBuilder(), shapeFormat).toString();
     }
 
+    @Override
+    public byte[] toByteArray(ShapeFormat shapeFormat) {
+        return WkbCodec.toByteArray(this, shapeFormat);
+    }
+
     @Override
     public StringBuilder appendTo(StringBuilder stringBuilder, ShapeFormat shapeFormat) {
         switch (shapeFormat) {
-            case WKT:       return appendWkt(stringBuilder);
-            case GEOJSON:   return appendGeoJson(stringBuilder);
+            case WKT:
+            case GEOJSON:   return ShapeTextFormatter.appendTo(stringBuilder, this, shapeFormat);
+            case WKB:       return WkbCodec.appendHex(stringBuilder, this);
             default:        throw new IllegalArgumentException("Unsupported shape type: " + shapeFormat);
         }
     }
 
-    private StringBuilder appendGeoJson(StringBuilder stringBuilder) {
-        stringBuilder.append("{\"type\":\"Polygon\",\"coordinates\":[[");
-        appendTuple(stringBuilder, getX(0), getY(0));
-        int length = getNumOfPoints();
-        for (int i=1 ; i < length ; i++) {
-            stringBuilder.append(',');
-            appendTuple(stringBuilder, getX(i), getY(i));}
-        stringBuilder.append("]]}");
-        return stringBuilder;
-    }
+    @Override
+    public Shape getSpatial4jShape(SpatialContext spatialContext) {
+        com.spatial4j.core.shape.Shape result = Spatial4jShapeCache.get(this, this.spatial4jShape, spatialContext);
+        if (result == null) {
+            if (spatialContext instanceof JtsSpatialContext)
+                result = createJtsShape((JtsSpatialContext) spatialContext);
+            else
+                result = readWkt(spatialContext);
 
-    private static void appendTuple(StringBuilder stringBuilder, double x, double y) {
-        stringBuilder.append('[');
-        stringBuilder.append(x);
-        stringBuilder.append(',');
-        stringBuilder.append(y);
-        stringBuilder.append(']');
+            this.spatial4jShape = Spatial4jShapeCache.put(this, result);
+        }
+        return result;
     }
 
-    private StringBuilder appendWkt(StringBuilder stringBuilder) {
-        final int length = getNumOfPoints();
-        stringBuilder.append("POLYGON ((");
-
-        for (int i = 0; i < length; i++) {
-            if (i != 0)
-                stringBuilder.append(", ");
-            stringBuilder.append(getX(i));
-            stringBuilder.append(' ');
-            stringBuilder.append(getY(i));
+    private Shape readWkt(SpatialContext spatialContext) {
+        try {
+            return spatialContext.getFormats().getWktReader().read(toString(ShapeFormat.WKT));
+        } catch (ParseException e) {
+            throw new IllegalStateException("Failed to convert polygon to Spatial4J", e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to convert polygon to Spatial4J", e);
         }
-        stringBuilder.append("))");
-        return stringBuilder;
     }
 
-    @Override
-    public Shape getSpatial4jShape(SpatialContext spatialContext) {
-        com.spatial4j.core.shape.Shape result = this.spatial4jShape;
-        if (result == null) {
-            try {
-                result = spatialContext.getFormats().getWktReader().read(toString(ShapeFormat.WKT));
-            } catch (ParseException e) {
-                throw new IllegalStateException("Failed to convert polygon to Spatial4J", e);
-            } catch (IOException e) {
-                throw new IllegalStateException("Failed to convert polygon to Spatial4J", e);
-            }
-
-            this.spatial4jShape = result;
-            this.points = null;
+    /**
+     * Builds the JTS geometry directly from the coordinates, applying the same rules as the context's WKT reader
+     * (rectangles are converted to spatial4j rectangles, geometries are validated, and are indexed only if the reader
+     * auto-indexes them) without formatting and re-parsing the polygon as text. Polygons which were already validated are not validated again, and
+     * invalid polygons accepted for repair are buffered by zero.
+     */
+    private Shape createJtsShape(JtsSpatialContext spatialContext) {
+        final com.vividsolutions.jts.geom.Polygon polygon = toJtsPolygon(spatialContext.getGeometryFactory());
+        if (polygon.isRectangle()) {
+            // In geo contexts the reader decides whether a rectangle crosses the dateline by its configured dateline
+            // rule (its width or its orientation), so (small) rectangles are left to it:
+            if (spatialContext.isGeo())
+                return readWkt(spatialContext);
+            Envelope envelope = polygon.getEnvelopeInternal();
+            return spatialContext.makeRectangle(envelope.getMinX(), envelope.getMaxX(), envelope.getMinY(), envelope.getMaxY());
+        }
+        JtsGeometry result;
+        if (validity == VALIDITY_REPAIR) {
+            result = spatialContext.makeShape(polygon.buffer(0), true, spatialContext.isAllowMultiOverlap());
+        } else {
+            result = spatialContext.makeShape(polygon, true, spatialContext.isAllowMultiOverlap());
+            if (validity != VALIDITY_VALID)
+                result.validate();
         }
+        if (isAutoIndex(spatialContext))
+            result.index();
         return result;
     }
 
-    private static boolean isRectangle(com.spatial4j.core.shape.Shape shape) {
-        return shape instanceof com.spatial4j.core.shape.Rectangle;
+    /**
+     * Checks if the WKT reader of the specified context indexes the geometries it reads (false by default, as the
+     * prepared geometry is kept in memory along with the shape).
+     */
+    static boolean isAutoIndex(JtsSpatialContext spatialContext) {
+        final ShapeReader reader = spatialContext.getFormats().getWktReader();
+        return reader instanceof JtsWktShapeParser && ((JtsWktShapeParser) reader).isAutoIndex();
     }
 
-    private static double getRectangleCoordinate(com.spatial4j.core.shape.Shape shape, int index, int ordinate) {
-        com.spatial4j.core.shape.Rectangle rectangle = (Rectangle) shape;
-        switch (index) {
-            case 0: return ordinate == 0 ? rectangle.getMinX() : rectangle.getMinY();
-            case 1: return ordinate == 0 ? rectangle.getMaxX() : rectangle.getMinY();
-            case 2: return ordinate == 0 ? rectangle.getMaxX() : rectangle.getMaxY();
-            case 3: return ordinate == 0 ? rectangle.getMinX() : rectangle.getMaxY();
-            case 4: return ordinate == 0 ? rectangle.getMinX() : rectangle.getMinY();
-            default:throw new IllegalArgumentException("Illegal index " + index + " - a rectangle polygon has 4 points");
+    com.vividsolutions.jts.geom.Polygon toJtsPolygon(GeometryFactory geometryFactory) {
+        LinearRing[] interiorRings = null;
+        if (holes.length != 0) {
+            interiorRings = new LinearRing[holes.length];
+            for (int i = 0; i < holes.length; i++)
+                interiorRings[i] = geometryFactory.createLinearRing(CoordinateArrays.toJtsCoordinates(holes[i]));
         }
+        return geometryFactory.createPolygon(geometryFactory.createLinearRing(CoordinateArrays.toJtsCoordinates(coordinates)), interiorRings);
     }
 
-    private static com.vividsolutions.jts.geom.Coordinate[] getCoordinates(com.spatial4j.core.shape.Shape shape) {
-        return ((com.spatial4j.core.shape.jts.JtsGeometry) shape).getGeom().getCoordinates();
+    double[] getCoordinates() {
+        return coordinates;
+    }
+
+    double[][] getHoles() {
+        return holes;
     }
 
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
-        final int length = getNumOfPoints();
-        out.writeInt(length);
-        for (int i = 0; i < length; i++) {
-            out.writeDouble(getX(i));
-            out.writeDouble(getY(i));
+        CoordinateArrays.writeBoundingBox(out, this);
+        if (CoordinateArrays.VALIDITY_SERIALIZATION && validity != VALIDITY_UNKNOWN) {
+            out.writeInt(VALIDITY_MARKER);
+            out.writeByte(validity);
+        }
+        if (holes.length != 0) {
+            out.writeInt(RINGS_MARKER);
+            out.writeInt(holes.length);
         }
+        CoordinateArrays.writeExternal(out, coordinates);
+        for (double[] hole : holes)
+            CoordinateArrays.writeExternal(out, hole);
     }
 
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-        int length = in.readInt();
-        points = new Point[length];
-        for (int i=0 ; i < length ; i++) {
-            double x = in.readDouble();
-            double y = in.readDouble();
-            points[i] = new PointImpl(x, y);
+        int header = in.readInt();
+        if (header == CoordinateArrays.BOUNDING_BOX_MARKER) {
+            boundingBox = CoordinateArrays.readBoundingBox(in);
+            header = in.readInt();
+        }
+        if (header == VALIDITY_MARKER) {
+            validity = in.readByte();
+            header = in.readInt();
+        } else {
+            validity = VALIDITY_UNKNOWN;
+        }
+        if (header == RINGS_MARKER) {
+            holes = new double[in.readInt()][];
+            coordinates = CoordinateArrays.readExternal(in);
+            for (int i = 0; i < holes.length; i++)
+                holes[i] = CoordinateArrays.readExternal(in);
+        } else {
+            holes = CoordinateArrays.NO_RINGS;
+            coordinates = CoordinateArrays.readExternal(in, header);
         }
         initialize();
     }
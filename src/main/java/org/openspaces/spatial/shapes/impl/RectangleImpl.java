@@ -40,7 +40,7 @@ public class RectangleImpl implements Rectangle, Spatial4jShapeProvider, Externa
     private double maxX;
     private double minY;
     private double maxY;
-    private volatile transient com.spatial4j.core.shape.Shape spatial4jShape;
+    private volatile transient Object spatial4jShape;
 
     public RectangleImpl() {
     }
@@ -72,6 +72,11 @@ public class RectangleImpl implements Rectangle, Spatial4jShapeProvider, Externa
         return maxY;
     }
 
+    @Override
+    public Rectangle getBoundingBox() {
+        return this;
+    }
+
     @Override
     public String toString() {
         return toString(ShapeFormat.WKT);
@@ -82,57 +87,27 @@ public class RectangleImpl implements Rectangle, Spatial4jShapeProvider, Externa
         return appendTo(new StringBuilder(), shapeFormat).toString();
     }
 
+    @Override
+    public byte[] toByteArray(ShapeFormat shapeFormat) {
+        return WkbCodec.toByteArray(this, shapeFormat);
+    }
+
     @Override
     public StringBuilder appendTo(StringBuilder stringBuilder, ShapeFormat shapeFormat) {
         switch (shapeFormat) {
-            case WKT:       return appendWkt(stringBuilder);
-            case GEOJSON:   return appendGeoJson(stringBuilder);
+            case WKT:
+            case GEOJSON:   return ShapeTextFormatter.appendTo(stringBuilder, this, shapeFormat);
+            case WKB:       return WkbCodec.appendHex(stringBuilder, this);
             default:        throw new IllegalArgumentException("Unsupported shape type: " + shapeFormat);
         }
     }
 
-    private StringBuilder appendGeoJson(StringBuilder stringBuilder) {
-        stringBuilder.append("{\"type\":\"Polygon\",\"coordinates\": [[");
-        appendTuple(stringBuilder, minX, minY);
-        stringBuilder.append(',');
-        appendTuple(stringBuilder, minX, maxY);
-        stringBuilder.append(',');
-        appendTuple(stringBuilder, maxX, maxY);
-        stringBuilder.append(',');
-        appendTuple(stringBuilder, maxX, minY);
-        stringBuilder.append(',');
-        appendTuple(stringBuilder, minX, minY);
-        stringBuilder.append("]]}");
-        return stringBuilder;
-    }
-
-    private static void appendTuple(StringBuilder stringBuilder, double x, double y) {
-        stringBuilder.append('[');
-        stringBuilder.append(x);
-        stringBuilder.append(',');
-        stringBuilder.append(y);
-        stringBuilder.append(']');
-    }
-
-    private StringBuilder appendWkt(StringBuilder stringBuilder) {
-        stringBuilder.append("ENVELOPE (");
-        stringBuilder.append(minX);
-        stringBuilder.append(", ");
-        stringBuilder.append(maxX);
-        stringBuilder.append(", ");
-        stringBuilder.append(maxY);
-        stringBuilder.append(", ");
-        stringBuilder.append(minY);
-        stringBuilder.append(')');
-        return stringBuilder;
-    }
-
     @Override
     public Shape getSpatial4jShape(SpatialContext spatialContext) {
-        com.spatial4j.core.shape.Shape result = this.spatial4jShape;
+        com.spatial4j.core.shape.Shape result = Spatial4jShapeCache.get(this, this.spatial4jShape, spatialContext);
         if (result == null) {
             result = spatialContext.makeRectangle(minX, maxX, minY, maxY);
-            this.spatial4jShape = result;
+            this.spatial4jShape = Spatial4jShapeCache.put(this, result);
         }
         return result;
     }
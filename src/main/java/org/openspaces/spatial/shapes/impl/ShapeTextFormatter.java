@@ -0,0 +1,329 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.shapes.impl;
+
+import org.openspaces.spatial.ShapeFormat;
+import org.openspaces.spatial.shapes.*;
+
+import java.io.IOException;
+
+/**
+ * Formats shapes as GeoJSON or WKT to an {@link Appendable}, shared by the shapes' {@code appendTo} and
+ * {@link org.openspaces.spatial.ShapeStreamWriter}. Coordinates are written at full precision, or rounded to a fixed
+ * number of decimal places (omitting trailing zeros).
+ * <p>
+ * Only fixed precision is formatted without allocating. Full precision relies on the JDK's formatting of doubles:
+ * {@link StringBuilder#append(double)} when appending to a StringBuilder, and {@link String#valueOf(double)} otherwise.
+ * <p>
+ * A fixed precision formatter is not thread safe. The {@link #FULL_PRECISION_FORMATTER} is.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class ShapeTextFormatter {
+    /**
+     * Decimal places value which formats coordinates at full precision.
+     */
+    public static final int FULL_PRECISION = -1;
+    public static final int MAX_DECIMAL_PLACES = 15;
+    public static final ShapeTextFormatter FULL_PRECISION_FORMATTER = new ShapeTextFormatter(FULL_PRECISION);
+
+    // Scaled values beyond this are not exactly representable as longs - fall back to full precision:
+    private static final double MAX_SCALED_VALUE = 9e15;
+
+    private final int decimalPlaces;
+    private final long scale;
+    private final char[] digits;
+
+    /**
+     * Creates a formatter which rounds coordinates to the specified number of decimal places (up to 15),
+     * or formats them at full precision if {@link #FULL_PRECISION} is specified.
+     */
+    public ShapeTextFormatter(int decimalPlaces) {
+        if (decimalPlaces < FULL_PRECISION || decimalPlaces > MAX_DECIMAL_PLACES)
+            throw new IllegalArgumentException("Invalid number of decimal places [" + decimalPlaces + "] - must be between 0 and " + MAX_DECIMAL_PLACES);
+        this.decimalPlaces = decimalPlaces;
+        long scale = 1;
+        for (int i = 0; i < decimalPlaces; i++)
+            scale *= 10;
+        this.scale = scale;
+        this.digits = decimalPlaces == FULL_PRECISION ? null : new char[20];
+    }
+
+    /**
+     * Appends the shape at full precision in the specified text format (GeoJSON or WKT).
+     */
+    public static StringBuilder appendTo(StringBuilder stringBuilder, Shape shape, ShapeFormat shapeFormat) {
+        try {
+            FULL_PRECISION_FORMATTER.append(stringBuilder, shape, shapeFormat);
+        } catch (IOException e) {
+            // StringBuilder does not throw IOException.
+            throw new IllegalStateException(e);
+        }
+        return stringBuilder;
+    }
+
+    public void append(Appendable out, Shape shape, ShapeFormat shapeFormat) throws IOException {
+        switch (shapeFormat) {
+            case WKT:       appendWkt(out, shape); break;
+            case GEOJSON:   appendGeoJson(out, shape); break;
+            default:        throw new IllegalArgumentException("Unsupported shape format: " + shapeFormat);
+        }
+    }
+
+    public void appendGeoJson(Appendable out, Shape shape) throws IOException {
+        if (shape instanceof Point) {
+            Point point = (Point) shape;
+            out.append("{\"type\":\"Point\",\"coordinates\":");
+            appendTuple(out, point.getX(), point.getY());
+            out.append('}');
+        } else if (shape instanceof LineString) {
+            out.append("{\"type\":\"LineString\",\"coordinates\":");
+            appendGeoJsonCoordinates(out, (LineString) shape);
+            out.append('}');
+        } else if (shape instanceof Polygon) {
+            out.append("{\"type\":\"Polygon\",\"coordinates\":");
+            appendGeoJsonCoordinates(out, (Polygon) shape);
+            out.append('}');
+        } else if (shape instanceof MultiPoint) {
+            MultiPoint multiPoint = (MultiPoint) shape;
+            out.append("{\"type\":\"MultiPoint\",\"coordinates\":[");
+            for (int i = 0; i < multiPoint.getNumOfPoints(); i++) {
+                if (i != 0)
+                    out.append(',');
+                appendTuple(out, multiPoint.getX(i), multiPoint.getY(i));
+            }
+            out.append("]}");
+        } else if (shape instanceof MultiLineString) {
+            MultiLineString multiLineString = (MultiLineString) shape;
+            out.append("{\"type\":\"MultiLineString\",\"coordinates\":[");
+            for (int i = 0; i < multiLineString.getNumOfLineStrings(); i++) {
+                if (i != 0)
+                    out.append(',');
+                appendGeoJsonCoordinates(out, multiLineString.getLineString(i));
+            }
+            out.append("]}");
+        } else if (shape instanceof MultiPolygon) {
+            MultiPolygon multiPolygon = (MultiPolygon) shape;
+            out.append("{\"type\":\"MultiPolygon\",\"coordinates\":[");
+            for (int i = 0; i < multiPolygon.getNumOfPolygons(); i++) {
+                if (i != 0)
+                    out.append(',');
+                appendGeoJsonCoordinates(out, multiPolygon.getPolygon(i));
+            }
+            out.append("]}");
+        } else if (shape instanceof Rectangle) {
+            Rectangle rectangle = (Rectangle) shape;
+            out.append("{\"type\":\"Polygon\",\"coordinates\":[[");
+            appendTuple(out, rectangle.getMinX(), rectangle.getMinY());
+            out.append(',');
+            appendTuple(out, rectangle.getMinX(), rectangle.getMaxY());
+            out.append(',');
+            appendTuple(out, rectangle.getMaxX(), rectangle.getMaxY());
+            out.append(',');
+            appendTuple(out, rectangle.getMaxX(), rectangle.getMinY());
+            out.append(',');
+            appendTuple(out, rectangle.getMinX(), rectangle.getMinY());
+            out.append("]]}");
+        } else if (shape instanceof Circle) {
+            Circle circle = (Circle) shape;
+            out.append("{\"type\":\"Circle\",\"coordinates\":");
+            appendTuple(out, circle.getCenterX(), circle.getCenterY());
+            out.append(",\"radius\":");
+            appendDouble(out, circle.getRadius());
+            out.append('}');
+        } else {
+            throw new IllegalArgumentException("Unsupported shape type: " + shape.getClass().getName());
+        }
+    }
+
+    public void appendWkt(Appendable out, Shape shape) throws IOException {
+        if (shape instanceof Point) {
+            Point point = (Point) shape;
+            out.append("POINT (");
+            appendPair(out, point.getX(), point.getY());
+            out.append(')');
+        } else if (shape instanceof LineString) {
+            out.append("LINESTRING ");
+            appendWktCoordinates(out, (LineString) shape);
+        } else if (shape instanceof Polygon) {
+            out.append("POLYGON ");
+            appendWktCoordinates(out, (Polygon) shape);
+        } else if (shape instanceof MultiPoint) {
+            MultiPoint multiPoint = (MultiPoint) shape;
+            out.append("MULTIPOINT (");
+            for (int i = 0; i < multiPoint.getNumOfPoints(); i++) {
+                if (i != 0)
+                    out.append(", ");
+                out.append('(');
+                appendPair(out, multiPoint.getX(i), multiPoint.getY(i));
+                out.append(')');
+            }
+            out.append(')');
+        } else if (shape instanceof MultiLineString) {
+            MultiLineString multiLineString = (MultiLineString) shape;
+            out.append("MULTILINESTRING (");
+            for (int i = 0; i < multiLineString.getNumOfLineStrings(); i++) {
+                if (i != 0)
+                    out.append(", ");
+                appendWktCoordinates(out, multiLineString.getLineString(i));
+            }
+            out.append(')');
+        } else if (shape instanceof MultiPolygon) {
+            MultiPolygon multiPolygon = (MultiPolygon) shape;
+            out.append("MULTIPOLYGON (");
+            for (int i = 0; i < multiPolygon.getNumOfPolygons(); i++) {
+                if (i != 0)
+                    out.append(", ");
+                appendWktCoordinates(out, multiPolygon.getPolygon(i));
+            }
+            out.append(')');
+        } else if (shape instanceof Rectangle) {
+            Rectangle rectangle = (Rectangle) shape;
+            out.append("ENVELOPE (");
+            appendDouble(out, rectangle.getMinX());
+            out.append(", ");
+            appendDouble(out, rectangle.getMaxX());
+            out.append(", ");
+            appendDouble(out, rectangle.getMaxY());
+            out.append(", ");
+            appendDouble(out, rectangle.getMinY());
+            out.append(')');
+        } else if (shape instanceof Circle) {
+            Circle circle = (Circle) shape;
+            out.append("BUFFER (POINT (");
+            appendPair(out, circle.getCenterX(), circle.getCenterY());
+            out.append("), ");
+            appendDouble(out, circle.getRadius());
+            out.append(')');
+        } else {
+            throw new IllegalArgumentException("Unsupported shape type: " + shape.getClass().getName());
+        }
+    }
+
+    private void appendGeoJsonCoordinates(Appendable out, LineString lineString) throws IOException {
+        out.append('[');
+        for (int i = 0; i < lineString.getNumOfPoints(); i++) {
+            if (i != 0)
+                out.append(',');
+            appendTuple(out, lineString.getX(i), lineString.getY(i));
+        }
+        out.append(']');
+    }
+
+    private void appendGeoJsonCoordinates(Appendable out, Polygon polygon) throws IOException {
+        out.append("[[");
+        for (int i = 0; i < polygon.getNumOfPoints(); i++) {
+            if (i != 0)
+                out.append(',');
+            appendTuple(out, polygon.getX(i), polygon.getY(i));
+        }
+        out.append(']');
+        for (int i = 0; i < polygon.getNumOfHoles(); i++) {
+            out.append(',');
+            appendGeoJsonCoordinates(out, polygon.getHole(i));
+        }
+        out.append(']');
+    }
+
+    private void appendWktCoordinates(Appendable out, LineString lineString) throws IOException {
+        out.append('(');
+        for (int i = 0; i < lineString.getNumOfPoints(); i++) {
+            if (i != 0)
+                out.append(", ");
+            appendPair(out, lineString.getX(i), lineString.getY(i));
+        }
+        out.append(')');
+    }
+
+    private void appendWktCoordinates(Appendable out, Polygon polygon) throws IOException {
+        out.append("((");
+        for (int i = 0; i < polygon.getNumOfPoints(); i++) {
+            if (i != 0)
+                out.append(", ");
+            appendPair(out, polygon.getX(i), polygon.getY(i));
+        }
+        out.append(')');
+        for (int i = 0; i < polygon.getNumOfHoles(); i++) {
+            out.append(", ");
+            appendWktCoordinates(out, polygon.getHole(i));
+        }
+        out.append(')');
+    }
+
+    private void appendTuple(Appendable out, double x, double y) throws IOException {
+        out.append('[');
+        appendDouble(out, x);
+        out.append(',');
+        appendDouble(out, y);
+        out.append(']');
+    }
+
+    private void appendPair(Appendable out, double x, double y) throws IOException {
+        appendDouble(out, x);
+        out.append(' ');
+        appendDouble(out, y);
+    }
+
+    /**
+     * Appends the value rounded to the configured number of decimal places, omitting trailing zeros.
+     */
+    public void appendDouble(Appendable out, double value) throws IOException {
+        if (decimalPlaces == FULL_PRECISION || Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value * scale) >= MAX_SCALED_VALUE) {
+            if (out instanceof StringBuilder)
+                ((StringBuilder) out).append(value);
+            else
+                out.append(String.valueOf(value));
+            return;
+        }
+        long units = Math.round(value * scale);
+        if (units < 0) {
+            out.append('-');
+            units = -units;
+        }
+        appendLong(out, units / scale);
+        long fraction = units % scale;
+        if (fraction != 0) {
+            int length = decimalPlaces;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                length--;
+            }
+            out.append('.');
+            for (int i = length - 1; i >= 0; i--) {
+                digits[i] = (char) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            appendDigits(out, 0, length);
+        }
+    }
+
+    private void appendLong(Appendable out, long value) throws IOException {
+        int pos = digits.length;
+        do {
+            digits[--pos] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        appendDigits(out, pos, digits.length);
+    }
+
+    private void appendDigits(Appendable out, int from, int to) throws IOException {
+        for (int i = from; i < to; i++)
+            out.append(digits[i]);
+    }
+}
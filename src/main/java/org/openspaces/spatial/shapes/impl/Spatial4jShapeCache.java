@@ -0,0 +1,158 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.shapes.impl;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.shape.Shape;
+
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Controls how shapes keep the spatial4j shape they build (see {@link #getPolicy()}), trading memory for the cost of
+ * rebuilding it. The policy is read from the {@link #POLICY_PROPERTY} and {@link #SIZE_PROPERTY} system properties, and
+ * can be changed at runtime using {@link #setPolicy(Policy, int)} (shapes which already cached a spatial4j shape keep
+ * it in the form chosen by the policy at that time). A cached spatial4j shape is only reused for the spatial context
+ * it was built with - requesting it for another context rebuilds (and re-caches) it.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class Spatial4jShapeCache {
+    /**
+     * System property which sets the policy: always (default), never, soft or bounded.
+     */
+    public static final String POLICY_PROPERTY = "org.openspaces.spatial.spatial4j-cache.policy";
+    /**
+     * System property which sets the maximum number of spatial4j shapes kept by the bounded policy. Defaults to 10000.
+     */
+    public static final String SIZE_PROPERTY = "org.openspaces.spatial.spatial4j-cache.size";
+
+    public enum Policy {
+        /**
+         * Each shape keeps its spatial4j shape for as long as it lives (fastest, largest footprint).
+         */
+        ALWAYS,
+        /**
+         * Spatial4j shapes are never kept - they are rebuilt from the coordinates on each call.
+         */
+        NEVER,
+        /**
+         * Each shape keeps its spatial4j shape via a soft reference, which the GC clears under memory pressure.
+         */
+        SOFT,
+        /**
+         * Spatial4j shapes are kept in a global LRU cache of a fixed size.
+         */
+        BOUNDED
+    }
+
+    private static volatile Policy policy;
+    private static volatile Map<Object, Shape> boundedCache;
+
+    static {
+        String policyName = System.getProperty(POLICY_PROPERTY, Policy.ALWAYS.name());
+        Policy initialPolicy;
+        try {
+            initialPolicy = Policy.valueOf(policyName.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported spatial4j cache policy: " + policyName + " - supported values: " + Arrays.asList(Policy.values()));
+        }
+        setPolicy(initialPolicy, Integer.getInteger(SIZE_PROPERTY, 10000));
+    }
+
+    /**
+     * Private ctor to prevent instantiating this helper class.
+     */
+    private Spatial4jShapeCache() {
+    }
+
+    public static Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Sets the policy used by shapes which build their spatial4j shape from now on.
+     * @param policy The new policy
+     * @param maxSize The maximum number of spatial4j shapes kept by the bounded policy (ignored by other policies)
+     */
+    public static synchronized void setPolicy(Policy policy, final int maxSize) {
+        if (policy == Policy.BOUNDED) {
+            if (maxSize <= 0)
+                throw new IllegalArgumentException("Spatial4j cache size must be positive: " + maxSize);
+            boundedCache = new LinkedHashMap<Object, Shape>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, Shape> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        } else {
+            boundedCache = null;
+        }
+        Spatial4jShapeCache.policy = policy;
+    }
+
+    /**
+     * Gets the spatial4j shape cached for the specified owner, or null if it should be built.
+     * @param owner The shape which owns the spatial4j shape
+     * @param cached The value stored by the owner, as returned by {@link #put(Object, Shape)}
+     * @param spatialContext The spatial context the spatial4j shape is requested for
+     */
+    static Shape get(Object owner, Object cached, SpatialContext spatialContext) {
+        Shape result = null;
+        if (cached instanceof Shape) {
+            result = (Shape) cached;
+        } else if (cached instanceof SoftReference) {
+            result = (Shape) ((SoftReference<?>) cached).get();
+        } else {
+            final Map<Object, Shape> cache = boundedCache;
+            if (cache != null) {
+                synchronized (cache) {
+                    result = cache.get(owner);
+                }
+            }
+        }
+        return result != null && result.getContext() == spatialContext ? result : null;
+    }
+
+    /**
+     * Caches the spatial4j shape built by the specified owner according to the current policy.
+     * @return The value the owner should store
+     */
+    static Object put(Object owner, Shape spatial4jShape) {
+        switch (policy) {
+            case ALWAYS:
+                return spatial4jShape;
+            case SOFT:
+                return new SoftReference<Shape>(spatial4jShape);
+            case BOUNDED: {
+                final Map<Object, Shape> cache = boundedCache;
+                if (cache != null) {
+                    synchronized (cache) {
+                        cache.put(owner, spatial4jShape);
+                    }
+                }
+                return null;
+            }
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.shapes.impl;
+
+import org.openspaces.spatial.ShapeFactory;
+import org.openspaces.spatial.ShapeFormat;
+import org.openspaces.spatial.shapes.*;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * Reads and writes shapes in Well-Known Binary format, directly from/to the XAP shape classes.
+ * Shapes are written in little endian (NDR) byte order. Both byte orders are read, as well as PostGIS extended WKB
+ * (SRID is skipped) and ISO/extended Z and M dimensions (which are dropped).
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class WkbCodec {
+    private static final int WKB_POINT = 1;
+    private static final int WKB_LINESTRING = 2;
+    private static final int WKB_POLYGON = 3;
+    private static final int WKB_MULTIPOINT = 4;
+    private static final int WKB_MULTILINESTRING = 5;
+    private static final int WKB_MULTIPOLYGON = 6;
+
+    private static final int EWKB_Z_FLAG = 0x80000000;
+    private static final int EWKB_M_FLAG = 0x40000000;
+    private static final int EWKB_SRID_FLAG = 0x20000000;
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Private ctor to prevent instantiating this helper class.
+     */
+    private WkbCodec() {
+    }
+
+    /**
+     * Encodes the specified shape in the specified format. Binary formats are encoded as is, text formats as UTF-8.
+     */
+    public static byte[] toByteArray(Shape shape, ShapeFormat shapeFormat) {
+        if (shapeFormat == ShapeFormat.WKB)
+            return toWkb(shape);
+        return shape.toString(shapeFormat).getBytes(UTF8);
+    }
+
+    public static byte[] toWkb(Shape shape) {
+        ByteBuffer buffer = allocate(sizeOf(shape));
+        write(buffer, shape);
+        return buffer.array();
+    }
+
+    private static int sizeOf(Shape shape) {
+        if (shape instanceof Point)
+            return 21;
+        if (shape instanceof LineString)
+            return 9 + 16 * ((LineString) shape).getNumOfPoints();
+        if (shape instanceof Polygon) {
+            Polygon polygon = (Polygon) shape;
+            int size = 13 + 16 * polygon.getNumOfPoints();
+            for (int i = 0; i < polygon.getNumOfHoles(); i++)
+                size += 4 + 16 * polygon.getHole(i).getNumOfPoints();
+            return size;
+        }
+        if (shape instanceof Rectangle)
+            return 13 + 16 * 5;
+        if (shape instanceof MultiPoint)
+            return 9 + 21 * ((MultiPoint) shape).getNumOfPoints();
+        if (shape instanceof MultiLineString) {
+            MultiLineString multiLineString = (MultiLineString) shape;
+            int size = 9;
+            for (int i = 0; i < multiLineString.getNumOfLineStrings(); i++)
+                size += sizeOf(multiLineString.getLineString(i));
+            return size;
+        }
+        if (shape instanceof MultiPolygon) {
+            MultiPolygon multiPolygon = (MultiPolygon) shape;
+            int size = 9;
+            for (int i = 0; i < multiPolygon.getNumOfPolygons(); i++)
+                size += sizeOf(multiPolygon.getPolygon(i));
+            return size;
+        }
+        throw new IllegalArgumentException("Shape type cannot be represented in WKB: " + shape.getClass().getName());
+    }
+
+    private static void write(ByteBuffer buffer, Shape shape) {
+        if (shape instanceof Point) {
+            Point point = (Point) shape;
+            writeHeader(buffer, WKB_POINT);
+            putPoint(buffer, point.getX(), point.getY());
+        } else if (shape instanceof LineString) {
+            writeHeader(buffer, WKB_LINESTRING);
+            putLineString(buffer, (LineString) shape);
+        } else if (shape instanceof Polygon) {
+            Polygon polygon = (Polygon) shape;
+            final int length = polygon.getNumOfPoints();
+            writeHeader(buffer, WKB_POLYGON);
+            buffer.putInt(1 + polygon.getNumOfHoles());
+            buffer.putInt(length);
+            for (int i = 0; i < length; i++)
+                putPoint(buffer, polygon.getX(i), polygon.getY(i));
+            for (int i = 0; i < polygon.getNumOfHoles(); i++)
+                putLineString(buffer, polygon.getHole(i));
+        } else if (shape instanceof Rectangle) {
+            Rectangle rectangle = (Rectangle) shape;
+            writeHeader(buffer, WKB_POLYGON);
+            buffer.putInt(1);
+            buffer.putInt(5);
+            putPoint(buffer, rectangle.getMinX(), rectangle.getMinY());
+            putPoint(buffer, rectangle.getMaxX(), rectangle.getMinY());
+            putPoint(buffer, rectangle.getMaxX(), rectangle.getMaxY());
+            putPoint(buffer, rectangle.getMinX(), rectangle.getMaxY());
+            putPoint(buffer, rectangle.getMinX(), rectangle.getMinY());
+        } else if (shape instanceof MultiPoint) {
+            MultiPoint multiPoint = (MultiPoint) shape;
+            writeHeader(buffer, WKB_MULTIPOINT);
+            buffer.putInt(multiPoint.getNumOfPoints());
+            for (int i = 0; i < multiPoint.getNumOfPoints(); i++) {
+                writeHeader(buffer, WKB_POINT);
+                putPoint(buffer, multiPoint.getX(i), multiPoint.getY(i));
+            }
+        } else if (shape instanceof MultiLineString) {
+            MultiLineString multiLineString = (MultiLineString) shape;
+            writeHeader(buffer, WKB_MULTILINESTRING);
+            buffer.putInt(multiLineString.getNumOfLineStrings());
+            for (int i = 0; i < multiLineString.getNumOfLineStrings(); i++)
+                write(buffer, multiLineString.getLineString(i));
+        } else if (shape instanceof MultiPolygon) {
+            MultiPolygon multiPolygon = (MultiPolygon) shape;
+            writeHeader(buffer, WKB_MULTIPOLYGON);
+            buffer.putInt(multiPolygon.getNumOfPolygons());
+            for (int i = 0; i < multiPolygon.getNumOfPolygons(); i++)
+                write(buffer, multiPolygon.getPolygon(i));
+        } else {
+            throw new IllegalArgumentException("Shape type cannot be represented in WKB: " + shape.getClass().getName());
+        }
+    }
+
+    private static void putLineString(ByteBuffer buffer, LineString lineString) {
+        final int length = lineString.getNumOfPoints();
+        buffer.putInt(length);
+        for (int i = 0; i < length; i++)
+            putPoint(buffer, lineString.getX(i), lineString.getY(i));
+    }
+
+    /**
+     * Appends the WKB of the specified shape as a hex string (as used by PostGIS).
+     */
+    public static StringBuilder appendHex(StringBuilder stringBuilder, Shape shape) {
+        for (byte b : toWkb(shape)) {
+            stringBuilder.append(HEX_DIGITS[(b >> 4) & 0xF]);
+            stringBuilder.append(HEX_DIGITS[b & 0xF]);
+        }
+        return stringBuilder;
+    }
+
+    public static byte[] fromHex(String s) {
+        if (s.length() % 2 != 0)
+            throw new IllegalArgumentException("Invalid WKB hex string - odd length " + s.length());
+        byte[] result = new byte[s.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            int high = Character.digit(s.charAt(i * 2), 16);
+            int low = Character.digit(s.charAt(i * 2 + 1), 16);
+            if (high == -1 || low == -1)
+                throw new IllegalArgumentException("Invalid WKB hex string - illegal character at position " + (i * 2));
+            result[i] = (byte) ((high << 4) | low);
+        }
+        return result;
+    }
+
+    /**
+     * Reads a single shape from the buffer's current position.
+     */
+    public static Shape read(ByteBuffer buffer) {
+        final ByteOrder originalOrder = buffer.order();
+        try {
+            return readGeometry(buffer, 0);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Failed to parse shape using WKB - unexpected end of data", e);
+        } finally {
+            buffer.order(originalOrder);
+        }
+    }
+
+    /**
+     * Reads a geometry from the buffer's current position.
+     * @param expectedType The geometry type expected by the enclosing multi geometry, or 0 for any type.
+     */
+    private static Shape readGeometry(ByteBuffer buffer, int expectedType) {
+        final byte byteOrder = buffer.get();
+        if (byteOrder == 0)
+            buffer.order(ByteOrder.BIG_ENDIAN);
+        else if (byteOrder == 1)
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        else
+            throw new IllegalArgumentException("Failed to parse shape using WKB - invalid byte order " + byteOrder);
+
+        final int type = buffer.getInt();
+        final int isoType = type & 0x0FFFFFFF;
+        final int isoDimensions = isoType / 1000;
+        final boolean hasZ = (type & EWKB_Z_FLAG) != 0 || isoDimensions == 1 || isoDimensions == 3;
+        final boolean hasM = (type & EWKB_M_FLAG) != 0 || isoDimensions == 2 || isoDimensions == 3;
+        if ((type & EWKB_SRID_FLAG) != 0)
+            buffer.getInt();
+        final int dimensions = 2 + (hasZ ? 1 : 0) + (hasM ? 1 : 0);
+
+        if (expectedType != 0 && isoType % 1000 != expectedType)
+            throw new IllegalArgumentException("Failed to parse shape using WKB - expected geometry type " + expectedType + " but got " + type);
+        switch (isoType % 1000) {
+            case WKB_POINT: {
+                double[] coordinates = readCoordinates(buffer, 1, dimensions);
+                return new PointImpl(coordinates[0], coordinates[1]);
+            }
+            case WKB_LINESTRING:
+                return new LineStringImpl(readCoordinates(buffer, buffer.getInt(), dimensions));
+            case WKB_POLYGON:
+                return readPolygon(buffer, dimensions);
+            case WKB_MULTIPOINT: {
+                final int numOfPoints = readCount(buffer, 21);
+                double[] coordinates = new double[numOfPoints * 2];
+                for (int i = 0; i < numOfPoints; i++) {
+                    Point point = (Point) readGeometry(buffer, WKB_POINT);
+                    coordinates[i * 2] = point.getX();
+                    coordinates[i * 2 + 1] = point.getY();
+                }
+                return new MultiPointImpl(coordinates);
+            }
+            case WKB_MULTILINESTRING: {
+                LineStringImpl[] lineStrings = new LineStringImpl[readCount(buffer, 9)];
+                for (int i = 0; i < lineStrings.length; i++)
+                    lineStrings[i] = (LineStringImpl) readGeometry(buffer, WKB_LINESTRING);
+                return new MultiLineStringImpl(lineStrings);
+            }
+            case WKB_MULTIPOLYGON: {
+                PolygonImpl[] polygons = new PolygonImpl[readCount(buffer, 9)];
+                for (int i = 0; i < polygons.length; i++)
+                    polygons[i] = (PolygonImpl) readGeometry(buffer, WKB_POLYGON);
+                return new MultiPolygonImpl(polygons);
+            }
+            default:
+                throw new IllegalArgumentException("Failed to parse shape using WKB - unsupported geometry type: " + type);
+        }
+    }
+
+    private static PolygonImpl readPolygon(ByteBuffer buffer, int dimensions) {
+        final int numOfRings = readCount(buffer, 4);
+        if (numOfRings == 0)
+            throw new IllegalArgumentException("Failed to parse shape using WKB - empty polygons are not supported");
+        double[] shell = readCoordinates(buffer, buffer.getInt(), dimensions);
+        double[][] holes = new double[numOfRings - 1][];
+        for (int i = 0; i < holes.length; i++)
+            holes[i] = readCoordinates(buffer, buffer.getInt(), dimensions);
+        return new PolygonImpl(shell, holes).applyValidationPolicy(ShapeFactory.getValidationPolicy());
+    }
+
+    /**
+     * Reads a count of elements, verifying the buffer has enough data for the minimal size of each element.
+     */
+    private static int readCount(ByteBuffer buffer, int minElementSize) {
+        final int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / minElementSize)
+            throw new IllegalArgumentException("Failed to parse shape using WKB - invalid number of elements: " + count);
+        return count;
+    }
+
+    private static double[] readCoordinates(ByteBuffer buffer, int numOfPoints, int dimensions) {
+        if (numOfPoints < 0 || numOfPoints > buffer.remaining() / (dimensions * 8))
+            throw new IllegalArgumentException("Failed to parse shape using WKB - invalid number of points: " + numOfPoints);
+        double[] coordinates = new double[numOfPoints * 2];
+        for (int i = 0; i < numOfPoints; i++) {
+            coordinates[i * 2] = buffer.getDouble();
+            coordinates[i * 2 + 1] = buffer.getDouble();
+            // Skip Z and/or M:
+            for (int d = 2; d < dimensions; d++)
+                buffer.getDouble();
+        }
+        return coordinates;
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void writeHeader(ByteBuffer buffer, int type) {
+        buffer.put((byte) 1);
+        buffer.putInt(type);
+    }
+
+    private static void putPoint(ByteBuffer buffer, double x, double y) {
+        buffer.putDouble(x);
+        buffer.putDouble(y);
+    }
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.spi;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FilterCollector;
+import org.apache.lucene.search.FilterLeafCollector;
+import org.apache.lucene.search.LeafCollector;
+
+import java.io.IOException;
+
+/**
+ * A collector which aborts the search it participates in once {@link #cancel()} is called from another thread.
+ * Also describes the query it collects, so running queries can be listed and cancelled individually by their id.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class CancellableCollector extends FilterCollector {
+    private final long queryId;
+    private final String typeName;
+    private final String path;
+    private final String operationName;
+    private final long startTime;
+    private volatile boolean cancelled;
+
+    public CancellableCollector(Collector in, long queryId, String typeName, String path, String operationName) {
+        super(in);
+        this.queryId = queryId;
+        this.typeName = typeName;
+        this.path = path;
+        this.operationName = operationName;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    public long getQueryId() {
+        return queryId;
+    }
+
+    public String getTypeName() {
+        return typeName;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getOperationName() {
+        return operationName;
+    }
+
+    /**
+     * Gets the time (in millis) the search started.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Throws {@link QueryCancelledException} if the query was cancelled, e.g. after the search completed, since
+     * searches which collect no more documents do not notice the cancellation.
+     */
+    public void checkCancelled() {
+        if (cancelled)
+            throw new QueryCancelledException();
+    }
+
+    @Override
+    public String toString() {
+        return "query [id=" + queryId + ", typeName=" + typeName + ", path=" + path + ", operation=" + operationName +
+                ", startTime=" + startTime + (cancelled ? ", cancelled" : "") + "]";
+    }
+
+    @Override
+    public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+        checkCancelled();
+        return new FilterLeafCollector(super.getLeafCollector(context)) {
+            @Override
+            public void collect(int doc) throws IOException {
+                checkCancelled();
+                super.collect(doc);
+            }
+        };
+    }
+
+    /**
+     * Thrown from within the search to unwind it once the query has been cancelled.
+     */
+    public static class QueryCancelledException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public QueryCancelledException() {
+            super("Spatial query was cancelled");
+        }
+    }
+}
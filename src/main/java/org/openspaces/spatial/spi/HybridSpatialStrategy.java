@@ -0,0 +1,134 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.spi;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.shape.Point;
+import com.spatial4j.core.shape.Rectangle;
+import com.spatial4j.core.shape.Shape;
+import com.spatial4j.core.shape.jts.JtsGeometry;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.queries.function.ValueSource;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.spatial.SpatialStrategy;
+import org.apache.lucene.spatial.bbox.BBoxStrategy;
+import org.apache.lucene.spatial.composite.CompositeSpatialStrategy;
+import org.apache.lucene.spatial.prefix.RecursivePrefixTreeStrategy;
+import org.apache.lucene.spatial.query.SpatialArgs;
+import org.apache.lucene.spatial.query.SpatialOperation;
+import org.apache.lucene.spatial.query.UnsupportedSpatialOperation;
+import org.apache.lucene.spatial.serialized.SerializedDVStrategy;
+
+/**
+ * Routes each indexed shape to the strategy which suits it: points, rectangles and shapes smaller than a threshold are
+ * indexed as bounding boxes, and other shapes are indexed in a prefix tree and verified against their serialized
+ * geometry. Queries consult both sub-fields.
+ * <p>
+ * The bounding box sub-field is queried by the bounding box of the query shape, so its results are exact for
+ * rectangles and points queried by rectangles, and a superset otherwise (like the prefix tree strategy, the results
+ * are evaluated again by {@link LuceneSpatialQueryExtensionManager#accept}).
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class HybridSpatialStrategy extends SpatialStrategy {
+    private final BBoxStrategy bboxStrategy;
+    private final CompositeSpatialStrategy prefixTreeStrategy;
+    private final double bboxMaxSize;
+
+    /**
+     * @param prefixTreeStrategy Indexes the shapes which are not indexed as bounding boxes, in its own field (see
+     *                           {@link #getPrefixTreeFieldName})
+     * @param bboxMaxSize Half diagonal (in the context's distance units) of the largest non-rectangular shapes indexed as
+     *                    bounding boxes, 0 to index only points and rectangles as bounding boxes
+     */
+    public HybridSpatialStrategy(SpatialContext ctx, String fieldName, RecursivePrefixTreeStrategy prefixTreeStrategy, double bboxMaxSize) {
+        super(ctx, fieldName);
+        if (bboxMaxSize < 0)
+            throw new IllegalArgumentException("Bounding box max size must not be negative: " + bboxMaxSize);
+        if (prefixTreeStrategy.getFieldName().equals(fieldName))
+            throw new IllegalArgumentException("Prefix tree field must differ from the hybrid field: " + fieldName);
+        this.bboxStrategy = new BBoxStrategy(ctx, fieldName + "__bbox");
+        this.prefixTreeStrategy = new CompositeSpatialStrategy(prefixTreeStrategy.getFieldName(), prefixTreeStrategy,
+                new SerializedDVStrategy(ctx, prefixTreeStrategy.getFieldName()));
+        this.bboxMaxSize = bboxMaxSize;
+    }
+
+    /**
+     * Gets the name of the prefix tree sub-field of the specified hybrid field.
+     */
+    public static String getPrefixTreeFieldName(String fieldName) {
+        return fieldName + "__rpt";
+    }
+
+    /**
+     * Checks if the specified shape is indexed as a bounding box rather than in the prefix tree.
+     */
+    public boolean isIndexedAsBoundingBox(Shape shape) {
+        if (shape instanceof Point || shape instanceof Rectangle)
+            return true;
+        if (shape instanceof JtsGeometry && ((JtsGeometry) shape).getGeom().isRectangle())
+            return true;
+        if (bboxMaxSize == 0)
+            return false;
+        final Rectangle boundingBox = shape.getBoundingBox();
+        return ctx.getDistCalc().distance(boundingBox.getCenter(), boundingBox.getMaxX(), boundingBox.getMaxY()) <= bboxMaxSize;
+    }
+
+    @Override
+    public Field[] createIndexableFields(Shape shape) {
+        if (!isIndexedAsBoundingBox(shape))
+            return prefixTreeStrategy.createIndexableFields(shape);
+        // A rectangular polygon is indexed by its (identical) bounding box:
+        return bboxStrategy.createIndexableFields(shape.getBoundingBox());
+    }
+
+    @Override
+    public ValueSource makeDistanceValueSource(Point queryPoint, double multiplier) {
+        throw new UnsupportedOperationException("Distance value source is not supported by " + getClass().getSimpleName());
+    }
+
+    @Override
+    public Query makeQuery(SpatialArgs args) {
+        final SpatialOperation operation = args.getOperation();
+        final SpatialOperation bboxOperation;
+        // A shape intersecting/within/containing the query shape has a bounding box intersecting/within/containing the
+        // query's bounding box:
+        if (operation == SpatialOperation.Intersects)
+            bboxOperation = SpatialOperation.BBoxIntersects;
+        else if (operation == SpatialOperation.IsWithin)
+            bboxOperation = SpatialOperation.BBoxWithin;
+        else if (operation == SpatialOperation.Contains)
+            bboxOperation = SpatialOperation.Contains;
+        else
+            throw new UnsupportedSpatialOperation(operation);
+
+        final SpatialArgs bboxArgs = new SpatialArgs(bboxOperation, args.getShape().getBoundingBox());
+        return new BooleanQuery.Builder()
+                .add(bboxStrategy.makeQuery(bboxArgs), BooleanClause.Occur.SHOULD)
+                .add(prefixTreeStrategy.makeQuery(args), BooleanClause.Occur.SHOULD)
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(bbox: " + bboxStrategy + ", prefix tree: " + prefixTreeStrategy + ", bbox max size: " + bboxMaxSize + ")";
+    }
+}
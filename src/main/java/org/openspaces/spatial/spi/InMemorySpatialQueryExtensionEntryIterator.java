@@ -0,0 +1,46 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.spi;
+
+import com.gigaspaces.query.extension.QueryExtensionEntryIterator;
+
+import java.util.List;
+
+/**
+ * Iterates over the uids matched by a query on an in-memory spatial index.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class InMemorySpatialQueryExtensionEntryIterator extends QueryExtensionEntryIterator {
+    private final List<String> uids;
+    private int position;
+
+    public InMemorySpatialQueryExtensionEntryIterator(List<String> uids) {
+        this.uids = uids;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < uids.size();
+    }
+
+    public String nextUid() {
+        return uids.get(position++);
+    }
+}
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.spi;
+
+import com.spatial4j.core.shape.Rectangle;
+import com.spatial4j.core.shape.Shape;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.quadtree.Quadtree;
+import org.apache.lucene.spatial.query.SpatialOperation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory spatial index for a single type, intended for high-churn workloads (e.g. positions which change
+ * every few seconds). Shapes are kept in dynamic trees keyed by their bounding boxes and are updated in place,
+ * avoiding the append-only segments and delete markers of the Lucene index.
+ * Queries find candidates by bounding box and evaluate the exact spatial operation on each candidate.
+ * <p>
+ * Entries are striped by uid across trees with their own locks, so updates of different entries rarely contend with
+ * each other, and queries only wait for the updates of one stripe at a time.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class InMemorySpatialTypeIndex {
+    private static final int NUM_OF_STRIPES = 16;
+
+    private final Rectangle worldBounds;
+    private final Stripe[] stripes = new Stripe[NUM_OF_STRIPES];
+
+    public InMemorySpatialTypeIndex(Rectangle worldBounds) {
+        this.worldBounds = worldBounds;
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new Stripe();
+    }
+
+    /**
+     * Indexes the shapes of the specified entry, replacing any previously indexed version of it.
+     * @param shapes Maps property paths to the shapes which should be indexed under them.
+     * @return true if any shape was indexed, false otherwise.
+     */
+    public boolean insert(String uid, int version, Map<String, Shape> shapes) {
+        IndexedEntry entry = shapes.isEmpty() ? null : new IndexedEntry(uid, version, shapes, worldBounds);
+        Stripe stripe = getStripe(uid);
+        stripe.lock.writeLock().lock();
+        try {
+            IndexedEntry previous = entry != null ? stripe.entries.put(uid, entry) : stripe.entries.remove(uid);
+            if (previous != null)
+                previous.removeFrom(stripe.tree);
+            if (entry != null)
+                entry.addTo(stripe.tree);
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+        return entry != null;
+    }
+
+    /**
+     * Removes the shapes of the specified entry, if the indexed version matches the specified version.
+     */
+    public void remove(String uid, int version) {
+        Stripe stripe = getStripe(uid);
+        stripe.lock.writeLock().lock();
+        try {
+            IndexedEntry entry = stripe.entries.get(uid);
+            if (entry != null && entry.version == version) {
+                stripe.entries.remove(uid);
+                entry.removeFrom(stripe.tree);
+            }
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the uids of the entries whose shape in the specified path matches the specified operation and shape.
+     */
+    public List<String> query(String path, SpatialOperation operation, Shape shape) {
+        final Envelope envelope = toEnvelope(shape, worldBounds);
+        List<String> result = new ArrayList<String>();
+        for (Stripe stripe : stripes) {
+            stripe.lock.readLock().lock();
+            try {
+                // The tree returns all items in overlapping nodes, so candidates are filtered by their envelope first:
+                for (Object candidate : stripe.tree.query(envelope)) {
+                    IndexedShape indexedShape = (IndexedShape) candidate;
+                    if (indexedShape.path.equals(path) &&
+                            indexedShape.envelope.intersects(envelope) &&
+                            operation.evaluate(indexedShape.shape, shape))
+                        result.add(indexedShape.uid);
+                }
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        int result = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.readLock().lock();
+            try {
+                result += stripe.entries.size();
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        return result;
+    }
+
+    private Stripe getStripe(String uid) {
+        return stripes[(uid.hashCode() & 0x7fffffff) % stripes.length];
+    }
+
+    private static Envelope toEnvelope(Shape shape, Rectangle worldBounds) {
+        Rectangle bbox = shape.getBoundingBox();
+        // A bounding box which crosses the dateline is widened to the entire world width:
+        if (bbox.getCrossesDateLine())
+            return new Envelope(worldBounds.getMinX(), worldBounds.getMaxX(), bbox.getMinY(), bbox.getMaxY());
+        return new Envelope(bbox.getMinX(), bbox.getMaxX(), bbox.getMinY(), bbox.getMaxY());
+    }
+
+    private static class Stripe {
+        private final Quadtree tree = new Quadtree();
+        private final Map<String, IndexedEntry> entries = new HashMap<String, IndexedEntry>();
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    }
+
+    private static class IndexedEntry {
+        private final int version;
+        private final IndexedShape[] shapes;
+
+        private IndexedEntry(String uid, int version, Map<String, Shape> shapes, Rectangle worldBounds) {
+            this.version = version;
+            this.shapes = new IndexedShape[shapes.size()];
+            int i = 0;
+            for (Map.Entry<String, Shape> entry : shapes.entrySet())
+                this.shapes[i++] = new IndexedShape(uid, entry.getKey(), entry.getValue(), worldBounds);
+        }
+
+        private void addTo(Quadtree tree) {
+            for (IndexedShape shape : shapes)
+                tree.insert(shape.envelope, shape);
+        }
+
+        private void removeFrom(Quadtree tree) {
+            for (IndexedShape shape : shapes)
+                tree.remove(shape.envelope, shape);
+        }
+    }
+
+    private static class IndexedShape {
+        private final String uid;
+        private final String path;
+        private final Shape shape;
+        private final Envelope envelope;
+
+        private IndexedShape(String uid, String path, Shape shape, Rectangle worldBounds) {
+            this.uid = uid;
+            this.path = path;
+            this.shape = shape;
+            this.envelope = toEnvelope(shape, worldBounds);
+        }
+    }
+}
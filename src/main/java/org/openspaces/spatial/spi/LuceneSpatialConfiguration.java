@@ -26,8 +26,10 @@ import com.spatial4j.core.shape.impl.RectangleImpl;
 import org.apache.lucene.spatial.SpatialStrategy;
 import org.apache.lucene.spatial.bbox.BBoxStrategy;
 import org.apache.lucene.spatial.composite.CompositeSpatialStrategy;
+import org.apache.lucene.spatial.prefix.PrefixTreeStrategy;
 import org.apache.lucene.spatial.prefix.RecursivePrefixTreeStrategy;
 import org.apache.lucene.spatial.prefix.tree.GeohashPrefixTree;
+import org.apache.lucene.spatial.prefix.tree.PackedQuadPrefixTree;
 import org.apache.lucene.spatial.prefix.tree.QuadPrefixTree;
 import org.apache.lucene.spatial.prefix.tree.SpatialPrefixTree;
 import org.apache.lucene.spatial.serialized.SerializedDVStrategy;
@@ -36,9 +38,17 @@ import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.store.RAMDirectory;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
 
 /**
  * @author Yohana Khoury
@@ -57,9 +67,21 @@ public class LuceneSpatialConfiguration {
     //lucene.strategy.spatial-prefix-tree.max-levels
     public static final String SPATIAL_PREFIX_TREE_MAX_LEVELS = "lucene.strategy.spatial-prefix-tree.max-levels";
     public static final String SPATIAL_PREFIX_TREE_MAX_LEVELS_DEFAULT = "11";
+    //lucene.strategy.prune-leafy-branches (collapse branches whose cells are nearly all leaves into a single leaf)
+    public static final String PRUNE_LEAFY_BRANCHES = "lucene.strategy.prune-leafy-branches";
+    public static final String PRUNE_LEAFY_BRANCHES_DEFAULT = "true";
     //lucene.strategy.dist-err-pct
     public static final String DIST_ERR_PCT = "lucene.strategy.distance-error-pct";
     public static final String DIST_ERR_PCT_DEFAULT = "0.025";
+    //lucene.strategy.auto-tune (none, recommend or apply - apply uses the last recommendation when the index is rebuilt)
+    public static final String AUTO_TUNE = "lucene.strategy.auto-tune";
+    public static final String AUTO_TUNE_DEFAULT = SupportedAutoTune.None.name();
+    //lucene.strategy.auto-tune.terms-per-shape (budget of index terms per non-point shape)
+    public static final String AUTO_TUNE_TERMS_PER_SHAPE = "lucene.strategy.auto-tune.terms-per-shape";
+    public static final String AUTO_TUNE_TERMS_PER_SHAPE_DEFAULT = "500";
+    //lucene.strategy.hybrid.bbox-max-size (half diagonal of the largest non-rectangular shapes indexed as bounding boxes by the hybrid strategy, 0 for none)
+    public static final String HYBRID_BBOX_MAX_SIZE = "lucene.strategy.hybrid.bbox-max-size";
+    public static final String HYBRID_BBOX_MAX_SIZE_DEFAULT = "0";
 
     //lucene.storage.directory-type
     public static final String STORAGE_DIRECTORYTYPE = "lucene.storage.directory-type";
@@ -67,6 +89,37 @@ public class LuceneSpatialConfiguration {
     //lucene.storage.location
     public static final String STORAGE_LOCATION = "lucene.storage.location";
 
+    //lucene.query.timeout (milliseconds, 0 means no timeout)
+    public static final String QUERY_TIMEOUT = "lucene.query.timeout";
+    public static final String QUERY_TIMEOUT_DEFAULT = "0";
+    //lucene.query.simplify.min-vertices (query shapes with at least this many vertices are queried by a simplified cover, 0 disables)
+    public static final String QUERY_SIMPLIFY_MIN_VERTICES = "lucene.query.simplify.min-vertices";
+    public static final String QUERY_SIMPLIFY_MIN_VERTICES_DEFAULT = "10000";
+    //lucene.query.simplify.tolerance-pct (simplification tolerance, as a fraction of the query shape's bounding box diagonal)
+    public static final String QUERY_SIMPLIFY_TOLERANCE_PCT = "lucene.query.simplify.tolerance-pct";
+    public static final String QUERY_SIMPLIFY_TOLERANCE_PCT_DEFAULT = "0.001";
+
+    //lucene.index.properties (comma-separated property paths indexed alongside the shapes, filtered by calling the manager's queryByIndex with property filters directly)
+    public static final String INDEXED_PROPERTIES = "lucene.index.properties";
+
+    //lucene.index.time-property (property path holding the entry's time, as a number of millis or java.util.Date)
+    public static final String TIME_PROPERTY = "lucene.index.time-property";
+
+    //lucene.index.points-only-paths (comma-separated paths which only hold points, indexed in a packed point index)
+    public static final String POINTS_ONLY_PATHS = "lucene.index.points-only-paths";
+
+    //lucene.index.shape-cache.size (max number of distinct shapes interned with their spatial4j shape and cell tokens, 0 disables)
+    public static final String SHAPE_CACHE_SIZE = "lucene.index.shape-cache.size";
+    public static final String SHAPE_CACHE_SIZE_DEFAULT = "0";
+
+    //lucene.index.occupied-cells.level (queries outside the 2^level x 2^level grid cells occupied by indexed shapes return no results without a search, 0 disables - opt-in, as the cells are periodically rebuilt from the index)
+    public static final String OCCUPIED_CELLS_LEVEL = "lucene.index.occupied-cells.level";
+    public static final String OCCUPIED_CELLS_LEVEL_DEFAULT = "0";
+
+    //lucene.engine, can be overridden per type using lucene.engine.<type-name>
+    public static final String ENGINE = "lucene.engine";
+    public static final String ENGINE_DEFAULT = SupportedIndexEngine.Lucene.name();
+
     //context
     public static final String SPATIAL_CONTEXT = "context";
     public static final String SPATIAL_CONTEXT_DEFAULT = SupportedSpatialContext.JTS.name();
@@ -78,14 +131,28 @@ public class LuceneSpatialConfiguration {
     //context.world-bounds, default is set by lucene
     public static final String SPATIAL_CONTEXT_WORLD_BOUNDS = "context.world-bounds";
 
+    //context.profile (name under which the spatial context is registered with ShapeFactory, none by default)
+    public static final String SPATIAL_CONTEXT_PROFILE = "context.profile";
+
+    private final SupportedAutoTune _autoTune;
+    private final Properties _tunedProperties;
     private final SpatialContext _spatialContext;
+    private final String _spatialContextProfile;
     private final StrategyFactory _strategyFactory;
     private final DirectoryFactory _directoryFactory;
     private final int _maxUncommittedChanges;
     private final String _location;
+    private final long _queryTimeout;
+    private final List<String> _indexedProperties;
+    private final String _timeProperty;
+    private final List<String> _pointsOnlyPaths;
+    private final int _shapeCacheSize;
+    private final int _occupiedCellsLevel;
+    private final LuceneSpatialQueryExtensionProvider _provider;
+    private final SupportedIndexEngine _defaultEngine;
 
     private enum SupportedSpatialStrategy {
-        RecursivePrefixTree, BBox, Composite;
+        RecursivePrefixTree, BBox, Composite, Hybrid;
         public static SupportedSpatialStrategy byName (String key) {
             for (SupportedSpatialStrategy spatialStrategy : SupportedSpatialStrategy.values())
                 if (spatialStrategy.name().equalsIgnoreCase(key))
@@ -96,7 +163,7 @@ public class LuceneSpatialConfiguration {
     }
 
     private enum SupportedSpatialPrefixTree {
-        GeohashPrefixTree, QuadPrefixTree;
+        GeohashPrefixTree, QuadPrefixTree, PackedQuadPrefixTree, SphericalCellPrefixTree;
         public static SupportedSpatialPrefixTree byName (String key) {
             for (SupportedSpatialPrefixTree spatialPrefixTree : SupportedSpatialPrefixTree.values())
                 if (spatialPrefixTree.name().equalsIgnoreCase(key))
@@ -107,6 +174,17 @@ public class LuceneSpatialConfiguration {
         }
     }
 
+    private enum SupportedAutoTune {
+        None, Recommend, Apply;
+        public static SupportedAutoTune byName (String key) {
+            for (SupportedAutoTune autoTune : SupportedAutoTune.values())
+                if (autoTune.name().equalsIgnoreCase(key))
+                    return autoTune;
+
+            throw new IllegalArgumentException("Unsupported auto-tune mode: " + key + " - supported values: " + Arrays.asList(values()));
+        }
+    }
+
     private enum SupportedSpatialContext {
         Spatial4J, JTS;
 
@@ -119,6 +197,17 @@ public class LuceneSpatialConfiguration {
         }
     }
 
+    enum SupportedIndexEngine {
+        Lucene, InMemory;
+        public static SupportedIndexEngine byName (String key) {
+            for (SupportedIndexEngine engine : SupportedIndexEngine.values())
+                if (engine.name().equalsIgnoreCase(key))
+                    return engine;
+
+            throw new IllegalArgumentException("Unsupported index engine: " + key + " - supported values: " + Arrays.asList(values()));
+        }
+    }
+
     private enum SupportedDirectory {
         MMapDirectory, RAMDirectory;
         public static SupportedDirectory byName (String key) {
@@ -131,10 +220,21 @@ public class LuceneSpatialConfiguration {
     }
 
     public LuceneSpatialConfiguration(LuceneSpatialQueryExtensionProvider provider, QueryExtensionRuntimeInfo info) {
+        this._provider = provider;
+        this._defaultEngine = SupportedIndexEngine.byName(provider.getCustomProperty(ENGINE, ENGINE_DEFAULT));
         this._spatialContext = createSpatialContext(provider);
+        this._spatialContextProfile = provider.getCustomProperty(SPATIAL_CONTEXT_PROFILE, null);
+        this._location = initLocation(provider, info);
+        this._autoTune = SupportedAutoTune.byName(provider.getCustomProperty(AUTO_TUNE, AUTO_TUNE_DEFAULT));
+        this._tunedProperties = _autoTune == SupportedAutoTune.Apply ? loadTunedProperties(getTuningFile()) : new Properties();
         this._strategyFactory = createStrategyFactory(provider);
         this._directoryFactory = createDirectoryFactory(provider);
-        this._location = initLocation(provider, info);
+        this._queryTimeout = initQueryTimeout(provider);
+        this._indexedProperties = parseList(provider.getCustomProperty(INDEXED_PROPERTIES, null));
+        this._pointsOnlyPaths = parseList(provider.getCustomProperty(POINTS_ONLY_PATHS, null));
+        this._timeProperty = provider.getCustomProperty(TIME_PROPERTY, null);
+        this._shapeCacheSize = initShapeCacheSize(provider);
+        this._occupiedCellsLevel = initOccupiedCellsLevel(provider);
         //TODO: read from config
         this._maxUncommittedChanges = 1000;
     }
@@ -199,15 +299,14 @@ public class LuceneSpatialConfiguration {
         switch (spatialStrategy) {
             case RecursivePrefixTree: {
                 final SpatialPrefixTree geohashPrefixTree = createSpatialPrefixTree(provider, _spatialContext);
-                String distErrPctValue = provider.getCustomProperty(DIST_ERR_PCT, DIST_ERR_PCT_DEFAULT);
+                String distErrPctValue = getStrategyProperty(provider, DIST_ERR_PCT, DIST_ERR_PCT_DEFAULT);
                 final double distErrPct = Double.valueOf(distErrPctValue);
+                final boolean pruneLeafyBranches = Boolean.valueOf(provider.getCustomProperty(PRUNE_LEAFY_BRANCHES, PRUNE_LEAFY_BRANCHES_DEFAULT));
 
                 return new StrategyFactory(spatialStrategy) {
                     @Override
                     public SpatialStrategy createStrategy(String fieldName) {
-                        RecursivePrefixTreeStrategy strategy = new RecursivePrefixTreeStrategy(geohashPrefixTree, fieldName);
-                        strategy.setDistErrPct(distErrPct);
-                        return strategy;
+                        return createRecursivePrefixTreeStrategy(geohashPrefixTree, fieldName, distErrPct, pruneLeafyBranches);
                     }
                 };
             }
@@ -221,41 +320,119 @@ public class LuceneSpatialConfiguration {
             }
             case Composite: {
                 final SpatialPrefixTree geohashPrefixTree = createSpatialPrefixTree(provider, _spatialContext);
-                String distErrPctValue = provider.getCustomProperty(DIST_ERR_PCT, DIST_ERR_PCT_DEFAULT);
+                String distErrPctValue = getStrategyProperty(provider, DIST_ERR_PCT, DIST_ERR_PCT_DEFAULT);
                 final double distErrPct = Double.valueOf(distErrPctValue);
+                final boolean pruneLeafyBranches = Boolean.valueOf(provider.getCustomProperty(PRUNE_LEAFY_BRANCHES, PRUNE_LEAFY_BRANCHES_DEFAULT));
 
                 return new StrategyFactory(spatialStrategy) {
                     @Override
                     public SpatialStrategy createStrategy(String fieldName) {
-                        RecursivePrefixTreeStrategy recursivePrefixTreeStrategy = new RecursivePrefixTreeStrategy(geohashPrefixTree, fieldName);
-                        recursivePrefixTreeStrategy.setDistErrPct(distErrPct);
+                        RecursivePrefixTreeStrategy recursivePrefixTreeStrategy = createRecursivePrefixTreeStrategy(geohashPrefixTree, fieldName, distErrPct, pruneLeafyBranches);
                         SerializedDVStrategy serializedDVStrategy = new SerializedDVStrategy(_spatialContext, fieldName);
                         return new CompositeSpatialStrategy(fieldName, recursivePrefixTreeStrategy, serializedDVStrategy);
                     }
                 };
             }
+            case Hybrid: {
+                final SpatialPrefixTree geohashPrefixTree = createSpatialPrefixTree(provider, _spatialContext);
+                String distErrPctValue = getStrategyProperty(provider, DIST_ERR_PCT, DIST_ERR_PCT_DEFAULT);
+                final double distErrPct = Double.valueOf(distErrPctValue);
+                final boolean pruneLeafyBranches = Boolean.valueOf(provider.getCustomProperty(PRUNE_LEAFY_BRANCHES, PRUNE_LEAFY_BRANCHES_DEFAULT));
+                final double bboxMaxSize = initHybridBBoxMaxSize(provider);
+
+                return new StrategyFactory(spatialStrategy) {
+                    @Override
+                    public SpatialStrategy createStrategy(String fieldName) {
+                        RecursivePrefixTreeStrategy recursivePrefixTreeStrategy = createRecursivePrefixTreeStrategy(geohashPrefixTree,
+                                HybridSpatialStrategy.getPrefixTreeFieldName(fieldName), distErrPct, pruneLeafyBranches);
+                        return new HybridSpatialStrategy(_spatialContext, fieldName, recursivePrefixTreeStrategy, bboxMaxSize);
+                    }
+                };
+            }
             default:
                 throw new IllegalStateException("Unsupported strategy: " + spatialStrategy);
         }
     }
 
-    private static SpatialPrefixTree createSpatialPrefixTree(LuceneSpatialQueryExtensionProvider provider, SpatialContext spatialContext) {
+    private static RecursivePrefixTreeStrategy createRecursivePrefixTreeStrategy(SpatialPrefixTree spatialPrefixTree, String fieldName,
+                                                                                  double distErrPct, boolean pruneLeafyBranches) {
+        RecursivePrefixTreeStrategy strategy = new RecursivePrefixTreeStrategy(spatialPrefixTree, fieldName);
+        strategy.setDistErrPct(distErrPct);
+        // The strategy only prunes the legacy (geohash/quad) cells - the packed quad tree prunes its own cells, and
+        // spherical cells are not pruned:
+        if (spatialPrefixTree instanceof PackedQuadPrefixTree || spatialPrefixTree instanceof SphericalCellPrefixTree)
+            strategy.setPruneLeafyBranches(false);
+        else
+            strategy.setPruneLeafyBranches(pruneLeafyBranches);
+        return strategy;
+    }
+
+    private SpatialPrefixTree createSpatialPrefixTree(LuceneSpatialQueryExtensionProvider provider, SpatialContext spatialContext) {
+        String maxLevelsStr = getStrategyProperty(provider, SPATIAL_PREFIX_TREE_MAX_LEVELS, SPATIAL_PREFIX_TREE_MAX_LEVELS_DEFAULT);
+        return createSpatialPrefixTree(provider, spatialContext, Integer.valueOf(maxLevelsStr));
+    }
+
+    private static SpatialPrefixTree createSpatialPrefixTree(LuceneSpatialQueryExtensionProvider provider, SpatialContext spatialContext, int maxLevels) {
         String spatialPrefixTreeType = provider.getCustomProperty(SPATIAL_PREFIX_TREE, SPATIAL_PREFIX_TREE_DEFAULT);
 
         SupportedSpatialPrefixTree spatialPrefixTree = SupportedSpatialPrefixTree.byName(spatialPrefixTreeType);
-        String maxLevelsStr = provider.getCustomProperty(SPATIAL_PREFIX_TREE_MAX_LEVELS, SPATIAL_PREFIX_TREE_MAX_LEVELS_DEFAULT);
-        int maxLevels = Integer.valueOf(maxLevelsStr);
 
         switch (spatialPrefixTree) {
             case GeohashPrefixTree:
                 return new GeohashPrefixTree(spatialContext, maxLevels);
             case QuadPrefixTree:
                 return new QuadPrefixTree(spatialContext, maxLevels);
+            case PackedQuadPrefixTree: {
+                PackedQuadPrefixTree packedQuadPrefixTree = new PackedQuadPrefixTree(spatialContext, maxLevels);
+                packedQuadPrefixTree.setPruneLeafyBranches(Boolean.valueOf(provider.getCustomProperty(PRUNE_LEAFY_BRANCHES, PRUNE_LEAFY_BRANCHES_DEFAULT)));
+                return packedQuadPrefixTree;
+            }
+            case SphericalCellPrefixTree:
+                return new SphericalCellPrefixTree(spatialContext, maxLevels);
             default:
                 throw new RuntimeException("Unhandled spatial prefix tree type: " + spatialPrefixTree);
         }
     }
 
+    private static int getMaxLevelsPossible(LuceneSpatialQueryExtensionProvider provider) {
+        String spatialPrefixTreeType = provider.getCustomProperty(SPATIAL_PREFIX_TREE, SPATIAL_PREFIX_TREE_DEFAULT);
+        switch (SupportedSpatialPrefixTree.byName(spatialPrefixTreeType)) {
+            case QuadPrefixTree:
+                return QuadPrefixTree.MAX_LEVELS_POSSIBLE;
+            case PackedQuadPrefixTree:
+                return PackedQuadPrefixTree.MAX_LEVELS_POSSIBLE;
+            case SphericalCellPrefixTree:
+                return SphericalCellPrefixTree.getMaxLevelsPossible();
+            default:
+                return GeohashPrefixTree.getMaxLevelsPossible();
+        }
+    }
+
+    /**
+     * Gets a strategy property, preferring the value recommended by the last auto-tune run if auto-tune is applied.
+     */
+    private String getStrategyProperty(LuceneSpatialQueryExtensionProvider provider, String key, String defaultValue) {
+        String tunedValue = _tunedProperties.getProperty(key);
+        return tunedValue != null ? tunedValue : provider.getCustomProperty(key, defaultValue);
+    }
+
+    private static Properties loadTunedProperties(File file) {
+        Properties properties = new Properties();
+        if (file.exists()) {
+            try {
+                InputStream inputStream = new FileInputStream(file);
+                try {
+                    properties.load(inputStream);
+                } finally {
+                    inputStream.close();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to load auto-tuned settings from " + file, e);
+            }
+        }
+        return properties;
+    }
+
     private static String initLocation(LuceneSpatialQueryExtensionProvider provider, QueryExtensionRuntimeInfo info) {
         //try lucene.storage.location first, if not configured then use workingDir.
         //If workingDir == null (Embedded space , Integrated PU , etc...) then use process working dir (user.dir)
@@ -270,6 +447,70 @@ public class LuceneSpatialConfiguration {
         return location + FILE_SEPARATOR + spaceInstanceName;
     }
 
+    private static long initQueryTimeout(LuceneSpatialQueryExtensionProvider provider) {
+        String queryTimeoutValue = provider.getCustomProperty(QUERY_TIMEOUT, QUERY_TIMEOUT_DEFAULT);
+        long queryTimeout;
+        try {
+            queryTimeout = Long.parseLong(queryTimeoutValue.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid query timeout [" + queryTimeoutValue + "] - must be a number of milliseconds");
+        }
+        if (queryTimeout < 0)
+            throw new IllegalArgumentException("Invalid query timeout [" + queryTimeoutValue + "] - must not be negative");
+        return queryTimeout;
+    }
+
+    private static double initHybridBBoxMaxSize(LuceneSpatialQueryExtensionProvider provider) {
+        String bboxMaxSizeValue = provider.getCustomProperty(HYBRID_BBOX_MAX_SIZE, HYBRID_BBOX_MAX_SIZE_DEFAULT);
+        double bboxMaxSize;
+        try {
+            bboxMaxSize = Double.parseDouble(bboxMaxSizeValue.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid hybrid bounding box max size [" + bboxMaxSizeValue + "] - must be a number");
+        }
+        if (bboxMaxSize < 0)
+            throw new IllegalArgumentException("Invalid hybrid bounding box max size [" + bboxMaxSizeValue + "] - must not be negative");
+        return bboxMaxSize;
+    }
+
+    private static int initShapeCacheSize(LuceneSpatialQueryExtensionProvider provider) {
+        String shapeCacheSizeValue = provider.getCustomProperty(SHAPE_CACHE_SIZE, SHAPE_CACHE_SIZE_DEFAULT);
+        int shapeCacheSize;
+        try {
+            shapeCacheSize = Integer.parseInt(shapeCacheSizeValue.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid shape cache size [" + shapeCacheSizeValue + "] - must be a number");
+        }
+        if (shapeCacheSize < 0)
+            throw new IllegalArgumentException("Invalid shape cache size [" + shapeCacheSizeValue + "] - must not be negative");
+        return shapeCacheSize;
+    }
+
+    private static int initOccupiedCellsLevel(LuceneSpatialQueryExtensionProvider provider) {
+        String levelValue = provider.getCustomProperty(OCCUPIED_CELLS_LEVEL, OCCUPIED_CELLS_LEVEL_DEFAULT);
+        int level;
+        try {
+            level = Integer.parseInt(levelValue.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid occupied cells level [" + levelValue + "] - must be a number");
+        }
+        if (level < 0 || level > OccupiedCellBitmap.MAX_LEVEL)
+            throw new IllegalArgumentException("Invalid occupied cells level [" + levelValue + "] - must be between 0 and " + OccupiedCellBitmap.MAX_LEVEL);
+        return level;
+    }
+
+    private static List<String> parseList(String value) {
+        List<String> result = new ArrayList<String>();
+        if (value != null) {
+            for (String token : value.split(",")) {
+                String path = token.trim();
+                if (path.length() != 0 && !result.contains(path))
+                    result.add(path);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
     protected DirectoryFactory createDirectoryFactory(LuceneSpatialQueryExtensionProvider provider) {
         String directoryType = provider.getCustomProperty(STORAGE_DIRECTORYTYPE, STORAGE_DIRECTORYTYPE_DEFAULT);
         SupportedDirectory directory = SupportedDirectory.byName(directoryType);
@@ -301,6 +542,18 @@ public class LuceneSpatialConfiguration {
         return this._strategyFactory.createStrategy(fieldName);
     }
 
+    SupportedIndexEngine getIndexEngine(String typeName) {
+        String engine = _provider.getCustomProperty(ENGINE + "." + typeName, null);
+        return engine == null ? _defaultEngine : SupportedIndexEngine.byName(engine);
+    }
+
+    /**
+     * Checks if the specified type is indexed in memory rather than in Lucene.
+     */
+    public boolean isInMemoryIndex(String typeName) {
+        return getIndexEngine(typeName) == SupportedIndexEngine.InMemory;
+    }
+
     public Directory getDirectory(String relativePath) throws IOException {
         return _directoryFactory.getDirectory(relativePath);
     }
@@ -309,6 +562,89 @@ public class LuceneSpatialConfiguration {
         return _spatialContext;
     }
 
+    /**
+     * Gets the name under which the spatial context is registered with ShapeFactory, or null if it is not registered.
+     */
+    public String getSpatialContextProfile() {
+        return _spatialContextProfile;
+    }
+
+    /**
+     * Creates an advisor which samples shapes and queries to recommend prefix tree settings, or null if auto-tune is
+     * disabled or the strategy does not use a prefix tree.
+     */
+    public SpatialPrecisionAdvisor createPrecisionAdvisor() {
+        if (_autoTune == SupportedAutoTune.None || _strategyFactory.getStrategyName() == SupportedSpatialStrategy.BBox)
+            return null;
+        String termsPerShapeValue = _provider.getCustomProperty(AUTO_TUNE_TERMS_PER_SHAPE, AUTO_TUNE_TERMS_PER_SHAPE_DEFAULT);
+        int termsPerShape;
+        try {
+            termsPerShape = Integer.parseInt(termsPerShapeValue.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid auto-tune terms per shape [" + termsPerShapeValue + "] - must be a number");
+        }
+        return new SpatialPrecisionAdvisor(_spatialContext, createSpatialPrefixTree(_provider, _spatialContext, getMaxLevelsPossible(_provider)),
+                Integer.valueOf(getStrategyProperty(_provider, SPATIAL_PREFIX_TREE_MAX_LEVELS, SPATIAL_PREFIX_TREE_MAX_LEVELS_DEFAULT)),
+                Double.valueOf(getStrategyProperty(_provider, DIST_ERR_PCT, DIST_ERR_PCT_DEFAULT)),
+                termsPerShape);
+    }
+
+    /**
+     * Creates a planner which queries the index by simplified covers of large query shapes, or null if query
+     * simplification is disabled or the spatial context does not support JTS geometries.
+     */
+    public QueryShapePlanner createQueryShapePlanner() {
+        String minVerticesValue = _provider.getCustomProperty(QUERY_SIMPLIFY_MIN_VERTICES, QUERY_SIMPLIFY_MIN_VERTICES_DEFAULT);
+        int minVertices;
+        try {
+            minVertices = Integer.parseInt(minVerticesValue.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid query simplification min vertices [" + minVerticesValue + "] - must be a number");
+        }
+        if (minVertices < 0)
+            throw new IllegalArgumentException("Invalid query simplification min vertices [" + minVerticesValue + "] - must not be negative");
+        if (minVertices == 0 || !(_spatialContext instanceof JtsSpatialContext))
+            return null;
+        String tolerancePctValue = _provider.getCustomProperty(QUERY_SIMPLIFY_TOLERANCE_PCT, QUERY_SIMPLIFY_TOLERANCE_PCT_DEFAULT);
+        double tolerancePct;
+        try {
+            tolerancePct = Double.parseDouble(tolerancePctValue.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid query simplification tolerance [" + tolerancePctValue + "] - must be a number");
+        }
+        return new QueryShapePlanner((JtsSpatialContext) _spatialContext, minVertices, tolerancePct);
+    }
+
+    /**
+     * Checks if auto-tune recommendations are applied when the index is rebuilt (see {@link #saveRecommendation}).
+     */
+    public boolean isAutoTuneApplied() {
+        return _autoTune == SupportedAutoTune.Apply;
+    }
+
+    /**
+     * Saves the specified recommendation, to be applied when the index is next rebuilt. The settings are kept next to
+     * the index location, which is deleted when the space starts.
+     */
+    public void saveRecommendation(PrecisionRecommendation recommendation) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(SPATIAL_PREFIX_TREE_MAX_LEVELS, String.valueOf(recommendation.getMaxLevels()));
+        properties.setProperty(DIST_ERR_PCT, String.valueOf(recommendation.getDistErrPct()));
+        File file = getTuningFile();
+        if (file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+        OutputStream outputStream = new FileOutputStream(file);
+        try {
+            properties.store(outputStream, "Auto-tuned spatial prefix tree settings: " + recommendation);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private File getTuningFile() {
+        return new File(_location + ".tuning.properties");
+    }
+
     public int getMaxUncommittedChanges() {
         return _maxUncommittedChanges;
     }
@@ -317,6 +653,60 @@ public class LuceneSpatialConfiguration {
         return _location;
     }
 
+    /**
+     * Gets the default time budget of a spatial query in milliseconds, or 0 if queries are not time-limited.
+     */
+    public long getQueryTimeout() {
+        return _queryTimeout;
+    }
+
+    /**
+     * Gets the non-spatial property paths which are indexed alongside the shapes of each entry.
+     */
+    public List<String> getIndexedProperties() {
+        return _indexedProperties;
+    }
+
+    /**
+     * Gets the property path whose value is indexed as the entry's time, or null if entries are not time-indexed.
+     */
+    public String getTimeProperty() {
+        return _timeProperty;
+    }
+
+    /**
+     * Gets the paths which are declared to hold only points, and are therefore indexed in a packed point index.
+     */
+    public List<String> getPointsOnlyPaths() {
+        return _pointsOnlyPaths;
+    }
+
+    /**
+     * Gets the maximum number of distinct shapes kept in the shape cache, or 0 if shapes are not cached.
+     */
+    public int getShapeCacheSize() {
+        return _shapeCacheSize;
+    }
+
+    /**
+     * Gets the level of the grid of occupied cells kept per indexed path, or 0 if occupied cells are not tracked.
+     */
+    public int getOccupiedCellsLevel() {
+        return _occupiedCellsLevel;
+    }
+
+    /**
+     * Gets the prefix tree strategy which indexes the shapes of the specified strategy, or null if it does not index
+     * all shapes in a prefix tree.
+     */
+    public static PrefixTreeStrategy getPrefixTreeStrategy(SpatialStrategy strategy) {
+        if (strategy instanceof PrefixTreeStrategy)
+            return (PrefixTreeStrategy) strategy;
+        if (strategy instanceof CompositeSpatialStrategy)
+            return ((CompositeSpatialStrategy) strategy).getIndexStrategy();
+        return null;
+    }
+
     public abstract class StrategyFactory {
         private SupportedSpatialStrategy _strategyName;
 
@@ -334,5 +724,4 @@ public class LuceneSpatialConfiguration {
     public abstract class DirectoryFactory {
         public abstract Directory getDirectory(String relativePath) throws IOException;
     }
-
 }
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.spi;
+
+import org.apache.lucene.document.DoubleField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+/**
+ * Maps non-spatial property values to Lucene fields (and back to queries), so they can be
+ * indexed in the same document as the shapes and filtered within Lucene.
+ * Strings, enums and characters are indexed as keywords, integral numbers as longs,
+ * floating point numbers as doubles and booleans as "true"/"false" keywords.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class LuceneSpatialPropertyFields {
+    private static final String FIELD_PREFIX = "XAP_PROPERTY_";
+
+    /**
+     * Private ctor to prevent instantiating this helper class.
+     */
+    private LuceneSpatialPropertyFields() {
+    }
+
+    public static String toFieldName(String path) {
+        return FIELD_PREFIX + path;
+    }
+
+    /**
+     * Creates a field for the specified property value, or returns null if the value is null.
+     */
+    public static Field createField(String path, Object value) {
+        if (value == null)
+            return null;
+        final String fieldName = toFieldName(path);
+        if (isKeyword(value))
+            return new StringField(fieldName, toKeyword(value), Field.Store.NO);
+        if (isIntegral(value))
+            return new LongField(fieldName, ((Number) value).longValue(), Field.Store.NO);
+        if (isFloatingPoint(value))
+            return new DoubleField(fieldName, ((Number) value).doubleValue(), Field.Store.NO);
+        throw new IllegalArgumentException("Unsupported indexed property type for path [" + path + "]: " + value.getClass().getName());
+    }
+
+    /**
+     * Creates a query matching documents whose indexed property equals the specified value.
+     */
+    public static Query createEqualsQuery(String path, Object value) {
+        if (value == null)
+            throw new IllegalArgumentException("Indexed property filter value for path [" + path + "] cannot be null");
+        final String fieldName = toFieldName(path);
+        if (isKeyword(value))
+            return new TermQuery(new Term(fieldName, toKeyword(value)));
+        if (isIntegral(value)) {
+            long l = ((Number) value).longValue();
+            return NumericRangeQuery.newLongRange(fieldName, l, l, true, true);
+        }
+        if (isFloatingPoint(value)) {
+            double d = ((Number) value).doubleValue();
+            return NumericRangeQuery.newDoubleRange(fieldName, d, d, true, true);
+        }
+        throw new IllegalArgumentException("Unsupported indexed property type for path [" + path + "]: " + value.getClass().getName());
+    }
+
+    private static boolean isKeyword(Object value) {
+        return value instanceof String || value instanceof Enum || value instanceof Character || value instanceof Boolean;
+    }
+
+    private static String toKeyword(Object value) {
+        if (value instanceof Enum)
+            return ((Enum) value).name();
+        return value.toString();
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    private static boolean isFloatingPoint(Object value) {
+        return value instanceof Double || value instanceof Float;
+    }
+}
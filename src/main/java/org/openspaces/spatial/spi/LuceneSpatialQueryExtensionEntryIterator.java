@@ -34,12 +34,21 @@ public class LuceneSpatialQueryExtensionEntryIterator extends QueryExtensionEntr
     private final ScoreDoc[] scores;
     private final IndexSearcher indexSearcher;
     private final DirectoryReader directoryReader;
+    private final long deadline;
     private int position;
 
     public LuceneSpatialQueryExtensionEntryIterator(ScoreDoc[] scores, IndexSearcher indexSearcher, DirectoryReader directoryReader) {
+        this(scores, indexSearcher, directoryReader, 0);
+    }
+
+    /**
+     * @param deadline Time (in millis) after which iteration is aborted, or 0 for no limit.
+     */
+    public LuceneSpatialQueryExtensionEntryIterator(ScoreDoc[] scores, IndexSearcher indexSearcher, DirectoryReader directoryReader, long deadline) {
         this.scores = scores;
         this.indexSearcher = indexSearcher;
         this.directoryReader = directoryReader;
+        this.deadline = deadline;
     }
 
     @Override
@@ -54,6 +63,8 @@ public class LuceneSpatialQueryExtensionEntryIterator extends QueryExtensionEntr
     }
 
     public String nextUid() {
+        if (deadline != 0 && System.currentTimeMillis() > deadline)
+            throw new SpaceRuntimeException("Spatial query exceeded its timeout while iterating results");
         try {
             Document d = indexSearcher.doc(scores[position++].doc);
             return d.get(LuceneSpatialQueryExtensionManager.XAP_ID);
@@ -26,20 +26,32 @@ import com.gigaspaces.query.extension.QueryExtensionManager;
 import com.gigaspaces.query.extension.QueryExtensionRuntimeInfo;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongField;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.ExitableDirectoryReader;
+import org.apache.lucene.index.QueryTimeout;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.*;
 import org.apache.lucene.spatial.SpatialStrategy;
 import org.apache.lucene.spatial.query.SpatialArgs;
 import org.apache.lucene.spatial.query.SpatialOperation;
+import org.openspaces.spatial.ShapeFactory;
+import org.openspaces.spatial.shapes.Circle;
+import org.openspaces.spatial.shapes.Point;
+import org.openspaces.spatial.shapes.Rectangle;
 import org.openspaces.spatial.shapes.Shape;
 import org.openspaces.spatial.spatial4j.Spatial4jShapeProvider;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -52,27 +64,44 @@ public class LuceneSpatialQueryExtensionManager extends QueryExtensionManager {
 
     protected static final String XAP_ID = "XAP_ID";
     private static final String XAP_ID_VERSION = "XAP_ID_VERSION";
+    private static final String XAP_TIME = "XAP_TIME";
     private static final int MAX_RESULTS = Integer.MAX_VALUE;
     private static final Map<String, SpatialOperation> _spatialOperations = initSpatialOperations();
 
     private final Map<String, LuceneSpatialTypeIndex> _luceneHolderMap = new ConcurrentHashMap<String, LuceneSpatialTypeIndex>();
+    private final Map<String, InMemorySpatialTypeIndex> _inMemoryIndexMap = new ConcurrentHashMap<String, InMemorySpatialTypeIndex>();
+    private final Map<Long, CancellableCollector> _runningQueries = new ConcurrentHashMap<Long, CancellableCollector>();
+    private final AtomicLong _querySequence = new AtomicLong();
     private final String _namespace;
     private final LuceneSpatialConfiguration _luceneConfiguration;
+    private final SpatialShapeCache _shapeCache;
+    private final SpatialPrecisionAdvisor _precisionAdvisor;
+    private final QueryShapePlanner _queryShapePlanner;
 
     public LuceneSpatialQueryExtensionManager(LuceneSpatialQueryExtensionProvider provider, QueryExtensionRuntimeInfo info) {
         super(info);
         _namespace = provider.getNamespace();
         _luceneConfiguration = new LuceneSpatialConfiguration(provider, info);
+        _shapeCache = _luceneConfiguration.getShapeCacheSize() != 0
+                ? new SpatialShapeCache(_luceneConfiguration.getSpatialContext(), _luceneConfiguration.getShapeCacheSize())
+                : null;
+        _precisionAdvisor = _luceneConfiguration.createPrecisionAdvisor();
+        _queryShapePlanner = _luceneConfiguration.createQueryShapePlanner();
+        if (_luceneConfiguration.getSpatialContextProfile() != null)
+            ShapeFactory.registerSpatialContext(_luceneConfiguration.getSpatialContextProfile(), _luceneConfiguration.getSpatialContext());
         File location = new File(_luceneConfiguration.getLocation());
         FileUtils.deleteFileOrDirectoryIfExists(location);
     }
 
     @Override
     public void close() throws IOException {
+        if (_precisionAdvisor != null)
+            reportPrecisionRecommendation();
         for (LuceneSpatialTypeIndex luceneHolder : _luceneHolderMap.values())
             luceneHolder.close();
 
         _luceneHolderMap.clear();
+        _inMemoryIndexMap.clear();
         FileUtils.deleteFileOrDirectoryIfExists(new File(_luceneConfiguration.getLocation()));
         super.close();
     }
@@ -81,7 +110,12 @@ public class LuceneSpatialQueryExtensionManager extends QueryExtensionManager {
     public void registerType(SpaceTypeDescriptor typeDescriptor) {
         super.registerType(typeDescriptor);
         final String typeName = typeDescriptor.getTypeName();
-        if (!_luceneHolderMap.containsKey(typeName)) {
+        if (_luceneConfiguration.isInMemoryIndex(typeName)) {
+            if (!_inMemoryIndexMap.containsKey(typeName))
+                _inMemoryIndexMap.put(typeName, new InMemorySpatialTypeIndex(_luceneConfiguration.getSpatialContext().getWorldBounds()));
+            else
+                _logger.log(Level.WARNING, "Type [" + typeName + "] is already registered");
+        } else if (!_luceneHolderMap.containsKey(typeName)) {
             try {
                 _luceneHolderMap.put(typeName, new LuceneSpatialTypeIndex(_luceneConfiguration, _namespace, typeDescriptor));
             } catch (IOException e) {
@@ -95,20 +129,28 @@ public class LuceneSpatialQueryExtensionManager extends QueryExtensionManager {
     @Override
     public boolean insertEntry(SpaceServerEntry entry, boolean hasPrevious) {
         final String typeName = entry.getSpaceTypeDescriptor().getTypeName();
+        final InMemorySpatialTypeIndex inMemoryIndex = _inMemoryIndexMap.get(typeName);
+        if (inMemoryIndex != null)
+            return insertEntry(inMemoryIndex, entry);
         final LuceneSpatialTypeIndex luceneHolder = _luceneHolderMap.get(typeName);
         try {
+            final boolean pointsIndexed = indexPoints(luceneHolder, entry);
             final Document doc = createDocumentIfNeeded(luceneHolder, entry);
             // Add new
-            if (doc != null)
+            if (doc != null) {
                 luceneHolder.getIndexWriter().addDocument(doc);
+                addOccupiedCells(luceneHolder, entry);
+            }
             // Delete old
-            if (hasPrevious)
+            if (hasPrevious) {
                 luceneHolder.getIndexWriter().deleteDocuments(new TermQuery(new Term(XAP_ID_VERSION,
                         concat(entry.getUid(), entry.getVersion() - 1))));
+                luceneHolder.onShapesRemoved();
+            }
             // Flush
             if (doc != null || hasPrevious)
                 luceneHolder.commit(false);
-            return doc != null;
+            return doc != null || pointsIndexed;
         } catch (Exception e) {
             String operation = hasPrevious ? "update" : "insert";
             throw new SpaceRuntimeException("Failed to " + operation + " entry of type " + typeName + " with id [" + entry.getUid() + "]", e);
@@ -119,9 +161,17 @@ public class LuceneSpatialQueryExtensionManager extends QueryExtensionManager {
     public void removeEntry(SpaceTypeDescriptor typeDescriptor, String uid, int version)
     {
         final String typeName = typeDescriptor.getTypeName();
+        final InMemorySpatialTypeIndex inMemoryIndex = _inMemoryIndexMap.get(typeName);
+        if (inMemoryIndex != null) {
+            inMemoryIndex.remove(uid, version);
+            return;
+        }
         final LuceneSpatialTypeIndex luceneHolder = _luceneHolderMap.get(typeName);
+        for (PackedPointIndex pointIndex : luceneHolder.getPointIndexes())
+            pointIndex.remove(uid, version);
         try {
             luceneHolder.getIndexWriter().deleteDocuments(new TermQuery(new Term(XAP_ID_VERSION, concat(uid, version))));
+            luceneHolder.onShapesRemoved();
             luceneHolder.commit(false);
         } catch (IOException e) {
             throw new SpaceRuntimeException("Failed to remove entry of type " + typeName, e);
@@ -130,22 +180,249 @@ public class LuceneSpatialQueryExtensionManager extends QueryExtensionManager {
 
     @Override
     public QueryExtensionEntryIterator queryByIndex(String typeName, String path, String operationName, Object operand) {
+        return queryByIndex(typeName, path, operationName, operand, _luceneConfiguration.getQueryTimeout());
+    }
+
+    /**
+     * Queries the index of the specified type, aborting the search if it does not complete within the specified timeout.
+     * @param timeout Time budget of the query in milliseconds, or 0 for no limit.
+     */
+    public QueryExtensionEntryIterator queryByIndex(String typeName, String path, String operationName, Object operand, long timeout) {
+        final InMemorySpatialTypeIndex inMemoryIndex = _inMemoryIndexMap.get(typeName);
+        if (inMemoryIndex != null) {
+            if (_logger.isLoggable(Level.FINE))
+                _logger.log(Level.FINE, "query [typeName=" + typeName + ", path=" + path + ", operation=" + operationName + ", operand=" + operand + ", engine=InMemory]");
+            return new InMemorySpatialQueryExtensionEntryIterator(inMemoryIndex.query(path, toOperation(operationName), toShape(operand)));
+        }
+        final LuceneSpatialTypeIndex luceneHolder = _luceneHolderMap.get(typeName);
+        final PackedPointIndex pointIndex = luceneHolder != null ? luceneHolder.getPointIndex(path) : null;
+        if (pointIndex != null) {
+            if (_logger.isLoggable(Level.FINE))
+                _logger.log(Level.FINE, "query [typeName=" + typeName + ", path=" + path + ", operation=" + operationName + ", operand=" + operand + ", engine=PackedPoints]");
+            return new InMemorySpatialQueryExtensionEntryIterator(pointIndex.query(toOperation(operationName), toShape(operand)));
+        }
+        return queryByIndex(typeName, path, operationName, operand, null, timeout);
+    }
+
+    /**
+     * Queries the index of the specified type for entries matching both the spatial predicate and the specified
+     * property values. The filtered properties must be configured as indexed properties (see {@link LuceneSpatialConfiguration#INDEXED_PROPERTIES}),
+     * so that the combined predicate is evaluated within Lucene and only matching entries are returned.
+     * <p>
+     * Note that the space only calls {@link #queryByIndex(String, String, String, Object)}, which does not filter by
+     * properties (the space filters the entries it returns by the rest of the query), so this method must be called
+     * directly on the manager. The same applies to the time-windowed query.
+     * @param propertyFilters Maps indexed property paths to the values they should be equal to (optional).
+     * @param timeout Time budget of the query in milliseconds, or 0 for no limit.
+     */
+    public QueryExtensionEntryIterator queryByIndex(String typeName, String path, String operationName, Object operand,
+                                                    Map<String, Object> propertyFilters, long timeout) {
+        if (_logger.isLoggable(Level.FINE))
+            _logger.log(Level.FINE, "query [typeName=" + typeName + ", path=" + path + ", operation=" + operationName + ", operand=" + operand +
+                    ", filters=" + propertyFilters + ", timeout=" + timeout + "]");
+
+        final SpatialStrategy spatialStrategy = _luceneConfiguration.getStrategy(path);
+        final LuceneSpatialTypeIndex luceneHolder = getLuceneTypeIndex(typeName, path);
+        sampleQuery(typeName, operand);
+        if (!luceneHolder.isOccupied(path, toShape(operand).getBoundingBox()))
+            return emptyIterator(typeName, path, operationName);
+        final SpatialOperation operation = toOperation(operationName);
+        final Query spatialQuery = spatialStrategy.makeQuery(new SpatialArgs(operation, toIndexQueryShape(operation, operand)));
+        final Query query = propertyFilters == null || propertyFilters.isEmpty()
+                ? spatialQuery
+                : addPropertyFilters(spatialQuery, propertyFilters, luceneHolder);
+        return search(luceneHolder, typeName, path, operationName, query, timeout);
+    }
+
+    /**
+     * Queries the index of the specified type for entries matching the spatial predicate whose time property
+     * (see {@link LuceneSpatialConfiguration#TIME_PROPERTY}) falls within the specified range.
+     * Both the shape and the time range are evaluated within a single Lucene query, so entries outside the time window
+     * are filtered at query time and never returned (entries without a time value do not match any time window).
+     * Note that the index is not partitioned by time: expired entries are removed from the index one document at a
+     * time, as the space removes them (see {@link #removeEntry}), and their segments are reclaimed by regular merges.
+     * Dropping whole time partitions is not implemented, since the space notifies the removal of each expired entry
+     * individually, so every removal has to be applied anyway, and partitions would spread every query across several
+     * indexes.
+     * @param fromTime Lower bound of the time range (inclusive), in milliseconds.
+     * @param toTime Upper bound of the time range (inclusive), in milliseconds.
+     * @param timeout Time budget of the query in milliseconds, or 0 for no limit.
+     */
+    public QueryExtensionEntryIterator queryByIndex(String typeName, String path, String operationName, Object operand,
+                                                    long fromTime, long toTime, long timeout) {
         if (_logger.isLoggable(Level.FINE))
-            _logger.log(Level.FINE, "query [typeName=" + typeName + ", path=" + path + ", operation=" + operationName + ", operand=" + operand + "]");
+            _logger.log(Level.FINE, "query [typeName=" + typeName + ", path=" + path + ", operation=" + operationName + ", operand=" + operand +
+                    ", fromTime=" + fromTime + ", toTime=" + toTime + ", timeout=" + timeout + "]");
+        if (_luceneConfiguration.getTimeProperty() == null)
+            throw new IllegalStateException("Time-windowed spatial queries require " + LuceneSpatialConfiguration.TIME_PROPERTY + " to be configured");
 
         final SpatialStrategy spatialStrategy = _luceneConfiguration.getStrategy(path);
-        final Query query = spatialStrategy.makeQuery(new SpatialArgs(toOperation(operationName), toShape(operand)));
+        final LuceneSpatialTypeIndex luceneHolder = getLuceneTypeIndex(typeName, path);
+        sampleQuery(typeName, operand);
+        if (!luceneHolder.isOccupied(path, toShape(operand).getBoundingBox()))
+            return emptyIterator(typeName, path, operationName);
+        final SpatialOperation operation = toOperation(operationName);
+        final Query query = new BooleanQuery.Builder()
+                .add(spatialStrategy.makeQuery(new SpatialArgs(operation, toIndexQueryShape(operation, operand))), BooleanClause.Occur.MUST)
+                .add(NumericRangeQuery.newLongRange(XAP_TIME, fromTime, toTime, true, true), BooleanClause.Occur.FILTER)
+                .build();
+        return search(luceneHolder, typeName, path, operationName, query, timeout);
+    }
+
+    /**
+     * Estimates the number of entries of the specified type matching the spatial predicate, without searching the index
+     * (see {@link SpatialSelectivityEstimator}), so compound queries can be driven by the most selective index. The
+     * estimate counts the entries intersecting the operand (an upper bound for within and contains), as of the last
+     * commit of the index.
+     * @return The estimated number of matching entries, or -1 if the path is not indexed in a prefix tree.
+     */
+    public long estimateCount(String typeName, String path, String operationName, Object operand) {
         final LuceneSpatialTypeIndex luceneHolder = _luceneHolderMap.get(typeName);
+        if (luceneHolder == null || luceneHolder.getPointIndex(path) != null)
+            return -1;
+        final SpatialSelectivityEstimator estimator = SpatialSelectivityEstimator.create(_luceneConfiguration.getStrategy(path));
+        if (estimator == null)
+            return -1;
+        final com.spatial4j.core.shape.Shape shape = toIndexQueryShape(toOperation(operationName), operand);
+        if (!luceneHolder.isOccupied(path, shape.getBoundingBox()))
+            return 0;
+        try {
+            if (!DirectoryReader.indexExists(luceneHolder.getDirectory()))
+                return 0;
+            final DirectoryReader dr = DirectoryReader.open(luceneHolder.getDirectory());
+            try {
+                return estimator.estimate(dr, shape);
+            } finally {
+                dr.close();
+            }
+        } catch (IOException e) {
+            throw new SpaceRuntimeException("Failed to estimate matches of type " + typeName + " [path=" + path + ", operation=" + operationName + "]", e);
+        }
+    }
+
+    private QueryExtensionEntryIterator search(LuceneSpatialTypeIndex luceneHolder, String typeName, String path, String operationName,
+                                               Query query, long timeout) {
+        DirectoryReader dr = null;
+        CancellableCollector cancellableCollector = null;
+        boolean succeeded = false;
         try {
             // Flush
             luceneHolder.commit(true);
 
-            DirectoryReader dr = DirectoryReader.open(luceneHolder.getDirectory());
+            final long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+            dr = DirectoryReader.open(luceneHolder.getDirectory());
+            TopScoreDocCollector topDocsCollector = TopScoreDocCollector.create(Math.max(1, Math.min(MAX_RESULTS, dr.maxDoc())));
+            cancellableCollector = new CancellableCollector(topDocsCollector, _querySequence.incrementAndGet(), typeName, path, operationName);
+            _runningQueries.put(cancellableCollector.getQueryId(), cancellableCollector);
+            // Most of the work of a large query is the prefix tree traversal, which enumerates terms before collecting
+            // any document, so the reader aborts the enumeration once the query times out or is cancelled:
+            dr = ExitableDirectoryReader.wrap(dr, createQueryTimeout(cancellableCollector, deadline));
             IndexSearcher is = new IndexSearcher(dr);
-            ScoreDoc[] scores = is.search(query, MAX_RESULTS).scoreDocs;
-            return new LuceneSpatialQueryExtensionEntryIterator(scores, is, dr);
+            Collector collector = cancellableCollector;
+            if (timeout > 0)
+                collector = new TimeLimitingCollector(collector, TimeLimitingCollector.getGlobalCounter(), timeout);
+            is.search(query, collector);
+            cancellableCollector.checkCancelled();
+            if (deadline != 0 && System.currentTimeMillis() > deadline)
+                throw new SpaceRuntimeException("Spatial query exceeded timeout of " + timeout + "ms [typeName=" + typeName + ", path=" + path + ", operation=" + operationName + "]");
+            ScoreDoc[] scores = topDocsCollector.topDocs().scoreDocs;
+            QueryExtensionEntryIterator result = new LuceneSpatialQueryExtensionEntryIterator(scores, is, dr, deadline);
+            succeeded = true;
+            return result;
+        } catch (TimeLimitingCollector.TimeExceededException e) {
+            throw new SpaceRuntimeException("Spatial query exceeded timeout of " + timeout + "ms [typeName=" + typeName + ", path=" + path + ", operation=" + operationName + "]", e);
+        } catch (ExitableDirectoryReader.ExitingReaderException e) {
+            if (cancellableCollector.isCancelled())
+                throw new SpaceRuntimeException("Spatial query was cancelled [typeName=" + typeName + ", path=" + path + ", operation=" + operationName + "]", e);
+            throw new SpaceRuntimeException("Spatial query exceeded timeout of " + timeout + "ms [typeName=" + typeName + ", path=" + path + ", operation=" + operationName + "]", e);
+        } catch (CancellableCollector.QueryCancelledException e) {
+            throw new SpaceRuntimeException("Spatial query was cancelled [typeName=" + typeName + ", path=" + path + ", operation=" + operationName + "]", e);
         } catch (IOException e) {
             throw new SpaceRuntimeException("Failed to scan index", e);
+        } finally {
+            if (cancellableCollector != null)
+                _runningQueries.remove(cancellableCollector.getQueryId());
+            if (!succeeded && dr != null)
+                closeQuietly(dr);
+        }
+    }
+
+    private static QueryTimeout createQueryTimeout(final CancellableCollector collector, final long deadline) {
+        return new QueryTimeout() {
+            @Override
+            public boolean shouldExit() {
+                return collector.isCancelled() || (deadline != 0 && System.currentTimeMillis() > deadline);
+            }
+        };
+    }
+
+    /**
+     * Gets the queries which are currently searching the index, which can be cancelled by their id (see {@link #cancelQuery}).
+     */
+    public Collection<CancellableCollector> getRunningQueries() {
+        return new ArrayList<CancellableCollector>(_runningQueries.values());
+    }
+
+    /**
+     * Cancels the specified query if it is still searching the index. The query fails with an exception.
+     * @param queryId The id of the query (see {@link #getRunningQueries()})
+     * @return true if the query was cancelled, false if it is not running or was already cancelled.
+     */
+    public boolean cancelQuery(long queryId) {
+        final CancellableCollector collector = _runningQueries.get(queryId);
+        if (collector == null || collector.isCancelled())
+            return false;
+        collector.cancel();
+        if (_logger.isLoggable(Level.INFO))
+            _logger.log(Level.INFO, "Cancelled running spatial " + collector);
+        return true;
+    }
+
+    /**
+     * Cancels all queries of the specified type which are currently searching the index.
+     * @param typeName The type whose queries should be cancelled, or null to cancel all running queries.
+     * @return The number of queries which were cancelled (excluding queries which were already cancelled).
+     */
+    public int cancelRunningQueries(String typeName) {
+        int result = 0;
+        for (CancellableCollector collector : _runningQueries.values()) {
+            if ((typeName == null || typeName.equals(collector.getTypeName())) && !collector.isCancelled()) {
+                collector.cancel();
+                result++;
+            }
+        }
+        if (result != 0 && _logger.isLoggable(Level.INFO))
+            _logger.log(Level.INFO, "Cancelled " + result + " running spatial queries [typeName=" + typeName + "]");
+        return result;
+    }
+
+    private LuceneSpatialTypeIndex getLuceneTypeIndex(String typeName, String path) {
+        if (_inMemoryIndexMap.containsKey(typeName))
+            throw new IllegalArgumentException("Type [" + typeName + "] uses the in-memory index engine, which supports only plain spatial queries");
+        final LuceneSpatialTypeIndex result = _luceneHolderMap.get(typeName);
+        if (result == null)
+            throw new IllegalArgumentException("Type [" + typeName + "] is not registered");
+        if (path != null && result.getPointIndex(path) != null)
+            throw new IllegalArgumentException("Path [" + path + "] of type [" + typeName + "] uses a packed point index, which supports only plain spatial queries");
+        return result;
+    }
+
+    private static Query addPropertyFilters(Query spatialQuery, Map<String, Object> propertyFilters, LuceneSpatialTypeIndex luceneHolder) {
+        BooleanQuery.Builder result = new BooleanQuery.Builder();
+        result.add(spatialQuery, BooleanClause.Occur.MUST);
+        for (Map.Entry<String, Object> filter : propertyFilters.entrySet()) {
+            if (!luceneHolder.getIndexedProperties().contains(filter.getKey()))
+                throw new IllegalArgumentException("Property [" + filter.getKey() + "] is not indexed - indexed properties: " + luceneHolder.getIndexedProperties());
+            result.add(LuceneSpatialPropertyFields.createEqualsQuery(filter.getKey(), filter.getValue()), BooleanClause.Occur.FILTER);
+        }
+        return result.build();
+    }
+
+    private static void closeQuietly(DirectoryReader directoryReader) {
+        try {
+            directoryReader.close();
+        } catch (IOException e) {
+            _logger.log(Level.WARNING, "Failed to close directory reader", e);
         }
     }
 
@@ -154,17 +431,121 @@ public class LuceneSpatialQueryExtensionManager extends QueryExtensionManager {
         if (_logger.isLoggable(Level.FINE))
             _logger.log(Level.FINE, "filter [operation=" + operationName + ", leftOperand=" + leftOperand + ", rightOperand=" + rightOperand + "]");
 
-        return toOperation(operationName).evaluate(toShape(leftOperand), toShape(rightOperand));
+        final SpatialOperation operation = toOperation(operationName);
+        // All supported operations require the shapes to intersect - reject disjoint bounding boxes without building the shapes:
+        if (isDisjointByBoundingBox(leftOperand, rightOperand))
+            return false;
+        // Large query shapes are planned once per operand, rather than converted again for each candidate:
+        final QueryShapePlan cachedPlan = _queryShapePlanner != null ? _queryShapePlanner.getCachedPlan(rightOperand) : null;
+        if (cachedPlan != null)
+            return cachedPlan.evaluate(operation, toShape(leftOperand));
+        final com.spatial4j.core.shape.Shape rightShape = toShape(rightOperand);
+        final QueryShapePlan plan = _queryShapePlanner != null ? _queryShapePlanner.getPlan(rightOperand, rightShape) : null;
+        return plan != null
+                ? plan.evaluate(operation, toShape(leftOperand))
+                : operation.evaluate(toShape(leftOperand), rightShape);
+    }
+
+    /**
+     * Gets the shape to query the index by - a simplified cover of large query shapes (see {@link QueryShapePlanner}),
+     * whose matches are verified against the original shape by {@link #accept}.
+     */
+    private com.spatial4j.core.shape.Shape toIndexQueryShape(SpatialOperation operation, Object operand) {
+        final com.spatial4j.core.shape.Shape shape = toShape(operand);
+        final QueryShapePlan plan = _queryShapePlanner != null ? _queryShapePlanner.getPlan(operand, shape) : null;
+        return plan != null ? plan.getIndexShape(operation) : shape;
+    }
+
+    protected boolean isDisjointByBoundingBox(Object leftOperand, Object rightOperand) {
+        if (!(leftOperand instanceof Shape) || !(rightOperand instanceof Shape))
+            return false;
+        final Rectangle left = getReliableBoundingBox((Shape) leftOperand);
+        final Rectangle right = left != null ? getReliableBoundingBox((Shape) rightOperand) : null;
+        if (right == null)
+            return false;
+        return left.getMaxX() < right.getMinX() || right.getMaxX() < left.getMinX() ||
+               left.getMaxY() < right.getMinY() || right.getMaxY() < left.getMinY();
+    }
+
+    /**
+     * Gets the shape's bounding box, or null if it might not cover the shape in the configured spatial context
+     * (geospatial circles, and shapes which cross the dateline).
+     */
+    private Rectangle getReliableBoundingBox(Shape shape) {
+        if (!_luceneConfiguration.getSpatialContext().isGeo())
+            return shape.getBoundingBox();
+        if (shape instanceof Circle)
+            return null;
+        final Rectangle boundingBox = shape.getBoundingBox();
+        if (shape instanceof Rectangle)
+            return boundingBox.getMinX() <= boundingBox.getMaxX() ? boundingBox : null;
+        // Wider shapes are interpreted as crossing the dateline:
+        return boundingBox.getMaxX() - boundingBox.getMinX() <= 180 ? boundingBox : null;
+    }
+
+    protected boolean insertEntry(InMemorySpatialTypeIndex inMemoryIndex, SpaceServerEntry entry) {
+        Map<String, com.spatial4j.core.shape.Shape> shapes = new HashMap<String, com.spatial4j.core.shape.Shape>();
+        for (String path : entry.getSpaceTypeDescriptor().getQueryExtensions().getByNamespace(_namespace).getPaths()) {
+            final Object fieldValue = entry.getPathValue(path);
+            if (fieldValue instanceof Shape)
+                shapes.put(path, toShape(fieldValue));
+        }
+        return inMemoryIndex.insert(entry.getUid(), entry.getVersion(), shapes);
+    }
+
+    protected boolean indexPoints(LuceneSpatialTypeIndex luceneHolder, SpaceServerEntry entry) {
+        boolean result = false;
+        for (String path : luceneHolder.getQueryExtensionInfo().getPaths()) {
+            final PackedPointIndex pointIndex = luceneHolder.getPointIndex(path);
+            if (pointIndex == null)
+                continue;
+            final Object fieldValue = entry.getPathValue(path);
+            if (fieldValue instanceof Point) {
+                Point point = (Point) fieldValue;
+                pointIndex.insert(entry.getUid(), entry.getVersion(), point.getX(), point.getY());
+                result = true;
+            } else if (fieldValue == null) {
+                pointIndex.remove(entry.getUid(), -1);
+            } else {
+                throw new IllegalArgumentException("Path [" + path + "] is declared as points-only but holds " + fieldValue.getClass().getName());
+            }
+        }
+        return result;
+    }
+
+    private void addOccupiedCells(LuceneSpatialTypeIndex luceneHolder, SpaceServerEntry entry) {
+        for (String path : luceneHolder.getQueryExtensionInfo().getPaths()) {
+            if (luceneHolder.getPointIndex(path) != null)
+                continue;
+            final Object fieldValue = entry.getPathValue(path);
+            if (fieldValue instanceof Shape)
+                luceneHolder.addOccupiedCells(path, toShape(fieldValue).getBoundingBox());
+        }
+    }
+
+    /**
+     * Answers a query whose shape does not intersect any occupied cell of the path, without searching the index.
+     */
+    private QueryExtensionEntryIterator emptyIterator(String typeName, String path, String operationName) {
+        if (_logger.isLoggable(Level.FINE))
+            _logger.log(Level.FINE, "query outside occupied cells [typeName=" + typeName + ", path=" + path + ", operation=" + operationName + "]");
+        return new InMemorySpatialQueryExtensionEntryIterator(Collections.<String>emptyList());
     }
 
     protected Document createDocumentIfNeeded(LuceneSpatialTypeIndex luceneHolder, SpaceServerEntry entry) {
 
         Document doc = null;
         for (String path : luceneHolder.getQueryExtensionInfo().getPaths()) {
+            if (luceneHolder.getPointIndex(path) != null)
+                continue;
             final Object fieldValue = entry.getPathValue(path);
             if (fieldValue instanceof Shape) {
                 final SpatialStrategy strategy = _luceneConfiguration.getStrategy(path);
-                final Field[] fields = strategy.createIndexableFields(toShape(fieldValue));
+                final Field[] fields = _shapeCache != null
+                        ? _shapeCache.createIndexableFields((Shape) fieldValue, strategy)
+                        : strategy.createIndexableFields(toShape(fieldValue));
+                if (_precisionAdvisor != null)
+                    _precisionAdvisor.sampleShape(entry.getSpaceTypeDescriptor().getTypeName(), (Shape) fieldValue);
                 if (doc == null)
                     doc = new Document();
                 for (Field field : fields)
@@ -172,6 +553,18 @@ public class LuceneSpatialQueryExtensionManager extends QueryExtensionManager {
             }
         }
         if (doc != null) {
+            //cater for non-spatial indexed properties
+            for (String path : luceneHolder.getIndexedProperties()) {
+                final Field field = LuceneSpatialPropertyFields.createField(path, entry.getPathValue(path));
+                if (field != null)
+                    doc.add(field);
+            }
+            //cater for time property
+            if (_luceneConfiguration.getTimeProperty() != null) {
+                final Object time = entry.getPathValue(_luceneConfiguration.getTimeProperty());
+                if (time != null)
+                    doc.add(new LongField(XAP_TIME, toTime(time), Field.Store.NO));
+            }
             //cater for uid & version
             //noinspection deprecation
             doc.add(new Field(XAP_ID, entry.getUid(), Field.Store.YES, Field.Index.NO));
@@ -182,12 +575,49 @@ public class LuceneSpatialQueryExtensionManager extends QueryExtensionManager {
         return doc;
     }
 
+    /**
+     * Gets the prefix tree settings recommended for the shapes and queries sampled in the specified type (or in all
+     * types if typeName is null), or null if auto-tune is disabled.
+     */
+    public PrecisionRecommendation getPrecisionRecommendation(String typeName) {
+        return _precisionAdvisor != null ? _precisionAdvisor.recommend(typeName) : null;
+    }
+
+    private void sampleQuery(String typeName, Object operand) {
+        if (_precisionAdvisor != null && operand instanceof Shape)
+            _precisionAdvisor.sampleQuery(typeName, (Shape) operand);
+    }
+
+    private void reportPrecisionRecommendation() {
+        final PrecisionRecommendation recommendation = _precisionAdvisor.recommend(null);
+        if (recommendation.getSampledShapes() == 0 && recommendation.getSampledQueries() == 0)
+            return;
+        _logger.log(Level.INFO, "Spatial index auto-tune: " + recommendation);
+        if (_luceneConfiguration.isAutoTuneApplied()) {
+            try {
+                _luceneConfiguration.saveRecommendation(recommendation);
+            } catch (IOException e) {
+                _logger.log(Level.WARNING, "Failed to save auto-tuned spatial index settings", e);
+            }
+        }
+    }
+
     public com.spatial4j.core.shape.Shape toShape(Object obj) {
+        if (_shapeCache != null && obj instanceof Shape)
+            return _shapeCache.getSpatial4jShape((Shape) obj);
         if (obj instanceof Spatial4jShapeProvider)
             return ((Spatial4jShapeProvider)obj).getSpatial4jShape(_luceneConfiguration.getSpatialContext());
         throw new IllegalArgumentException("Unsupported shape [" + obj.getClass().getName() + "]");
     }
 
+    protected long toTime(Object value) {
+        if (value instanceof Number)
+            return ((Number) value).longValue();
+        if (value instanceof Date)
+            return ((Date) value).getTime();
+        throw new IllegalArgumentException("Unsupported time property type [" + value.getClass().getName() + "] - supported types are numbers and java.util.Date");
+    }
+
     protected SpatialOperation toOperation(String operationName) {
         SpatialOperation result = _spatialOperations.get(operationName.toUpperCase());
         if (result == null)
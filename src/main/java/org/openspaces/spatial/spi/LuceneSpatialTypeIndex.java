@@ -2,33 +2,123 @@ package org.openspaces.spatial.spi;
 
 import com.gigaspaces.metadata.SpaceTypeDescriptor;
 import com.gigaspaces.query.extension.metadata.TypeQueryExtension;
+import com.spatial4j.core.shape.Rectangle;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.spatial.prefix.PrefixTreeStrategy;
 import org.apache.lucene.store.Directory;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class LuceneSpatialTypeIndex implements Closeable {
+    private static final Logger _logger = Logger.getLogger(LuceneSpatialTypeIndex.class.getName());
+    private static final int SEGMENTS_MERGED = 1;
+    private static final int SHAPES_REMOVED = 2;
+
+    private final String typeName;
     private final Directory directory;
     private final IndexWriter indexWriter;
     private final TypeQueryExtension queryExtensionInfo;
     private final int maxUncommittedChanges;
     private final AtomicInteger uncommittedChanges = new AtomicInteger(0);
+    private final List<String> indexedProperties;
+    private final Map<String, PackedPointIndex> pointIndexes;
+    private final LuceneSpatialConfiguration luceneConfig;
+    // Occupied cells per (non points-only) path, replaced when rebuilt:
+    private final Map<String, OccupiedCellBitmap> occupiedCells = new ConcurrentHashMap<String, OccupiedCellBitmap>();
+    private final Object occupiedCellsLock = new Object();
+    // The cells being rebuilt (guarded by occupiedCellsLock), which are also marked by shapes added during the rebuild:
+    private Map<String, OccupiedCellBitmap> rebuiltOccupiedCells;
+    // Triggers a rebuild of the occupied cells once both are set, and is reset as a whole:
+    private final AtomicInteger rebuildTriggers = new AtomicInteger();
+    // Rebuilds the occupied cells off the committing threads (null if occupied cells are disabled):
+    private final ExecutorService rebuildExecutor;
 
     public LuceneSpatialTypeIndex(LuceneSpatialConfiguration luceneConfig, String namespace, SpaceTypeDescriptor typeDescriptor) throws IOException {
+        this.typeName = typeDescriptor.getTypeName();
         this.directory = luceneConfig.getDirectory(typeDescriptor.getTypeName() + File.separator + "entries");
         this.indexWriter = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer())
-                .setOpenMode(IndexWriterConfig.OpenMode.CREATE));
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE)
+                .setMergeScheduler(new ConcurrentMergeScheduler() {
+                    @Override
+                    protected void doMerge(IndexWriter writer, MergePolicy.OneMerge merge) throws IOException {
+                        super.doMerge(writer, merge);
+                        setRebuildTrigger(SEGMENTS_MERGED);
+                    }
+                }));
         this.queryExtensionInfo = typeDescriptor.getQueryExtensions().getByNamespace(namespace);
         this.maxUncommittedChanges = luceneConfig.getMaxUncommittedChanges();
+        this.indexedProperties = initIndexedProperties(luceneConfig.getIndexedProperties(), typeDescriptor);
+        this.pointIndexes = initPointIndexes(luceneConfig, queryExtensionInfo);
+        this.luceneConfig = luceneConfig;
+        if (luceneConfig.getOccupiedCellsLevel() != 0)
+            for (String path : queryExtensionInfo.getPaths())
+                if (!pointIndexes.containsKey(path))
+                    occupiedCells.put(path, createOccupiedCells());
+        this.rebuildExecutor = occupiedCells.isEmpty() ? null : createRebuildExecutor(typeName);
+    }
+
+    private static ExecutorService createRebuildExecutor(final String typeName) {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "spatial-occupied-cells-" + typeName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static Map<String, PackedPointIndex> initPointIndexes(LuceneSpatialConfiguration luceneConfig, TypeQueryExtension queryExtensionInfo) {
+        Map<String, PackedPointIndex> result = new HashMap<String, PackedPointIndex>();
+        for (String path : queryExtensionInfo.getPaths())
+            if (luceneConfig.getPointsOnlyPaths().contains(path))
+                result.put(path, new PackedPointIndex(luceneConfig.getSpatialContext()));
+        return result;
+    }
+
+    private static List<String> initIndexedProperties(List<String> paths, SpaceTypeDescriptor typeDescriptor) {
+        List<String> result = new ArrayList<String>(paths.size());
+        for (String path : paths) {
+            int pos = path.indexOf('.');
+            String propertyName = pos == -1 ? path : path.substring(0, pos);
+            if (typeDescriptor.getFixedPropertyPosition(propertyName) != -1 || typeDescriptor.supportsDynamicProperties())
+                result.add(path);
+        }
+        return result;
     }
 
     @Override
     public void close() throws IOException {
+        // A running rebuild reads from the writer, so it completes before the writer is closed:
+        if (rebuildExecutor != null) {
+            rebuildExecutor.shutdown();
+            try {
+                rebuildExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         indexWriter.close();
     }
 
@@ -44,10 +134,131 @@ public class LuceneSpatialTypeIndex implements Closeable {
         return queryExtensionInfo;
     }
 
+    /**
+     * Gets the non-spatial property paths of this type which are indexed alongside its shapes.
+     */
+    public List<String> getIndexedProperties() {
+        return indexedProperties;
+    }
+
+    /**
+     * Gets the packed point index of the specified path, or null if the path is not declared as points-only.
+     */
+    public PackedPointIndex getPointIndex(String path) {
+        return pointIndexes.get(path);
+    }
+
+    public Collection<PackedPointIndex> getPointIndexes() {
+        return pointIndexes.values();
+    }
+
+    /**
+     * Marks the cells of the specified path occupied by a shape with the specified bounding box. Shapes should be
+     * marked after they are added to the index writer and before the following commit.
+     */
+    public void addOccupiedCells(String path, Rectangle boundingBox) {
+        synchronized (occupiedCellsLock) {
+            final OccupiedCellBitmap bitmap = occupiedCells.get(path);
+            if (bitmap != null)
+                bitmap.add(boundingBox);
+            final OccupiedCellBitmap rebuiltBitmap = rebuiltOccupiedCells != null ? rebuiltOccupiedCells.get(path) : null;
+            if (rebuiltBitmap != null)
+                rebuiltBitmap.add(boundingBox);
+        }
+    }
+
+    /**
+     * Checks if shapes of the specified path might intersect the specified bounding box - false means no shape of the
+     * path intersects it (the cells are tracked conservatively, see {@link OccupiedCellBitmap}).
+     */
+    public boolean isOccupied(String path, Rectangle boundingBox) {
+        final OccupiedCellBitmap bitmap = occupiedCells.get(path);
+        return bitmap == null || bitmap.isOccupied(boundingBox);
+    }
+
+    /**
+     * Notes that shapes were removed (or updated), so their cells are cleared when merged segments are committed.
+     */
+    public void onShapesRemoved() {
+        setRebuildTrigger(SHAPES_REMOVED);
+    }
+
+    private void setRebuildTrigger(int trigger) {
+        int triggers = rebuildTriggers.get();
+        while ((triggers & trigger) == 0 && !rebuildTriggers.compareAndSet(triggers, triggers | trigger))
+            triggers = rebuildTriggers.get();
+    }
+
     public void commit(boolean force) throws IOException {
         if (force || uncommittedChanges.incrementAndGet() == maxUncommittedChanges) {
             uncommittedChanges.set(0);
             indexWriter.commit();
         }
+        // The cells are rebuilt once shapes were removed and segments were merged since the last rebuild (i.e. in
+        // proportion to the churn of the index), in the background - the committing thread only schedules it:
+        final int triggers = SEGMENTS_MERGED | SHAPES_REMOVED;
+        if (rebuildExecutor != null && rebuildTriggers.get() == triggers && rebuildTriggers.compareAndSet(triggers, 0))
+            scheduleRebuild();
+    }
+
+    private void scheduleRebuild() {
+        try {
+            rebuildExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        rebuildOccupiedCells();
+                    } catch (IOException e) {
+                        // The previous cells are kept, and are still a superset of the occupied cells:
+                        _logger.log(Level.WARNING, "Failed to rebuild the occupied cells of type [" + typeName + "]", e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The index is closing - the cells are not needed anymore.
+        }
+    }
+
+    /**
+     * Rebuilds the occupied cells of the paths indexed in a prefix tree from a near-real-time reader, clearing the
+     * cells of removed shapes. Other paths keep their cells, as their shapes cannot be read back from the index.
+     * Runs on the rebuild executor, and reads the index without holding the lock - shapes added meanwhile are marked
+     * in the rebuilt cells as well.
+     */
+    private void rebuildOccupiedCells() throws IOException {
+        final Map<String, OccupiedCellBitmap> rebuilt = new HashMap<String, OccupiedCellBitmap>();
+        for (String path : occupiedCells.keySet())
+            if (LuceneSpatialConfiguration.getPrefixTreeStrategy(luceneConfig.getStrategy(path)) != null)
+                rebuilt.put(path, createOccupiedCells());
+        if (rebuilt.isEmpty())
+            return;
+        // Shapes are marked after they are added to the writer, so shapes which are not in the reader opened below
+        // are marked in the rebuilt cells:
+        synchronized (occupiedCellsLock) {
+            rebuiltOccupiedCells = rebuilt;
+        }
+        boolean succeeded = false;
+        try {
+            final DirectoryReader reader = DirectoryReader.open(indexWriter, true);
+            try {
+                for (Map.Entry<String, OccupiedCellBitmap> entry : rebuilt.entrySet()) {
+                    final PrefixTreeStrategy strategy = LuceneSpatialConfiguration.getPrefixTreeStrategy(luceneConfig.getStrategy(entry.getKey()));
+                    entry.getValue().addCells(reader, strategy);
+                }
+            } finally {
+                reader.close();
+            }
+            succeeded = true;
+        } finally {
+            synchronized (occupiedCellsLock) {
+                if (succeeded)
+                    occupiedCells.putAll(rebuilt);
+                rebuiltOccupiedCells = null;
+            }
+        }
+    }
+
+    private OccupiedCellBitmap createOccupiedCells() {
+        return new OccupiedCellBitmap(luceneConfig.getSpatialContext().getWorldBounds(), luceneConfig.getOccupiedCellsLevel());
     }
 }
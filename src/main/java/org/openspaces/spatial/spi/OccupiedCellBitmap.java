@@ -0,0 +1,166 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.spi;
+
+import com.spatial4j.core.shape.Rectangle;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.spatial.prefix.PrefixTreeStrategy;
+import org.apache.lucene.spatial.prefix.tree.Cell;
+import org.apache.lucene.spatial.prefix.tree.SpatialPrefixTree;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A coarse bitmap of the cells of a uniform 2^level x 2^level grid over the world bounds (the cells of a quad tree at
+ * that level) which are occupied by the bounding box of an indexed shape. Queries whose bounding box does not
+ * intersect any occupied cell cannot match any shape, and can be answered without searching the index.
+ * <p>
+ * Cells are never cleared when shapes are removed, so the bitmap is conservative: it may report occupied cells which
+ * are no longer occupied, until it is rebuilt from the index (see {@link #addCells}).
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class OccupiedCellBitmap {
+    public static final int MAX_LEVEL = 12;
+
+    private final Rectangle worldBounds;
+    private final int size;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final AtomicLongArray bits;
+
+    public OccupiedCellBitmap(Rectangle worldBounds, int level) {
+        if (level <= 0 || level > MAX_LEVEL)
+            throw new IllegalArgumentException("Occupied cells level must be between 1 and " + MAX_LEVEL + ": " + level);
+        this.worldBounds = worldBounds;
+        this.size = 1 << level;
+        this.cellWidth = worldBounds.getWidth() / size;
+        this.cellHeight = worldBounds.getHeight() / size;
+        this.bits = new AtomicLongArray((size * size + 63) / 64);
+    }
+
+    /**
+     * Marks the cells intersecting the specified bounding box as occupied.
+     */
+    public void add(Rectangle boundingBox) {
+        final int minRow = toRow(boundingBox.getMinY());
+        final int maxRow = toRow(boundingBox.getMaxY());
+        if (boundingBox.getCrossesDateLine()) {
+            add(toColumn(boundingBox.getMinX()), size - 1, minRow, maxRow);
+            add(0, toColumn(boundingBox.getMaxX()), minRow, maxRow);
+        } else {
+            add(toColumn(boundingBox.getMinX()), toColumn(boundingBox.getMaxX()), minRow, maxRow);
+        }
+    }
+
+    /**
+     * Checks if any of the cells intersecting the specified bounding box is occupied.
+     */
+    public boolean isOccupied(Rectangle boundingBox) {
+        final int minRow = toRow(boundingBox.getMinY());
+        final int maxRow = toRow(boundingBox.getMaxY());
+        if (boundingBox.getCrossesDateLine())
+            return isOccupied(toColumn(boundingBox.getMinX()), size - 1, minRow, maxRow) ||
+                   isOccupied(0, toColumn(boundingBox.getMaxX()), minRow, maxRow);
+        return isOccupied(toColumn(boundingBox.getMinX()), toColumn(boundingBox.getMaxX()), minRow, maxRow);
+    }
+
+    /**
+     * Gets the number of occupied cells.
+     */
+    public int getOccupiedCells() {
+        int result = 0;
+        for (int i = 0; i < bits.length(); i++)
+            result += Long.bitCount(bits.get(i));
+        return result;
+    }
+
+    /**
+     * Marks the cells occupied by the shapes indexed by the specified strategy in the specified reader, based on the
+     * prefix tree cells of the indexed terms. Terms which only belong to deleted documents are skipped, so the reader
+     * should apply all deletes (e.g. a near-real-time reader opened with applyAllDeletes).
+     */
+    public void addCells(IndexReader reader, PrefixTreeStrategy strategy) throws IOException {
+        final Terms terms = MultiFields.getTerms(reader, strategy.getFieldName());
+        if (terms == null)
+            return;
+        final SpatialPrefixTree grid = strategy.getGrid();
+        // Every shape is covered by its cells at this level, or by coarser leaf cells:
+        final int level = Math.min(grid.getMaxLevels(), grid.getLevelForDistance(Math.hypot(cellWidth, cellHeight)));
+        final Bits liveDocs = MultiFields.getLiveDocs(reader);
+        final TermsEnum termsEnum = terms.iterator();
+        PostingsEnum postings = null;
+        Cell cell = null;
+        for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+            cell = grid.readCell(term, cell);
+            if (cell.getLevel() != level && (cell.getLevel() > level || !cell.isLeaf()))
+                continue;
+            if (liveDocs != null) {
+                postings = termsEnum.postings(liveDocs, postings, PostingsEnum.NONE);
+                if (postings.nextDoc() == DocIdSetIterator.NO_MORE_DOCS)
+                    continue;
+            }
+            add(cell.getShape().getBoundingBox());
+        }
+    }
+
+    private void add(int minColumn, int maxColumn, int minRow, int maxRow) {
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                final int bit = row * size + column;
+                final int index = bit >>> 6;
+                final long mask = 1L << (bit & 63);
+                long value = bits.get(index);
+                while ((value & mask) == 0 && !bits.compareAndSet(index, value, value | mask))
+                    value = bits.get(index);
+            }
+        }
+    }
+
+    private boolean isOccupied(int minColumn, int maxColumn, int minRow, int maxRow) {
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                final int bit = row * size + column;
+                if ((bits.get(bit >>> 6) & (1L << (bit & 63))) != 0)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private int toColumn(double x) {
+        return clamp((int) Math.floor((x - worldBounds.getMinX()) / cellWidth));
+    }
+
+    private int toRow(double y) {
+        return clamp((int) Math.floor((y - worldBounds.getMinY()) / cellHeight));
+    }
+
+    private int clamp(int index) {
+        return Math.max(0, Math.min(size - 1, index));
+    }
+}
@@ -0,0 +1,490 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.spi;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.shape.Circle;
+import com.spatial4j.core.shape.Rectangle;
+import com.spatial4j.core.shape.Shape;
+import com.spatial4j.core.shape.SpatialRelation;
+import org.apache.lucene.spatial.query.SpatialOperation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A point-only spatial index for a single path. Coordinates are kept in packed primitive arrays, and uids are mapped
+ * to their slots by an open-addressing table of ints (no per-point objects besides the uids themselves).
+ * <p>
+ * Points are organized in an immutable block KD tree: a balanced tree of median splits whose leaves hold up to
+ * {@link #LEAF_SIZE} points. Queries prune subtrees by their bounding boxes, accept whole subtrees which are contained
+ * in the query shape, and scan the remaining leaves in bulk. Changes do not touch the tree: a changed point is
+ * tombstoned in the tree and kept in a delta buffer, which queries scan linearly. Once the delta buffer and the
+ * tombstones pass a fraction of the points, a new tree is built from a snapshot of the points without holding the
+ * lock, and swapped in along with the changes made while it was built.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class PackedPointIndex {
+    static final int LEAF_SIZE = 256;
+    private static final int INITIAL_CAPACITY = 64;
+    // A new tree is built once the delta buffer and tombstones pass 1/16 of the points (or 4 leaves):
+    private static final int MIN_MERGE_THRESHOLD = 4 * LEAF_SIZE;
+    private static final int MERGE_THRESHOLD_SHIFT = 4;
+
+    private final SpatialContext spatialContext;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Open-addressing (linear probing) table of slot + 1 by uid, 0 marks an empty position:
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+    // Points by slot, packed in [0, size):
+    private double[] xs = new double[INITIAL_CAPACITY];
+    private double[] ys = new double[INITIAL_CAPACITY];
+    private int[] versions = new int[INITIAL_CAPACITY];
+    private String[] uids = new String[INITIAL_CAPACITY];
+    // The slot of each point in the current tree and in the tree being built (or -1), and its index in the delta buffer (or -1):
+    private int[] treeSlots = new int[INITIAL_CAPACITY];
+    private int[] nextTreeSlots = new int[INITIAL_CAPACITY];
+    private int[] deltaIndexes = new int[INITIAL_CAPACITY];
+    private int size;
+
+    private Tree tree = new Tree(new double[0], new double[0], new String[0], 0);
+    // Slots of the points which are not in the tree:
+    private int[] delta = new int[INITIAL_CAPACITY];
+    private int deltaSize;
+    // While a tree is built, the slots of its points which were changed since its snapshot:
+    private boolean building;
+    private int[] nextStale = new int[INITIAL_CAPACITY];
+    private int nextStaleCount;
+
+    public PackedPointIndex(SpatialContext spatialContext) {
+        this.spatialContext = spatialContext;
+    }
+
+    /**
+     * Indexes the point of the specified entry, replacing any previously indexed version of it.
+     */
+    public void insert(String uid, int version, double x, double y) {
+        final boolean merge;
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(uid);
+            if (slot == -1) {
+                ensureCapacity(size + 1);
+                slot = size++;
+                uids[slot] = uid;
+                treeSlots[slot] = -1;
+                nextTreeSlots[slot] = -1;
+                deltaIndexes[slot] = -1;
+                addToTable(slot);
+            } else {
+                detach(slot);
+            }
+            xs[slot] = x;
+            ys[slot] = y;
+            versions[slot] = version;
+            if (deltaIndexes[slot] == -1)
+                addToDelta(slot);
+            merge = shouldMerge();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (merge)
+            merge();
+    }
+
+    /**
+     * Removes the point of the specified entry. If a version is specified, the point is removed only if its version matches.
+     * @param version The version to remove, or -1 to remove any version.
+     */
+    public void remove(String uid, int version) {
+        boolean merge = false;
+        lock.writeLock().lock();
+        try {
+            final int slot = findSlot(uid);
+            if (slot != -1 && (version == -1 || versions[slot] == version)) {
+                detach(slot);
+                if (deltaIndexes[slot] != -1)
+                    removeFromDelta(slot);
+                removeFromTable(slot);
+                // Move the last point into the vacated slot to keep the arrays dense:
+                final int last = --size;
+                if (slot != last)
+                    moveSlot(last, slot);
+                uids[last] = null;
+                merge = shouldMerge();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (merge)
+            merge();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the uids of the entries whose point matches the specified operation and shape.
+     */
+    public List<String> query(SpatialOperation operation, Shape shape) {
+        List<String> result = new ArrayList<String>();
+        lock.readLock().lock();
+        try {
+            if (tree.size != 0)
+                tree.query(0, 0, 0, tree.size, operation, shape, shape.getBoundingBox(), result);
+            for (int i = 0; i < deltaSize; i++) {
+                final int slot = delta[i];
+                if (matches(operation, shape, xs[slot], ys[slot]))
+                    result.add(uids[slot]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    private boolean matches(SpatialOperation operation, Shape shape, double x, double y) {
+        if (operation != SpatialOperation.Contains) {
+            // Fast paths for common query shapes avoid creating a point object:
+            if (shape instanceof Rectangle && !((Rectangle) shape).getCrossesDateLine()) {
+                Rectangle r = (Rectangle) shape;
+                return x >= r.getMinX() && x <= r.getMaxX() && y >= r.getMinY() && y <= r.getMaxY();
+            }
+            if (shape instanceof Circle) {
+                Circle c = (Circle) shape;
+                return spatialContext.getDistCalc().distance(c.getCenter(), x, y) <= c.getRadius();
+            }
+        }
+        return operation.evaluate(spatialContext.makePoint(x, y), shape);
+    }
+
+    /**
+     * Tombstones the point in the specified slot in the current tree and in the tree being built, as it is changed.
+     */
+    private void detach(int slot) {
+        if (treeSlots[slot] != -1) {
+            tree.markStale(treeSlots[slot]);
+            treeSlots[slot] = -1;
+        }
+        if (nextTreeSlots[slot] != -1) {
+            if (nextStaleCount == nextStale.length)
+                nextStale = Arrays.copyOf(nextStale, nextStaleCount * 2);
+            nextStale[nextStaleCount++] = nextTreeSlots[slot];
+            nextTreeSlots[slot] = -1;
+        }
+    }
+
+    private boolean shouldMerge() {
+        return !building && deltaSize + tree.staleCount > Math.max(MIN_MERGE_THRESHOLD, size >>> MERGE_THRESHOLD_SHIFT);
+    }
+
+    /**
+     * Builds a new tree from a snapshot of the points without holding the lock, and swaps it in. Points changed while
+     * it was built are tombstoned in it and kept in the delta buffer.
+     */
+    private void merge() {
+        double[] snapshotXs;
+        double[] snapshotYs;
+        String[] snapshotUids;
+        int snapshotSize;
+        lock.writeLock().lock();
+        try {
+            if (!shouldMerge())
+                return;
+            building = true;
+            snapshotSize = size;
+            snapshotXs = Arrays.copyOf(xs, size);
+            snapshotYs = Arrays.copyOf(ys, size);
+            snapshotUids = Arrays.copyOf(uids, size);
+            for (int slot = 0; slot < size; slot++)
+                nextTreeSlots[slot] = slot;
+            nextStaleCount = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Tree next = null;
+        try {
+            next = new Tree(snapshotXs, snapshotYs, snapshotUids, snapshotSize);
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (next != null) {
+                    for (int i = 0; i < nextStaleCount; i++)
+                        next.markStale(nextStale[i]);
+                    tree = next;
+                }
+                deltaSize = 0;
+                for (int slot = 0; slot < size; slot++) {
+                    if (next != null)
+                        treeSlots[slot] = nextTreeSlots[slot];
+                    nextTreeSlots[slot] = -1;
+                    deltaIndexes[slot] = -1;
+                    if (treeSlots[slot] == -1)
+                        addToDelta(slot);
+                }
+                building = false;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void addToDelta(int slot) {
+        if (deltaSize == delta.length)
+            delta = Arrays.copyOf(delta, deltaSize * 2);
+        deltaIndexes[slot] = deltaSize;
+        delta[deltaSize++] = slot;
+    }
+
+    private void removeFromDelta(int slot) {
+        final int index = deltaIndexes[slot];
+        final int last = delta[--deltaSize];
+        delta[index] = last;
+        deltaIndexes[last] = index;
+        deltaIndexes[slot] = -1;
+    }
+
+    private void moveSlot(int from, int to) {
+        moveInTable(from, to);
+        xs[to] = xs[from];
+        ys[to] = ys[from];
+        versions[to] = versions[from];
+        uids[to] = uids[from];
+        treeSlots[to] = treeSlots[from];
+        nextTreeSlots[to] = nextTreeSlots[from];
+        deltaIndexes[to] = deltaIndexes[from];
+        if (deltaIndexes[to] != -1)
+            delta[deltaIndexes[to]] = to;
+    }
+
+    private static int hash(String uid) {
+        final int h = uid.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private int findSlot(String uid) {
+        final int mask = table.length - 1;
+        for (int i = hash(uid) & mask; table[i] != 0; i = (i + 1) & mask)
+            if (uids[table[i] - 1].equals(uid))
+                return table[i] - 1;
+        return -1;
+    }
+
+    private void addToTable(int slot) {
+        // Keeps the table at most half full (the new slot is already counted in size):
+        if (size * 2 > table.length) {
+            table = new int[table.length * 2];
+            for (int i = 0; i < size; i++)
+                insertIntoTable(i);
+        } else {
+            insertIntoTable(slot);
+        }
+    }
+
+    private void insertIntoTable(int slot) {
+        final int mask = table.length - 1;
+        int i = hash(uids[slot]) & mask;
+        while (table[i] != 0)
+            i = (i + 1) & mask;
+        table[i] = slot + 1;
+    }
+
+    private void removeFromTable(int slot) {
+        final int mask = table.length - 1;
+        int i = hash(uids[slot]) & mask;
+        while (table[i] != slot + 1)
+            i = (i + 1) & mask;
+        table[i] = 0;
+        // Shift back the following entries whose probe sequence passes the vacated position, so lookups still find them:
+        for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            final int home = hash(uids[table[j] - 1]) & mask;
+            if (i <= j ? (i < home && home <= j) : (i < home || home <= j))
+                continue;
+            table[i] = table[j];
+            table[j] = 0;
+            i = j;
+        }
+    }
+
+    private void moveInTable(int from, int to) {
+        final int mask = table.length - 1;
+        int i = hash(uids[from]) & mask;
+        while (table[i] != from + 1)
+            i = (i + 1) & mask;
+        table[i] = to + 1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= xs.length)
+            return;
+        int newCapacity = Math.max(capacity, xs.length * 2);
+        xs = Arrays.copyOf(xs, newCapacity);
+        ys = Arrays.copyOf(ys, newCapacity);
+        versions = Arrays.copyOf(versions, newCapacity);
+        uids = Arrays.copyOf(uids, newCapacity);
+        treeSlots = Arrays.copyOf(treeSlots, newCapacity);
+        nextTreeSlots = Arrays.copyOf(nextTreeSlots, newCapacity);
+        deltaIndexes = Arrays.copyOf(deltaIndexes, newCapacity);
+    }
+
+    /**
+     * A KD tree over a snapshot of the points: order is a permutation of its slots, bounds holds
+     * [minX, maxX, minY, maxY] per node. Only the tombstones change once it is built (under the index lock).
+     */
+    private class Tree {
+        private final double[] xs;
+        private final double[] ys;
+        private final String[] uids;
+        private final int size;
+        private final int[] order;
+        private final double[] bounds;
+        private final int depth;
+        private final BitSet stale = new BitSet();
+        private int staleCount;
+
+        private Tree(double[] xs, double[] ys, String[] uids, int size) {
+            this.xs = xs;
+            this.ys = ys;
+            this.uids = uids;
+            this.size = size;
+            int depth = 0;
+            while ((size >>> depth) > LEAF_SIZE)
+                depth++;
+            this.depth = depth;
+            this.order = new int[size];
+            for (int i = 0; i < size; i++)
+                order[i] = i;
+            this.bounds = new double[((1 << (depth + 1)) - 1) * 4];
+            if (size != 0)
+                build(0, 0, 0, size);
+        }
+
+        private void markStale(int slot) {
+            stale.set(slot);
+            staleCount++;
+        }
+
+        private void query(int node, int level, int from, int to, SpatialOperation operation, Shape shape, Rectangle bbox, List<String> result) {
+            final int b = node * 4;
+            final Rectangle nodeBounds = spatialContext.makeRectangle(bounds[b], bounds[b+1], bounds[b+2], bounds[b+3]);
+            if (bbox.relate(nodeBounds) == SpatialRelation.DISJOINT)
+                return;
+            // A point can contain only a point, so only intersects/within may accept a subtree wholesale:
+            if (operation != SpatialOperation.Contains && shape.relate(nodeBounds) == SpatialRelation.CONTAINS) {
+                for (int i = from; i < to; i++)
+                    if (staleCount == 0 || !stale.get(order[i]))
+                        result.add(uids[order[i]]);
+                return;
+            }
+            if (level == depth) {
+                for (int i = from; i < to; i++) {
+                    final int slot = order[i];
+                    if ((staleCount == 0 || !stale.get(slot)) && matches(operation, shape, xs[slot], ys[slot]))
+                        result.add(uids[slot]);
+                }
+                return;
+            }
+            final int mid = (from + to) >>> 1;
+            query(node * 2 + 1, level + 1, from, mid, operation, shape, bbox, result);
+            query(node * 2 + 2, level + 1, mid, to, operation, shape, bbox, result);
+        }
+
+        private void build(int node, int level, int from, int to) {
+            final int b = node * 4;
+            if (level == depth) {
+                double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+                double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+                for (int i = from; i < to; i++) {
+                    final int slot = order[i];
+                    minX = Math.min(minX, xs[slot]);
+                    maxX = Math.max(maxX, xs[slot]);
+                    minY = Math.min(minY, ys[slot]);
+                    maxY = Math.max(maxY, ys[slot]);
+                }
+                bounds[b] = minX;
+                bounds[b+1] = maxX;
+                bounds[b+2] = minY;
+                bounds[b+3] = maxY;
+                return;
+            }
+            final int mid = (from + to) >>> 1;
+            select(from, to, mid, splitOnX(from, to) ? xs : ys);
+            final int left = node * 2 + 1, right = node * 2 + 2;
+            build(left, level + 1, from, mid);
+            build(right, level + 1, mid, to);
+            bounds[b] = Math.min(bounds[left*4], bounds[right*4]);
+            bounds[b+1] = Math.max(bounds[left*4+1], bounds[right*4+1]);
+            bounds[b+2] = Math.min(bounds[left*4+2], bounds[right*4+2]);
+            bounds[b+3] = Math.max(bounds[left*4+3], bounds[right*4+3]);
+        }
+
+        private boolean splitOnX(int from, int to) {
+            double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < to; i++) {
+                final int slot = order[i];
+                minX = Math.min(minX, xs[slot]);
+                maxX = Math.max(maxX, xs[slot]);
+                minY = Math.min(minY, ys[slot]);
+                maxY = Math.max(maxY, ys[slot]);
+            }
+            return maxX - minX >= maxY - minY;
+        }
+
+        /**
+         * Partially sorts order[from, to) by the specified keys, so that the nth element is in its sorted position,
+         * elements before it are not greater and elements after it are not smaller.
+         */
+        private void select(int from, int to, int nth, double[] keys) {
+            int lo = from, hi = to - 1;
+            while (lo < hi) {
+                final double pivot = keys[order[(lo + hi) >>> 1]];
+                int i = lo, j = hi;
+                while (i <= j) {
+                    while (keys[order[i]] < pivot) i++;
+                    while (keys[order[j]] > pivot) j--;
+                    if (i <= j) {
+                        int temp = order[i];
+                        order[i] = order[j];
+                        order[j] = temp;
+                        i++;
+                        j--;
+                    }
+                }
+                if (nth <= j)
+                    hi = j;
+                else if (nth >= i)
+                    lo = i;
+                else
+                    return;
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.spi;
+
+/**
+ * Prefix tree settings recommended by {@link SpatialPrecisionAdvisor}, along with the expected number of index terms
+ * per shape using the current and the recommended settings.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class PrecisionRecommendation {
+    private final long sampledShapes;
+    private final long sampledQueries;
+    private final double averageVertices;
+    private final int currentMaxLevels;
+    private final double currentDistErrPct;
+    private final double currentTermsPerShape;
+    private final int maxLevels;
+    private final double distErrPct;
+    private final double termsPerShape;
+
+    PrecisionRecommendation(long sampledShapes, long sampledQueries, double averageVertices,
+                            int currentMaxLevels, double currentDistErrPct, double currentTermsPerShape,
+                            int maxLevels, double distErrPct, double termsPerShape) {
+        this.sampledShapes = sampledShapes;
+        this.sampledQueries = sampledQueries;
+        this.averageVertices = averageVertices;
+        this.currentMaxLevels = currentMaxLevels;
+        this.currentDistErrPct = currentDistErrPct;
+        this.currentTermsPerShape = currentTermsPerShape;
+        this.maxLevels = maxLevels;
+        this.distErrPct = distErrPct;
+        this.termsPerShape = termsPerShape;
+    }
+
+    public long getSampledShapes() {
+        return sampledShapes;
+    }
+
+    public long getSampledQueries() {
+        return sampledQueries;
+    }
+
+    /**
+     * Gets the average number of vertices of the sampled shapes.
+     */
+    public double getAverageVertices() {
+        return averageVertices;
+    }
+
+    /**
+     * Gets the recommended number of prefix tree levels.
+     */
+    public int getMaxLevels() {
+        return maxLevels;
+    }
+
+    /**
+     * Gets the recommended distance error percentage.
+     */
+    public double getDistErrPct() {
+        return distErrPct;
+    }
+
+    /**
+     * Gets the expected number of index terms per shape using the recommended settings.
+     */
+    public double getTermsPerShape() {
+        return termsPerShape;
+    }
+
+    /**
+     * Gets the expected number of index terms per shape using the current settings.
+     */
+    public double getCurrentTermsPerShape() {
+        return currentTermsPerShape;
+    }
+
+    /**
+     * Gets the expected total number of index terms of the sampled shapes using the recommended settings.
+     */
+    public long getExpectedTerms() {
+        return Math.round(termsPerShape * sampledShapes);
+    }
+
+    /**
+     * Gets the expected total number of index terms of the sampled shapes using the current settings.
+     */
+    public long getCurrentExpectedTerms() {
+        return Math.round(currentTermsPerShape * sampledShapes);
+    }
+
+    @Override
+    public String toString() {
+        return "PrecisionRecommendation [sampledShapes=" + sampledShapes + ", sampledQueries=" + sampledQueries +
+                ", averageVertices=" + averageVertices +
+                ", current: maxLevels=" + currentMaxLevels + ", distErrPct=" + currentDistErrPct +
+                ", termsPerShape=" + currentTermsPerShape + ", expectedTerms=" + getCurrentExpectedTerms() +
+                ", recommended: maxLevels=" + maxLevels + ", distErrPct=" + distErrPct +
+                ", termsPerShape=" + termsPerShape + ", expectedTerms=" + getExpectedTerms() + "]";
+    }
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.spi;
+
+import com.spatial4j.core.shape.Shape;
+import org.apache.lucene.spatial.query.SpatialOperation;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A query shape along with a simplified cover (containing it) and interior (contained in it), created by
+ * {@link QueryShapePlanner}. Shapes are matched against the interior and cover first, and only shapes near the
+ * boundary of the query shape are tested against the original shape.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class QueryShapePlan {
+    private final Shape original;
+    private final Shape cover;
+    private final Shape interior;
+    private final AtomicLong boundaryTests = new AtomicLong();
+
+    QueryShapePlan(Shape original, Shape cover, Shape interior) {
+        this.original = original;
+        this.cover = cover;
+        this.interior = interior;
+    }
+
+    public Shape getOriginal() {
+        return original;
+    }
+
+    /**
+     * Gets the simplified shape containing the original shape, or null if it could not be simplified.
+     */
+    public Shape getCover() {
+        return cover;
+    }
+
+    /**
+     * Gets the simplified shape contained in the original shape, or null if it is empty or could not be simplified.
+     */
+    public Shape getInterior() {
+        return interior;
+    }
+
+    /**
+     * Gets the number of shapes which were tested against the original shape.
+     */
+    public long getBoundaryTests() {
+        return boundaryTests.get();
+    }
+
+    /**
+     * Gets the shape to query the index by, whose matches are a superset of the matches of the original shape.
+     */
+    public Shape getIndexShape(SpatialOperation operation) {
+        if (operation == SpatialOperation.Intersects || operation == SpatialOperation.IsWithin)
+            return cover != null ? cover : original;
+        if (operation == SpatialOperation.Contains)
+            return interior != null ? interior : original;
+        return original;
+    }
+
+    /**
+     * Evaluates the operation on the specified (indexed) shape and the original query shape.
+     */
+    public boolean evaluate(SpatialOperation operation, Shape shape) {
+        if (operation == SpatialOperation.Intersects || operation == SpatialOperation.IsWithin) {
+            // Intersecting (or within) the original shape requires intersecting (or being within) the cover, and
+            // intersecting (or being within) the interior implies it:
+            if (cover != null && !operation.evaluate(shape, cover))
+                return false;
+            if (interior != null && operation.evaluate(shape, interior))
+                return true;
+        } else if (operation == SpatialOperation.Contains) {
+            // Containing the original shape requires containing the interior, and containing the cover implies it:
+            if (interior != null && !operation.evaluate(shape, interior))
+                return false;
+            if (cover != null && operation.evaluate(shape, cover))
+                return true;
+        }
+        boundaryTests.incrementAndGet();
+        return operation.evaluate(shape, original);
+    }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.spi;
+
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import com.spatial4j.core.shape.Rectangle;
+import com.spatial4j.core.shape.Shape;
+import com.spatial4j.core.shape.jts.JtsGeometry;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.simplify.TopologyPreservingSimplifier;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Plans queries by very large (many vertices) polygons: the index is queried by a simplified, conservative cover of
+ * the query shape, and the matches are verified against the original shape only when a simplified interior and cover
+ * of the shape cannot decide them (see {@link QueryShapePlan}).
+ * <p>
+ * The simplification uses a tolerance relative to the diagonal of the shape's bounding box. Since the simplified
+ * boundary is within the tolerance of the original boundary, buffering the simplified shape by the tolerance covers
+ * the original shape, and shrinking it by the tolerance is covered by it.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class QueryShapePlanner {
+    private static final int MAX_CACHED_PLANS = 32;
+    // Buffers approximate arcs with chords (8 per quadrant), which are up to 1-cos(pi/32) (~0.5%) closer to the shape:
+    private static final double BUFFER_MARGIN = 1.01;
+
+    private final JtsSpatialContext spatialContext;
+    private final int minVertices;
+    private final double tolerancePct;
+    // Plans are kept by query operand (e.g. the openspaces shape), since its spatial4j shape may be built again for each
+    // evaluation (depending on the shape cache policy):
+    private final Map<Object, QueryShapePlan> plans;
+
+    /**
+     * @param minVertices The minimal number of vertices of query shapes which are planned
+     * @param tolerancePct The simplification tolerance, as a fraction of the diagonal of the query shape's bounding box
+     */
+    public QueryShapePlanner(JtsSpatialContext spatialContext, int minVertices, double tolerancePct) {
+        if (minVertices <= 0)
+            throw new IllegalArgumentException("Minimal number of vertices must be positive: " + minVertices);
+        if (tolerancePct <= 0 || tolerancePct >= 1)
+            throw new IllegalArgumentException("Tolerance percentage must be between 0 and 1 (exclusive): " + tolerancePct);
+        this.spatialContext = spatialContext;
+        this.minVertices = minVertices;
+        this.tolerancePct = tolerancePct;
+        this.plans = new LinkedHashMap<Object, QueryShapePlan>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, QueryShapePlan> eldest) {
+                return size() > MAX_CACHED_PLANS;
+            }
+        };
+    }
+
+    /**
+     * Gets the plan of the specified query shape, or null if it is not large enough to be planned.
+     */
+    public QueryShapePlan getPlan(Shape shape) {
+        return getPlan(shape, shape);
+    }
+
+    /**
+     * Gets the cached plan of the query operand identified by the specified key, or null if it was not planned yet.
+     */
+    public QueryShapePlan getCachedPlan(Object key) {
+        synchronized (plans) {
+            return plans.get(key);
+        }
+    }
+
+    /**
+     * Gets the plan of the specified query shape, cached by the specified key (compared by equals and hash code),
+     * or null if the shape is not large enough to be planned.
+     */
+    public QueryShapePlan getPlan(Object key, Shape shape) {
+        if (!(shape instanceof JtsGeometry) || ((JtsGeometry) shape).getGeom().getNumPoints() < minVertices)
+            return null;
+        QueryShapePlan result = getCachedPlan(key);
+        if (result != null)
+            return result;
+        result = plan((JtsGeometry) shape);
+        synchronized (plans) {
+            plans.put(key, result);
+        }
+        return result;
+    }
+
+    private QueryShapePlan plan(JtsGeometry shape) {
+        final Rectangle boundingBox = shape.getBoundingBox();
+        // Shapes which cross the dateline are not planar in their coordinates:
+        if (boundingBox.getCrossesDateLine())
+            return new QueryShapePlan(shape, null, null);
+        final double tolerance = tolerancePct * Math.hypot(boundingBox.getWidth(), boundingBox.getHeight());
+        final Geometry simplified = TopologyPreservingSimplifier.simplify(shape.getGeom(), tolerance);
+        final Geometry world = spatialContext.getGeometryFrom(spatialContext.getWorldBounds());
+        final Geometry cover = simplified.buffer(tolerance * BUFFER_MARGIN).intersection(world);
+        final Geometry interior = simplified.buffer(-tolerance * BUFFER_MARGIN);
+        // Boundary tests against the original shape use its prepared (indexed) geometry:
+        shape.index();
+        return new QueryShapePlan(shape, toShape(cover), interior.isEmpty() ? null : toShape(interior));
+    }
+
+    private JtsGeometry toShape(Geometry geometry) {
+        return spatialContext.makeShape(geometry, false, true);
+    }
+}
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.spi;
+
+import org.apache.lucene.spatial.prefix.tree.SpatialPrefixTree;
+import org.openspaces.spatial.shapes.*;
+
+import com.spatial4j.core.context.SpatialContext;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Samples the sizes of indexed and queried shapes, and recommends the prefix tree levels and distance error percentage
+ * which keep the number of index terms per shape within a budget while still resolving the smallest shapes and queries.
+ * <p>
+ * The estimates assume RecursivePrefixTree indexing: a shape is indexed down to the level whose cells are smaller than
+ * its distance error (the distance error percentage of its half diagonal), so the number of boundary cells depends on
+ * the percentage rather than on the shape size, while points are indexed with one term per level.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class SpatialPrecisionAdvisor {
+    // Sizes are kept in a histogram of power of 2 buckets:
+    private static final int MIN_EXPONENT = -30;
+    private static final int MAX_EXPONENT = 30;
+    // Boundary cells of a square with half diagonal d, indexed with cells of (diagonal) size 0.75*pct*d on average,
+    // plus a third for the coarser cells: 4/3 * 8d / (0.75*pct*d)
+    private static final double TERMS_PCT_FACTOR = 4.0 / 3 * 8 / 0.75;
+    private static final double MIN_DIST_ERR_PCT = 0.001;
+    private static final double MAX_DIST_ERR_PCT = 0.5;
+    // Shapes and queries smaller than this percentile determine the required precision:
+    private static final double FINEST_PERCENTILE = 0.1;
+
+    private final SpatialContext spatialContext;
+    private final SpatialPrefixTree prefixTree;
+    private final int currentMaxLevels;
+    private final double currentDistErrPct;
+    private final int termsPerShape;
+    private final Map<String, Statistics> shapeStatistics = new ConcurrentHashMap<String, Statistics>();
+    private final Map<String, Statistics> queryStatistics = new ConcurrentHashMap<String, Statistics>();
+
+    /**
+     * @param spatialContext The spatial context of the index
+     * @param prefixTree A prefix tree of the configured type with the maximum possible number of levels
+     * @param currentMaxLevels The configured number of levels
+     * @param currentDistErrPct The configured distance error percentage
+     * @param termsPerShape The budget of index terms per (non-point) shape
+     */
+    public SpatialPrecisionAdvisor(SpatialContext spatialContext, SpatialPrefixTree prefixTree, int currentMaxLevels,
+                                   double currentDistErrPct, int termsPerShape) {
+        if (termsPerShape <= 0)
+            throw new IllegalArgumentException("Terms per shape must be positive: " + termsPerShape);
+        this.spatialContext = spatialContext;
+        this.prefixTree = prefixTree;
+        this.currentMaxLevels = currentMaxLevels;
+        this.currentDistErrPct = currentDistErrPct;
+        this.termsPerShape = termsPerShape;
+    }
+
+    public void sampleShape(String typeName, Shape shape) {
+        getStatistics(shapeStatistics, typeName).add(shape);
+    }
+
+    public void sampleQuery(String typeName, Shape shape) {
+        getStatistics(queryStatistics, typeName).add(shape);
+    }
+
+    /**
+     * Recommends prefix tree settings for the shapes and queries sampled in the specified type, or in all types if
+     * typeName is null.
+     */
+    public PrecisionRecommendation recommend(String typeName) {
+        final Snapshot shapes = snapshot(shapeStatistics, typeName);
+        final Snapshot queries = snapshot(queryStatistics, typeName);
+        final double distErrPct = Math.min(MAX_DIST_ERR_PCT, Math.max(MIN_DIST_ERR_PCT, TERMS_PCT_FACTOR / termsPerShape));
+        final double finest = min(shapes.percentile(FINEST_PERCENTILE), queries.percentile(FINEST_PERCENTILE));
+        final int maxLevels = Double.isNaN(finest)
+                ? currentMaxLevels
+                : Math.max(1, Math.min(prefixTree.getMaxLevels(), prefixTree.getLevelForDistance(distErrPct * finest)));
+        return new PrecisionRecommendation(shapes.count, queries.count,
+                shapes.count != 0 ? (double) shapes.vertices / shapes.count : 0,
+                currentMaxLevels, currentDistErrPct, estimateTerms(shapes, currentMaxLevels, currentDistErrPct),
+                maxLevels, distErrPct, estimateTerms(shapes, maxLevels, distErrPct));
+    }
+
+    private double estimateTerms(Snapshot snapshot, int maxLevels, double distErrPct) {
+        if (snapshot.count == 0)
+            return 0;
+        double total = (double) snapshot.points * maxLevels;
+        for (int i = 0; i < snapshot.sizes.length; i++)
+            if (snapshot.sizes[i] != 0)
+                total += snapshot.sizes[i] * estimateTerms(bucketSize(i), maxLevels, distErrPct);
+        return total / snapshot.count;
+    }
+
+    private double estimateTerms(double halfDiagonal, int maxLevels, double distErrPct) {
+        final int detailLevel = Math.min(maxLevels, prefixTree.getLevelForDistance(distErrPct * halfDiagonal));
+        final double cellSize = prefixTree.getDistanceForLevel(detailLevel);
+        return detailLevel + 4.0 / 3 * 8 * halfDiagonal / cellSize;
+    }
+
+    private Statistics getStatistics(Map<String, Statistics> map, String typeName) {
+        Statistics result = map.get(typeName);
+        if (result == null) {
+            synchronized (map) {
+                result = map.get(typeName);
+                if (result == null) {
+                    result = new Statistics();
+                    map.put(typeName, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Snapshot snapshot(Map<String, Statistics> map, String typeName) {
+        final Snapshot result = new Snapshot();
+        if (typeName != null) {
+            Statistics statistics = map.get(typeName);
+            if (statistics != null)
+                statistics.addTo(result);
+        } else {
+            for (Statistics statistics : map.values())
+                statistics.addTo(result);
+        }
+        return result;
+    }
+
+    private static double min(double a, double b) {
+        return Double.isNaN(a) ? b : Double.isNaN(b) ? a : Math.min(a, b);
+    }
+
+    private static double bucketSize(int bucket) {
+        // Middle of the bucket's [2^e, 2^(e+1)) range:
+        return Math.scalb(1.5, bucket + MIN_EXPONENT);
+    }
+
+    private static int vertices(Shape shape) {
+        if (shape instanceof LineString)
+            return ((LineString) shape).getNumOfPoints();
+        if (shape instanceof Polygon) {
+            Polygon polygon = (Polygon) shape;
+            int result = polygon.getNumOfPoints();
+            for (int i = 0; i < polygon.getNumOfHoles(); i++)
+                result += polygon.getHole(i).getNumOfPoints();
+            return result;
+        }
+        if (shape instanceof MultiPoint)
+            return ((MultiPoint) shape).getNumOfPoints();
+        if (shape instanceof MultiLineString) {
+            MultiLineString multiLineString = (MultiLineString) shape;
+            int result = 0;
+            for (int i = 0; i < multiLineString.getNumOfLineStrings(); i++)
+                result += vertices(multiLineString.getLineString(i));
+            return result;
+        }
+        if (shape instanceof MultiPolygon) {
+            MultiPolygon multiPolygon = (MultiPolygon) shape;
+            int result = 0;
+            for (int i = 0; i < multiPolygon.getNumOfPolygons(); i++)
+                result += vertices(multiPolygon.getPolygon(i));
+            return result;
+        }
+        return shape instanceof Rectangle ? 4 : 1;
+    }
+
+    private class Statistics {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong points = new AtomicLong();
+        private final AtomicLong vertices = new AtomicLong();
+        private final AtomicLongArray sizes = new AtomicLongArray(MAX_EXPONENT - MIN_EXPONENT + 1);
+
+        private void add(Shape shape) {
+            final Rectangle boundingBox = shape.getBoundingBox();
+            count.incrementAndGet();
+            vertices.addAndGet(vertices(shape));
+            if (boundingBox.getMinX() == boundingBox.getMaxX() && boundingBox.getMinY() == boundingBox.getMaxY()) {
+                points.incrementAndGet();
+                return;
+            }
+            final com.spatial4j.core.shape.Rectangle rectangle = spatialContext.makeRectangle(
+                    boundingBox.getMinX(), boundingBox.getMaxX(), boundingBox.getMinY(), boundingBox.getMaxY());
+            final double halfDiagonal = spatialContext.getDistCalc().distance(rectangle.getCenter(), rectangle.getMaxX(), rectangle.getMaxY());
+            final int exponent = Math.max(MIN_EXPONENT, Math.min(MAX_EXPONENT, Math.getExponent(halfDiagonal)));
+            sizes.incrementAndGet(exponent - MIN_EXPONENT);
+        }
+
+        private void addTo(Snapshot snapshot) {
+            snapshot.count += count.get();
+            snapshot.points += points.get();
+            snapshot.vertices += vertices.get();
+            for (int i = 0; i < snapshot.sizes.length; i++)
+                snapshot.sizes[i] += sizes.get(i);
+        }
+    }
+
+    private static class Snapshot {
+        private long count;
+        private long points;
+        private long vertices;
+        private final long[] sizes = new long[MAX_EXPONENT - MIN_EXPONENT + 1];
+
+        /**
+         * Gets the approximate size (half diagonal) at the specified percentile of the non-point shapes, or NaN if
+         * there are none.
+         */
+        private double percentile(double percentile) {
+            long total = 0;
+            for (long size : sizes)
+                total += size;
+            if (total == 0)
+                return Double.NaN;
+            final long target = Math.max(1, (long) Math.ceil(percentile * total));
+            long cumulative = 0;
+            for (int i = 0; i < sizes.length; i++) {
+                cumulative += sizes[i];
+                if (cumulative >= target)
+                    return bucketSize(i);
+            }
+            return bucketSize(sizes.length - 1);
+        }
+    }
+}
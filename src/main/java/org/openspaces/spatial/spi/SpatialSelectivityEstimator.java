@@ -0,0 +1,104 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.spi;
+
+import com.spatial4j.core.shape.Shape;
+import com.spatial4j.core.shape.SpatialRelation;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.spatial.SpatialStrategy;
+import org.apache.lucene.spatial.prefix.PrefixTreeStrategy;
+import org.apache.lucene.spatial.prefix.tree.Cell;
+import org.apache.lucene.spatial.prefix.tree.CellIterator;
+import org.apache.lucene.spatial.prefix.tree.SpatialPrefixTree;
+import org.apache.lucene.spatial.query.SpatialArgs;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+
+/**
+ * Estimates the number of documents intersecting a shape from the document frequencies of the prefix tree cells
+ * covering it, without searching the index.
+ * <p>
+ * The shape is covered by cells down to a coarse detail level (a tenth of its size). Every indexed shape has a
+ * (non-leaf) term for each cell above its own cells, so the frequency of a cell within the shape counts the shapes
+ * intersecting it without descending further, and the frequency of a cell on the shape's boundary is assumed to be
+ * evenly spread, so half of it is counted. Shapes which span several cells are counted once per cell, and deleted
+ * documents are counted until their segments are merged, so the estimate tends to be high for large shapes and
+ * frequently updated indexes.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class SpatialSelectivityEstimator {
+    private static final double DIST_ERR_PCT = 0.1;
+    private static final double BOUNDARY_CELL_FRACTION = 0.5;
+
+    private final SpatialPrefixTree grid;
+    private final String fieldName;
+
+    public SpatialSelectivityEstimator(PrefixTreeStrategy strategy) {
+        this.grid = strategy.getGrid();
+        this.fieldName = strategy.getFieldName();
+    }
+
+    /**
+     * Creates an estimator for the specified strategy, or null if it does not index shapes in a prefix tree.
+     */
+    public static SpatialSelectivityEstimator create(SpatialStrategy strategy) {
+        final PrefixTreeStrategy prefixTreeStrategy = LuceneSpatialConfiguration.getPrefixTreeStrategy(strategy);
+        return prefixTreeStrategy != null ? new SpatialSelectivityEstimator(prefixTreeStrategy) : null;
+    }
+
+    /**
+     * Estimates the number of documents in the specified reader whose shape intersects the specified shape.
+     */
+    public long estimate(IndexReader reader, Shape shape) throws IOException {
+        final double distance = SpatialArgs.calcDistanceFromErrPct(shape, DIST_ERR_PCT, grid.getSpatialContext());
+        final int detailLevel = grid.getLevelForDistance(distance);
+        return Math.round(estimate(reader, grid.getWorldCell(), shape, detailLevel));
+    }
+
+    private double estimate(IndexReader reader, Cell parent, Shape shape, int detailLevel) throws IOException {
+        double result = 0;
+        final CellIterator cells = parent.getNextLevelCells(shape);
+        while (cells.hasNext()) {
+            final Cell cell = cells.next();
+            final BytesRef token = BytesRef.deepCopyOf(cell.getTokenBytesNoLeaf(null));
+            // Shapes indexed down to this cell (or covering it) have a leaf term, finer shapes have a non-leaf term:
+            final BytesRef leafToken = toLeafToken(token);
+            final int leafFreq = leafToken.equals(token) ? 0 : reader.docFreq(new Term(fieldName, leafToken));
+            if (cell.getShapeRel() == SpatialRelation.WITHIN)
+                result += reader.docFreq(new Term(fieldName, token)) + leafFreq;
+            else if (cell.getLevel() >= detailLevel)
+                result += (reader.docFreq(new Term(fieldName, token)) + leafFreq) * BOUNDARY_CELL_FRACTION;
+            else
+                result += leafFreq + estimate(reader, cell, shape, detailLevel);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the leaf term of the specified cell token (cells at the maximal level have no leaf marker).
+     */
+    private BytesRef toLeafToken(BytesRef token) {
+        final Cell cell = grid.readCell(BytesRef.deepCopyOf(token), null);
+        cell.setLeaf();
+        return BytesRef.deepCopyOf(cell.getTokenBytesWithLeaf(null));
+    }
+}
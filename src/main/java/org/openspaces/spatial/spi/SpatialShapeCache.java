@@ -0,0 +1,169 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.spi;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.spatial.SpatialStrategy;
+import org.apache.lucene.spatial.prefix.PrefixTreeStrategy;
+import org.apache.lucene.util.BytesRef;
+import org.openspaces.spatial.shapes.Shape;
+import org.openspaces.spatial.spatial4j.Spatial4jShapeProvider;
+
+import com.spatial4j.core.context.SpatialContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded LRU cache which interns shapes by their equals/hashCode: equal shapes share a single spatial4j shape, and
+ * (for prefix tree strategies) a single set of cell tokens per field, so repeated geometries are converted and
+ * tokenized only once.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class SpatialShapeCache {
+    private static final FieldType CELL_FIELD_TYPE = new FieldType();
+    static {
+        // Equivalent to the prefix tree strategy's field type, one untokenized term per field instance:
+        CELL_FIELD_TYPE.setIndexOptions(IndexOptions.DOCS);
+        CELL_FIELD_TYPE.setTokenized(false);
+        CELL_FIELD_TYPE.setOmitNorms(true);
+        CELL_FIELD_TYPE.freeze();
+    }
+
+    private final SpatialContext spatialContext;
+    private final Map<Shape, CachedShape> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SpatialShapeCache(SpatialContext spatialContext, final int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Shape cache size must be positive: " + maxSize);
+        this.spatialContext = spatialContext;
+        this.cache = new LinkedHashMap<Shape, CachedShape>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Shape, CachedShape> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Gets the spatial4j shape of the specified shape, shared by all equal shapes in the cache.
+     */
+    public com.spatial4j.core.shape.Shape getSpatial4jShape(Shape shape) {
+        return get(shape).spatial4jShape;
+    }
+
+    /**
+     * Creates the index fields of the specified shape using the specified strategy. Prefix tree cell tokens are
+     * computed once per shape and field, and replayed for equal shapes.
+     */
+    public Field[] createIndexableFields(Shape shape, SpatialStrategy strategy) {
+        final CachedShape cachedShape = get(shape);
+        if (!(strategy instanceof PrefixTreeStrategy))
+            return strategy.createIndexableFields(cachedShape.spatial4jShape);
+        final String fieldName = strategy.getFieldName();
+        BytesRef[] tokens = cachedShape.tokens.get(fieldName);
+        if (tokens == null) {
+            tokens = tokenize(strategy.createIndexableFields(cachedShape.spatial4jShape));
+            cachedShape.tokens.put(fieldName, tokens);
+        }
+        Field[] fields = new Field[tokens.length];
+        for (int i = 0; i < tokens.length; i++)
+            fields[i] = new Field(fieldName, tokens[i], CELL_FIELD_TYPE);
+        return fields;
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private CachedShape get(Shape shape) {
+        CachedShape result;
+        synchronized (cache) {
+            result = cache.get(shape);
+        }
+        if (result != null) {
+            hits.incrementAndGet();
+            return result;
+        }
+        misses.incrementAndGet();
+        if (!(shape instanceof Spatial4jShapeProvider))
+            throw new IllegalArgumentException("Unsupported shape [" + shape.getClass().getName() + "]");
+        // Built outside the lock - concurrent misses on the same shape may build it twice, the first one put wins:
+        CachedShape newShape = new CachedShape(((Spatial4jShapeProvider) shape).getSpatial4jShape(spatialContext));
+        synchronized (cache) {
+            result = cache.get(shape);
+            if (result == null) {
+                cache.put(shape, newShape);
+                result = newShape;
+            }
+        }
+        return result;
+    }
+
+    private static BytesRef[] tokenize(Field[] fields) {
+        List<BytesRef> result = new ArrayList<BytesRef>();
+        try {
+            for (Field field : fields) {
+                TokenStream tokenStream = field.tokenStream(null, null);
+                if (tokenStream == null)
+                    continue;
+                TermToBytesRefAttribute termAttribute = tokenStream.addAttribute(TermToBytesRefAttribute.class);
+                tokenStream.reset();
+                while (tokenStream.incrementToken())
+                    result.add(BytesRef.deepCopyOf(termAttribute.getBytesRef()));
+                tokenStream.end();
+                tokenStream.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to tokenize shape", e);
+        }
+        return result.toArray(new BytesRef[result.size()]);
+    }
+
+    private static class CachedShape {
+        private final com.spatial4j.core.shape.Shape spatial4jShape;
+        private final Map<String, BytesRef[]> tokens = new ConcurrentHashMap<String, BytesRef[]>();
+
+        private CachedShape(com.spatial4j.core.shape.Shape spatial4jShape) {
+            this.spatial4jShape = spatial4jShape;
+        }
+    }
+}
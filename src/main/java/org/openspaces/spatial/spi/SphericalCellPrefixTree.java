@@ -0,0 +1,437 @@
+/*******************************************************************************
+ *
+ * Copyright (c) 2016 GigaSpaces Technologies Ltd. All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.openspaces.spatial.spi;
+
+import org.apache.lucene.spatial.prefix.tree.Cell;
+import org.apache.lucene.spatial.prefix.tree.CellIterator;
+import org.apache.lucene.spatial.prefix.tree.SpatialPrefixTree;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.shape.Point;
+import com.spatial4j.core.shape.Shape;
+import com.spatial4j.core.shape.SpatialRelation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A geo prefix tree of spherical cells, in the spirit of S2: the sphere is projected onto the 6 faces of a cube, and
+ * each face is recursively divided into 4 cells, ordered along a Hilbert curve. A quadratic projection keeps the cell
+ * areas nearly uniform everywhere - unlike geohash and quad cells, which shrink towards the poles and therefore
+ * produce many more cells at high latitudes for the same distance.
+ * <p>
+ * Level 1 cells are the cube faces. A cell token is its face digit followed by one digit (0-3) per level, its position
+ * along the Hilbert curve of its parent, so tokens of nearby cells share long prefixes.
+ * Cells relate to other shapes via their latitude/longitude bounding box, which contains the (geodesic) cell, so
+ * relations are conservative: a cell is only reported within a shape if it truly is, and never reported disjoint from
+ * a shape it intersects. Points are mapped to their exact cell.
+ * <p>
+ * The tree's cells are not legacy (geohash/quad) cells, so the recursive prefix tree strategy must be used with leafy
+ * branch pruning disabled.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class SphericalCellPrefixTree extends SpatialPrefixTree {
+    private static final int MAX_LEVELS_POSSIBLE = 31;
+    private static final byte LEAF_BYTE = '+';
+    // Hilbert curve tables (as in S2) - orientation bits and the (i,j) quadrant of each position:
+    private static final int SWAP_MASK = 1;
+    private static final int INVERT_MASK = 2;
+    private static final int[][] POS_TO_IJ = {{0, 1, 3, 2}, {0, 2, 3, 1}, {3, 2, 0, 1}, {3, 1, 0, 2}};
+    private static final int[][] IJ_TO_POS = {{0, 1, 3, 2}, {0, 3, 1, 2}, {2, 3, 1, 0}, {2, 1, 3, 0}};
+    private static final int[] POS_TO_ORIENTATION = {SWAP_MASK, 0, 0, INVERT_MASK | SWAP_MASK};
+    // Maximum diagonal of a cell of depth 0 (in radians), scaled by 2^-depth, for the quadratic projection:
+    private static final double MAX_DIAG = 2.438654594434021;
+    // Angle between opposite corners of a cube face, in degrees:
+    private static final double FACE_DIAG_DEGREES = Math.toDegrees(Math.acos(-1.0 / 3));
+    // Cell bounding boxes are padded to absorb rounding errors:
+    private static final double EPSILON_DEGREES = 1e-9;
+
+    private final SphericalCell worldCell;
+
+    public SphericalCellPrefixTree(SpatialContext ctx, int maxLevels) {
+        super(ctx, maxLevels);
+        if (!ctx.isGeo())
+            throw new IllegalArgumentException("Spherical cell prefix tree requires a geo spatial context");
+        if (maxLevels <= 0 || maxLevels > MAX_LEVELS_POSSIBLE)
+            throw new IllegalArgumentException("Max levels must be between 1 and " + MAX_LEVELS_POSSIBLE + ": " + maxLevels);
+        this.worldCell = new SphericalCell(new byte[0], -1, 0, 0, 0, 0);
+    }
+
+    public static int getMaxLevelsPossible() {
+        return MAX_LEVELS_POSSIBLE;
+    }
+
+    @Override
+    public int getLevelForDistance(double dist) {
+        if (dist == 0)
+            return maxLevels;
+        for (int level = 1; level < maxLevels; level++)
+            if (getDistanceForLevel(level) <= dist)
+                return level;
+        return maxLevels;
+    }
+
+    @Override
+    public double getDistanceForLevel(int level) {
+        if (level < 1 || level > getMaxLevels())
+            throw new IllegalArgumentException("Level must be in 1 to maxLevels range");
+        return Math.min(FACE_DIAG_DEGREES, Math.toDegrees(Math.scalb(MAX_DIAG, 1 - level)));
+    }
+
+    @Override
+    public Cell getWorldCell() {
+        return worldCell;
+    }
+
+    @Override
+    public Cell readCell(BytesRef term, Cell scratch) {
+        int length = term.length;
+        final boolean leaf = length != 0 && term.bytes[term.offset + length - 1] == LEAF_BYTE;
+        if (leaf)
+            length--;
+        SphericalCell result = worldCell;
+        for (int i = 0; i < length; i++)
+            result = result.getChild(term.bytes[term.offset + i] - '0');
+        if (leaf) {
+            result = result.copy();
+            result.leaf = true;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(maxLevels:" + maxLevels + ",ctx:" + ctx + ")";
+    }
+
+    private class SphericalCell implements Cell {
+        private final byte[] token;
+        private final int face;
+        private final int i;
+        private final int j;
+        private final int depth;
+        private final int orientation;
+        private SpatialRelation shapeRel;
+        private boolean leaf;
+        private Shape shape;
+
+        private SphericalCell(byte[] token, int face, int i, int j, int depth, int orientation) {
+            this.token = token;
+            this.face = face;
+            this.i = i;
+            this.j = j;
+            this.depth = depth;
+            this.orientation = orientation;
+        }
+
+        private SphericalCell copy() {
+            SphericalCell result = new SphericalCell(token, face, i, j, depth, orientation);
+            result.shape = shape;
+            return result;
+        }
+
+        private SphericalCell getChild(int pos) {
+            if (token.length >= maxLevels)
+                throw new IllegalArgumentException("Cell is already at the maximum level: " + token.length);
+            if (face == -1) {
+                if (pos < 0 || pos > 5)
+                    throw new IllegalArgumentException("Invalid face: " + pos);
+                return new SphericalCell(append(pos), pos, 0, 0, 0, pos & SWAP_MASK);
+            }
+            if (pos < 0 || pos > 3)
+                throw new IllegalArgumentException("Invalid cell position: " + pos);
+            final int ij = POS_TO_IJ[orientation][pos];
+            return new SphericalCell(append(pos), face, (i << 1) | (ij >> 1), (j << 1) | (ij & 1), depth + 1,
+                    orientation ^ POS_TO_ORIENTATION[pos]);
+        }
+
+        private SphericalCell getChild(Point point) {
+            if (face == -1)
+                return getChild(faceOf(point));
+            final double[] uv = faceUV(face, point);
+            final int childDepth = depth + 1;
+            final int ci = stToIJ(uvToST(uv[0]), childDepth);
+            final int cj = stToIJ(uvToST(uv[1]), childDepth);
+            return getChild(IJ_TO_POS[orientation][((ci & 1) << 1) | (cj & 1)]);
+        }
+
+        private byte[] append(int pos) {
+            byte[] result = Arrays.copyOf(token, token.length + 1);
+            result[token.length] = (byte) ('0' + pos);
+            return result;
+        }
+
+        @Override
+        public SpatialRelation getShapeRel() {
+            return shapeRel;
+        }
+
+        @Override
+        public void setShapeRel(SpatialRelation rel) {
+            this.shapeRel = rel;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return leaf;
+        }
+
+        @Override
+        public void setLeaf() {
+            this.leaf = true;
+        }
+
+        @Override
+        public BytesRef getTokenBytesWithLeaf(BytesRef result) {
+            result = getTokenBytesNoLeaf(result);
+            if (!leaf)
+                return result;
+            byte[] bytes = Arrays.copyOf(token, token.length + 1);
+            bytes[token.length] = LEAF_BYTE;
+            result.bytes = bytes;
+            result.offset = 0;
+            result.length = bytes.length;
+            return result;
+        }
+
+        @Override
+        public BytesRef getTokenBytesNoLeaf(BytesRef result) {
+            if (result == null)
+                return new BytesRef(token);
+            result.bytes = token;
+            result.offset = 0;
+            result.length = token.length;
+            return result;
+        }
+
+        @Override
+        public int getLevel() {
+            return token.length;
+        }
+
+        @Override
+        public CellIterator getNextLevelCells(Shape shapeFilter) {
+            final List<Cell> cells;
+            if (shapeFilter instanceof Point) {
+                SphericalCell child = getChild((Point) shapeFilter);
+                child.shapeRel = SpatialRelation.CONTAINS;
+                cells = Collections.<Cell>singletonList(child);
+            } else {
+                final int numOfChildren = face == -1 ? 6 : 4;
+                cells = new ArrayList<Cell>(numOfChildren);
+                for (int pos = 0; pos < numOfChildren; pos++) {
+                    SphericalCell child = getChild(pos);
+                    if (shapeFilter != null) {
+                        SpatialRelation rel = child.getShape().relate(shapeFilter);
+                        if (!rel.intersects())
+                            continue;
+                        // The bounding box containing the shape does not imply the cell does:
+                        if (rel == SpatialRelation.CONTAINS)
+                            rel = SpatialRelation.INTERSECTS;
+                        child.shapeRel = rel;
+                        if (rel == SpatialRelation.WITHIN)
+                            child.leaf = true;
+                    }
+                    cells.add(child);
+                }
+            }
+            return new ListCellIterator(cells);
+        }
+
+        @Override
+        public Shape getShape() {
+            if (shape == null)
+                shape = face == -1 ? ctx.getWorldBounds() : createBoundingBox();
+            return shape;
+        }
+
+        @Override
+        public boolean isPrefixOf(Cell c) {
+            return StringHelper.startsWith(c.getTokenBytesNoLeaf(null), new BytesRef(token));
+        }
+
+        @Override
+        public int compareToNoLeaf(Cell fromCell) {
+            return new BytesRef(token).compareTo(fromCell.getTokenBytesNoLeaf(null));
+        }
+
+        private Shape createBoundingBox() {
+            final double scale = Math.scalb(1.0, -depth);
+            final double u0 = stToUV(i * scale), u1 = stToUV((i + 1) * scale);
+            final double v0 = stToUV(j * scale), v1 = stToUV((j + 1) * scale);
+            final double[][] corners = {faceUVToXYZ(face, u0, v0), faceUVToXYZ(face, u1, v0),
+                    faceUVToXYZ(face, u1, v1), faceUVToXYZ(face, u0, v1)};
+            double minLat = 90, maxLat = -90;
+            for (int k = 0; k < 4; k++) {
+                final double[] a = corners[k];
+                final double[] b = corners[(k + 1) % 4];
+                minLat = Math.min(minLat, latitude(a));
+                maxLat = Math.max(maxLat, latitude(a));
+                // Great circle arcs may reach beyond their endpoints' latitudes:
+                final double[] n = normalize(cross(a, b));
+                final double[] top = normalize(new double[] {-n[2] * n[0], -n[2] * n[1], 1 - n[2] * n[2]});
+                if (top != null) {
+                    if (isOnArc(a, b, n, top))
+                        maxLat = Math.max(maxLat, latitude(top));
+                    final double[] bottom = {-top[0], -top[1], -top[2]};
+                    if (isOnArc(a, b, n, bottom))
+                        minLat = Math.min(minLat, latitude(bottom));
+                }
+            }
+            final boolean northPole = face == 2 && u0 <= 0 && u1 >= 0 && v0 <= 0 && v1 >= 0;
+            final boolean southPole = face == 5 && u0 <= 0 && u1 >= 0 && v0 <= 0 && v1 >= 0;
+            if (northPole)
+                maxLat = 90;
+            if (southPole)
+                minLat = -90;
+            minLat = Math.max(-90, minLat - EPSILON_DEGREES);
+            maxLat = Math.min(90, maxLat + EPSILON_DEGREES);
+            if (northPole || southPole)
+                return ctx.makeRectangle(-180, 180, minLat, maxLat);
+            // Edges do not cross a pole, so the longitudes of the cell are spanned by its corners:
+            final double reference = longitude(corners[0]);
+            double minDelta = 0, maxDelta = 0;
+            for (int k = 1; k < 4; k++) {
+                double delta = longitude(corners[k]) - reference;
+                if (delta > 180)
+                    delta -= 360;
+                else if (delta <= -180)
+                    delta += 360;
+                minDelta = Math.min(minDelta, delta);
+                maxDelta = Math.max(maxDelta, delta);
+            }
+            if (maxDelta - minDelta + 2 * EPSILON_DEGREES >= 360)
+                return ctx.makeRectangle(-180, 180, minLat, maxLat);
+            return ctx.makeRectangle(normalizeLongitude(reference + minDelta - EPSILON_DEGREES),
+                    normalizeLongitude(reference + maxDelta + EPSILON_DEGREES), minLat, maxLat);
+        }
+
+        @Override
+        public String toString() {
+            return "SphericalCell[" + new String(token) + (leaf ? "+" : "") + "]";
+        }
+    }
+
+    private static class ListCellIterator extends CellIterator {
+        private final List<Cell> cells;
+        private int index;
+
+        private ListCellIterator(List<Cell> cells) {
+            this.cells = cells;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextCell == null && index < cells.size())
+                nextCell = cells.get(index++);
+            return nextCell != null;
+        }
+    }
+
+    private static int faceOf(Point point) {
+        final double[] xyz = toXYZ(point);
+        int axis = Math.abs(xyz[0]) >= Math.abs(xyz[1]) ? 0 : 1;
+        if (Math.abs(xyz[2]) > Math.abs(xyz[axis]))
+            axis = 2;
+        return xyz[axis] < 0 ? axis + 3 : axis;
+    }
+
+    private static double[] faceUV(int face, Point point) {
+        final double[] p = toXYZ(point);
+        switch (face) {
+            case 0:  return new double[] {p[1] / p[0], p[2] / p[0]};
+            case 1:  return new double[] {-p[0] / p[1], p[2] / p[1]};
+            case 2:  return new double[] {-p[0] / p[2], -p[1] / p[2]};
+            case 3:  return new double[] {p[2] / p[0], p[1] / p[0]};
+            case 4:  return new double[] {p[2] / p[1], -p[0] / p[1]};
+            default: return new double[] {-p[1] / p[2], -p[0] / p[2]};
+        }
+    }
+
+    private static double[] faceUVToXYZ(int face, double u, double v) {
+        switch (face) {
+            case 0:  return new double[] {1, u, v};
+            case 1:  return new double[] {-u, 1, v};
+            case 2:  return new double[] {-u, -v, 1};
+            case 3:  return new double[] {-1, -v, -u};
+            case 4:  return new double[] {v, -1, -u};
+            default: return new double[] {v, u, -1};
+        }
+    }
+
+    private static double[] toXYZ(Point point) {
+        final double lat = Math.toRadians(point.getY());
+        final double lon = Math.toRadians(point.getX());
+        return new double[] {Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat)};
+    }
+
+    private static double stToUV(double s) {
+        return s >= 0.5 ? (1.0 / 3) * (4 * s * s - 1) : (1.0 / 3) * (1 - 4 * (1 - s) * (1 - s));
+    }
+
+    private static double uvToST(double u) {
+        return u >= 0 ? 0.5 * Math.sqrt(1 + 3 * u) : 1 - 0.5 * Math.sqrt(1 - 3 * u);
+    }
+
+    private static int stToIJ(double s, int depth) {
+        final int size = 1 << depth;
+        return Math.max(0, Math.min(size - 1, (int) Math.floor(s * size)));
+    }
+
+    private static double latitude(double[] p) {
+        return Math.toDegrees(Math.atan2(p[2], Math.sqrt(p[0] * p[0] + p[1] * p[1])));
+    }
+
+    private static double longitude(double[] p) {
+        return Math.toDegrees(Math.atan2(p[1], p[0]));
+    }
+
+    private static double normalizeLongitude(double lon) {
+        if (lon > 180)
+            return lon - 360;
+        if (lon < -180)
+            return lon + 360;
+        return lon;
+    }
+
+    private static double[] cross(double[] a, double[] b) {
+        return new double[] {a[1] * b[2] - a[2] * b[1], a[2] * b[0] - a[0] * b[2], a[0] * b[1] - a[1] * b[0]};
+    }
+
+    private static double dot(double[] a, double[] b) {
+        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+    }
+
+    private static double[] normalize(double[] p) {
+        final double norm = Math.sqrt(dot(p, p));
+        return norm == 0 ? null : new double[] {p[0] / norm, p[1] / norm, p[2] / norm};
+    }
+
+    /**
+     * Checks if point p (on the great circle of a and b, whose normal is n) lies on the shorter arc between a and b.
+     */
+    private static boolean isOnArc(double[] a, double[] b, double[] n, double[] p) {
+        return dot(cross(a, p), n) >= 0 && dot(cross(p, b), n) >= 0;
+    }
+}
@@ -0,0 +1,130 @@
+package org.openspaces.spatial;
+
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import com.spatial4j.core.shape.Shape;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.spatial.prefix.RecursivePrefixTreeStrategy;
+import org.apache.lucene.spatial.prefix.tree.GeohashPrefixTree;
+import org.apache.lucene.spatial.query.SpatialArgs;
+import org.apache.lucene.spatial.query.SpatialOperation;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openspaces.spatial.spi.HybridSpatialStrategy;
+
+import java.util.*;
+
+/**
+ * Indexes a mix of shapes routed to the bounding box and prefix tree sub-fields, and verifies the combined results of
+ * queries against the expected matches: the prefix tree results are exact, and the bounding box results are exact for
+ * points and rectangles and a superset for other shapes (which are filtered later by the query extension manager).
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class HybridSpatialStrategyTest {
+    private static final String ID = "id";
+    private final JtsSpatialContext spatialContext = JtsSpatialContext.GEO;
+    private final Map<String, Shape> shapes = new LinkedHashMap<String, Shape>();
+    private HybridSpatialStrategy strategy;
+    private DirectoryReader reader;
+
+    @Before
+    public void setup() throws Exception {
+        RecursivePrefixTreeStrategy prefixTreeStrategy = new RecursivePrefixTreeStrategy(new GeohashPrefixTree(spatialContext, 11),
+                HybridSpatialStrategy.getPrefixTreeFieldName("shape"));
+        strategy = new HybridSpatialStrategy(spatialContext, "shape", prefixTreeStrategy, 1);
+
+        shapes.put("bigTriangle", read("POLYGON ((0 0, 40 0, 0 40, 0 0))"));
+        shapes.put("farTriangle", read("POLYGON ((30 30, 45 30, 30 45, 30 30))"));
+        shapes.put("bigRectangle", spatialContext.makeRectangle(-5, 20, -5, 20));
+        shapes.put("rectangularPolygon", read("POLYGON ((2 2, 4 2, 4 4, 2 4, 2 2))"));
+        shapes.put("point", spatialContext.makePoint(3, 3));
+        shapes.put("smallTriangle", read("POLYGON ((2 2, 3 2, 2 3, 2 2))"));
+        // Its bounding box intersects the triangle query, but it does not:
+        shapes.put("nearTriangle", read("POLYGON ((7 7, 8 7, 7 8, 7 7))"));
+        Assert.assertFalse(strategy.isIndexedAsBoundingBox(shapes.get("bigTriangle")));
+        Assert.assertFalse(strategy.isIndexedAsBoundingBox(shapes.get("farTriangle")));
+        Assert.assertTrue(strategy.isIndexedAsBoundingBox(shapes.get("bigRectangle")));
+        Assert.assertTrue(strategy.isIndexedAsBoundingBox(shapes.get("rectangularPolygon")));
+        Assert.assertTrue(strategy.isIndexedAsBoundingBox(shapes.get("smallTriangle")));
+
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter indexWriter = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()));
+        for (Map.Entry<String, Shape> entry : shapes.entrySet()) {
+            Document document = new Document();
+            document.add(new StringField(ID, entry.getKey(), Field.Store.YES));
+            for (Field field : strategy.createIndexableFields(entry.getValue()))
+                document.add(field);
+            indexWriter.addDocument(document);
+        }
+        indexWriter.close();
+        reader = DirectoryReader.open(directory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        reader.close();
+    }
+
+    @Test
+    public void testRectangleQuery() throws Exception {
+        Shape query = spatialContext.makeRectangle(1, 5, 1, 5);
+        assertQuery(SpatialOperation.Intersects, query, "bigTriangle", "bigRectangle", "rectangularPolygon", "point", "smallTriangle");
+        assertQuery(SpatialOperation.IsWithin, query, "rectangularPolygon", "point", "smallTriangle");
+        assertQuery(SpatialOperation.Contains, query, "bigTriangle", "bigRectangle");
+    }
+
+    @Test
+    public void testPolygonQuery() throws Exception {
+        Shape query = read("POLYGON ((1 1, 12 1, 1 12, 1 1))");
+        assertQuery(SpatialOperation.Intersects, query, "bigTriangle", "bigRectangle", "rectangularPolygon", "point", "smallTriangle");
+        assertQuery(SpatialOperation.IsWithin, query, "rectangularPolygon", "point", "smallTriangle");
+        assertQuery(SpatialOperation.Contains, query, "bigTriangle", "bigRectangle");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnsupportedOperation() {
+        strategy.makeQuery(new SpatialArgs(SpatialOperation.IsDisjointTo, spatialContext.makeRectangle(1, 5, 1, 5)));
+    }
+
+    /**
+     * Verifies the results of the query against the expected matches (which are also verified by brute force).
+     * Non-rectangular shapes indexed as bounding boxes may be returned even if they do not match.
+     */
+    private void assertQuery(SpatialOperation operation, Shape query, String... expectedIds) throws Exception {
+        Set<String> expected = new HashSet<String>(Arrays.asList(expectedIds));
+        for (Map.Entry<String, Shape> entry : shapes.entrySet())
+            Assert.assertEquals("Unexpected brute force result for " + entry.getKey() + " " + operation,
+                    expected.contains(entry.getKey()), operation.evaluate(entry.getValue(), query));
+
+        IndexSearcher searcher = new IndexSearcher(reader);
+        Set<String> actual = new HashSet<String>();
+        for (ScoreDoc scoreDoc : searcher.search(strategy.makeQuery(new SpatialArgs(operation, query)), shapes.size()).scoreDocs)
+            actual.add(searcher.doc(scoreDoc.doc).get(ID));
+        Assert.assertTrue("Missing results for " + operation + ": expected " + expected + ", actual " + actual, actual.containsAll(expected));
+        for (String id : actual) {
+            Shape shape = shapes.get(id);
+            boolean exact = !strategy.isIndexedAsBoundingBox(shape) || shape.getBoundingBox().equals(shape) ||
+                    shape instanceof com.spatial4j.core.shape.Point;
+            if (exact)
+                Assert.assertTrue("Unexpected result for " + operation + ": " + id, expected.contains(id));
+        }
+        if (operation == SpatialOperation.Intersects && !(query instanceof com.spatial4j.core.shape.Rectangle))
+            Assert.assertTrue("Bounding box of nearTriangle intersects the query", actual.contains("nearTriangle"));
+    }
+
+    private Shape read(String wkt) throws Exception {
+        return spatialContext.getFormats().getWktReader().read(wkt);
+    }
+}
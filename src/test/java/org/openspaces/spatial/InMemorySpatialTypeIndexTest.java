@@ -0,0 +1,85 @@
+package org.openspaces.spatial;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import com.spatial4j.core.shape.Shape;
+import org.apache.lucene.spatial.query.SpatialOperation;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openspaces.spatial.spi.InMemorySpatialTypeIndex;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class InMemorySpatialTypeIndexTest {
+    private final SpatialContext spatialContext = JtsSpatialContext.GEO;
+
+    @Test
+    public void testInsertQueryRemove() {
+        InMemorySpatialTypeIndex index = new InMemorySpatialTypeIndex(spatialContext.getWorldBounds());
+        index.insert("a", 1, shapes(spatialContext.makePoint(1, 1)));
+        index.insert("b", 1, shapes(spatialContext.makePoint(50, 50)));
+        Assert.assertEquals(2, index.size());
+
+        Shape area = spatialContext.makeRectangle(0, 10, 0, 10);
+        Assert.assertEquals(Collections.singletonList("a"), index.query("location", SpatialOperation.Intersects, area));
+        Assert.assertTrue("Unexpected match for another path", index.query("other", SpatialOperation.Intersects, area).isEmpty());
+
+        // Removing a stale version has no effect:
+        index.remove("a", 2);
+        Assert.assertEquals(Collections.singletonList("a"), index.query("location", SpatialOperation.IsWithin, area));
+        index.remove("a", 1);
+        Assert.assertTrue(index.query("location", SpatialOperation.Intersects, area).isEmpty());
+        Assert.assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testUpdateInPlace() {
+        InMemorySpatialTypeIndex index = new InMemorySpatialTypeIndex(spatialContext.getWorldBounds());
+        Shape area = spatialContext.makeRectangle(0, 10, 0, 10);
+        index.insert("a", 1, shapes(spatialContext.makePoint(1, 1)));
+        index.insert("a", 2, shapes(spatialContext.makePoint(20, 20)));
+
+        Assert.assertEquals(1, index.size());
+        Assert.assertTrue(index.query("location", SpatialOperation.Intersects, area).isEmpty());
+        List<String> result = index.query("location", SpatialOperation.Intersects, spatialContext.makeRectangle(15, 25, 15, 25));
+        Assert.assertEquals(Collections.singletonList("a"), result);
+    }
+
+    @Test
+    public void testDateline() {
+        InMemorySpatialTypeIndex index = new InMemorySpatialTypeIndex(spatialContext.getWorldBounds());
+        index.insert("east", 1, shapes(spatialContext.makePoint(179, 0)));
+        index.insert("west", 1, shapes(spatialContext.makePoint(-179, 0)));
+        index.insert("center", 1, shapes(spatialContext.makePoint(0, 0)));
+
+        List<String> result = index.query("location", SpatialOperation.Intersects, spatialContext.makeRectangle(170, -170, -10, 10));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("east", "west")), new HashSet<String>(result));
+    }
+
+    @Test
+    public void testManyEntries() {
+        InMemorySpatialTypeIndex index = new InMemorySpatialTypeIndex(spatialContext.getWorldBounds());
+        // Entries are spread across stripes, and updates find the previous version in its stripe:
+        for (int version = 1; version <= 2; version++)
+            for (int i = 0; i < 1000; i++)
+                index.insert("uid" + i, version, shapes(spatialContext.makePoint(i % 100, version)));
+        Assert.assertEquals(1000, index.size());
+        Assert.assertTrue(index.query("location", SpatialOperation.Intersects, spatialContext.makeRectangle(-1, 100, 0.5, 1.5)).isEmpty());
+        Assert.assertEquals(1000, index.query("location", SpatialOperation.Intersects, spatialContext.makeRectangle(-1, 100, 1.5, 2.5)).size());
+        for (int i = 0; i < 1000; i++)
+            index.remove("uid" + i, 2);
+        Assert.assertEquals(0, index.size());
+    }
+
+    private static Map<String, Shape> shapes(Shape location) {
+        return Collections.singletonMap("location", location);
+    }
+}
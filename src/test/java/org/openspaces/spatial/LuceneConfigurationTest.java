@@ -9,18 +9,23 @@ import org.apache.lucene.spatial.bbox.BBoxStrategy;
 import org.apache.lucene.spatial.composite.CompositeSpatialStrategy;
 import org.apache.lucene.spatial.prefix.RecursivePrefixTreeStrategy;
 import org.apache.lucene.spatial.prefix.tree.GeohashPrefixTree;
+import org.apache.lucene.spatial.prefix.tree.PackedQuadPrefixTree;
 import org.apache.lucene.spatial.prefix.tree.QuadPrefixTree;
+import org.apache.lucene.spatial.prefix.tree.SpatialPrefixTree;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.store.RAMDirectory;
 import org.junit.*;
 import org.junit.rules.TemporaryFolder;
+import org.openspaces.spatial.spi.HybridSpatialStrategy;
 import org.openspaces.spatial.spi.LuceneSpatialConfiguration;
 import org.openspaces.spatial.spi.LuceneSpatialQueryExtensionProvider;
+import org.openspaces.spatial.spi.SphericalCellPrefixTree;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.text.ParseException;
 
 /**
  * @author Yohana Khoury
@@ -156,10 +161,43 @@ public class LuceneConfigurationTest {
             Assert.fail("An exception should be thrown");
         } catch (RuntimeException e) {
             //OK
-            Assert.assertEquals("Unsupported spatial prefix tree: invalidValue - supported values: [GeohashPrefixTree, QuadPrefixTree]", e.getMessage());
+            Assert.assertEquals("Unsupported spatial prefix tree: invalidValue - supported values: [GeohashPrefixTree, QuadPrefixTree, PackedQuadPrefixTree, SphericalCellPrefixTree]", e.getMessage());
         }
     }
 
+    @Test
+    public void testSpatialContextTreePackedQuadPrefixTree() {
+        LuceneSpatialQueryExtensionProvider provider = new LuceneSpatialQueryExtensionProvider()
+                .setCustomProperty("lucene.strategy.spatial-prefix-tree", "PackedQuadPrefixTree")
+                .setCustomProperty("lucene.strategy.spatial-prefix-tree.max-levels", "24")
+                .setCustomProperty("lucene.strategy.prune-leafy-branches", "false");
+        QueryExtensionRuntimeInfo config = new MockConfig()
+                .setWorkDir(getWorkingDir());
+
+        LuceneSpatialConfiguration luceneConfiguration = new LuceneSpatialConfiguration(provider, config);
+
+        SpatialStrategy strategy = luceneConfiguration.getStrategy("myField");
+        SpatialPrefixTree grid = ((RecursivePrefixTreeStrategy) strategy).getGrid();
+        Assert.assertEquals("Unexpected spatial prefix tree", PackedQuadPrefixTree.class, grid.getClass());
+        Assert.assertEquals("MaxLevels should be 24", 24, grid.getMaxLevels());
+        Assert.assertFalse("Leafy branches should not be pruned", ((PackedQuadPrefixTree) grid).isPruneLeafyBranches());
+    }
+
+    @Test
+    public void testSpatialContextTreeSphericalCellPrefixTree() {
+        LuceneSpatialQueryExtensionProvider provider = new LuceneSpatialQueryExtensionProvider()
+                .setCustomProperty("lucene.strategy.spatial-prefix-tree", "SphericalCellPrefixTree")
+                .setCustomProperty("lucene.strategy.spatial-prefix-tree.max-levels", "16");
+        QueryExtensionRuntimeInfo config = new MockConfig()
+                .setWorkDir(getWorkingDir());
+
+        LuceneSpatialConfiguration luceneConfiguration = new LuceneSpatialConfiguration(provider, config);
+
+        SpatialStrategy strategy = luceneConfiguration.getStrategy("myField");
+        Assert.assertEquals("Unexpected spatial prefix tree", SphericalCellPrefixTree.class, ((RecursivePrefixTreeStrategy) strategy).getGrid().getClass());
+        Assert.assertEquals("MaxLevels should be 16", 16, ((RecursivePrefixTreeStrategy) strategy).getGrid().getMaxLevels());
+    }
+
     @Test
     public void testSpatialContextTreeQuadPrefixTreeAndMaxLevels() {
         LuceneSpatialQueryExtensionProvider provider = new LuceneSpatialQueryExtensionProvider()
@@ -313,7 +351,7 @@ public class LuceneConfigurationTest {
             Assert.fail("An exception should be thrown");
         } catch (RuntimeException e) {
             //OK
-            Assert.assertEquals("Unsupported Spatial strategy: mystrategy - supported values: [RecursivePrefixTree, BBox, Composite]", e.getMessage());
+            Assert.assertEquals("Unsupported Spatial strategy: mystrategy - supported values: [RecursivePrefixTree, BBox, Composite, Hybrid]", e.getMessage());
         }
     }
 
@@ -368,6 +406,106 @@ public class LuceneConfigurationTest {
         Assert.assertEquals("Expecting geo spatial context", true, luceneConfiguration.getSpatialContext().isGeo());
     }
 
+    @Test
+    public void testStrategyHybrid() throws ParseException {
+        LuceneSpatialQueryExtensionProvider provider = new LuceneSpatialQueryExtensionProvider()
+                .setCustomProperty("lucene.strategy", "hybrid")
+                .setCustomProperty("lucene.strategy.hybrid.bbox-max-size", "1");
+        QueryExtensionRuntimeInfo config = new MockConfig()
+                .setWorkDir(getWorkingDir());
+
+        LuceneSpatialConfiguration luceneConfiguration = new LuceneSpatialConfiguration(provider, config);
+
+        Assert.assertEquals("Unexpected strategy type", HybridSpatialStrategy.class, luceneConfiguration.getStrategy("myField").getClass());
+        HybridSpatialStrategy strategy = (HybridSpatialStrategy) luceneConfiguration.getStrategy("myField");
+        SpatialContext spatialContext = luceneConfiguration.getSpatialContext();
+        Assert.assertTrue(strategy.isIndexedAsBoundingBox(spatialContext.makePoint(10, 10)));
+        Assert.assertTrue(strategy.isIndexedAsBoundingBox(spatialContext.makeRectangle(-50, 50, -20, 20)));
+        Assert.assertTrue(strategy.isIndexedAsBoundingBox(spatialContext.readShapeFromWkt("POLYGON ((0 0, 0.5 0, 0 0.5, 0 0))")));
+        Assert.assertFalse(strategy.isIndexedAsBoundingBox(spatialContext.readShapeFromWkt("POLYGON ((0 0, 20 0, 0 20, 0 0))")));
+
+        provider.setCustomProperty("lucene.strategy.hybrid.bbox-max-size", "-1");
+        try {
+            new LuceneSpatialConfiguration(provider, config);
+            Assert.fail("An exception should be thrown");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Invalid hybrid bounding box max size [-1] - must not be negative", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testQueryTimeout() {
+        QueryExtensionRuntimeInfo config = new MockConfig()
+                .setWorkDir(getWorkingDir());
+        LuceneSpatialConfiguration luceneConfiguration = new LuceneSpatialConfiguration(new LuceneSpatialQueryExtensionProvider(), config);
+        Assert.assertEquals("Queries should not be time-limited by default", 0, luceneConfiguration.getQueryTimeout());
+
+        LuceneSpatialQueryExtensionProvider provider = new LuceneSpatialQueryExtensionProvider()
+                .setCustomProperty("lucene.query.timeout", "1500");
+        luceneConfiguration = new LuceneSpatialConfiguration(provider, config);
+        Assert.assertEquals("Unexpected query timeout", 1500, luceneConfiguration.getQueryTimeout());
+    }
+
+    @Test
+    public void testShapeCacheSize() {
+        QueryExtensionRuntimeInfo config = new MockConfig()
+                .setWorkDir(getWorkingDir());
+        LuceneSpatialConfiguration luceneConfiguration = new LuceneSpatialConfiguration(new LuceneSpatialQueryExtensionProvider(), config);
+        Assert.assertEquals("Shape cache should be disabled by default", 0, luceneConfiguration.getShapeCacheSize());
+
+        LuceneSpatialQueryExtensionProvider provider = new LuceneSpatialQueryExtensionProvider()
+                .setCustomProperty("lucene.index.shape-cache.size", "10000");
+        luceneConfiguration = new LuceneSpatialConfiguration(provider, config);
+        Assert.assertEquals("Unexpected shape cache size", 10000, luceneConfiguration.getShapeCacheSize());
+    }
+
+    @Test
+    public void testOccupiedCellsLevel() {
+        QueryExtensionRuntimeInfo config = new MockConfig()
+                .setWorkDir(getWorkingDir());
+        LuceneSpatialConfiguration luceneConfiguration = new LuceneSpatialConfiguration(new LuceneSpatialQueryExtensionProvider(), config);
+        Assert.assertEquals("Occupied cells should be disabled by default", 0, luceneConfiguration.getOccupiedCellsLevel());
+
+        LuceneSpatialQueryExtensionProvider provider = new LuceneSpatialQueryExtensionProvider()
+                .setCustomProperty("lucene.index.occupied-cells.level", "8");
+        luceneConfiguration = new LuceneSpatialConfiguration(provider, config);
+        Assert.assertEquals("Unexpected occupied cells level", 8, luceneConfiguration.getOccupiedCellsLevel());
+
+        provider.setCustomProperty("lucene.index.occupied-cells.level", "13");
+        try {
+            new LuceneSpatialConfiguration(provider, config);
+            Assert.fail("An exception should be thrown");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Invalid occupied cells level [13] - must be between 0 and 12", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testInvalidQueryTimeout() {
+        LuceneSpatialQueryExtensionProvider provider = new LuceneSpatialQueryExtensionProvider()
+                .setCustomProperty("lucene.query.timeout", "-1");
+        try {
+            new LuceneSpatialConfiguration(provider, new MockConfig());
+            Assert.fail("An exception should be thrown");
+        } catch (RuntimeException e) {
+            //OK
+            Assert.assertEquals("Invalid query timeout [-1] - must not be negative", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testIndexedProperties() {
+        QueryExtensionRuntimeInfo config = new MockConfig()
+                .setWorkDir(getWorkingDir());
+        LuceneSpatialConfiguration luceneConfiguration = new LuceneSpatialConfiguration(new LuceneSpatialQueryExtensionProvider(), config);
+        Assert.assertTrue("No properties should be indexed by default", luceneConfiguration.getIndexedProperties().isEmpty());
+
+        LuceneSpatialQueryExtensionProvider provider = new LuceneSpatialQueryExtensionProvider()
+                .setCustomProperty("lucene.index.properties", "status, category,,status");
+        luceneConfiguration = new LuceneSpatialConfiguration(provider, config);
+        Assert.assertEquals("Unexpected indexed properties", java.util.Arrays.asList("status", "category"), luceneConfiguration.getIndexedProperties());
+    }
+
     private static class MockConfig implements QueryExtensionRuntimeInfo {
         private String workDir;
 
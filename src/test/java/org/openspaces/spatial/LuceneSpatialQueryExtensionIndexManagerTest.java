@@ -1,6 +1,11 @@
 package org.openspaces.spatial;
 
+import com.gigaspaces.SpaceRuntimeException;
+import com.gigaspaces.metadata.SpaceTypeDescriptor;
+import com.gigaspaces.query.extension.QueryExtensionEntryIterator;
 import com.gigaspaces.query.extension.QueryExtensionRuntimeInfo;
+import com.spatial4j.core.context.SpatialContext;
+import org.junit.After;
 import org.junit.Rule;
 import org.junit.rules.TemporaryFolder;
 import org.openspaces.spatial.shapes.Polygon;
@@ -9,10 +14,33 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.openspaces.spatial.spi.LuceneSpatialQueryExtensionManager;
+import org.openspaces.spatial.spatial4j.Spatial4jShapeProvider;
+import org.openspaces.spatial.spi.CancellableCollector;
+import org.openspaces.spatial.spi.LuceneSpatialConfiguration;
 import org.openspaces.spatial.spi.LuceneSpatialQueryExtensionProvider;
 
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.openspaces.spatial.MockSpaceEntries.entry;
+import static org.openspaces.spatial.MockSpaceEntries.typeDescriptor;
+import static org.openspaces.spatial.MockSpaceEntries.uids;
 import static org.openspaces.spatial.ShapeFactory.point;
 import static org.openspaces.spatial.ShapeFactory.polygon;
+import static org.openspaces.spatial.ShapeFactory.rectangle;
 
 
 /**
@@ -28,6 +56,18 @@ public class LuceneSpatialQueryExtensionIndexManagerTest {
 
     @Before
     public void setup() throws Exception {
+        _handler = createManager(new Properties());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        _handler.close();
+    }
+
+    private LuceneSpatialQueryExtensionManager createManager(Properties properties) throws IOException {
+        if (_handler != null)
+            _handler.close();
+        final String workDir = temporaryFolder.getRoot().getAbsolutePath();
         QueryExtensionRuntimeInfo config = new QueryExtensionRuntimeInfo() {
             @Override
             public String getSpaceInstanceName() {
@@ -36,10 +76,224 @@ public class LuceneSpatialQueryExtensionIndexManagerTest {
 
             @Override
             public String getSpaceInstanceWorkDirectory() {
-                return null;
+                return workDir;
             }
         };
-        _handler = new LuceneSpatialQueryExtensionManager(new LuceneSpatialQueryExtensionProvider(), config);
+        properties.setProperty(LuceneSpatialConfiguration.STORAGE_DIRECTORYTYPE, "RAMDirectory");
+        _handler = new LuceneSpatialQueryExtensionManager(new LuceneSpatialQueryExtensionProvider(properties), config);
+        return _handler;
+    }
+
+    @Test
+    public void testTimeWindow() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(LuceneSpatialConfiguration.TIME_PROPERTY, "time");
+        LuceneSpatialQueryExtensionManager manager = createManager(properties);
+        SpaceTypeDescriptor typeDescriptor = typeDescriptor("Device", "location");
+        manager.registerType(typeDescriptor);
+        for (int i = 0; i < 10; i++)
+            manager.insertEntry(entry(typeDescriptor, "uid" + i, 1, "location", point(i, i), "time", 1000L * i), false);
+        // An entry without a time value never matches a time window:
+        manager.insertEntry(entry(typeDescriptor, "untimed", 1, "location", point(1.5, 1.5)), false);
+
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("uid5", "uid6", "uid7")),
+                uids(manager.queryByIndex("Device", "location", "WITHIN", rectangle(0.5, 7.5, 0.5, 20), 5000, 10000, 0)));
+        // Plain queries are not affected by the time of the entries:
+        Assert.assertEquals(11, uids(manager.queryByIndex("Device", "location", "WITHIN", rectangle(-1, 20, -1, 20))).size());
+
+        // Expire the oldest entries from the space:
+        for (int i = 0; i < 6; i++)
+            manager.removeEntry(typeDescriptor, "uid" + i, 1);
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("uid6", "uid7")),
+                uids(manager.queryByIndex("Device", "location", "WITHIN", rectangle(0.5, 7.5, 0.5, 20), 0, 10000, 0)));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("uid6", "uid7", "uid8", "uid9", "untimed")),
+                uids(manager.queryByIndex("Device", "location", "WITHIN", rectangle(-1, 20, -1, 20))));
+    }
+
+    @Test
+    public void testPropertyFilters() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(LuceneSpatialConfiguration.INDEXED_PROPERTIES, "status,category,available");
+        LuceneSpatialQueryExtensionManager manager = createManager(properties);
+        SpaceTypeDescriptor typeDescriptor = typeDescriptor("Vehicle", "location");
+        manager.registerType(typeDescriptor);
+        for (int i = 0; i < 10; i++)
+            manager.insertEntry(entry(typeDescriptor, "uid" + i, 1, "location", point(i + 0.5, i + 0.5),
+                    "status", i % 2 == 0 ? "AVAILABLE" : "BUSY", "category", i % 3, "available", i < 5), false);
+
+        Map<String, Object> filters = new HashMap<String, Object>();
+        Assert.assertEquals(10, uids(manager.queryByIndex("Vehicle", "location", "WITHIN", rectangle(0, 10, 0, 10), filters, 0)).size());
+        filters.put("status", "AVAILABLE");
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("uid0", "uid2", "uid4", "uid6", "uid8")),
+                uids(manager.queryByIndex("Vehicle", "location", "WITHIN", rectangle(0, 10, 0, 10), filters, 0)));
+        filters.put("category", 0);
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("uid0", "uid6")),
+                uids(manager.queryByIndex("Vehicle", "location", "WITHIN", rectangle(0, 10, 0, 10), filters, 0)));
+        filters.put("available", true);
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("uid0")),
+                uids(manager.queryByIndex("Vehicle", "location", "WITHIN", rectangle(0, 10, 0, 10), filters, 0)));
+        // The spatial predicate still applies:
+        filters.remove("available");
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("uid6")),
+                uids(manager.queryByIndex("Vehicle", "location", "WITHIN", rectangle(5, 10, 5, 10), filters, 0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPropertyFilterNotIndexed() throws Exception {
+        SpaceTypeDescriptor typeDescriptor = typeDescriptor("Vehicle", "location");
+        _handler.registerType(typeDescriptor);
+        _handler.queryByIndex("Vehicle", "location", "WITHIN", rectangle(0, 10, 0, 10), Collections.<String, Object>singletonMap("status", "AVAILABLE"), 0);
+    }
+
+    @Test
+    public void testFilteredQueryRequiresLuceneIndex() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(LuceneSpatialConfiguration.ENGINE, "InMemory");
+        LuceneSpatialQueryExtensionManager manager = createManager(properties);
+        manager.registerType(typeDescriptor("Vehicle", "location"));
+        assertIllegalQuery(manager, "Vehicle", "uses the in-memory index engine");
+
+        properties = new Properties();
+        properties.setProperty(LuceneSpatialConfiguration.POINTS_ONLY_PATHS, "location");
+        manager = createManager(properties);
+        manager.registerType(typeDescriptor("Vehicle", "location"));
+        assertIllegalQuery(manager, "Vehicle", "uses a packed point index");
+
+        assertIllegalQuery(manager, "Unknown", "is not registered");
+        try {
+            manager.queryByIndex("Unknown", "location", "WITHIN", rectangle(0, 10, 0, 10));
+            Assert.fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Type [Unknown] is not registered", e.getMessage());
+        }
+    }
+
+    private static void assertIllegalQuery(LuceneSpatialQueryExtensionManager manager, String typeName, String message) {
+        try {
+            manager.queryByIndex(typeName, "location", "WITHIN", rectangle(0, 10, 0, 10), Collections.<String, Object>emptyMap(), 0);
+            Assert.fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    @Test
+    public void testQueryTimeout() throws Exception {
+        SpaceTypeDescriptor typeDescriptor = typeDescriptor("Vehicle", "location");
+        _handler.registerType(typeDescriptor);
+        _handler.insertEntry(entry(typeDescriptor, "uid1", 1, "location", point(5, 5)), false);
+        // The search takes longer than its timeout:
+        BlockingShape shape = new BlockingShape(rectangle(0, 10, 0, 10));
+        shape.release.countDown();
+        shape.delay = 500;
+        try {
+            _handler.queryByIndex("Vehicle", "location", "INTERSECTS", shape, 50);
+            Assert.fail("Query should have timed out");
+        } catch (SpaceRuntimeException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("exceeded timeout"));
+        }
+        Assert.assertTrue(_handler.getRunningQueries().isEmpty());
+
+        // The search completes in time, but the results are iterated after the timeout:
+        QueryExtensionEntryIterator iterator = _handler.queryByIndex("Vehicle", "location", "INTERSECTS", rectangle(0, 10, 0, 10), 50);
+        Thread.sleep(100);
+        try {
+            uids(iterator);
+            Assert.fail("Iteration should have timed out");
+        } catch (SpaceRuntimeException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("exceeded its timeout"));
+        }
+    }
+
+    @Test
+    public void testQueryTimeoutWithoutMatches() throws Exception {
+        SpaceTypeDescriptor typeDescriptor = typeDescriptor("Vehicle", "location");
+        _handler.registerType(typeDescriptor);
+        for (int i = 0; i < 100; i++)
+            _handler.insertEntry(entry(typeDescriptor, "uid" + i, 1, "location", point(20 + i * 0.01, 20)), false);
+        // The time is spent traversing the cells of the query, and no document is ever collected:
+        BlockingShape shape = new BlockingShape(rectangle(0, 10, 0, 10));
+        shape.release.countDown();
+        shape.delay = 500;
+        try {
+            uids(_handler.queryByIndex("Vehicle", "location", "INTERSECTS", shape, 50));
+            Assert.fail("Query should have timed out");
+        } catch (SpaceRuntimeException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("exceeded timeout"));
+        }
+        Assert.assertTrue(_handler.getRunningQueries().isEmpty());
+        Assert.assertTrue(uids(_handler.queryByIndex("Vehicle", "location", "INTERSECTS", rectangle(0, 10, 0, 10), 5000)).isEmpty());
+    }
+
+    @Test
+    public void testQueryCancellationWithoutMatches() throws Exception {
+        SpaceTypeDescriptor typeDescriptor = typeDescriptor("Vehicle", "location");
+        _handler.registerType(typeDescriptor);
+        _handler.insertEntry(entry(typeDescriptor, "uid1", 1, "location", point(50, 50)), false);
+        final BlockingShape shape = new BlockingShape(rectangle(0, 10, 0, 10));
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    uids(_handler.queryByIndex("Vehicle", "location", "INTERSECTS", shape, 0));
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        });
+        thread.start();
+        Assert.assertTrue("Query did not start", shape.started.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, _handler.cancelRunningQueries("Vehicle"));
+        shape.release.countDown();
+        thread.join(10000);
+        Assert.assertTrue("Query should have been cancelled: " + error.get(), error.get() instanceof SpaceRuntimeException &&
+                error.get().getMessage().contains("cancelled"));
+        Assert.assertTrue(_handler.getRunningQueries().isEmpty());
+    }
+
+    @Test
+    public void testQueryCancellation() throws Exception {
+        SpaceTypeDescriptor typeDescriptor = typeDescriptor("Vehicle", "location");
+        _handler.registerType(typeDescriptor);
+        _handler.insertEntry(entry(typeDescriptor, "uid1", 1, "location", point(5, 5)), false);
+        final BlockingShape shape = new BlockingShape(rectangle(0, 10, 0, 10));
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    uids(_handler.queryByIndex("Vehicle", "location", "INTERSECTS", shape, 0));
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        });
+        thread.start();
+        Assert.assertTrue("Query did not start", shape.started.await(10, TimeUnit.SECONDS));
+        Collection<CancellableCollector> runningQueries = _handler.getRunningQueries();
+        Assert.assertEquals(1, runningQueries.size());
+        CancellableCollector query = runningQueries.iterator().next();
+        Assert.assertEquals("Vehicle", query.getTypeName());
+        Assert.assertEquals("location", query.getPath());
+        Assert.assertFalse(_handler.cancelQuery(query.getQueryId() + 1));
+        Assert.assertTrue(_handler.cancelQuery(query.getQueryId()));
+        Assert.assertFalse("Already cancelled", _handler.cancelQuery(query.getQueryId()));
+        Assert.assertEquals("Already cancelled", 0, _handler.cancelRunningQueries("Vehicle"));
+        shape.release.countDown();
+        thread.join(10000);
+        Assert.assertTrue("Query should have been cancelled: " + error.get(), error.get() instanceof SpaceRuntimeException &&
+                error.get().getMessage().contains("cancelled"));
+        Assert.assertTrue(_handler.getRunningQueries().isEmpty());
+        // Other queries are not affected:
+        Assert.assertEquals(Collections.singleton("uid1"), uids(_handler.queryByIndex("Vehicle", "location", "INTERSECTS", rectangle(0, 10, 0, 10))));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTimeWindowRequiresTimeProperty() throws Exception {
+        SpaceTypeDescriptor typeDescriptor = typeDescriptor("Device", "location");
+        _handler.registerType(typeDescriptor);
+        _handler.queryByIndex("Device", "location", "WITHIN", rectangle(0.5, 7.5, 0.5, 20), 5000, 10000, 0);
     }
 
     @Test
@@ -92,4 +346,62 @@ public class LuceneSpatialQueryExtensionIndexManagerTest {
         Shape spatial4jPolygon = _handler.toShape(concavePolygon);
         Assert.assertNotNull(spatial4jPolygon);
     }
-}
\ No newline at end of file
+
+    /**
+     * A query shape whose spatial4j shape blocks the search (which relates it to the index cells) until released,
+     * and then delays it by the specified time.
+     */
+    private static class BlockingShape implements org.openspaces.spatial.shapes.Shape, Spatial4jShapeProvider {
+        private final org.openspaces.spatial.shapes.Rectangle rectangle;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile long delay;
+
+        private BlockingShape(org.openspaces.spatial.shapes.Rectangle rectangle) {
+            this.rectangle = rectangle;
+        }
+
+        @Override
+        public String toString(ShapeFormat shapeFormat) {
+            return rectangle.toString(shapeFormat);
+        }
+
+        @Override
+        public StringBuilder appendTo(StringBuilder stringBuilder, ShapeFormat shapeFormat) {
+            return rectangle.appendTo(stringBuilder, shapeFormat);
+        }
+
+        @Override
+        public byte[] toByteArray(ShapeFormat shapeFormat) {
+            return rectangle.toByteArray(shapeFormat);
+        }
+
+        @Override
+        public org.openspaces.spatial.shapes.Rectangle getBoundingBox() {
+            return rectangle;
+        }
+
+        @Override
+        public Shape getSpatial4jShape(SpatialContext spatialContext) {
+            final Shape target = ((Spatial4jShapeProvider) rectangle).getSpatial4jShape(spatialContext);
+            return (Shape) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Shape.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().equals("relate")) {
+                        started.countDown();
+                        release.await();
+                        if (delay != 0) {
+                            Thread.sleep(delay);
+                            delay = 0;
+                        }
+                    }
+                    try {
+                        return method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.openspaces.spatial;
+
+import com.gigaspaces.metadata.SpaceTypeDescriptor;
+import com.gigaspaces.query.extension.QueryExtensionEntryIterator;
+import com.gigaspaces.server.SpaceServerEntry;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+/**
+ * Creates type descriptors and entries for driving a query extension manager in tests, without a space. Only the
+ * methods used by the spatial query extension are answered, others return default values.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class MockSpaceEntries {
+    private static final String NAMESPACE = "spatial";
+
+    private MockSpaceEntries() {
+    }
+
+    /**
+     * Creates a descriptor of the specified type, whose specified paths are spatially indexed.
+     */
+    public static SpaceTypeDescriptor typeDescriptor(final String typeName, String... spatialPaths) {
+        final Set<String> paths = new LinkedHashSet<String>(Arrays.asList(spatialPaths));
+        return proxy(SpaceTypeDescriptor.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getTypeName"))
+                    return typeName;
+                if (method.getName().equals("supportsDynamicProperties"))
+                    return true;
+                if (method.getName().equals("getQueryExtensions"))
+                    return queryExtensions(method.getReturnType(), paths);
+                return defaultValue(proxy, method, args);
+            }
+        });
+    }
+
+    /**
+     * Creates an entry of the specified type, whose property values are specified as path/value pairs.
+     */
+    public static SpaceServerEntry entry(final SpaceTypeDescriptor typeDescriptor, final String uid, final int version, Object... pathValues) {
+        final Map<String, Object> values = new HashMap<String, Object>();
+        for (int i = 0; i < pathValues.length; i += 2)
+            values.put((String) pathValues[i], pathValues[i + 1]);
+        return proxy(SpaceServerEntry.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getSpaceTypeDescriptor"))
+                    return typeDescriptor;
+                if (method.getName().equals("getUid"))
+                    return uid;
+                if (method.getName().equals("getVersion"))
+                    return version;
+                if (method.getName().equals("getPathValue") || method.getName().equals("getPropertyValue"))
+                    return values.get((String) args[0]);
+                return defaultValue(proxy, method, args);
+            }
+        });
+    }
+
+    /**
+     * Reads the uids returned by the specified iterator, and closes it.
+     */
+    public static Set<String> uids(QueryExtensionEntryIterator iterator) throws IOException {
+        Set<String> result = new HashSet<String>();
+        try {
+            while (iterator.hasNext())
+                result.add(iterator.nextUid());
+        } finally {
+            iterator.close();
+        }
+        return result;
+    }
+
+    private static Object queryExtensions(Class<?> type, final Set<String> paths) {
+        return proxy(type, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getByNamespace"))
+                    return NAMESPACE.equals(args[0]) ? queryExtension(method.getReturnType(), paths) : null;
+                return defaultValue(proxy, method, args);
+            }
+        });
+    }
+
+    private static Object queryExtension(Class<?> type, final Set<String> paths) {
+        return proxy(type, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getPaths"))
+                    return method.getReturnType().isAssignableFrom(Set.class) ? paths : new ArrayList<String>(paths);
+                if (method.getName().equals("isIndexed"))
+                    return paths.contains((String) args[0]);
+                return defaultValue(proxy, method, args);
+            }
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(MockSpaceEntries.class.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("equals"))
+            return proxy == args[0];
+        if (method.getName().equals("hashCode"))
+            return System.identityHashCode(proxy);
+        if (method.getName().equals("toString"))
+            return "Mock" + method.getDeclaringClass().getSimpleName();
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class)
+            return false;
+        if (type == int.class)
+            return -1;
+        if (type == long.class)
+            return 0L;
+        if (type.isPrimitive() && type != void.class)
+            throw new UnsupportedOperationException(method.toString());
+        return null;
+    }
+}
@@ -0,0 +1,99 @@
+package org.openspaces.spatial;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.spatial.prefix.RecursivePrefixTreeStrategy;
+import org.apache.lucene.spatial.prefix.tree.GeohashPrefixTree;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openspaces.spatial.spi.OccupiedCellBitmap;
+
+import java.io.IOException;
+
+/**
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class OccupiedCellBitmapTest {
+    private final SpatialContext spatialContext = JtsSpatialContext.GEO;
+
+    @Test
+    public void testOccupiedCells() {
+        OccupiedCellBitmap bitmap = new OccupiedCellBitmap(spatialContext.getWorldBounds(), 8);
+        Assert.assertFalse(bitmap.isOccupied(spatialContext.getWorldBounds()));
+
+        bitmap.add(spatialContext.makePoint(10, 10).getBoundingBox());
+        bitmap.add(spatialContext.makeRectangle(-20, -18, 40, 41));
+        Assert.assertTrue(bitmap.isOccupied(spatialContext.makeRectangle(9, 11, 9, 11)));
+        Assert.assertTrue(bitmap.isOccupied(spatialContext.makeRectangle(-19.5, -19, 40.5, 50)));
+        Assert.assertTrue(bitmap.isOccupied(spatialContext.getWorldBounds()));
+        // Oceans far away from the shapes:
+        Assert.assertFalse(bitmap.isOccupied(spatialContext.makeRectangle(-40, -30, -40, -30)));
+        Assert.assertFalse(bitmap.isOccupied(spatialContext.makeRectangle(170, -170, -10, 10)));
+        // The point occupies a single cell, the rectangle overlaps 3 columns and 3 rows of cells:
+        Assert.assertEquals(1 + 3 * 3, bitmap.getOccupiedCells());
+    }
+
+    @Test
+    public void testDateline() {
+        OccupiedCellBitmap bitmap = new OccupiedCellBitmap(spatialContext.getWorldBounds(), 8);
+        bitmap.add(spatialContext.makeRectangle(179, -179, 0, 1));
+        Assert.assertTrue(bitmap.isOccupied(spatialContext.makeRectangle(-179.5, -179.2, 0, 1)));
+        Assert.assertTrue(bitmap.isOccupied(spatialContext.makeRectangle(170, -170, 0, 1)));
+        Assert.assertFalse(bitmap.isOccupied(spatialContext.makeRectangle(0, 10, 0, 1)));
+    }
+
+    @Test
+    public void testRebuildFromIndex() throws IOException {
+        RecursivePrefixTreeStrategy strategy = new RecursivePrefixTreeStrategy(new GeohashPrefixTree(spatialContext, 11), "shape");
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter indexWriter = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()));
+        indexWriter.addDocument(createDocument(strategy, "1", 10, 10));
+        indexWriter.addDocument(createDocument(strategy, "2", -60, -30));
+        indexWriter.commit();
+
+        OccupiedCellBitmap bitmap = rebuild(directory, strategy);
+        Assert.assertTrue(bitmap.isOccupied(spatialContext.makeRectangle(9, 11, 9, 11)));
+        Assert.assertTrue(bitmap.isOccupied(spatialContext.makeRectangle(-61, -59, -31, -29)));
+        Assert.assertFalse(bitmap.isOccupied(spatialContext.makeRectangle(100, 120, 20, 40)));
+
+        // A deleted shape clears its cells even before it is merged away:
+        indexWriter.deleteDocuments(new Term("id", "2"));
+        bitmap = rebuild(DirectoryReader.open(indexWriter, true), strategy);
+        Assert.assertTrue(bitmap.isOccupied(spatialContext.makeRectangle(9, 11, 9, 11)));
+        Assert.assertFalse(bitmap.isOccupied(spatialContext.makeRectangle(-61, -59, -31, -29)));
+
+        indexWriter.commit();
+        bitmap = rebuild(directory, strategy);
+        Assert.assertFalse(bitmap.isOccupied(spatialContext.makeRectangle(-61, -59, -31, -29)));
+        indexWriter.close();
+    }
+
+    private OccupiedCellBitmap rebuild(RAMDirectory directory, RecursivePrefixTreeStrategy strategy) throws IOException {
+        return rebuild(DirectoryReader.open(directory), strategy);
+    }
+
+    private OccupiedCellBitmap rebuild(DirectoryReader reader, RecursivePrefixTreeStrategy strategy) throws IOException {
+        OccupiedCellBitmap bitmap = new OccupiedCellBitmap(spatialContext.getWorldBounds(), 8);
+        bitmap.addCells(reader, strategy);
+        reader.close();
+        return bitmap;
+    }
+
+    private Document createDocument(RecursivePrefixTreeStrategy strategy, String id, double x, double y) {
+        Document document = new Document();
+        document.add(new StringField("id", id, Field.Store.NO));
+        for (Field field : strategy.createIndexableFields(spatialContext.makePoint(x, y)))
+            document.add(field);
+        return document;
+    }
+}
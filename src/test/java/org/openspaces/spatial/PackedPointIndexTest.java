@@ -0,0 +1,130 @@
+package org.openspaces.spatial;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import com.spatial4j.core.shape.Shape;
+import org.apache.lucene.spatial.query.SpatialOperation;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openspaces.spatial.spi.PackedPointIndex;
+
+import java.util.*;
+
+/**
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class PackedPointIndexTest {
+    private final SpatialContext spatialContext = JtsSpatialContext.GEO;
+
+    @Test
+    public void testQueriesMatchBruteForce() throws Exception {
+        Random random = new Random(42);
+        PackedPointIndex index = new PackedPointIndex(spatialContext);
+        Map<String, double[]> points = new HashMap<String, double[]>();
+        for (int i = 0; i < 5000; i++) {
+            double[] point = new double[] {random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50};
+            points.put("uid" + i, point);
+            index.insert("uid" + i, 1, point[0], point[1]);
+        }
+        // Move and remove some points after the tree was built:
+        assertQuery(index, points, spatialContext.makeRectangle(-10, 10, -10, 10));
+        for (int i = 0; i < 1000; i++) {
+            double[] point = new double[] {random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50};
+            points.put("uid" + i, point);
+            index.insert("uid" + i, 2, point[0], point[1]);
+        }
+        for (int i = 1000; i < 1500; i++) {
+            points.remove("uid" + i);
+            index.remove("uid" + i, 1);
+        }
+        Assert.assertEquals(points.size(), index.size());
+
+        assertQuery(index, points, spatialContext.makeRectangle(-10, 10, -10, 10));
+        assertQuery(index, points, spatialContext.makeCircle(5, 5, 12));
+        assertQuery(index, points, spatialContext.getFormats().getWktReader().read("POLYGON ((0 0, 30 0, 30 30, 15 10, 0 30, 0 0))"));
+    }
+
+    @Test
+    public void testChurnMatchesBruteForce() throws Exception {
+        // Random inserts, moves and removals go through the delta buffer and several tree merges:
+        Random random = new Random(42);
+        PackedPointIndex index = new PackedPointIndex(spatialContext);
+        Map<String, double[]> points = new HashMap<String, double[]>();
+        for (int i = 0; i < 50000; i++) {
+            String uid = "uid" + random.nextInt(5000);
+            if (random.nextInt(4) == 0) {
+                points.remove(uid);
+                index.remove(uid, -1);
+            } else {
+                double[] point = new double[] {random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50};
+                points.put(uid, point);
+                index.insert(uid, i, point[0], point[1]);
+            }
+            if (i % 5000 == 0) {
+                Assert.assertEquals(points.size(), index.size());
+                assertQuery(index, points, spatialContext.makeRectangle(-20, 5, -10, 15));
+            }
+        }
+        Assert.assertEquals(points.size(), index.size());
+        assertQuery(index, points, spatialContext.makeRectangle(-50, 50, -50, 50));
+    }
+
+    @Test
+    public void testConcurrentChangesAndQueries() throws Exception {
+        final PackedPointIndex index = new PackedPointIndex(spatialContext);
+        final Set<String> stable = new HashSet<String>();
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            stable.add("stable" + i);
+            index.insert("stable" + i, 1, random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10);
+        }
+        final Shape shape = spatialContext.makeRectangle(-10, 10, -10, 10);
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        final long deadline = System.currentTimeMillis() + 2000;
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final boolean writer = t % 2 == 0;
+            final int seed = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        while (System.currentTimeMillis() < deadline) {
+                            if (writer) {
+                                // Inserts grow the arrays, and removals move the last points into vacated slots:
+                                String uid = "churn" + seed + "_" + random.nextInt(5000);
+                                if (random.nextBoolean())
+                                    index.insert(uid, 1, random.nextDouble() * 40 - 20, random.nextDouble() * 40 - 20);
+                                else
+                                    index.remove(uid, -1);
+                            } else {
+                                List<String> result = index.query(SpatialOperation.Intersects, shape);
+                                Assert.assertFalse("Null uid in results", result.contains(null));
+                                Assert.assertEquals("Duplicate results", result.size(), new HashSet<String>(result).size());
+                                Assert.assertTrue("Missing stable points", result.containsAll(stable));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        Assert.assertEquals("Errors: " + errors, 0, errors.size());
+    }
+
+    private void assertQuery(PackedPointIndex index, Map<String, double[]> points, Shape shape) {
+        Set<String> expected = new HashSet<String>();
+        for (Map.Entry<String, double[]> entry : points.entrySet())
+            if (SpatialOperation.Intersects.evaluate(spatialContext.makePoint(entry.getValue()[0], entry.getValue()[1]), shape))
+                expected.add(entry.getKey());
+        List<String> actual = index.query(SpatialOperation.Intersects, shape);
+        Assert.assertEquals("Duplicate results for " + shape, actual.size(), new HashSet<String>(actual).size());
+        Assert.assertEquals("Unexpected results for " + shape, expected, new HashSet<String>(actual));
+    }
+}
@@ -0,0 +1,104 @@
+package org.openspaces.spatial;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import com.spatial4j.core.shape.Point;
+import com.spatial4j.core.shape.Rectangle;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.spatial.prefix.RecursivePrefixTreeStrategy;
+import org.apache.lucene.spatial.prefix.tree.GeohashPrefixTree;
+import org.apache.lucene.spatial.prefix.tree.PackedQuadPrefixTree;
+import org.apache.lucene.spatial.prefix.tree.QuadPrefixTree;
+import org.apache.lucene.spatial.prefix.tree.SpatialPrefixTree;
+import org.apache.lucene.spatial.query.SpatialArgs;
+import org.apache.lucene.spatial.query.SpatialOperation;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openspaces.spatial.spi.SphericalCellPrefixTree;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Verifies that the supported prefix trees find the same points at high latitudes, where their cells differ the most
+ * (see PrefixTreeBenchmark for their index size, indexing rate and query latency).
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class PrefixTreeComparisonTest {
+    private static final int NUM_OF_POINTS = 5000;
+    private static final int NUM_OF_QUERIES = 100;
+    private final SpatialContext spatialContext = JtsSpatialContext.GEO;
+
+    @Test
+    public void testCompareTrees() throws IOException {
+        SpatialPrefixTree[] trees = new SpatialPrefixTree[] {
+                new GeohashPrefixTree(spatialContext, 11),
+                new QuadPrefixTree(spatialContext, 26),
+                new PackedQuadPrefixTree(spatialContext, 26),
+                new SphericalCellPrefixTree(spatialContext, 22)
+        };
+        for (SpatialPrefixTree tree : trees)
+            assertQueries(tree);
+    }
+
+    /**
+     * Queries the tree with random rectangles, and verifies that every point in a rectangle is found, and that points
+     * outside of it are only found near its edges (as the query cells are approximated within the distance error).
+     */
+    private void assertQueries(SpatialPrefixTree tree) throws IOException {
+        RecursivePrefixTreeStrategy strategy = new RecursivePrefixTreeStrategy(tree, "shape");
+        strategy.setDistErrPct(0.025);
+        if (!(tree instanceof GeohashPrefixTree) && !(tree instanceof QuadPrefixTree))
+            strategy.setPruneLeafyBranches(false);
+
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter indexWriter = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()));
+        Random random = new Random(42);
+        Point[] points = new Point[NUM_OF_POINTS];
+        for (int i = 0; i < NUM_OF_POINTS; i++) {
+            points[i] = spatialContext.makePoint(random.nextDouble() * 30, 55 + random.nextDouble() * 25);
+            Document document = new Document();
+            for (Field field : strategy.createIndexableFields(points[i]))
+                document.add(field);
+            indexWriter.addDocument(document);
+        }
+        indexWriter.close();
+
+        DirectoryReader reader = DirectoryReader.open(directory);
+        IndexSearcher searcher = new IndexSearcher(reader);
+        long totalHits = 0;
+        long totalExpected = 0;
+        for (int i = 0; i < NUM_OF_QUERIES; i++) {
+            double x = random.nextDouble() * 28;
+            double y = 55 + random.nextDouble() * 23;
+            Rectangle rectangle = spatialContext.makeRectangle(x, x + 2, y, y + 1);
+            int hits = searcher.count(strategy.makeQuery(new SpatialArgs(SpatialOperation.Intersects, rectangle)));
+            int expected = count(points, rectangle);
+            Assert.assertTrue(tree + " missed points in " + rectangle + ": expected " + expected + ", actual " + hits, hits >= expected);
+            int maxHits = count(points, spatialContext.makeRectangle(x - 0.5, x + 2.5, y - 0.5, y + 1.5));
+            Assert.assertTrue(tree + " found points far from " + rectangle + ": " + hits, hits <= maxHits);
+            totalHits += hits;
+            totalExpected += expected;
+        }
+        reader.close();
+        Assert.assertTrue("No points were queried", totalExpected > 0);
+        Assert.assertTrue(tree + " found " + totalHits + " points instead of " + totalExpected, totalHits <= totalExpected * 1.5);
+    }
+
+    private int count(Point[] points, Rectangle rectangle) {
+        int result = 0;
+        for (Point point : points)
+            if (rectangle.relate(point).intersects())
+                result++;
+        return result;
+    }
+}
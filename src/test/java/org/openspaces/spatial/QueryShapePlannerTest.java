@@ -0,0 +1,102 @@
+package org.openspaces.spatial;
+
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import com.spatial4j.core.shape.Point;
+import com.spatial4j.core.shape.Shape;
+import com.spatial4j.core.shape.SpatialRelation;
+import com.vividsolutions.jts.geom.Coordinate;
+import org.apache.lucene.spatial.query.SpatialOperation;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openspaces.spatial.spi.QueryShapePlan;
+import org.openspaces.spatial.spi.QueryShapePlanner;
+
+import java.util.Random;
+
+/**
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class QueryShapePlannerTest {
+    private static final int NUM_OF_VERTICES = 20000;
+    private final JtsSpatialContext spatialContext = JtsSpatialContext.GEO;
+
+    @Test
+    public void testSmallShapesAreNotPlanned() {
+        QueryShapePlanner planner = new QueryShapePlanner(spatialContext, NUM_OF_VERTICES, 0.001);
+        Assert.assertNull(planner.getPlan(spatialContext.makeRectangle(0, 10, 0, 10)));
+        Assert.assertNull(planner.getPlan(createShape(100)));
+    }
+
+    @Test
+    public void testCoverAndInterior() {
+        QueryShapePlanner planner = new QueryShapePlanner(spatialContext, 1000, 0.001);
+        Shape shape = createShape(NUM_OF_VERTICES);
+        QueryShapePlan plan = planner.getPlan(shape);
+        Assert.assertSame(plan, planner.getPlan(shape));
+        Assert.assertEquals(SpatialRelation.CONTAINS, plan.getCover().relate(shape));
+        Assert.assertEquals(SpatialRelation.WITHIN, plan.getInterior().relate(shape));
+        Assert.assertSame(plan.getCover(), plan.getIndexShape(SpatialOperation.Intersects));
+        Assert.assertSame(plan.getCover(), plan.getIndexShape(SpatialOperation.IsWithin));
+        Assert.assertSame(plan.getInterior(), plan.getIndexShape(SpatialOperation.Contains));
+    }
+
+    @Test
+    public void testPlansAreCachedByKey() {
+        QueryShapePlanner planner = new QueryShapePlanner(spatialContext, 1000, 0.001);
+        // Equal operands whose spatial4j shapes are built separately (as when spatial4j shapes are not cached):
+        org.openspaces.spatial.shapes.Shape operand = createPolygon(NUM_OF_VERTICES);
+        org.openspaces.spatial.shapes.Shape equalOperand = createPolygon(NUM_OF_VERTICES);
+        Shape shape = createShape(NUM_OF_VERTICES);
+        Shape rebuiltShape = createShape(NUM_OF_VERTICES);
+        Assert.assertNull(planner.getCachedPlan(operand));
+        QueryShapePlan plan = planner.getPlan(operand, shape);
+        Assert.assertSame(plan, planner.getCachedPlan(operand));
+        Assert.assertSame(plan, planner.getPlan(equalOperand, rebuiltShape));
+        Assert.assertNotSame(plan, planner.getPlan(createPolygon(NUM_OF_VERTICES - 1), rebuiltShape));
+    }
+
+    @Test
+    public void testEvaluate() {
+        QueryShapePlanner planner = new QueryShapePlanner(spatialContext, 1000, 0.001);
+        Shape shape = createShape(NUM_OF_VERTICES);
+        QueryShapePlan plan = planner.getPlan(shape);
+
+        Assert.assertTrue(plan.evaluate(SpatialOperation.Intersects, spatialContext.makePoint(0, 0)));
+        Assert.assertFalse(plan.evaluate(SpatialOperation.Intersects, spatialContext.makePoint(50, 50)));
+        Assert.assertTrue(plan.evaluate(SpatialOperation.IsWithin, spatialContext.makeRectangle(-1, 1, -1, 1)));
+        Assert.assertEquals(0, plan.getBoundaryTests());
+
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            Point point = spatialContext.makePoint(random.nextDouble() * 24 - 12, random.nextDouble() * 24 - 12);
+            Assert.assertEquals("Unexpected result for " + point, SpatialOperation.Intersects.evaluate(point, shape),
+                    plan.evaluate(SpatialOperation.Intersects, point));
+        }
+        // Only points near the boundary should have been tested against the original shape:
+        Assert.assertTrue(plan.getBoundaryTests() < 100);
+    }
+
+    private org.openspaces.spatial.shapes.Shape createPolygon(int numOfVertices) {
+        double[] coordinates = new double[numOfVertices * 2];
+        for (int i = 0; i < numOfVertices; i++) {
+            double angle = 2 * Math.PI * i / numOfVertices;
+            coordinates[i * 2] = 10 * Math.cos(angle);
+            coordinates[i * 2 + 1] = 10 * Math.sin(angle);
+        }
+        return ShapeFactory.polygon(coordinates);
+    }
+
+    private Shape createShape(int numOfVertices) {
+        // A circle-like polygon with a jagged boundary:
+        Coordinate[] coordinates = new Coordinate[numOfVertices + 1];
+        for (int i = 0; i < numOfVertices; i++) {
+            double angle = 2 * Math.PI * i / numOfVertices;
+            double radius = 10 + 0.3 * Math.sin(50 * angle) + 0.05 * Math.sin(2000 * angle);
+            coordinates[i] = new Coordinate(radius * Math.cos(angle), radius * Math.sin(angle));
+        }
+        coordinates[numOfVertices] = coordinates[0];
+        return spatialContext.makeShape(spatialContext.getGeometryFactory().createPolygon(
+                spatialContext.getGeometryFactory().createLinearRing(coordinates), null));
+    }
+}
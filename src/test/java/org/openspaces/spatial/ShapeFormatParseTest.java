@@ -1,8 +1,12 @@
 package org.openspaces.spatial;
 
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContextFactory;
 import org.junit.Assert;
 import org.junit.Test;
 import org.openspaces.spatial.shapes.Shape;
+import org.openspaces.spatial.spatial4j.Spatial4jShapeProvider;
 
 import static org.openspaces.spatial.ShapeFactory.*;
 
@@ -18,6 +22,85 @@ public class ShapeFormatParseTest {
         test(ShapeFormat.GEOJSON);
     }
 
+    @Test
+    public void testJtsShapeMatchesWktReader() throws Exception {
+        JtsSpatialContextFactory cartesianFactory = new JtsSpatialContextFactory();
+        cartesianFactory.geo = false;
+        SpatialContext[] spatialContexts = new SpatialContext[] {JtsSpatialContext.GEO, new JtsSpatialContext(cartesianFactory)};
+        Shape[] polygons = new Shape[] {
+                polygon(point(0, 0), point(10, 0), point(10, 10), point(0, 10)),
+                // Crosses the dateline in geo contexts (20 degrees wide):
+                polygon(point(170, 0), point(-170, 0), point(-170, 10), point(170, 10)),
+                polygon(point(0, 0), point(0, 5), point(2.5, 2.5), point(5, 5), point(5, 0))
+        };
+        for (SpatialContext spatialContext : spatialContexts) {
+            for (Shape polygon : polygons) {
+                com.spatial4j.core.shape.Shape expected = spatialContext.getFormats().getWktReader().read(polygon.toString(ShapeFormat.WKT));
+                com.spatial4j.core.shape.Shape actual = ((Spatial4jShapeProvider) polygon).getSpatial4jShape(spatialContext);
+                Assert.assertEquals("Unexpected shape type for " + polygon, expected instanceof com.spatial4j.core.shape.Rectangle,
+                        actual instanceof com.spatial4j.core.shape.Rectangle);
+                Assert.assertEquals("Unexpected bounding box for " + polygon, expected.getBoundingBox(), actual.getBoundingBox());
+                Assert.assertEquals("Unexpected area for " + polygon, expected.getArea(spatialContext), actual.getArea(spatialContext), 1e-9);
+            }
+        }
+        com.spatial4j.core.shape.Shape dateline = ((Spatial4jShapeProvider) polygons[1]).getSpatial4jShape(JtsSpatialContext.GEO);
+        Assert.assertEquals(20, dateline.getBoundingBox().getWidth(), 0);
+        Assert.assertTrue(dateline.getBoundingBox().getCrossesDateLine());
+    }
+
+    @Test
+    public void testWkb() {
+        // Rectangles and circles have no WKB representation of their own:
+        Shape[] shapes = new Shape[] {
+                point(1, 2),
+                lineString(point(1,11), point(2,12), point(3,13)),
+                polygon(point(0, 0), point(0, 5), point(5, 0)),
+                polygon(point(0,0), point(0,5), point(2.5,2.5), point(5,5), point(5,0))
+        };
+
+        for (Shape shape : shapes) {
+            Assert.assertEquals(shape, ShapeFactory.parse(shape.toByteArray(ShapeFormat.WKB), ShapeFormat.WKB));
+            Assert.assertEquals(shape, ShapeFactory.parse(shape.toString(ShapeFormat.WKB), ShapeFormat.WKB));
+        }
+    }
+
+    @Test
+    public void testWkbBigEndian() {
+        // POINT (1 2) in big endian (XDR) byte order:
+        Shape parsed = ShapeFactory.parse("00000000013FF00000000000004000000000000000", ShapeFormat.WKB);
+        Assert.assertEquals(point(1, 2), parsed);
+    }
+
+    @Test
+    public void testMultiShapes() {
+        Shape[] shapes = new Shape[] {
+                polygon(new double[] {0, 0, 0, 10, 10, 10, 10, 0, 0, 0}, new double[][] {{2, 2, 2, 4, 4, 4, 4, 2, 2, 2}}),
+                multiPoint(point(1, 2), point(3, 4)),
+                multiLineString(lineString(point(1, 11), point(2, 12)), lineString(point(3, 13), point(4, 14)))
+        };
+        for (ShapeFormat shapeFormat : new ShapeFormat[] {ShapeFormat.WKT, ShapeFormat.GEOJSON}) {
+            for (Shape shape : shapes)
+                Assert.assertEquals(shape, ShapeFactory.parse(shape.toString(shapeFormat), shapeFormat));
+        }
+    }
+
+    @Test
+    public void testSpatialContextProfile() {
+        SpatialContext cartesian = getSpatialContext("cartesian");
+        Assert.assertFalse(cartesian.isGeo());
+        String wkt = polygon(point(0, 0), point(0, 5), point(2.5, 2.5), point(5, 5), point(5, 0)).toString(ShapeFormat.WKT);
+        Spatial4jShapeProvider shape = (Spatial4jShapeProvider) ShapeFactory.parse(wkt, ShapeFormat.WKT, "cartesian");
+        com.spatial4j.core.shape.Shape spatial4jShape = shape.getSpatial4jShape(cartesian);
+        Assert.assertSame(cartesian, spatial4jShape.getContext());
+        Assert.assertSame(spatial4jShape, shape.getSpatial4jShape(cartesian));
+        Assert.assertSame(JtsSpatialContext.GEO, shape.getSpatial4jShape(JtsSpatialContext.GEO).getContext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownSpatialContextProfile() {
+        getSpatialContext("no-such-profile");
+    }
+
     private void test(ShapeFormat shapeFormat) {
         Shape[] shapes = new Shape[] {
                 point(1, 2),
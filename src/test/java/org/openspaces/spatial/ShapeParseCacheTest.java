@@ -0,0 +1,53 @@
+package org.openspaces.spatial;
+
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openspaces.spatial.shapes.Shape;
+
+import static org.openspaces.spatial.ShapeFactory.*;
+
+/**
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class ShapeParseCacheTest {
+
+    @Test
+    public void testRepeatedLiteralsShareShape() {
+        ShapeParseCache cache = new ShapeParseCache(10);
+        String wkt = polygon(point(0, 0), point(0, 5), point(2.5, 2.5), point(5, 5), point(5, 0)).toString(ShapeFormat.WKT);
+        Shape shape1 = cache.parse(wkt, ShapeFormat.WKT);
+        Shape shape2 = cache.parse(new String(wkt), ShapeFormat.WKT);
+        Assert.assertSame(shape1, shape2);
+        Assert.assertEquals(ShapeFactory.parse(wkt, ShapeFormat.WKT), shape1);
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testFormatIsPartOfKey() {
+        ShapeParseCache cache = new ShapeParseCache(10);
+        Shape point = point(1, 2);
+        Assert.assertEquals(point, cache.parse(point.toString(ShapeFormat.WKT), ShapeFormat.WKT));
+        Assert.assertEquals(point, cache.parse(point.toString(ShapeFormat.GEOJSON), ShapeFormat.GEOJSON));
+        Assert.assertEquals(2, cache.getMisses());
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testDigestKeys() {
+        ShapeParseCache cache = new ShapeParseCache(10, 0, JtsSpatialContext.GEO);
+        String wkt = lineString(point(1, 11), point(2, 12), point(3, 13)).toString(ShapeFormat.WKT);
+        Assert.assertSame(cache.parse(wkt, ShapeFormat.WKT), cache.parse(new String(wkt), ShapeFormat.WKT));
+        Assert.assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testEviction() {
+        ShapeParseCache cache = new ShapeParseCache(2);
+        for (int i = 0; i < 5; i++)
+            cache.parse(point(i, i).toString(ShapeFormat.WKT), ShapeFormat.WKT);
+        Assert.assertEquals(2, cache.size());
+    }
+}
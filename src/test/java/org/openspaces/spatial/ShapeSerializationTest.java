@@ -0,0 +1,131 @@
+package org.openspaces.spatial;
+
+import org.junit.Assert;
+import org.junit.Test;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import com.spatial4j.core.exception.InvalidShapeException;
+import org.openspaces.spatial.shapes.Circle;
+import org.openspaces.spatial.shapes.Shape;
+import org.openspaces.spatial.shapes.impl.PolygonImpl;
+
+import java.io.*;
+
+import static org.openspaces.spatial.ShapeFactory.*;
+
+/**
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class ShapeSerializationTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Shape[] shapes = new Shape[] {
+                point(1, 2),
+                rectangle(1, 2, 3, 4),
+                circle(point(0, 0), 5),
+                lineString(point(1, 11), point(2, 12), point(3, 13)),
+                polygon(point(0, 0), point(0, 5), point(2.5, 2.5), point(5, 5), point(5, 0)),
+                polygon(new double[] {0, 0, 0, 10, 10, 10, 10, 0}, new double[][] {{2, 2, 2, 4, 4, 4, 4, 2}}),
+                multiPoint(point(1, 2), point(3, 4)),
+                multiLineString(lineString(point(1, 11), point(2, 12)), lineString(point(3, 13), point(4, 14))),
+                multiPolygon(polygon(point(0, 0), point(0, 5), point(5, 0)),
+                        polygon(new double[] {10, 10, 10, 20, 20, 20, 20, 10}, new double[][] {{12, 12, 12, 14, 14, 14, 14, 12}}))
+        };
+        for (Shape shape : shapes) {
+            Assert.assertEquals(shape, deserialize(serialize(shape)));
+            if (!(shape instanceof Circle))
+                Assert.assertEquals(shape, ShapeFactory.parse(shape.toByteArray(ShapeFormat.WKB), ShapeFormat.WKB));
+        }
+    }
+
+    @Test
+    public void testBoundingBox() throws Exception {
+        Assert.assertEquals(rectangle(1, 1, 2, 2), point(1, 2).getBoundingBox());
+        Assert.assertEquals(rectangle(-5, 5, -4, 6), circle(point(0, 1), 5).getBoundingBox());
+        Assert.assertEquals(rectangle(1, 3, 11, 13), lineString(point(1, 11), point(3, 13), point(2, 12)).getBoundingBox());
+        Assert.assertEquals(rectangle(0, 5, 0, 5), polygon(point(0, 0), point(0, 5), point(2.5, 2.5), point(5, 5), point(5, 0)).getBoundingBox());
+        Assert.assertEquals(rectangle(0, 20, 0, 20), multiPolygon(polygon(point(0, 0), point(0, 5), point(5, 0)),
+                polygon(point(10, 10), point(10, 20), point(20, 20))).getBoundingBox());
+    }
+
+    @Test
+    public void testValidationPolicy() throws Exception {
+        double[] bowTie = new double[] {0, 0, 0, 5, 5, 0, 5, 5};
+        // Deferred by default - invalid polygons are rejected only when converted to a spatial4j shape:
+        Assert.assertEquals(ShapeValidationPolicy.DEFERRED, getValidationPolicy());
+        PolygonImpl deferred = (PolygonImpl) polygon(bowTie);
+        try {
+            deferred.getSpatial4jShape(JtsSpatialContext.GEO);
+            Assert.fail("Self intersecting polygon should be rejected");
+        } catch (InvalidShapeException e) {
+            // expected
+        }
+
+        ShapeValidationPolicy previous = getValidationPolicy();
+        setValidationPolicy(ShapeValidationPolicy.STRICT);
+        try {
+            polygon(bowTie);
+            Assert.fail("Self intersecting polygon should be rejected");
+        } catch (InvalidShapeException e) {
+            // expected
+        } finally {
+            setValidationPolicy(previous);
+        }
+
+        setValidationPolicy(ShapeValidationPolicy.REPAIR);
+        try {
+            PolygonImpl polygon = (PolygonImpl) polygon(bowTie);
+            Assert.assertEquals(polygon(point(0, 0), point(0, 5), point(5, 0), point(5, 5)), polygon);
+            Assert.assertNotNull(polygon.getSpatial4jShape(JtsSpatialContext.GEO));
+        } finally {
+            setValidationPolicy(previous);
+        }
+    }
+
+    @Test
+    public void testValidatedPolygonFormat() throws Exception {
+        // The validity is not serialized by default, so previous versions (which read the point count first) can read it:
+        ShapeValidationPolicy previous = getValidationPolicy();
+        setValidationPolicy(ShapeValidationPolicy.STRICT);
+        try {
+            PolygonImpl polygon = (PolygonImpl) polygon(point(0, 0), point(0, 5), point(5, 0));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            polygon.writeExternal(out);
+            out.close();
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            Assert.assertEquals(polygon.getNumOfPoints(), in.readInt());
+        } finally {
+            setValidationPolicy(previous);
+        }
+    }
+
+    @Test
+    public void testReadLegacyPolygonFormat() throws Exception {
+        // Legacy format: point count followed by a writeDouble() call per coordinate
+        double[] coordinates = new double[] {0, 0, 0, 5, 5, 0, 0, 0};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeInt(coordinates.length / 2);
+        for (double coordinate : coordinates)
+            out.writeDouble(coordinate);
+        out.close();
+
+        PolygonImpl polygon = new PolygonImpl();
+        polygon.readExternal(new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertEquals(polygon(point(0, 0), point(0, 5), point(5, 0)), polygon);
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+    }
+}
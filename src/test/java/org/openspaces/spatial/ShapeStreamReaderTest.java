@@ -0,0 +1,82 @@
+package org.openspaces.spatial;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.openspaces.spatial.ShapeFactory.*;
+
+public class ShapeStreamReaderTest {
+
+    private static final String FEATURE_COLLECTION = "{\"type\":\"FeatureCollection\",\"features\":[" +
+            "{\"type\":\"Feature\",\"id\":1,\"geometry\":{\"type\":\"Point\",\"coordinates\":[1,2]},\"properties\":{\"name\":\"a\"}}," +
+            "{\"type\":\"Feature\",\"id\":2,\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[1,11],[2,12],[3,13]]},\"properties\":{}}," +
+            "{\"type\":\"Feature\",\"id\":3,\"geometry\":null,\"properties\":{\"name\":\"c\"}}" +
+            "],\"crs\":null}";
+
+    @Test
+    public void testFeatureCollection() throws IOException {
+        List<ShapeFeature> features = readAll(ShapeStreamReader.create(new StringReader(FEATURE_COLLECTION), ShapeFormat.GEOJSON));
+        Assert.assertEquals(3, features.size());
+        Assert.assertEquals(1L, features.get(0).getId());
+        Assert.assertEquals(point(1, 2), features.get(0).getShape());
+        Assert.assertEquals("a", features.get(0).getProperties().get("name"));
+        Assert.assertEquals(lineString(point(1,11), point(2,12), point(3,13)), features.get(1).getShape());
+        Assert.assertNull(features.get(2).getShape());
+    }
+
+    @Test
+    public void testNewLineDelimitedGeoJson() throws IOException {
+        String input = point(1, 2).toString(ShapeFormat.GEOJSON) + "\n" +
+                polygon(point(0, 0), point(0, 5), point(5, 0)).toString(ShapeFormat.GEOJSON) + "\n" +
+                circle(point(0, 0), 5).toString(ShapeFormat.GEOJSON) + "\n";
+        List<ShapeFeature> features = readAll(ShapeStreamReader.create(new StringReader(input), ShapeFormat.GEOJSON));
+        Assert.assertEquals(3, features.size());
+        Assert.assertEquals(point(1, 2), features.get(0).getShape());
+        Assert.assertEquals(polygon(point(0, 0), point(0, 5), point(5, 0)), features.get(1).getShape());
+        Assert.assertEquals(circle(point(0, 0), 5), features.get(2).getShape());
+    }
+
+    @Test
+    public void testWkt() throws IOException {
+        String input = "POINT (1 2)\n\nLINESTRING (1 11, 2 12, 3 13)\n";
+        List<ShapeFeature> features = readAll(ShapeStreamReader.create(new StringReader(input), ShapeFormat.WKT));
+        Assert.assertEquals(2, features.size());
+        Assert.assertEquals(point(1, 2), features.get(0).getShape());
+        Assert.assertEquals(lineString(point(1,11), point(2,12), point(3,13)), features.get(1).getShape());
+    }
+
+    @Test
+    public void testParallel() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            input.append("POINT (").append(i).append(" 0)\n");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<ShapeFeature> features = readAll(ShapeStreamReader.create(new StringReader(input.toString()), ShapeFormat.WKT)
+                    .parallel(executor, 8));
+            Assert.assertEquals(100, features.size());
+            for (int i = 0; i < 100; i++)
+                Assert.assertEquals(point(i, 0), features.get(i).getShape());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static List<ShapeFeature> readAll(ShapeStreamReader reader) throws IOException {
+        List<ShapeFeature> result = new ArrayList<ShapeFeature>();
+        try {
+            while (reader.hasNext())
+                result.add(reader.next());
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,85 @@
+package org.openspaces.spatial;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openspaces.spatial.shapes.Shape;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+
+import static org.openspaces.spatial.ShapeFactory.*;
+
+public class ShapeStreamWriterTest {
+
+    @Test
+    public void testPrecision() throws IOException {
+        Assert.assertEquals("POINT (1.235 -0.5)\n", write(ShapeFormat.WKT, 3, point(1.23456, -0.5)));
+        Assert.assertEquals("POINT (2 0)\n", write(ShapeFormat.WKT, 0, point(1.5, -0.4)));
+        Assert.assertEquals("POINT (-10.000001 3)\n", write(ShapeFormat.WKT, 6, point(-10.0000012, 3.0000001)));
+        Assert.assertEquals("{\"type\":\"Point\",\"coordinates\":[1.0,2.5]}\n",
+                write(ShapeFormat.GEOJSON, ShapeStreamWriter.FULL_PRECISION, point(1, 2.5)));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (ShapeFormat shapeFormat : new ShapeFormat[] {ShapeFormat.WKT, ShapeFormat.GEOJSON}) {
+            Shape[] shapes = new Shape[] {
+                    point(1, 2),
+                    lineString(point(1,11), point(2,12), point(3,13)),
+                    polygon(point(0, 0), point(0, 5), point(5, 0)),
+                    circle(point(0,0), 5)
+            };
+            String s = write(shapeFormat, 7, shapes);
+            ShapeStreamReader reader = ShapeStreamReader.create(new StringReader(s), shapeFormat);
+            for (Shape shape : shapes)
+                Assert.assertEquals(shape, reader.next().getShape());
+            Assert.assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void testFullPrecisionMatchesToString() throws IOException {
+        Shape[] shapes = new Shape[] {
+                point(1, 2.5),
+                circle(point(0, 0), 5),
+                rectangle(0, 10, -5, 5),
+                lineString(point(1, 11), point(2, 12), point(3, 13)),
+                polygon(new double[] {0, 0, 0, 10, 10, 10, 10, 0}, new double[][] {{1, 1, 1, 2, 2, 2, 2, 1}}),
+                multiPoint(point(1, 2), point(3, 4)),
+                multiLineString(lineString(point(1, 11), point(2, 12)), lineString(point(3, 13), point(4, 14))),
+                multiPolygon(polygon(point(0, 0), point(0, 5), point(5, 0)), polygon(point(10, 10), point(10, 15), point(15, 10)))
+        };
+        for (ShapeFormat shapeFormat : new ShapeFormat[] {ShapeFormat.WKT, ShapeFormat.GEOJSON})
+            for (Shape shape : shapes)
+                Assert.assertEquals(shape.toString(shapeFormat) + "\n", write(shapeFormat, ShapeStreamWriter.FULL_PRECISION, shape));
+    }
+
+    @Test
+    public void testFeatureCollection() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        ShapeStreamWriter writer = new ShapeStreamWriter(sb, ShapeFormat.GEOJSON, 7);
+        writer.beginFeatureCollection();
+        writer.writeFeature(1, point(1, 2), Collections.singletonMap("name", "a\"b"));
+        writer.writeFeature("x", null, null);
+        writer.endFeatureCollection();
+        Assert.assertEquals("{\"type\":\"FeatureCollection\",\"features\":[" +
+                "{\"type\":\"Feature\",\"id\":1,\"geometry\":{\"type\":\"Point\",\"coordinates\":[1,2]},\"properties\":{\"name\":\"a\\\"b\"}}," +
+                "{\"type\":\"Feature\",\"id\":\"x\",\"geometry\":null,\"properties\":null}]}\n", sb.toString());
+
+        ShapeStreamReader reader = ShapeStreamReader.create(new StringReader(sb.toString()), ShapeFormat.GEOJSON);
+        ShapeFeature feature = reader.next();
+        Assert.assertEquals(point(1, 2), feature.getShape());
+        Assert.assertEquals("a\"b", feature.getProperties().get("name"));
+        Assert.assertNull(reader.next().getShape());
+        Assert.assertFalse(reader.hasNext());
+    }
+
+    private static String write(ShapeFormat shapeFormat, int decimalPlaces, Shape... shapes) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        ShapeStreamWriter writer = new ShapeStreamWriter(sb, shapeFormat, decimalPlaces);
+        for (Shape shape : shapes)
+            writer.write(shape);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,67 @@
+package org.openspaces.spatial;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openspaces.spatial.shapes.Polygon;
+import org.openspaces.spatial.shapes.impl.Spatial4jShapeCache;
+import org.openspaces.spatial.spatial4j.Spatial4jShapeProvider;
+
+import static org.openspaces.spatial.ShapeFactory.*;
+
+/**
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class Spatial4jShapeCacheTest {
+    private final SpatialContext spatialContext = JtsSpatialContext.GEO;
+
+    @After
+    public void restoreDefaultPolicy() {
+        Spatial4jShapeCache.setPolicy(Spatial4jShapeCache.Policy.ALWAYS, 0);
+    }
+
+    @Test
+    public void testAlways() {
+        Spatial4jShapeCache.setPolicy(Spatial4jShapeCache.Policy.ALWAYS, 0);
+        Spatial4jShapeProvider polygon = createPolygon();
+        Assert.assertSame(polygon.getSpatial4jShape(spatialContext), polygon.getSpatial4jShape(spatialContext));
+    }
+
+    @Test
+    public void testNever() {
+        Spatial4jShapeCache.setPolicy(Spatial4jShapeCache.Policy.NEVER, 0);
+        Spatial4jShapeProvider polygon = createPolygon();
+        com.spatial4j.core.shape.Shape shape1 = polygon.getSpatial4jShape(spatialContext);
+        com.spatial4j.core.shape.Shape shape2 = polygon.getSpatial4jShape(spatialContext);
+        Assert.assertNotSame(shape1, shape2);
+        Assert.assertEquals(shape1, shape2);
+    }
+
+    @Test
+    public void testSoft() {
+        Spatial4jShapeCache.setPolicy(Spatial4jShapeCache.Policy.SOFT, 0);
+        Spatial4jShapeProvider polygon = createPolygon();
+        // Strongly reachable while held here, so the soft reference cannot be cleared:
+        com.spatial4j.core.shape.Shape shape = polygon.getSpatial4jShape(spatialContext);
+        Assert.assertSame(shape, polygon.getSpatial4jShape(spatialContext));
+    }
+
+    @Test
+    public void testBounded() {
+        Spatial4jShapeCache.setPolicy(Spatial4jShapeCache.Policy.BOUNDED, 1);
+        Spatial4jShapeProvider polygon1 = createPolygon();
+        com.spatial4j.core.shape.Shape shape1 = polygon1.getSpatial4jShape(spatialContext);
+        Assert.assertSame(shape1, polygon1.getSpatial4jShape(spatialContext));
+        // Evicts the first polygon's shape:
+        ((Spatial4jShapeProvider) point(1, 2)).getSpatial4jShape(spatialContext);
+        Assert.assertNotSame(shape1, polygon1.getSpatial4jShape(spatialContext));
+    }
+
+    private static Spatial4jShapeProvider createPolygon() {
+        Polygon polygon = polygon(point(0, 0), point(0, 5), point(2.5, 2.5), point(5, 5), point(5, 0));
+        return (Spatial4jShapeProvider) polygon;
+    }
+}
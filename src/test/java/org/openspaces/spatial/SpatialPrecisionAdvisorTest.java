@@ -0,0 +1,62 @@
+package org.openspaces.spatial;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import org.apache.lucene.spatial.prefix.tree.GeohashPrefixTree;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openspaces.spatial.spi.PrecisionRecommendation;
+import org.openspaces.spatial.spi.SpatialPrecisionAdvisor;
+
+import static org.openspaces.spatial.ShapeFactory.*;
+
+/**
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class SpatialPrecisionAdvisorTest {
+    private final SpatialContext spatialContext = JtsSpatialContext.GEO;
+
+    @Test
+    public void testSmallerShapesRequireMoreLevels() {
+        PrecisionRecommendation large = recommend(1);
+        PrecisionRecommendation small = recommend(0.001);
+        Assert.assertTrue(small.getMaxLevels() > large.getMaxLevels());
+        Assert.assertEquals(100, small.getSampledShapes());
+        Assert.assertTrue(small.getAverageVertices() >= 4);
+        Assert.assertTrue(small.getTermsPerShape() > 0);
+        Assert.assertEquals(Math.round(small.getTermsPerShape() * 100), small.getExpectedTerms());
+    }
+
+    @Test
+    public void testPointsOnlyKeepLevels() {
+        SpatialPrecisionAdvisor advisor = createAdvisor();
+        for (int i = 0; i < 10; i++)
+            advisor.sampleShape("Type", point(i, i));
+        PrecisionRecommendation recommendation = advisor.recommend("Type");
+        Assert.assertEquals(11, recommendation.getMaxLevels());
+        Assert.assertEquals(11, recommendation.getTermsPerShape(), 0);
+        Assert.assertEquals(0, advisor.recommend("Other").getSampledShapes());
+    }
+
+    @Test
+    public void testQueriesRequirePrecision() {
+        SpatialPrecisionAdvisor advisor = createAdvisor();
+        advisor.sampleShape("Type", point(1, 1));
+        advisor.sampleQuery("Type", rectangle(0, 0.001, 0, 0.001));
+        PrecisionRecommendation recommendation = advisor.recommend(null);
+        Assert.assertEquals(1, recommendation.getSampledQueries());
+        Assert.assertTrue(recommendation.getMaxLevels() > 7);
+    }
+
+    private PrecisionRecommendation recommend(double size) {
+        SpatialPrecisionAdvisor advisor = createAdvisor();
+        for (int i = 0; i < 100; i++)
+            advisor.sampleShape("Type", polygon(point(i, 0), point(i, size), point(i + size, size), point(i + size, 0)));
+        return advisor.recommend("Type");
+    }
+
+    private SpatialPrecisionAdvisor createAdvisor() {
+        return new SpatialPrecisionAdvisor(spatialContext, new GeohashPrefixTree(spatialContext, GeohashPrefixTree.getMaxLevelsPossible()), 11, 0.025, 500);
+    }
+}
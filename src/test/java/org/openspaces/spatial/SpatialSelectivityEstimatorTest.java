@@ -0,0 +1,114 @@
+package org.openspaces.spatial;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import com.spatial4j.core.shape.Rectangle;
+import com.spatial4j.core.shape.Shape;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.spatial.bbox.BBoxStrategy;
+import org.apache.lucene.spatial.prefix.RecursivePrefixTreeStrategy;
+import org.apache.lucene.spatial.prefix.tree.GeohashPrefixTree;
+import org.apache.lucene.spatial.query.SpatialArgs;
+import org.apache.lucene.spatial.query.SpatialOperation;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openspaces.spatial.spi.SpatialSelectivityEstimator;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Verifies the accuracy of the estimates against the actual counts: estimates of points are only off on the boundary
+ * of the query, and estimates of rectangles are also off by the rectangles which span several cells (see
+ * SpatialSelectivityEstimatorBenchmark for the average error and the time of the estimates).
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class SpatialSelectivityEstimatorTest {
+    private static final int NUM_OF_SHAPES = 20000;
+    private static final int NUM_OF_QUERIES = 30;
+    private final SpatialContext spatialContext = JtsSpatialContext.GEO;
+
+    @Test
+    public void testUnsupportedStrategy() {
+        Assert.assertNull(SpatialSelectivityEstimator.create(new BBoxStrategy(spatialContext, "shape")));
+    }
+
+    @Test
+    public void testPoints() throws IOException {
+        double maxError = maxError(0);
+        Assert.assertTrue("Max error of points is " + maxError, maxError < 0.5);
+    }
+
+    @Test
+    public void testRectangles() throws IOException {
+        double maxError = maxError(0.5);
+        Assert.assertTrue("Max error of rectangles is " + maxError, maxError < 1);
+    }
+
+    @Test
+    public void testEmptyIndex() throws IOException {
+        RAMDirectory directory = new RAMDirectory();
+        new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer())).close();
+        DirectoryReader reader = DirectoryReader.open(directory);
+        Assert.assertEquals(0, new SpatialSelectivityEstimator(createStrategy()).estimate(reader, spatialContext.makeRectangle(0, 10, 0, 10)));
+        reader.close();
+    }
+
+    /**
+     * Indexes random shapes of the specified size, and returns the maximal relative error of the estimates of queries
+     * which match at least 100 shapes.
+     */
+    private double maxError(double size) throws IOException {
+        RecursivePrefixTreeStrategy strategy = createStrategy();
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter indexWriter = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()));
+        Random random = new Random(42);
+        for (int i = 0; i < NUM_OF_SHAPES; i++) {
+            double x = random.nextDouble() * 100 - 50;
+            double y = random.nextDouble() * 100 - 50;
+            Shape shape = size == 0 ? spatialContext.makePoint(x, y) : spatialContext.makeRectangle(x, x + size, y, y + size);
+            Document document = new Document();
+            for (Field field : strategy.createIndexableFields(shape))
+                document.add(field);
+            indexWriter.addDocument(document);
+        }
+        indexWriter.close();
+
+        DirectoryReader reader = DirectoryReader.open(directory);
+        IndexSearcher searcher = new IndexSearcher(reader);
+        SpatialSelectivityEstimator estimator = SpatialSelectivityEstimator.create(strategy);
+        double maxError = 0;
+        int measured = 0;
+        for (int i = 0; i < NUM_OF_QUERIES; i++) {
+            double width = 10 + random.nextDouble() * 20;
+            double x = random.nextDouble() * (90 - width) - 45;
+            double y = random.nextDouble() * (90 - width) - 45;
+            Rectangle rectangle = spatialContext.makeRectangle(x, x + width, y, y + width);
+            long estimate = estimator.estimate(reader, rectangle);
+            int actual = searcher.count(strategy.makeQuery(new SpatialArgs(SpatialOperation.Intersects, rectangle)));
+            Assert.assertTrue(estimate > 0);
+            if (actual >= 100) {
+                maxError = Math.max(maxError, Math.abs(estimate - actual) / (double) actual);
+                measured++;
+            }
+        }
+        reader.close();
+        Assert.assertTrue("Too few queries were measured: " + measured, measured >= NUM_OF_QUERIES / 2);
+        return maxError;
+    }
+
+    private RecursivePrefixTreeStrategy createStrategy() {
+        RecursivePrefixTreeStrategy strategy = new RecursivePrefixTreeStrategy(new GeohashPrefixTree(spatialContext, 11), "shape");
+        strategy.setDistErrPct(0.025);
+        return strategy;
+    }
+}
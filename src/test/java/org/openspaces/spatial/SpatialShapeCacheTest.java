@@ -0,0 +1,55 @@
+package org.openspaces.spatial;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.spatial.prefix.RecursivePrefixTreeStrategy;
+import org.apache.lucene.spatial.prefix.tree.GeohashPrefixTree;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openspaces.spatial.shapes.Polygon;
+import org.openspaces.spatial.spi.SpatialShapeCache;
+
+import static org.openspaces.spatial.ShapeFactory.*;
+
+/**
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class SpatialShapeCacheTest {
+    private final SpatialContext spatialContext = JtsSpatialContext.GEO;
+
+    @Test
+    public void testEqualShapesShareSpatial4jShape() {
+        SpatialShapeCache cache = new SpatialShapeCache(spatialContext, 10);
+        Polygon polygon1 = polygon(point(0, 0), point(0, 5), point(2.5, 2.5), point(5, 5), point(5, 0));
+        Polygon polygon2 = polygon(point(0, 0), point(0, 5), point(2.5, 2.5), point(5, 5), point(5, 0));
+        Assert.assertNotSame(polygon1, polygon2);
+        Assert.assertSame(cache.getSpatial4jShape(polygon1), cache.getSpatial4jShape(polygon2));
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testEviction() {
+        SpatialShapeCache cache = new SpatialShapeCache(spatialContext, 2);
+        for (int i = 0; i < 5; i++)
+            cache.getSpatial4jShape(point(i, i));
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testCachedTokens() {
+        SpatialShapeCache cache = new SpatialShapeCache(spatialContext, 10);
+        RecursivePrefixTreeStrategy strategy = new RecursivePrefixTreeStrategy(new GeohashPrefixTree(spatialContext, 6), "shape");
+        Polygon polygon = polygon(point(0, 0), point(0, 5), point(2.5, 2.5), point(5, 5), point(5, 0));
+        Field[] fields1 = cache.createIndexableFields(polygon, strategy);
+        Field[] fields2 = cache.createIndexableFields(polygon(point(0, 0), point(0, 5), point(2.5, 2.5), point(5, 5), point(5, 0)), strategy);
+        Assert.assertTrue(fields1.length > 1);
+        Assert.assertEquals(fields1.length, fields2.length);
+        for (int i = 0; i < fields1.length; i++) {
+            Assert.assertEquals("shape", fields2[i].name());
+            Assert.assertEquals(fields1[i].binaryValue(), fields2[i].binaryValue());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.openspaces.spatial;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import com.spatial4j.core.distance.DistanceUtils;
+import com.spatial4j.core.shape.Point;
+import com.spatial4j.core.shape.Shape;
+import com.spatial4j.core.shape.SpatialRelation;
+import org.apache.lucene.spatial.prefix.tree.Cell;
+import org.apache.lucene.spatial.prefix.tree.CellIterator;
+import org.apache.lucene.spatial.query.SpatialArgs;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openspaces.spatial.spi.SphericalCellPrefixTree;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class SphericalCellPrefixTreeTest {
+    private final SpatialContext spatialContext = JtsSpatialContext.GEO;
+    private final SphericalCellPrefixTree tree = new SphericalCellPrefixTree(spatialContext, 16);
+
+    @Test
+    public void testPointCells() {
+        Point[] points = new Point[] {
+                spatialContext.makePoint(0, 0),
+                spatialContext.makePoint(10.5, 59.9),
+                spatialContext.makePoint(-179.99, 45),
+                spatialContext.makePoint(179.99, -45),
+                spatialContext.makePoint(25, 89.99),
+                spatialContext.makePoint(-70, -89.99)
+        };
+        for (Point point : points) {
+            CellIterator cells = tree.getTreeCellIterator(point, 16);
+            Cell previous = null;
+            int count = 0;
+            while (cells.hasNext()) {
+                Cell cell = cells.next();
+                count++;
+                Assert.assertEquals(count, cell.getLevel());
+                Assert.assertTrue("Cell " + cell + " should contain " + point, cell.getShape().relate(point).intersects());
+                if (previous != null)
+                    Assert.assertTrue(previous.isPrefixOf(cell));
+                BytesRef token = BytesRef.deepCopyOf(cell.getTokenBytesNoLeaf(null));
+                Cell read = tree.readCell(token, null);
+                Assert.assertEquals(token, read.getTokenBytesNoLeaf(null));
+                Assert.assertEquals(0, read.compareToNoLeaf(cell));
+                previous = cell;
+            }
+            Assert.assertEquals(16, count);
+        }
+    }
+
+    @Test
+    public void testLevelDistances() {
+        for (int level = 2; level <= tree.getMaxLevels(); level++)
+            Assert.assertTrue(tree.getDistanceForLevel(level) < tree.getDistanceForLevel(level - 1));
+        Assert.assertEquals(16, tree.getLevelForDistance(0));
+        Assert.assertEquals(1, tree.getLevelForDistance(180));
+    }
+
+    @Test
+    public void testWithinCellsAreLeaves() {
+        Shape rectangle = spatialContext.makeRectangle(-60, 60, -40, 40);
+        CellIterator cells = tree.getWorldCell().getNextLevelCells(rectangle);
+        while (cells.hasNext()) {
+            Cell cell = cells.next();
+            Assert.assertNotEquals(SpatialRelation.DISJOINT, cell.getShapeRel());
+            Assert.assertEquals(cell.getShapeRel() == SpatialRelation.WITHIN, cell.isLeaf());
+        }
+    }
+
+    @Test
+    public void testCircleCellsByLatitude() {
+        // The cells of a 50km circle cover it at every latitude, without growing towards the poles as geohash cells do
+        // (see PrefixTreeBenchmark for a comparison of the counts):
+        double radius = DistanceUtils.dist2Degrees(50, DistanceUtils.EARTH_MEAN_RADIUS_KM);
+        int equatorCells = 0;
+        for (double latitude : new double[] {0, 45, 60, 70, 80, 85}) {
+            Shape circle = spatialContext.makeCircle(10, latitude, radius);
+            int detailLevel = tree.getLevelForDistance(SpatialArgs.calcDistanceFromErrPct(circle, 0.025, spatialContext));
+            Set<BytesRef> tokens = new HashSet<BytesRef>();
+            Set<BytesRef> leaves = new HashSet<BytesRef>();
+            CellIterator cells = tree.getTreeCellIterator(circle, detailLevel);
+            while (cells.hasNext()) {
+                Cell cell = cells.next();
+                Assert.assertNotEquals("Cell " + cell + " is disjoint from the circle at " + latitude, SpatialRelation.DISJOINT, cell.getShapeRel());
+                BytesRef token = BytesRef.deepCopyOf(cell.getTokenBytesNoLeaf(null));
+                tokens.add(token);
+                if (cell.isLeaf())
+                    leaves.add(token);
+            }
+            if (latitude == 0)
+                equatorCells = tokens.size();
+            Assert.assertTrue("Cells at latitude " + latitude + ": " + tokens.size() + ", at the equator: " + equatorCells,
+                    tokens.size() <= equatorCells * 10);
+
+            Random random = new Random(42);
+            for (int i = 0; i < 100; i++) {
+                Point point = spatialContext.getDistCalc().pointOnBearing(circle.getCenter(), radius * 0.99 * random.nextDouble(),
+                        random.nextDouble() * 360, spatialContext, null);
+                Assert.assertTrue("Point " + point + " is not covered at latitude " + latitude, isCovered(point, detailLevel, tokens, leaves));
+            }
+        }
+    }
+
+    private boolean isCovered(Point point, int detailLevel, Set<BytesRef> tokens, Set<BytesRef> leaves) {
+        CellIterator cells = tree.getTreeCellIterator(point, detailLevel);
+        while (cells.hasNext()) {
+            Cell cell = cells.next();
+            BytesRef token = cell.getTokenBytesNoLeaf(null);
+            if (leaves.contains(token) || (cell.getLevel() == detailLevel && tokens.contains(token)))
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,35 @@
+package org.openspaces.spatial.benchmark;
+
+/**
+ * Helpers for the benchmarks in this package, which are run manually (via their main method) rather than as part of
+ * the test suite, e.g. <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=...</code>.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class Benchmarks {
+    /**
+     * Private ctor to prevent instantiating this helper class.
+     */
+    private Benchmarks() {
+    }
+
+    /**
+     * Gets the used heap after collecting garbage, as steady as can be measured without instrumentation.
+     */
+    public static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        long result = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            result = Math.min(result, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,124 @@
+package org.openspaces.spatial.benchmark;
+
+import com.gigaspaces.metadata.SpaceTypeDescriptor;
+import com.gigaspaces.query.extension.QueryExtensionRuntimeInfo;
+import org.openspaces.spatial.shapes.Point;
+import org.openspaces.spatial.spi.LuceneSpatialConfiguration;
+import org.openspaces.spatial.spi.LuceneSpatialQueryExtensionManager;
+import org.openspaces.spatial.spi.LuceneSpatialQueryExtensionProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.openspaces.spatial.MockSpaceEntries.entry;
+import static org.openspaces.spatial.MockSpaceEntries.typeDescriptor;
+import static org.openspaces.spatial.ShapeFactory.point;
+import static org.openspaces.spatial.ShapeFactory.rectangle;
+
+/**
+ * Measures the updates/sec of moving points (each update replaces the previous version of an entry) for each index
+ * engine, with concurrent writers and a concurrent reader querying a small area, as in a fleet tracking workload.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class IndexEngineUpdateBenchmark {
+    private static final int NUM_OF_ENTRIES = 100000;
+    private static final int NUM_OF_WRITERS = 4;
+    private static final long DURATION = 10000;
+
+    private static final String[] ENGINES = {"Lucene", "InMemory"};
+
+    public static void main(String[] args) throws Exception {
+        for (String engine : ENGINES)
+            run(engine);
+    }
+
+    private static void run(String engine) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(LuceneSpatialConfiguration.ENGINE, engine);
+        properties.setProperty(LuceneSpatialConfiguration.STORAGE_DIRECTORYTYPE, "RAMDirectory");
+        final LuceneSpatialQueryExtensionManager manager = new LuceneSpatialQueryExtensionManager(
+                new LuceneSpatialQueryExtensionProvider(properties), runtimeInfo());
+        try {
+            final SpaceTypeDescriptor typeDescriptor = typeDescriptor("Vehicle", "location");
+            manager.registerType(typeDescriptor);
+            final int[] versions = new int[NUM_OF_ENTRIES];
+            Random random = new Random(42);
+            for (int i = 0; i < NUM_OF_ENTRIES; i++)
+                manager.insertEntry(entry(typeDescriptor, "uid" + i, ++versions[i], "location", randomPoint(random)), false);
+
+            final AtomicLong updates = new AtomicLong();
+            final AtomicLong queries = new AtomicLong();
+            final long deadline = System.currentTimeMillis() + DURATION;
+            Thread[] threads = new Thread[NUM_OF_WRITERS + 1];
+            for (int t = 0; t < threads.length; t++) {
+                final int writer = t < NUM_OF_WRITERS ? t : -1;
+                threads[t] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (writer == -1)
+                                query(manager, queries, deadline);
+                            else
+                                update(manager, typeDescriptor, versions, writer, updates, deadline);
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads)
+                thread.join();
+            System.out.println(engine + ": " + updates.get() * 1000 / DURATION + " updates/sec, " +
+                    queries.get() * 1000 / DURATION + " queries/sec");
+        } finally {
+            manager.close();
+        }
+    }
+
+    private static void update(LuceneSpatialQueryExtensionManager manager, SpaceTypeDescriptor typeDescriptor,
+                               int[] versions, int writer, AtomicLong updates, long deadline) {
+        // Each writer updates its own entries, so versions are not shared between threads:
+        Random random = new Random(writer);
+        long count = 0;
+        while (System.currentTimeMillis() < deadline) {
+            int i = random.nextInt(NUM_OF_ENTRIES / NUM_OF_WRITERS) * NUM_OF_WRITERS + writer;
+            manager.insertEntry(entry(typeDescriptor, "uid" + i, ++versions[i], "location", randomPoint(random)), true);
+            count++;
+        }
+        updates.addAndGet(count);
+    }
+
+    private static void query(LuceneSpatialQueryExtensionManager manager, AtomicLong queries, long deadline) throws IOException {
+        long count = 0;
+        while (System.currentTimeMillis() < deadline) {
+            manager.queryByIndex("Vehicle", "location", "WITHIN", rectangle(10, 12, 40, 42)).close();
+            count++;
+        }
+        queries.addAndGet(count);
+    }
+
+    private static Point randomPoint(Random random) {
+        return point(random.nextDouble() * 60 - 30, random.nextDouble() * 40 + 20);
+    }
+
+    private static QueryExtensionRuntimeInfo runtimeInfo() {
+        final String workDir = new File(System.getProperty("java.io.tmpdir"), "index-engine-benchmark").getAbsolutePath();
+        return new QueryExtensionRuntimeInfo() {
+            @Override
+            public String getSpaceInstanceName() {
+                return "benchmark";
+            }
+
+            @Override
+            public String getSpaceInstanceWorkDirectory() {
+                return workDir;
+            }
+        };
+    }
+}
@@ -0,0 +1,68 @@
+package org.openspaces.spatial.benchmark;
+
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import org.openspaces.spatial.ShapeFactory;
+import org.openspaces.spatial.ShapeFormat;
+import org.openspaces.spatial.shapes.Polygon;
+import org.openspaces.spatial.shapes.impl.Spatial4jShapeCache;
+import org.openspaces.spatial.spatial4j.Spatial4jShapeProvider;
+
+/**
+ * Measures the cost of converting a polygon to its spatial4j shape on insert, by formatting it as WKT and parsing the
+ * text with the context's reader (the previous conversion) versus building the JTS geometry directly from the
+ * coordinates, for polygons of 10, 1k and 100k vertices.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class PolygonConversionBenchmark {
+    private static final int[] NUM_OF_VERTICES = {10, 1000, 100000};
+    // Each measurement converts about this many vertices:
+    private static final int VERTICES_PER_MEASUREMENT = 2000000;
+
+    public static void main(String[] args) throws Exception {
+        final JtsSpatialContext spatialContext = JtsSpatialContext.GEO;
+        // Spatial4j shapes are not kept, so each conversion builds the shape again:
+        Spatial4jShapeCache.setPolicy(Spatial4jShapeCache.Policy.NEVER, 0);
+        try {
+            for (int numOfVertices : NUM_OF_VERTICES) {
+                final Polygon polygon = createPolygon(numOfVertices);
+                final int iterations = Math.max(5, VERTICES_PER_MEASUREMENT / numOfVertices);
+                // Warm up both conversions before measuring them:
+                readWkt(spatialContext, polygon, iterations);
+                createJtsShape(spatialContext, polygon, iterations);
+                final long wktTime = readWkt(spatialContext, polygon, iterations);
+                final long directTime = createJtsShape(spatialContext, polygon, iterations);
+                System.out.println(numOfVertices + " vertices: WKT round-trip=" + wktTime / iterations / 1000 + "us/insert" +
+                        ", direct=" + directTime / iterations / 1000 + "us/insert" +
+                        ", speedup=" + (double) wktTime / Math.max(1, directTime));
+            }
+        } finally {
+            Spatial4jShapeCache.setPolicy(Spatial4jShapeCache.Policy.ALWAYS, 0);
+        }
+    }
+
+    private static long readWkt(JtsSpatialContext spatialContext, Polygon polygon, int iterations) throws Exception {
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            spatialContext.getFormats().getWktReader().read(polygon.toString(ShapeFormat.WKT));
+        return System.nanoTime() - start;
+    }
+
+    private static long createJtsShape(JtsSpatialContext spatialContext, Polygon polygon, int iterations) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            ((Spatial4jShapeProvider) polygon).getSpatial4jShape(spatialContext);
+        return System.nanoTime() - start;
+    }
+
+    private static Polygon createPolygon(int numOfVertices) {
+        final double[] coordinates = new double[numOfVertices * 2];
+        for (int i = 0; i < numOfVertices; i++) {
+            final double angle = 2 * Math.PI * i / numOfVertices;
+            coordinates[i * 2] = 10 + 5 * Math.cos(angle);
+            coordinates[i * 2 + 1] = 20 + 5 * Math.sin(angle);
+        }
+        return ShapeFactory.polygon(coordinates);
+    }
+}
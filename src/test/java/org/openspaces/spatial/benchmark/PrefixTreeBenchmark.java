@@ -0,0 +1,117 @@
+package org.openspaces.spatial.benchmark;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import com.spatial4j.core.distance.DistanceUtils;
+import com.spatial4j.core.shape.Rectangle;
+import com.spatial4j.core.shape.Shape;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.spatial.prefix.RecursivePrefixTreeStrategy;
+import org.apache.lucene.spatial.prefix.tree.CellIterator;
+import org.apache.lucene.spatial.prefix.tree.GeohashPrefixTree;
+import org.apache.lucene.spatial.prefix.tree.PackedQuadPrefixTree;
+import org.apache.lucene.spatial.prefix.tree.QuadPrefixTree;
+import org.apache.lucene.spatial.prefix.tree.SpatialPrefixTree;
+import org.apache.lucene.spatial.query.SpatialArgs;
+import org.apache.lucene.spatial.query.SpatialOperation;
+import org.apache.lucene.store.RAMDirectory;
+import org.openspaces.spatial.spi.SphericalCellPrefixTree;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Compares the supported prefix trees: the cells of a 50km circle at increasing latitudes, and the index size,
+ * indexing rate and query latency of points at high latitudes.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class PrefixTreeBenchmark {
+    private static final int NUM_OF_POINTS = 100000;
+    private static final int NUM_OF_QUERIES = 1000;
+    private static final SpatialContext spatialContext = JtsSpatialContext.GEO;
+
+    public static void main(String[] args) throws IOException {
+        SpatialPrefixTree[] trees = new SpatialPrefixTree[] {
+                new GeohashPrefixTree(spatialContext, 11),
+                new QuadPrefixTree(spatialContext, 26),
+                new PackedQuadPrefixTree(spatialContext, 26),
+                new SphericalCellPrefixTree(spatialContext, 22)
+        };
+        reportCellsByLatitude(trees);
+        for (SpatialPrefixTree tree : trees)
+            reportIndex(tree);
+    }
+
+    private static void reportCellsByLatitude(SpatialPrefixTree[] trees) {
+        double radius = DistanceUtils.dist2Degrees(50, DistanceUtils.EARTH_MEAN_RADIUS_KM);
+        for (double latitude : new double[] {0, 45, 60, 70, 80, 85}) {
+            Shape circle = spatialContext.makeCircle(10, latitude, radius);
+            StringBuilder sb = new StringBuilder("Latitude " + latitude + ":");
+            for (SpatialPrefixTree tree : trees) {
+                long start = System.nanoTime();
+                int cells = countCells(tree, circle);
+                sb.append(" ").append(tree.getClass().getSimpleName()).append(" cells=").append(cells)
+                        .append(" (").append((System.nanoTime() - start) / 1000).append("us)");
+            }
+            System.out.println(sb);
+        }
+    }
+
+    private static int countCells(SpatialPrefixTree grid, Shape shape) {
+        double distance = SpatialArgs.calcDistanceFromErrPct(shape, 0.025, spatialContext);
+        CellIterator cells = grid.getTreeCellIterator(shape, grid.getLevelForDistance(distance));
+        int count = 0;
+        while (cells.hasNext()) {
+            cells.next();
+            count++;
+        }
+        return count;
+    }
+
+    private static void reportIndex(SpatialPrefixTree tree) throws IOException {
+        RecursivePrefixTreeStrategy strategy = new RecursivePrefixTreeStrategy(tree, "shape");
+        strategy.setDistErrPct(0.025);
+        if (!(tree instanceof GeohashPrefixTree) && !(tree instanceof QuadPrefixTree))
+            strategy.setPruneLeafyBranches(false);
+
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter indexWriter = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()));
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        for (int i = 0; i < NUM_OF_POINTS; i++) {
+            Document document = new Document();
+            for (Field field : strategy.createIndexableFields(spatialContext.makePoint(random.nextDouble() * 30, 55 + random.nextDouble() * 25)))
+                document.add(field);
+            indexWriter.addDocument(document);
+        }
+        indexWriter.forceMerge(1);
+        indexWriter.close();
+        long indexTime = System.nanoTime() - start;
+
+        DirectoryReader reader = DirectoryReader.open(directory);
+        IndexSearcher searcher = new IndexSearcher(reader);
+        long hits = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < NUM_OF_QUERIES; i++) {
+            double x = random.nextDouble() * 28;
+            double y = 55 + random.nextDouble() * 23;
+            Rectangle rectangle = spatialContext.makeRectangle(x, x + 2, y, y + 1);
+            hits += searcher.count(strategy.makeQuery(new SpatialArgs(SpatialOperation.Intersects, rectangle)));
+        }
+        long queryTime = System.nanoTime() - start;
+        reader.close();
+
+        System.out.println(tree + ": index size=" + directory.ramBytesUsed() + " bytes" +
+                ", indexing rate=" + (NUM_OF_POINTS * 1000000000L / Math.max(1, indexTime)) + " points/sec" +
+                ", average query latency=" + (queryTime / NUM_OF_QUERIES / 1000) + "us" +
+                ", hits=" + hits);
+    }
+}
@@ -0,0 +1,99 @@
+package org.openspaces.spatial.benchmark;
+
+import org.openspaces.spatial.ShapeFactory;
+import org.openspaces.spatial.shapes.Shape;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Reports the serialized bytes per shape and the write/read throughput of small, medium and large polygons and line
+ * strings, in the legacy and compact coordinate formats. The format is chosen by a system property when the shapes
+ * are loaded, so each format is measured in a separate JVM.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class ShapeSerializationBenchmark {
+    private static final String COMPACT_SERIALIZATION_PROPERTY = "org.openspaces.spatial.serialization.compact";
+    private static final int[] NUM_OF_VERTICES = {10, 1000, 100000};
+    // Each measurement serializes about this many vertices:
+    private static final int VERTICES_PER_MEASUREMENT = 5000000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 0) {
+            measure(args[0]);
+            return;
+        }
+        for (String compact : new String[] {"false", "true"}) {
+            final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            final Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    "-D" + COMPACT_SERIALIZATION_PROPERTY + "=" + compact, ShapeSerializationBenchmark.class.getName(),
+                    Boolean.parseBoolean(compact) ? "compact" : "legacy")
+                    .redirectErrorStream(true)
+                    .start();
+            final InputStream output = process.getInputStream();
+            final byte[] buffer = new byte[4096];
+            for (int length = output.read(buffer); length != -1; length = output.read(buffer))
+                System.out.write(buffer, 0, length);
+            System.out.flush();
+            if (process.waitFor() != 0)
+                throw new IllegalStateException("Benchmark of compact=" + compact + " failed");
+        }
+    }
+
+    private static void measure(String format) throws Exception {
+        for (int numOfVertices : NUM_OF_VERTICES) {
+            final double[] coordinates = createCoordinates(numOfVertices);
+            measure(format, "polygon", numOfVertices, ShapeFactory.polygon(coordinates));
+            measure(format, "line string", numOfVertices, ShapeFactory.lineString(coordinates));
+        }
+    }
+
+    private static void measure(String format, String name, int numOfVertices, Shape shape) throws Exception {
+        final int iterations = Math.max(10, VERTICES_PER_MEASUREMENT / numOfVertices);
+        // Warm up both directions before measuring them:
+        read(shape, write(shape, iterations), iterations);
+        long start = System.nanoTime();
+        final byte[] bytes = write(shape, iterations);
+        final long writeTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        read(shape, bytes, iterations);
+        final long readTime = System.nanoTime() - start;
+        System.out.println(format + " " + name + " of " + numOfVertices + " vertices: " + bytes.length / iterations + " bytes/shape" +
+                ", write=" + (long) (iterations * 1e9 / writeTime) + " shapes/sec" +
+                ", read=" + (long) (iterations * 1e9 / readTime) + " shapes/sec");
+    }
+
+    private static byte[] write(Shape shape, int iterations) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        for (int i = 0; i < iterations; i++)
+            ((Externalizable) shape).writeExternal(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static void read(Shape shape, byte[] bytes, int iterations) throws Exception {
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        for (int i = 0; i < iterations; i++)
+            ((Externalizable) shape.getClass().newInstance()).readExternal(in);
+        in.close();
+    }
+
+    private static double[] createCoordinates(int numOfVertices) {
+        final double[] coordinates = new double[numOfVertices * 2];
+        for (int i = 0; i < numOfVertices; i++) {
+            final double angle = 2 * Math.PI * i / numOfVertices;
+            coordinates[i * 2] = 10 + 5 * Math.cos(angle);
+            coordinates[i * 2 + 1] = 20 + 5 * Math.sin(angle);
+        }
+        return coordinates;
+    }
+}
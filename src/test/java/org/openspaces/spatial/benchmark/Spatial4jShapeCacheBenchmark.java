@@ -0,0 +1,65 @@
+package org.openspaces.spatial.benchmark;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import org.openspaces.spatial.ShapeFactory;
+import org.openspaces.spatial.shapes.Shape;
+import org.openspaces.spatial.shapes.impl.Spatial4jShapeCache;
+import org.openspaces.spatial.spatial4j.Spatial4jShapeProvider;
+
+import java.util.Random;
+
+/**
+ * Measures the heap retained by polygons after their spatial4j shapes were built, for each
+ * {@link Spatial4jShapeCache.Policy}, and the time it takes to get their spatial4j shapes again.
+ * Run with a fixed heap (e.g. -Xms2g -Xmx2g) so the measurements are not skewed by heap resizing.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class Spatial4jShapeCacheBenchmark {
+    private static final int NUM_OF_SHAPES = 100000;
+    private static final int NUM_OF_VERTICES = 50;
+    private static final int BOUNDED_SIZE = 10000;
+
+    public static void main(String[] args) {
+        final SpatialContext spatialContext = JtsSpatialContext.GEO;
+        for (Spatial4jShapeCache.Policy policy : Spatial4jShapeCache.Policy.values()) {
+            Spatial4jShapeCache.setPolicy(policy, BOUNDED_SIZE);
+            final long before = Benchmarks.usedHeap();
+            final Shape[] shapes = createPolygons();
+            final long coordinates = Benchmarks.usedHeap();
+            for (Shape shape : shapes)
+                ((Spatial4jShapeProvider) shape).getSpatial4jShape(spatialContext);
+            final long retained = Benchmarks.usedHeap();
+            long start = System.nanoTime();
+            for (Shape shape : shapes)
+                ((Spatial4jShapeProvider) shape).getSpatial4jShape(spatialContext);
+            final long time = System.nanoTime() - start;
+            System.out.println(policy + ": polygons=" + (coordinates - before) / NUM_OF_SHAPES + " bytes/shape" +
+                    ", cached spatial4j shapes=" + (retained - coordinates) / NUM_OF_SHAPES + " bytes/shape" +
+                    ", second access=" + time / NUM_OF_SHAPES + " ns/shape");
+            // Keep the shapes reachable until measured:
+            if (shapes.length != NUM_OF_SHAPES)
+                throw new IllegalStateException();
+        }
+        Spatial4jShapeCache.setPolicy(Spatial4jShapeCache.Policy.ALWAYS, BOUNDED_SIZE);
+    }
+
+    private static Shape[] createPolygons() {
+        final Random random = new Random(42);
+        final Shape[] result = new Shape[NUM_OF_SHAPES];
+        for (int i = 0; i < NUM_OF_SHAPES; i++) {
+            final double x = random.nextDouble() * 300 - 150;
+            final double y = random.nextDouble() * 140 - 70;
+            final double[] coordinates = new double[NUM_OF_VERTICES * 2];
+            for (int j = 0; j < NUM_OF_VERTICES; j++) {
+                final double angle = 2 * Math.PI * j / NUM_OF_VERTICES;
+                coordinates[j * 2] = x + Math.cos(angle);
+                coordinates[j * 2 + 1] = y + Math.sin(angle);
+            }
+            result[i] = ShapeFactory.polygon(coordinates);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,87 @@
+package org.openspaces.spatial.benchmark;
+
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.context.jts.JtsSpatialContext;
+import com.spatial4j.core.shape.Rectangle;
+import com.spatial4j.core.shape.Shape;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.spatial.prefix.RecursivePrefixTreeStrategy;
+import org.apache.lucene.spatial.prefix.tree.GeohashPrefixTree;
+import org.apache.lucene.spatial.query.SpatialArgs;
+import org.apache.lucene.spatial.query.SpatialOperation;
+import org.apache.lucene.store.RAMDirectory;
+import org.openspaces.spatial.spi.SpatialSelectivityEstimator;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Reports the accuracy of the selectivity estimates against the actual counts, and the time of an estimate against
+ * the time of counting the matches, for points and for rectangles of increasing size.
+ *
+ * @author Niv Ingberg
+ * @since 12.0
+ */
+public class SpatialSelectivityEstimatorBenchmark {
+    private static final int NUM_OF_SHAPES = 200000;
+    private static final int NUM_OF_QUERIES = 200;
+    private static final SpatialContext spatialContext = JtsSpatialContext.GEO;
+
+    public static void main(String[] args) throws IOException {
+        for (double size : new double[] {0, 0.5, 2, 5})
+            report(size);
+    }
+
+    private static void report(double size) throws IOException {
+        RecursivePrefixTreeStrategy strategy = new RecursivePrefixTreeStrategy(new GeohashPrefixTree(spatialContext, 11), "shape");
+        strategy.setDistErrPct(0.025);
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter indexWriter = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()));
+        Random random = new Random(42);
+        for (int i = 0; i < NUM_OF_SHAPES; i++) {
+            double x = random.nextDouble() * 100 - 50;
+            double y = random.nextDouble() * 100 - 50;
+            Shape shape = size == 0 ? spatialContext.makePoint(x, y) : spatialContext.makeRectangle(x, x + size, y, y + size);
+            Document document = new Document();
+            for (Field field : strategy.createIndexableFields(shape))
+                document.add(field);
+            indexWriter.addDocument(document);
+        }
+        indexWriter.forceMerge(1);
+        indexWriter.close();
+
+        DirectoryReader reader = DirectoryReader.open(directory);
+        IndexSearcher searcher = new IndexSearcher(reader);
+        SpatialSelectivityEstimator estimator = SpatialSelectivityEstimator.create(strategy);
+        double totalError = 0;
+        double maxError = 0;
+        long estimateTime = 0;
+        long countTime = 0;
+        for (int i = 0; i < NUM_OF_QUERIES; i++) {
+            double width = 1 + random.nextDouble() * 29;
+            double x = random.nextDouble() * (90 - width) - 45;
+            double y = random.nextDouble() * (90 - width) - 45;
+            Rectangle rectangle = spatialContext.makeRectangle(x, x + width, y, y + width);
+            long start = System.nanoTime();
+            long estimate = estimator.estimate(reader, rectangle);
+            estimateTime += System.nanoTime() - start;
+            start = System.nanoTime();
+            int actual = searcher.count(strategy.makeQuery(new SpatialArgs(SpatialOperation.Intersects, rectangle)));
+            countTime += System.nanoTime() - start;
+            double error = Math.abs(estimate - actual) / (double) Math.max(1, actual);
+            totalError += error;
+            maxError = Math.max(maxError, error);
+        }
+        reader.close();
+        System.out.println((size == 0 ? "points" : "rectangles of " + size + " degrees") +
+                ": average relative error=" + (totalError / NUM_OF_QUERIES) + ", max relative error=" + maxError +
+                ", average estimate time=" + (estimateTime / NUM_OF_QUERIES / 1000) + "us" +
+                ", average count time=" + (countTime / NUM_OF_QUERIES / 1000) + "us");
+    }
+}